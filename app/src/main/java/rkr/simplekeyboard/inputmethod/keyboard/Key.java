@@ -16,11 +16,11 @@
 
 package rkr.simplekeyboard.inputmethod.keyboard;
 
-import android.content.res.TypedArray;
 import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.text.TextUtils;
+import android.util.TypedValue;
 
 import java.util.Arrays;
 import java.util.Locale;
@@ -30,6 +30,7 @@ import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyDrawParams;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeySpecParser;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyStyle;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyVisualAttributes;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardAttributes;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardIconsSet;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardParams;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardRow;
@@ -216,7 +217,7 @@ public class Key implements Comparable<Key> {
      * @param row the row that this key belongs to. row's x-coordinate will be the right edge of
      *        this key.
      */
-    public Key(final String keySpec, final TypedArray keyAttr,
+    public Key(final String keySpec, final KeyboardAttributes keyAttr,
             final KeyStyle style, final KeyboardParams params,
             final KeyboardRow row) {
         // Update the row to work with the new key
@@ -285,18 +286,18 @@ public class Key implements Comparable<Key> {
         moreKeys = MoreKeySpec.insertAdditionalMoreKeys(moreKeys, additionalMoreKeys);
         if (moreKeys != null) {
             actionFlags |= ACTION_FLAGS_ENABLE_LONG_PRESS;
-            mMoreKeys = new MoreKeySpec[moreKeys.length];
-            for (int i = 0; i < moreKeys.length; i++) {
-                mMoreKeys[i] = new MoreKeySpec(moreKeys[i], needsToUpcase, localeForUpcasing);
-            }
+            mMoreKeys = params.mMoreKeySpecsCache.getMoreKeySpecs(moreKeys, needsToUpcase,
+                    localeForUpcasing);
         } else {
             mMoreKeys = null;
         }
         mActionFlags = actionFlags;
 
-        mIconId = KeySpecParser.getIconId(keySpec);
+        final KeySpecParser.ParsedKeySpec parsedKeySpec =
+                new KeySpecParser.ParsedKeySpec().parse(keySpec);
+        mIconId = parsedKeySpec.getIconId();
 
-        final int code = KeySpecParser.getCode(keySpec);
+        final int code = parsedKeySpec.getCode();
         if ((mLabelFlags & LABEL_FLAGS_FROM_CUSTOM_ACTION_LABEL) != 0) {
             mLabel = params.mId.mCustomActionLabel;
         } else if (code >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
@@ -305,7 +306,7 @@ public class Key implements Comparable<Key> {
             // code point nor as a surrogate pair.
             mLabel = new StringBuilder().appendCodePoint(code).toString();
         } else {
-            final String label = KeySpecParser.getLabel(keySpec);
+            final String label = parsedKeySpec.getLabel();
             mLabel = needsToUpcase
                     ? StringUtils.toTitleCaseOfKeyLabel(label, localeForUpcasing)
                     : label;
@@ -319,7 +320,7 @@ public class Key implements Comparable<Key> {
                     ? StringUtils.toTitleCaseOfKeyLabel(hintLabel, localeForUpcasing)
                     : hintLabel;
         }
-        String outputText = KeySpecParser.getOutputText(keySpec);
+        String outputText = parsedKeySpec.getOutputText();
         if (needsToUpcase) {
             outputText = StringUtils.toTitleCaseOfKeyLabel(outputText, localeForUpcasing);
         }
@@ -361,6 +362,55 @@ public class Key implements Comparable<Key> {
         mHashCode = computeHashCode(this);
     }
 
+    /**
+     * Create a key with the attributes of a key that was parsed for a keyboard of another size at
+     * the position that the row determines for it.
+     *
+     * @param key the key that was parsed.
+     * @param keyXPos the keyXPos attribute of the key, or null if it wasn't specified.
+     * @param keyWidth the keyWidth attribute of the key, or null if it wasn't specified.
+     * @param row the row that this key belongs to. row's x-coordinate will be the right edge of
+     *        this key.
+     */
+    public Key(final Key key, final TypedValue keyXPos, final TypedValue keyWidth,
+            final KeyboardRow row) {
+        // Update the row to work with the new key
+        row.setCurrentKey(keyXPos, keyWidth, isSpacer());
+
+        mDefinedWidth = row.getKeyWidth();
+        mDefinedHeight = row.getKeyHeight();
+
+        final float keyLeft = row.getKeyX();
+        final float keyTop = row.getKeyY();
+        final float keyRight = keyLeft + mDefinedWidth;
+        final float keyBottom = keyTop + mDefinedHeight;
+
+        final float leftPadding = row.getKeyLeftPadding();
+        final float topPadding = row.getKeyTopPadding();
+        final float rightPadding = row.getKeyRightPadding();
+        final float bottomPadding = row.getKeyBottomPadding();
+
+        mHitbox.set(Math.round(keyLeft - leftPadding), Math.round(keyTop - topPadding),
+                Math.round(keyRight + rightPadding), Math.round(keyBottom + bottomPadding));
+        mX = Math.round(keyLeft);
+        mY = Math.round(keyTop);
+        mWidth = Math.round(keyRight) - mX;
+        mHeight = Math.round(keyBottom) - mY;
+
+        mCode = key.mCode;
+        mLabel = key.mLabel;
+        mHintLabel = key.mHintLabel;
+        mLabelFlags = key.mLabelFlags;
+        mIconId = key.mIconId;
+        mMoreKeys = key.mMoreKeys;
+        mMoreKeysColumnAndFlags = key.mMoreKeysColumnAndFlags;
+        mBackgroundType = key.mBackgroundType;
+        mActionFlags = key.mActionFlags;
+        mKeyVisualAttributes = key.mKeyVisualAttributes;
+        mOptionalAttributes = key.mOptionalAttributes;
+        mHashCode = computeHashCode(this);
+    }
+
     /**
      * Copy constructor for DynamicGridKeyboard.GridKey.
      *
@@ -390,7 +440,8 @@ public class Key implements Comparable<Key> {
         mActionFlags = key.mActionFlags;
         mKeyVisualAttributes = key.mKeyVisualAttributes;
         mOptionalAttributes = key.mOptionalAttributes;
-        mHashCode = key.mHashCode;
+        // The more keys may be different from the original key, which affects the hash code.
+        mHashCode = (moreKeys == key.mMoreKeys) ? key.mHashCode : computeHashCode(this);
         // Key state.
         mPressed = key.mPressed;
     }
@@ -416,33 +467,40 @@ public class Key implements Comparable<Key> {
     }
 
     private static int computeHashCode(final Key key) {
-        return Arrays.hashCode(new Object[] {
-                key.mX,
-                key.mY,
-                key.mWidth,
-                key.mHeight,
-                key.mCode,
-                key.mLabel,
-                key.mHintLabel,
-                key.mIconId,
-                key.mBackgroundType,
-                Arrays.hashCode(key.mMoreKeys),
-                key.getOutputText(),
-                key.mActionFlags,
-                key.mLabelFlags,
-                // Key can be distinguishable without the following members.
-                // key.mOptionalAttributes.mAltCode,
-                // key.mOptionalAttributes.mDisabledIconId,
-                // key.mOptionalAttributes.mPreviewIconId,
-                // key.mMaxMoreKeysColumn,
-                // key.mDefinedHeight,
-                // key.mDefinedWidth,
-        });
+        // This is equivalent to hashing an array of the fields, but it avoids allocating the array
+        // and boxing the fields for every key that is built.
+        int hashCode = 1;
+        hashCode = 31 * hashCode + key.mX;
+        hashCode = 31 * hashCode + key.mY;
+        hashCode = 31 * hashCode + key.mWidth;
+        hashCode = 31 * hashCode + key.mHeight;
+        hashCode = 31 * hashCode + key.mCode;
+        hashCode = 31 * hashCode + hashCodeOf(key.mLabel);
+        hashCode = 31 * hashCode + hashCodeOf(key.mHintLabel);
+        hashCode = 31 * hashCode + key.mIconId;
+        hashCode = 31 * hashCode + key.mBackgroundType;
+        hashCode = 31 * hashCode + Arrays.hashCode(key.mMoreKeys);
+        hashCode = 31 * hashCode + hashCodeOf(key.getOutputText());
+        hashCode = 31 * hashCode + key.mActionFlags;
+        hashCode = 31 * hashCode + key.mLabelFlags;
+        // Key can be distinguishable without the following members.
+        // key.mOptionalAttributes.mAltCode,
+        // key.mOptionalAttributes.mDisabledIconId,
+        // key.mOptionalAttributes.mPreviewIconId,
+        // key.mMaxMoreKeysColumn,
+        // key.mDefinedHeight,
+        // key.mDefinedWidth,
+        return hashCode;
+    }
+
+    private static int hashCodeOf(final String string) {
+        return string == null ? 0 : string.hashCode();
     }
 
     private boolean equalsInternal(final Key o) {
         if (this == o) return true;
-        return o.mX == mX
+        return o.mHashCode == mHashCode
+                && o.mX == mX
                 && o.mY == mY
                 && o.mWidth == mWidth
                 && o.mHeight == mHeight
@@ -708,7 +766,7 @@ public class Key implements Comparable<Key> {
     }
 
     public Drawable getPreviewIcon(final KeyboardIconsSet iconSet) {
-        return iconSet.getIconDrawable(getIconId());
+        return iconSet.getPreviewIconDrawable(getIconId());
     }
 
     /**
@@ -797,6 +855,35 @@ public class Key implements Comparable<Key> {
         return mHitbox.right - mX - mWidth;
     }
 
+    /**
+     * Checks whether this key is at the same position and has the same size as another key.
+     * @param key the key to compare with.
+     * @return true if both keys occupy the same area.
+     */
+    public boolean hasSameGeometryAs(final Key key) {
+        return mX == key.mX && mY == key.mY && mWidth == key.mWidth && mHeight == key.mHeight;
+    }
+
+    /**
+     * Checks whether this key is drawn exactly like another key with the same geometry.
+     * @param key the key to compare with.
+     * @return true if drawing either key produces the same pixels.
+     */
+    public boolean hasSameVisualsAs(final Key key) {
+        if (this == key) return true;
+        return mCode == key.mCode
+                && isSpacer() == key.isSpacer()
+                && TextUtils.equals(mLabel, key.mLabel)
+                && TextUtils.equals(mHintLabel, key.mHintLabel)
+                && mLabelFlags == key.mLabelFlags
+                && mIconId == key.mIconId
+                && mBackgroundType == key.mBackgroundType
+                && mActionFlags == key.mActionFlags
+                && mPressed == key.mPressed
+                && KeyVisualAttributes.hasSameValues(mKeyVisualAttributes,
+                        key.mKeyVisualAttributes);
+    }
+
     /**
      * Informs the key that it has been pressed, in case it needs to change its appearance or
      * state.
@@ -902,9 +989,14 @@ public class Key implements Comparable<Key> {
     }
 
     public static class Spacer extends Key {
-        public Spacer(final TypedArray keyAttr, final KeyStyle keyStyle,
+        public Spacer(final KeyboardAttributes keyAttr, final KeyStyle keyStyle,
                 final KeyboardParams params, final KeyboardRow row) {
             super(null /* keySpec */, keyAttr, keyStyle, params, row);
         }
+
+        public Spacer(final Key spacer, final TypedValue keyXPos, final TypedValue keyWidth,
+                final KeyboardRow row) {
+            super(spacer, keyXPos, keyWidth, row);
+        }
     }
 }
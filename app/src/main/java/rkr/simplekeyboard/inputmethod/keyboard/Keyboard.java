@@ -18,7 +18,7 @@ package rkr.simplekeyboard.inputmethod.keyboard;
 
 import android.util.SparseArray;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -79,6 +79,14 @@ public class Keyboard {
 
     private final ProximityInfo mProximityInfo;
 
+    // The parsed more keys keyboard template, which is only loaded when a more keys keyboard is
+    // first opened from this keyboard.
+    /* package */ MoreKeysKeyboard.MoreKeysTemplate mMoreKeysTemplateCache;
+
+    // Rough size of a key and its share of the proximity info on a 32-bit runtime, which is only
+    // used for the memory stats.
+    private static final int ESTIMATED_BYTES_PER_KEY = 160;
+
     public Keyboard(final KeyboardParams params) {
         mId = params.mId;
         mOccupiedHeight = params.mOccupiedHeight;
@@ -91,7 +99,7 @@ public class Keyboard {
         mVerticalGap = params.mVerticalGap;
         mHorizontalGap = params.mHorizontalGap;
 
-        mSortedKeys = Collections.unmodifiableList(new ArrayList<>(params.mSortedKeys));
+        mSortedKeys = Collections.unmodifiableList(Arrays.asList(params.getSortedKeys()));
         mShiftKeys = Collections.unmodifiableList(params.mShiftKeys);
         mAltCodeKeysWhileTyping = Collections.unmodifiableList(params.mAltCodeKeysWhileTyping);
         mIconsSet = params.mIconsSet;
@@ -110,6 +118,14 @@ public class Keyboard {
         return mSortedKeys;
     }
 
+    /**
+     * Get a rough estimate of the memory used by this keyboard, for the memory stats.
+     * @return the estimated number of bytes.
+     */
+    public long getEstimatedBytes() {
+        return (long)mSortedKeys.size() * ESTIMATED_BYTES_PER_KEY;
+    }
+
     public Key getKey(final int code) {
         if (code == Constants.CODE_UNSPECIFIED) {
             return null;
@@ -23,6 +23,7 @@ import android.content.res.TypedArray;
 import android.content.res.XmlResourceParser;
 import android.text.InputType;
 import android.util.Log;
+import android.util.Printer;
 import android.util.SparseArray;
 import android.util.Xml;
 import android.view.inputmethod.EditorInfo;
@@ -32,13 +33,20 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.lang.ref.SoftReference;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 
 import rkr.simplekeyboard.inputmethod.R;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.AndroidKeyboardResources;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardBuilder;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardLayoutModel;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardParams;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardResources;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.MoreKeySpecsCache;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.UniqueKeysCache;
 import rkr.simplekeyboard.inputmethod.latin.Subtype;
+import rkr.simplekeyboard.inputmethod.latin.utils.CacheRegistry;
 import rkr.simplekeyboard.inputmethod.latin.utils.InputTypeUtils;
 import rkr.simplekeyboard.inputmethod.latin.utils.XmlParseUtils;
 
@@ -72,6 +80,72 @@ public final class KeyboardLayoutSet {
     private static final HashMap<KeyboardId, SoftReference<Keyboard>> sKeyboardCache =
             new HashMap<>();
     private static final UniqueKeysCache sUniqueKeysCache = UniqueKeysCache.newInstance();
+    private static final MoreKeySpecsCache sMoreKeySpecsCache = MoreKeySpecsCache.newInstance();
+    // The parsed contents of the keyboard_layout_set XML files indexed by the resource name. These
+    // only depend on the resources, so they can be shared by every layout set with the same name.
+    private static final HashMap<String, SparseArray<ElementParams>> sElementParamsCache =
+            new HashMap<>();
+    // The parsed layouts of the keyboards indexed by the id of the keyboard without its size. These
+    // are used to build the keyboards again for a different size without parsing the XML, such as
+    // when the keyboard height setting changes or the window is resized. Like the keyboards, they are
+    // softly referenced so that the ones that aren't used anymore can be garbage collected.
+    private static final HashMap<KeyboardId, SoftReference<KeyboardLayoutModel>>
+            sLayoutModelCache = new HashMap<>();
+    private static int sLayoutModelHitCount;
+    private static int sLayoutModelMissCount;
+
+    // Dropping the forced references leaves the keyboards that are not displayed to the garbage
+    // collector. The keyboard that is displayed stays referenced by the view.
+    private static final CacheRegistry.TrimmableCache sForcibleKeyboardCacheTrimmer =
+            new CacheRegistry.TrimmableCache() {
+        @Override
+        public long getEstimatedBytes() {
+            long bytes = 0;
+            for (final Keyboard keyboard : sForcibleKeyboardCache) {
+                if (keyboard != null) {
+                    bytes += keyboard.getEstimatedBytes();
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        public void trim() {
+            Arrays.fill(sForcibleKeyboardCache, null);
+            final Iterator<SoftReference<Keyboard>> it = sKeyboardCache.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().get() == null) {
+                    it.remove();
+                }
+            }
+        }
+    };
+    private static final CacheRegistry.TrimmableCache sParsedLayoutsTrimmer =
+            new CacheRegistry.TrimmableCache() {
+        @Override
+        public long getEstimatedBytes() {
+            long bytes = sUniqueKeysCache.getEstimatedBytes()
+                    + sMoreKeySpecsCache.getEstimatedBytes();
+            for (final SoftReference<KeyboardLayoutModel> ref : sLayoutModelCache.values()) {
+                final KeyboardLayoutModel model = ref.get();
+                if (model != null) {
+                    bytes += model.getEstimatedBytes();
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        public void trim() {
+            clearKeyboardCache();
+        }
+    };
+    static {
+        CacheRegistry.register("Forcibly cached keyboards", CacheRegistry.REBUILD_MODERATE,
+                sForcibleKeyboardCacheTrimmer);
+        CacheRegistry.register("Parsed keyboard layouts", CacheRegistry.REBUILD_EXPENSIVE,
+                sParsedLayoutsTrimmer);
+    }
 
     @SuppressWarnings("serial")
     public static final class KeyboardLayoutSetException extends RuntimeException {
@@ -102,9 +176,29 @@ public final class KeyboardLayoutSet {
         int mKeyboardHeight;
         boolean mShowMoreKeys;
         boolean mShowNumberRow;
+        // The resources that the keyboard layouts are read from, or null to read them from the
+        // resources of the context.
+        KeyboardResources mKeyboardResources;
         // Sparse array of KeyboardLayoutSet element parameters indexed by element's id.
-        final SparseArray<ElementParams> mKeyboardLayoutSetElementIdToParamsMap =
-                new SparseArray<>();
+        SparseArray<ElementParams> mKeyboardLayoutSetElementIdToParamsMap;
+
+        Params() {}
+
+        Params(final Params other) {
+            mKeyboardLayoutSetName = other.mKeyboardLayoutSetName;
+            mMode = other.mMode;
+            mEditorInfo = other.mEditorInfo;
+            mNoSettingsKey = other.mNoSettingsKey;
+            mLanguageSwitchKeyEnabled = other.mLanguageSwitchKeyEnabled;
+            mSubtype = other.mSubtype;
+            mKeyboardThemeId = other.mKeyboardThemeId;
+            mKeyboardWidth = other.mKeyboardWidth;
+            mKeyboardHeight = other.mKeyboardHeight;
+            mShowMoreKeys = other.mShowMoreKeys;
+            mShowNumberRow = other.mShowNumberRow;
+            mKeyboardResources = other.mKeyboardResources;
+            mKeyboardLayoutSetElementIdToParamsMap = other.mKeyboardLayoutSetElementIdToParamsMap;
+        }
     }
 
     public static void onSystemLocaleChanged() {
@@ -115,9 +209,29 @@ public final class KeyboardLayoutSet {
         clearKeyboardCache();
     }
 
+    public static void onKeyboardLayoutSettingsChanged() {
+        clearKeyboardCache();
+    }
+
     private static void clearKeyboardCache() {
         sKeyboardCache.clear();
         sUniqueKeysCache.clear();
+        sMoreKeySpecsCache.clear();
+        sElementParamsCache.clear();
+        sLayoutModelCache.clear();
+    }
+
+    /* package private for testing */
+    static int getLayoutModelHitCount() {
+        return sLayoutModelHitCount;
+    }
+
+    public static void dump(final Printer p) {
+        p.println("  Keyboard cache size = " + sKeyboardCache.size());
+        p.println("  Unique keys cache = " + sUniqueKeysCache.getStats());
+        p.println("  More key specs cache = " + sMoreKeySpecsCache.getStats());
+        p.println("  Layout model cache size = " + sLayoutModelCache.size() + " hits="
+                + sLayoutModelHitCount + " misses=" + sLayoutModelMissCount);
     }
 
     KeyboardLayoutSet(final Context context, final Params params) {
@@ -125,6 +239,51 @@ public final class KeyboardLayoutSet {
         mParams = params;
     }
 
+    public Subtype getSubtype() {
+        return mParams.mSubtype;
+    }
+
+    /**
+     * Create a layout set that is identical to this one except that it is for a different
+     * subtype. This is meant to allow preparing the keyboards for other enabled subtypes ahead of
+     * time so switching to them doesn't require parsing and building the layouts.
+     * @param subtype the subtype for the new layout set.
+     * @return the layout set for the subtype.
+     */
+    public KeyboardLayoutSet createForSubtype(final Subtype subtype) {
+        if (subtype.equals(mParams.mSubtype)) {
+            return this;
+        }
+        final Params params = new Params(mParams);
+        params.mSubtype = subtype;
+        params.mKeyboardLayoutSetName = getKeyboardLayoutSetName(subtype);
+        params.mKeyboardLayoutSetElementIdToParamsMap =
+                getElementParams(mContext.getResources(), params.mKeyboardLayoutSetName);
+        return new KeyboardLayoutSet(mContext, params);
+    }
+
+    private static String getKeyboardLayoutSetName(final Subtype subtype) {
+        return KEYBOARD_LAYOUT_SET_RESOURCE_PREFIX + subtype.getKeyboardLayoutSet();
+    }
+
+    private static SparseArray<ElementParams> getElementParams(final Resources resources,
+            final String keyboardLayoutSetName) {
+        final SparseArray<ElementParams> cachedElementParams =
+                sElementParamsCache.get(keyboardLayoutSetName);
+        if (cachedElementParams != null) {
+            return cachedElementParams;
+        }
+        final SparseArray<ElementParams> elementParams = new SparseArray<>();
+        final int xmlId = Builder.getXmlId(resources, keyboardLayoutSetName);
+        try {
+            Builder.parseKeyboardLayoutSet(resources, xmlId, elementParams);
+        } catch (final IOException | XmlPullParserException e) {
+            throw new RuntimeException(e.getMessage() + " in " + keyboardLayoutSetName, e);
+        }
+        sElementParamsCache.put(keyboardLayoutSetName, elementParams);
+        return elementParams;
+    }
+
     public Keyboard getKeyboard(final int baseKeyboardLayoutSetElementId) {
         final int keyboardLayoutSetElementId;
         switch (mParams.mMode) {
@@ -158,10 +317,33 @@ public final class KeyboardLayoutSet {
         // The KeyboardId is an internal key for a Keyboard object.
 
         final KeyboardId id = new KeyboardId(keyboardLayoutSetElementId, mParams);
-        return getKeyboard(elementParams, id);
+        return getKeyboard(elementParams, id, keyboardLayoutSetElementId);
     }
 
-    private Keyboard getKeyboard(final ElementParams elementParams, final KeyboardId id) {
+    /**
+     * Get the id of the layout of a keyboard, which is the same for every size of the keyboard.
+     * @param elementId the keyboard layout set element id of the keyboard.
+     * @return the id of the layout.
+     */
+    private KeyboardId getLayoutModelId(final int elementId) {
+        final Params params = new Params(mParams);
+        params.mKeyboardWidth = 0;
+        params.mKeyboardHeight = 0;
+        return new KeyboardId(elementId, params);
+    }
+
+    private static void removeCollectedLayoutModels() {
+        final Iterator<SoftReference<KeyboardLayoutModel>> it =
+                sLayoutModelCache.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().get() == null) {
+                it.remove();
+            }
+        }
+    }
+
+    private Keyboard getKeyboard(final ElementParams elementParams, final KeyboardId id,
+            final int elementId) {
         final SoftReference<Keyboard> ref = sKeyboardCache.get(id);
         final Keyboard cachedKeyboard = (ref == null) ? null : ref.get();
         if (cachedKeyboard != null) {
@@ -171,12 +353,28 @@ public final class KeyboardLayoutSet {
             return cachedKeyboard;
         }
 
-        final KeyboardBuilder<KeyboardParams> builder =
-                new KeyboardBuilder<>(mContext, new KeyboardParams(sUniqueKeysCache));
+        final KeyboardResources keyboardResources = (mParams.mKeyboardResources != null)
+                ? mParams.mKeyboardResources : new AndroidKeyboardResources(mContext);
+        final KeyboardBuilder<KeyboardParams> builder = new KeyboardBuilder<>(mContext,
+                keyboardResources, new KeyboardParams(sUniqueKeysCache, sMoreKeySpecsCache));
         sUniqueKeysCache.setEnabled(id.isAlphabetKeyboard());
         builder.setAllowRedundantMoreKes(elementParams.mAllowRedundantMoreKeys);
-        final int keyboardXmlId = elementParams.mKeyboardXmlId;
-        builder.load(keyboardXmlId, id);
+        final KeyboardId layoutModelId = getLayoutModelId(elementId);
+        final SoftReference<KeyboardLayoutModel> layoutModelRef =
+                sLayoutModelCache.get(layoutModelId);
+        final KeyboardLayoutModel layoutModel =
+                (layoutModelRef == null) ? null : layoutModelRef.get();
+        if (layoutModel != null
+                && layoutModel.isValidFor(mContext.getResources().getConfiguration())) {
+            sLayoutModelHitCount++;
+            builder.load(layoutModel, id);
+        } else {
+            sLayoutModelMissCount++;
+            final int keyboardXmlId = elementParams.mKeyboardXmlId;
+            builder.load(keyboardXmlId, id);
+            removeCollectedLayoutModels();
+            sLayoutModelCache.put(layoutModelId, new SoftReference<>(builder.getLayoutModel()));
+        }
         final Keyboard keyboard = builder.build();
         sKeyboardCache.put(id, new SoftReference<>(keyboard));
         if ((id.mElementId == KeyboardId.ELEMENT_ALPHABET
@@ -233,8 +431,7 @@ public final class KeyboardLayoutSet {
         public Builder setSubtype(final Subtype subtype) {
             // TODO: Consolidate with {@link InputAttributes}.
             mParams.mSubtype = subtype;
-            mParams.mKeyboardLayoutSetName = KEYBOARD_LAYOUT_SET_RESOURCE_PREFIX
-                    + subtype.getKeyboardLayoutSet();
+            mParams.mKeyboardLayoutSetName = getKeyboardLayoutSetName(subtype);
             return this;
         }
 
@@ -253,16 +450,24 @@ public final class KeyboardLayoutSet {
             return this;
         }
 
+        /**
+         * Read the keyboard layouts from other resources than the ones of the context. The
+         * keyboards are cached by their id whatever resources they were read from, so the cache
+         * has to be cleared when switching resources.
+         * @param keyboardResources the resources of the layouts.
+         * @return this builder.
+         */
+        /* package private for testing */
+        Builder setKeyboardResources(final KeyboardResources keyboardResources) {
+            mParams.mKeyboardResources = keyboardResources;
+            return this;
+        }
+
         public KeyboardLayoutSet build() {
             if (mParams.mSubtype == null)
                 throw new RuntimeException("KeyboardLayoutSet subtype is not specified");
-            final int xmlId = getXmlId(mResources, mParams.mKeyboardLayoutSetName);
-            try {
-                parseKeyboardLayoutSet(mResources, xmlId);
-            } catch (final IOException | XmlPullParserException e) {
-                throw new RuntimeException(e.getMessage() + " in " + mParams.mKeyboardLayoutSetName,
-                        e);
-            }
+            mParams.mKeyboardLayoutSetElementIdToParamsMap =
+                    getElementParams(mResources, mParams.mKeyboardLayoutSetName);
             return new KeyboardLayoutSet(mContext, mParams);
         }
 
@@ -272,7 +477,8 @@ public final class KeyboardLayoutSet {
             return resources.getIdentifier(keyboardLayoutSetName, "xml", packageName);
         }
 
-        private void parseKeyboardLayoutSet(final Resources res, final int resId)
+        private static void parseKeyboardLayoutSet(final Resources res, final int resId,
+                final SparseArray<ElementParams> elementParams)
                 throws XmlPullParserException, IOException {
             final XmlResourceParser parser = res.getXml(resId);
             try {
@@ -281,7 +487,7 @@ public final class KeyboardLayoutSet {
                     if (event == XmlPullParser.START_TAG) {
                         final String tag = parser.getName();
                         if (TAG_KEYBOARD_SET.equals(tag)) {
-                            parseKeyboardLayoutSetContent(parser);
+                            parseKeyboardLayoutSetContent(res, parser, elementParams);
                         } else {
                             throw new XmlParseUtils.IllegalStartTag(parser, tag, TAG_KEYBOARD_SET);
                         }
@@ -292,14 +498,15 @@ public final class KeyboardLayoutSet {
             }
         }
 
-        private void parseKeyboardLayoutSetContent(final XmlPullParser parser)
+        private static void parseKeyboardLayoutSetContent(final Resources res,
+                final XmlPullParser parser, final SparseArray<ElementParams> elementParams)
                 throws XmlPullParserException, IOException {
             while (parser.getEventType() != XmlPullParser.END_DOCUMENT) {
                 final int event = parser.next();
                 if (event == XmlPullParser.START_TAG) {
                     final String tag = parser.getName();
                     if (TAG_ELEMENT.equals(tag)) {
-                        parseKeyboardLayoutSetElement(parser);
+                        parseKeyboardLayoutSetElement(res, parser, elementParams);
                     } else {
                         throw new XmlParseUtils.IllegalStartTag(parser, tag, TAG_KEYBOARD_SET);
                     }
@@ -313,9 +520,10 @@ public final class KeyboardLayoutSet {
             }
         }
 
-        private void parseKeyboardLayoutSetElement(final XmlPullParser parser)
+        private static void parseKeyboardLayoutSetElement(final Resources res,
+                final XmlPullParser parser, final SparseArray<ElementParams> elementParams)
                 throws XmlPullParserException, IOException {
-            final TypedArray a = mResources.obtainAttributes(Xml.asAttributeSet(parser),
+            final TypedArray a = res.obtainAttributes(Xml.asAttributeSet(parser),
                     R.styleable.KeyboardLayoutSet_Element);
             try {
                 XmlParseUtils.checkAttributeExists(a,
@@ -326,14 +534,14 @@ public final class KeyboardLayoutSet {
                         TAG_ELEMENT, parser);
                 XmlParseUtils.checkEndTag(TAG_ELEMENT, parser);
 
-                final ElementParams elementParams = new ElementParams();
+                final ElementParams params = new ElementParams();
                 final int elementName = a.getInt(
                         R.styleable.KeyboardLayoutSet_Element_elementName, 0);
-                elementParams.mKeyboardXmlId = a.getResourceId(
+                params.mKeyboardXmlId = a.getResourceId(
                         R.styleable.KeyboardLayoutSet_Element_elementKeyboard, 0);
-                elementParams.mAllowRedundantMoreKeys = a.getBoolean(
+                params.mAllowRedundantMoreKeys = a.getBoolean(
                         R.styleable.KeyboardLayoutSet_Element_allowRedundantMoreKeys, true);
-                mParams.mKeyboardLayoutSetElementIdToParamsMap.put(elementName, elementParams);
+                elementParams.put(elementName, params);
             } finally {
                 a.recycle();
             }
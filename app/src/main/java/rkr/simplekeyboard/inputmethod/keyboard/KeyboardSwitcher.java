@@ -17,30 +17,42 @@
 package rkr.simplekeyboard.inputmethod.keyboard;
 
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.util.Log;
+import android.util.Printer;
 import android.view.ContextThemeWrapper;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
 import android.view.inputmethod.EditorInfo;
 
+import java.util.ArrayList;
+import java.util.LinkedList;
+
 import rkr.simplekeyboard.inputmethod.R;
 import rkr.simplekeyboard.inputmethod.event.Event;
 import rkr.simplekeyboard.inputmethod.keyboard.KeyboardLayoutSet.KeyboardLayoutSetException;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardIconsSet;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardState;
-import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardTextsSet;
 import rkr.simplekeyboard.inputmethod.latin.InputView;
 import rkr.simplekeyboard.inputmethod.latin.LatinIME;
 import rkr.simplekeyboard.inputmethod.latin.RichInputMethodManager;
+import rkr.simplekeyboard.inputmethod.latin.Subtype;
 import rkr.simplekeyboard.inputmethod.latin.settings.Settings;
 import rkr.simplekeyboard.inputmethod.latin.settings.SettingsValues;
+import rkr.simplekeyboard.inputmethod.latin.utils.CacheRegistry;
 import rkr.simplekeyboard.inputmethod.latin.utils.CapsModeUtils;
 import rkr.simplekeyboard.inputmethod.latin.utils.LanguageOnSpacebarUtils;
 import rkr.simplekeyboard.inputmethod.latin.utils.RecapitalizeStatus;
 import rkr.simplekeyboard.inputmethod.latin.utils.ResourceUtils;
 
-public final class KeyboardSwitcher implements KeyboardState.SwitchActions {
+public final class KeyboardSwitcher implements KeyboardState.SwitchActions,
+        Settings.OnSettingsChangedListener {
     private static final String TAG = KeyboardSwitcher.class.getSimpleName();
 
     private InputView mCurrentInputView;
@@ -54,20 +66,62 @@ public final class KeyboardSwitcher implements KeyboardState.SwitchActions {
     private KeyboardState mState;
 
     private KeyboardLayoutSet mKeyboardLayoutSet;
-    // TODO: The following {@link KeyboardTextsSet} should be in {@link KeyboardLayoutSet}.
-    private final KeyboardTextsSet mKeyboardTextsSet = new KeyboardTextsSet();
+    // Whether the keyboard view needs to be set up again even if the state machine switches to the
+    // keyboard that it is already displaying, because the layout set or the settings may have
+    // changed since.
+    private boolean mIsKeyboardViewRebindRequired = true;
+
+    // The alphabet keyboards that are used right after switching subtypes are built for all of
+    // the enabled subtypes when the main thread is idle and held here, so switching to a different
+    // subtype only needs to find them in the keyboard cache rather than building them.
+    private static final int[] STAGED_KEYBOARD_ELEMENT_IDS = new int[] {
+            KeyboardId.ELEMENT_ALPHABET,
+            KeyboardId.ELEMENT_ALPHABET_AUTOMATIC_SHIFTED
+    };
+    private ArrayList<Keyboard> mStagedKeyboards = new ArrayList<>();
+    private final LinkedList<KeyboardLayoutSet> mPendingStagedLayoutSets = new LinkedList<>();
+    private ArrayList<Keyboard> mPendingStagedKeyboards;
+    private boolean mIsStagingIdleHandlerRegistered;
 
     private KeyboardTheme mKeyboardTheme;
     private Context mThemeContext;
 
+    // The theme context and the resource configuration that the input view was inflated with.
+    // The input view is reused as long as both are the same.
+    private Context mInputViewThemeContext;
+    private Configuration mInputViewConfiguration;
+    private int mInputViewInflationCount;
+    private long mInputViewInflationTimeNanos;
+    private int mInputViewReuseCount;
+
     private static final KeyboardSwitcher sInstance = new KeyboardSwitcher();
 
     public static KeyboardSwitcher getInstance() {
         return sInstance;
     }
 
+    // The staged keyboards are only a head start for switching subtypes, so they can be built
+    // again later.
+    private final CacheRegistry.TrimmableCache mStagedKeyboardsTrimmer =
+            new CacheRegistry.TrimmableCache() {
+        @Override
+        public long getEstimatedBytes() {
+            long bytes = 0;
+            for (final Keyboard keyboard : mStagedKeyboards) {
+                bytes += keyboard.getEstimatedBytes();
+            }
+            return bytes;
+        }
+
+        @Override
+        public void trim() {
+            clearStagedKeyboards();
+        }
+    };
+
     private KeyboardSwitcher() {
-        // Intentional empty constructor for singleton.
+        CacheRegistry.register("Staged keyboards", CacheRegistry.REBUILD_MODERATE,
+                mStagedKeyboardsTrimmer);
     }
 
     public static void init(final LatinIME latinIme) {
@@ -78,6 +132,23 @@ public final class KeyboardSwitcher implements KeyboardState.SwitchActions {
         mLatinIME = latinIme;
         mRichImm = RichInputMethodManager.getInstance();
         mState = new KeyboardState(this);
+        // The input view of a previous instance of the service belongs to its window, so it can't
+        // be reused for the new one.
+        mCurrentInputView = null;
+        mInputViewThemeContext = null;
+        mInputViewConfiguration = null;
+        mMainKeyboardFrame = null;
+        mKeyboardView = null;
+        Settings.getInstance().addOnSettingsChangedListener(this);
+    }
+
+    // Implements {@link Settings.OnSettingsChangedListener}.
+    @Override
+    public void onSettingsChanged(final SettingsValues settingsValues, final int changedFields) {
+        if ((changedFields & SettingsValues.FIELDS_AFFECTING_KEYBOARD_LAYOUT) != 0) {
+            KeyboardLayoutSet.onKeyboardLayoutSettingsChanged();
+            clearStagedKeyboards();
+        }
     }
 
     public void updateKeyboardTheme(final int uiMode) {
@@ -104,6 +175,8 @@ public final class KeyboardSwitcher implements KeyboardState.SwitchActions {
             mCurrentTextColor = newTextColor;
             mThemeContext = new ContextThemeWrapper(context, keyboardTheme.mStyleId);
             KeyboardLayoutSet.onKeyboardThemeChanged();
+            KeyboardIconsSet.onKeyboardThemeChanged();
+            clearStagedKeyboards();
             return true;
         }
         return false;
@@ -123,13 +196,76 @@ public final class KeyboardSwitcher implements KeyboardState.SwitchActions {
         builder.setShowSpecialChars(!settingsValues.mHideSpecialChars);
         builder.setShowNumberRow(settingsValues.mShowNumberRow);
         mKeyboardLayoutSet = builder.build();
+        mIsKeyboardViewRebindRequired = true;
         try {
             mState.onLoadKeyboard(currentAutoCapsState, currentRecapitalizeState);
-            mKeyboardTextsSet.setLocale(mRichImm.getCurrentSubtype().getLocaleObject(),
-                    mThemeContext);
         } catch (KeyboardLayoutSetException e) {
             Log.w(TAG, "loading keyboard failed: " + e.mKeyboardId, e.getCause());
         }
+        stageKeyboardsForEnabledSubtypes(mKeyboardLayoutSet);
+    }
+
+    /**
+     * Schedule building the keyboards for all of the enabled subtypes using the same parameters as
+     * the specified layout set. This is done when the main thread is idle, one layout set at a
+     * time, to avoid delaying anything that is actually being displayed.
+     * @param keyboardLayoutSet the layout set that is currently in use.
+     */
+    private void stageKeyboardsForEnabledSubtypes(final KeyboardLayoutSet keyboardLayoutSet) {
+        mPendingStagedLayoutSets.clear();
+        mPendingStagedKeyboards = new ArrayList<>();
+        if (mRichImm.hasMultipleEnabledSubtypes()) {
+            for (final Subtype subtype : mRichImm.getEnabledSubtypes(false)) {
+                if (!subtype.equals(keyboardLayoutSet.getSubtype())) {
+                    mPendingStagedLayoutSets.add(keyboardLayoutSet.createForSubtype(subtype));
+                }
+            }
+        }
+        if (mPendingStagedLayoutSets.isEmpty()) {
+            // there is nothing else to build, so nothing else needs to be held
+            mStagedKeyboards = mPendingStagedKeyboards;
+            mPendingStagedKeyboards = null;
+            return;
+        }
+        if (!mIsStagingIdleHandlerRegistered) {
+            mIsStagingIdleHandlerRegistered = true;
+            Looper.myQueue().addIdleHandler(mStagingIdleHandler);
+        }
+    }
+
+    private final MessageQueue.IdleHandler mStagingIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            final KeyboardLayoutSet keyboardLayoutSet = mPendingStagedLayoutSets.poll();
+            if (keyboardLayoutSet != null) {
+                for (final int elementId : STAGED_KEYBOARD_ELEMENT_IDS) {
+                    try {
+                        mPendingStagedKeyboards.add(keyboardLayoutSet.getKeyboard(elementId));
+                    } catch (final RuntimeException e) {
+                        Log.w(TAG, "staging keyboard failed for "
+                                + keyboardLayoutSet.getSubtype(), e);
+                    }
+                }
+            }
+            if (!mPendingStagedLayoutSets.isEmpty()) {
+                // keep running when idle until all of the layout sets are built
+                return true;
+            }
+            if (mPendingStagedKeyboards != null) {
+                // only release the previously staged keyboards once the new ones are ready in
+                // case they are still relevant
+                mStagedKeyboards = mPendingStagedKeyboards;
+                mPendingStagedKeyboards = null;
+            }
+            mIsStagingIdleHandlerRegistered = false;
+            return false;
+        }
+    };
+
+    private void clearStagedKeyboards() {
+        mPendingStagedLayoutSets.clear();
+        mPendingStagedKeyboards = null;
+        mStagedKeyboards = new ArrayList<>();
     }
 
     public void saveKeyboardState() {
@@ -153,6 +289,13 @@ public final class KeyboardSwitcher implements KeyboardState.SwitchActions {
         final MainKeyboardView keyboardView = mKeyboardView;
         final Keyboard oldKeyboard = keyboardView.getKeyboard();
         final Keyboard newKeyboard = mKeyboardLayoutSet.getKeyboard(keyboardId);
+        if (newKeyboard == oldKeyboard && !mIsKeyboardViewRebindRequired) {
+            // The state machine switched to the keyboard that is already displayed, for example
+            // when resetting auto caps on a keyboard that isn't shifted. There is nothing to lay
+            // out or redraw.
+            return;
+        }
+        mIsKeyboardViewRebindRequired = false;
         keyboardView.setKeyboard(newKeyboard);
         keyboardView.setKeyPreviewPopupEnabled(
                 currentSettingsValues.mKeyPreviewPopupOn,
@@ -381,12 +524,38 @@ public final class KeyboardSwitcher implements KeyboardState.SwitchActions {
 
         updateKeyboardThemeAndContextThemeWrapper(
                 mLatinIME, KeyboardTheme.getKeyboardTheme(mLatinIME /* context */), uiMode);
-        mCurrentInputView = (InputView)LayoutInflater.from(mThemeContext).inflate(
-                R.layout.input_view, null);
-        mMainKeyboardFrame = mCurrentInputView.findViewById(R.id.main_keyboard_frame);
-
-        mKeyboardView = (MainKeyboardView) mCurrentInputView.findViewById(R.id.keyboard_view);
-        mKeyboardView.setKeyboardActionListener(mLatinIME);
+        final Configuration configuration = mThemeContext.getResources().getConfiguration();
+        if (mCurrentInputView != null && mInputViewThemeContext == mThemeContext
+                && ResourceUtils.hasSameResources(mInputViewConfiguration, configuration)) {
+            // The views would be inflated with the same styled attributes, so the existing ones
+            // are moved to the new window along with their timers, previews and pointer trackers.
+            final ViewParent parent = mCurrentInputView.getParent();
+            if (parent instanceof ViewGroup) {
+                ((ViewGroup)parent).removeView(mCurrentInputView);
+            }
+            mKeyboardView.setKeyboardActionListener(mLatinIME);
+            mInputViewReuseCount++;
+        } else {
+            final long startTime = System.nanoTime();
+            mCurrentInputView = (InputView)LayoutInflater.from(mThemeContext).inflate(
+                    R.layout.input_view, null);
+            mInputViewInflationTimeNanos += System.nanoTime() - startTime;
+            mInputViewInflationCount++;
+            mInputViewThemeContext = mThemeContext;
+            mInputViewConfiguration = new Configuration(configuration);
+            mMainKeyboardFrame = mCurrentInputView.findViewById(R.id.main_keyboard_frame);
+
+            mKeyboardView = (MainKeyboardView) mCurrentInputView.findViewById(R.id.keyboard_view);
+            mKeyboardView.setKeyboardActionListener(mLatinIME);
+        }
+        mIsKeyboardViewRebindRequired = true;
+        mState.onKeyboardViewChanged();
         return mCurrentInputView;
     }
+
+    public void dump(final Printer p) {
+        p.println("  Input view: inflations=" + mInputViewInflationCount
+                + " inflationTimeMs=" + mInputViewInflationTimeNanos / 1000000
+                + " reuses=" + mInputViewReuseCount);
+    }
 }
@@ -33,13 +33,18 @@ import android.util.AttributeSet;
 import android.view.View;
 
 import java.util.HashSet;
+import java.util.List;
 
 import rkr.simplekeyboard.inputmethod.R;
 import rkr.simplekeyboard.inputmethod.compat.PreferenceManagerCompat;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.AndroidKeyboardResources;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyDrawParams;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyVisualAttributes;
 import rkr.simplekeyboard.inputmethod.latin.common.Constants;
 import rkr.simplekeyboard.inputmethod.latin.settings.Settings;
+import rkr.simplekeyboard.inputmethod.latin.utils.BitmapPool;
+import rkr.simplekeyboard.inputmethod.latin.utils.CacheRegistry;
+import rkr.simplekeyboard.inputmethod.latin.utils.LatencyStats;
 import rkr.simplekeyboard.inputmethod.latin.utils.TypefaceUtils;
 
 /**
@@ -111,6 +116,22 @@ public class KeyboardView extends View {
     private Bitmap mOffscreenBuffer;
     /** The canvas for the above mutable keyboard bitmap */
     private final Canvas mOffscreenCanvas = new Canvas();
+    private final CacheRegistry.TrimmableCache mOffscreenBufferTrimmer =
+            new CacheRegistry.TrimmableCache() {
+        @Override
+        public long getEstimatedBytes() {
+            final Bitmap buffer = mOffscreenBuffer;
+            return buffer == null ? 0 : buffer.getByteCount();
+        }
+
+        @Override
+        public void trim() {
+            // The next draw would allocate the buffer again right away if the view is displayed.
+            if (!isShown()) {
+                releaseOffscreenBuffer();
+            }
+        }
+    };
     private final Paint mPaint = new Paint();
     private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
 
@@ -147,10 +168,13 @@ public class KeyboardView extends View {
         final TypedArray keyAttr = context.obtainStyledAttributes(attrs,
                 R.styleable.Keyboard_Key, defStyle, R.style.KeyboardView);
         mDefaultKeyLabelFlags = keyAttr.getInt(R.styleable.Keyboard_Key_keyLabelFlags, 0);
-        mKeyVisualAttributes = KeyVisualAttributes.newInstance(keyAttr);
+        mKeyVisualAttributes = KeyVisualAttributes.newInstance(
+                new AndroidKeyboardResources.Attributes(keyAttr));
         keyAttr.recycle();
 
         mPaint.setAntiAlias(true);
+        CacheRegistry.register(getClass().getSimpleName() + " offscreen buffer",
+                CacheRegistry.REBUILD_CHEAP, mOffscreenBufferTrimmer);
     }
 
     private static void blendAlpha(final Paint paint, final int alpha) {
@@ -167,16 +191,67 @@ public class KeyboardView extends View {
      * @param keyboard the keyboard to display in this view
      */
     public void setKeyboard(final Keyboard keyboard) {
+        final Keyboard oldKeyboard = mKeyboard;
         mKeyboard = keyboard;
         final int keyHeight = keyboard.mMostCommonKeyHeight;
         mKeyDrawParams.updateParams(keyHeight, mKeyVisualAttributes);
         mKeyDrawParams.updateParams(keyHeight, keyboard.mKeyVisualAttributes);
         final SharedPreferences prefs = PreferenceManagerCompat.getDeviceSharedPreferences(getContext());
-        mCustomColor = Settings.readKeyboardColor(prefs, getContext());
+        final int customColor = Settings.readKeyboardColor(prefs, getContext());
+        final boolean customColorChanged = customColor != mCustomColor;
+        mCustomColor = customColor;
+        if (oldKeyboard != null && !customColorChanged
+                && invalidateChangedKeys(oldKeyboard, keyboard)) {
+            // Only some keys look different (typically when switching between the shift states
+            // of the alphabet keyboard), so there is no need to lay out and redraw everything.
+            return;
+        }
         invalidateAllKeys();
         requestLayout();
     }
 
+    /**
+     * Invalidates the keys that look different between two keyboards that have the same geometry.
+     * @param oldKeyboard the keyboard that was displayed.
+     * @param newKeyboard the keyboard that is now displayed.
+     * @return true if the keyboards have the same geometry and the keys that changed were
+     * invalidated, false if the whole keyboard needs to be laid out and redrawn.
+     */
+    private boolean invalidateChangedKeys(final Keyboard oldKeyboard, final Keyboard newKeyboard) {
+        if (oldKeyboard.mOccupiedWidth != newKeyboard.mOccupiedWidth
+                || oldKeyboard.mOccupiedHeight != newKeyboard.mOccupiedHeight
+                || oldKeyboard.mMostCommonKeyHeight != newKeyboard.mMostCommonKeyHeight
+                || !KeyVisualAttributes.hasSameValues(oldKeyboard.mKeyVisualAttributes,
+                        newKeyboard.mKeyVisualAttributes)) {
+            return false;
+        }
+        final List<Key> oldKeys = oldKeyboard.getSortedKeys();
+        final List<Key> newKeys = newKeyboard.getSortedKeys();
+        final int keyCount = newKeys.size();
+        if (oldKeys.size() != keyCount) {
+            return false;
+        }
+        for (int i = 0; i < keyCount; i++) {
+            if (!oldKeys.get(i).hasSameGeometryAs(newKeys.get(i))) {
+                return false;
+            }
+        }
+        if (mInvalidateAllKeys) {
+            // The whole keyboard is going to be redrawn anyway.
+            return true;
+        }
+        for (int i = 0; i < keyCount; i++) {
+            final Key oldKey = oldKeys.get(i);
+            final Key newKey = newKeys.get(i);
+            // A key of the old keyboard that was waiting to be redrawn won't be drawn anymore
+            // since it isn't part of the new keyboard, so its replacement has to be drawn instead.
+            if (mInvalidatedKeys.contains(oldKey) || !oldKey.hasSameVisualsAs(newKey)) {
+                invalidateKey(newKey);
+            }
+        }
+        return true;
+    }
+
     /**
      * Returns the current keyboard being displayed by this view.
      * @return the currently attached keyboard
@@ -209,12 +284,18 @@ public class KeyboardView extends View {
 
     @Override
     protected void onDraw(final Canvas canvas) {
+        final long startTime = LatencyStats.startMeasuring();
         super.onDraw(canvas);
         if (canvas.isHardwareAccelerated()) {
             onDrawKeyboard(canvas);
-            return;
+        } else {
+            onDrawSoftware(canvas);
         }
+        LatencyStats.stopMeasuring(LatencyStats.STAGE_DRAW, startTime);
+        LatencyStats.onFrameDrawn();
+    }
 
+    private void onDrawSoftware(final Canvas canvas) {
         final boolean bufferNeedsUpdates = mInvalidateAllKeys || !mInvalidatedKeys.isEmpty();
         if (bufferNeedsUpdates || mOffscreenBuffer == null) {
             if (maybeAllocateOffscreenBuffer()) {
@@ -222,7 +303,10 @@ public class KeyboardView extends View {
                 // TODO: Stop using the offscreen canvas even when in software rendering
                 mOffscreenCanvas.setBitmap(mOffscreenBuffer);
             }
-            onDrawKeyboard(mOffscreenCanvas);
+            // The buffer may be the last frame, which is only missing the invalidated keys.
+            if (mInvalidateAllKeys || !mInvalidatedKeys.isEmpty()) {
+                onDrawKeyboard(mOffscreenCanvas);
+            }
         }
         canvas.drawBitmap(mOffscreenBuffer, 0.0f, 0.0f, null);
     }
@@ -237,16 +321,34 @@ public class KeyboardView extends View {
                 && mOffscreenBuffer.getHeight() == height) {
             return false;
         }
-        freeOffscreenBuffer();
-        mOffscreenBuffer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        releaseOffscreenBuffer();
+        if (!mInvalidateAllKeys) {
+            // The keyboard is still the same since it was last drawn, so the last frame can be
+            // displayed again, with only the keys that changed since drawn over it.
+            final Bitmap snapshot = BitmapPool.obtainSnapshot(width, height,
+                    Bitmap.Config.ARGB_8888, mKeyboard);
+            if (snapshot != null) {
+                mOffscreenBuffer = snapshot;
+                mOffscreenCanvas.setBitmap(mOffscreenBuffer);
+                return false;
+            }
+        }
+        mOffscreenBuffer = BitmapPool.obtain(width, height, Bitmap.Config.ARGB_8888);
         return true;
     }
 
-    private void freeOffscreenBuffer() {
+    /**
+     * Return the offscreen buffer to the {@link BitmapPool} instead of recycling it, so that it
+     * can be reused the next time a keyboard of the same size is displayed.
+     */
+    private void releaseOffscreenBuffer() {
         mOffscreenCanvas.setBitmap(null);
         mOffscreenCanvas.setMatrix(null);
         if (mOffscreenBuffer != null) {
-            mOffscreenBuffer.recycle();
+            // The buffer only holds the last frame if no key is waiting to be redrawn. Otherwise
+            // the keys that were invalidated would be missing from it.
+            final boolean isUpToDate = !mInvalidateAllKeys && mInvalidatedKeys.isEmpty();
+            BitmapPool.release(mOffscreenBuffer, isUpToDate ? mKeyboard : null);
             mOffscreenBuffer = null;
         }
     }
@@ -515,10 +617,10 @@ public class KeyboardView extends View {
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
-        freeOffscreenBuffer();
+        releaseOffscreenBuffer();
     }
 
     public void deallocateMemory() {
-        freeOffscreenBuffer();
+        releaseOffscreenBuffer();
     }
 }
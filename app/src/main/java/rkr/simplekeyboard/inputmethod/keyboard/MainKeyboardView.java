@@ -32,6 +32,7 @@ import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 
 import java.util.WeakHashMap;
 
@@ -49,7 +50,9 @@ import rkr.simplekeyboard.inputmethod.latin.Subtype;
 import rkr.simplekeyboard.inputmethod.latin.RichInputMethodManager;
 import rkr.simplekeyboard.inputmethod.latin.common.Constants;
 import rkr.simplekeyboard.inputmethod.latin.common.CoordinateUtils;
+import rkr.simplekeyboard.inputmethod.latin.utils.CacheRegistry;
 import rkr.simplekeyboard.inputmethod.latin.utils.LanguageOnSpacebarUtils;
+import rkr.simplekeyboard.inputmethod.latin.utils.LatencyStats;
 import rkr.simplekeyboard.inputmethod.latin.utils.LocaleResourceUtils;
 import rkr.simplekeyboard.inputmethod.latin.utils.TypefaceUtils;
 
@@ -123,11 +126,40 @@ public final class MainKeyboardView extends KeyboardView implements MoreKeysPane
     // Key preview
     private final KeyPreviewDrawParams mKeyPreviewDrawParams;
     private final KeyPreviewChoreographer mKeyPreviewChoreographer;
+    private final CacheRegistry.TrimmableCache mKeyPreviewViewsTrimmer =
+            new CacheRegistry.TrimmableCache() {
+        @Override
+        public long getEstimatedBytes() {
+            return mKeyPreviewChoreographer.getEstimatedFreeKeyPreviewViewsBytes();
+        }
+
+        @Override
+        public void trim() {
+            mKeyPreviewChoreographer.releaseFreeKeyPreviewViews();
+        }
+    };
 
     // More keys keyboard
     private final Paint mBackgroundDimAlphaPaint = new Paint();
     private final View mMoreKeysKeyboardContainer;
     private final WeakHashMap<Key, Keyboard> mMoreKeysKeyboardCache = new WeakHashMap<>();
+    private final CacheRegistry.TrimmableCache mMoreKeysKeyboardCacheTrimmer =
+            new CacheRegistry.TrimmableCache() {
+        @Override
+        public long getEstimatedBytes() {
+            long bytes = 0;
+            for (final Keyboard keyboard : mMoreKeysKeyboardCache.values()) {
+                bytes += keyboard.getEstimatedBytes();
+            }
+            return bytes;
+        }
+
+        @Override
+        public void trim() {
+            // A more keys keyboard that is being displayed is still held by its panel.
+            mMoreKeysKeyboardCache.clear();
+        }
+    };
     private final boolean mConfigShowMoreKeysKeyboardAtTouchedPoint;
     // More keys panel (used by both more keys keyboard and more suggestions view)
     // TODO: Consider extending to support multiple more keys panels
@@ -189,6 +221,10 @@ public final class MainKeyboardView extends KeyboardView implements MoreKeysPane
 
         mKeyPreviewDrawParams = new KeyPreviewDrawParams(mainKeyboardViewAttr);
         mKeyPreviewChoreographer = new KeyPreviewChoreographer(mKeyPreviewDrawParams);
+        CacheRegistry.register("Key preview views", CacheRegistry.REBUILD_CHEAP,
+                mKeyPreviewViewsTrimmer);
+        CacheRegistry.register("More keys keyboards", CacheRegistry.REBUILD_MODERATE,
+                mMoreKeysKeyboardCacheTrimmer);
 
         final int moreKeysKeyboardLayoutId = mainKeyboardViewAttr.getResourceId(
                 R.styleable.MainKeyboardView_moreKeysKeyboardLayout, 0);
@@ -334,6 +370,15 @@ public final class MainKeyboardView extends KeyboardView implements MoreKeysPane
             Log.w(TAG, "Cannot find android.R.id.content view to add DrawingPreviewPlacerView");
             return;
         }
+        // The input view may be reused in a new window, so the preview placer view may still be
+        // in the previous one.
+        final ViewParent parent = mDrawingPreviewPlacerView.getParent();
+        if (parent == windowContentView) {
+            return;
+        }
+        if (parent instanceof ViewGroup) {
+            ((ViewGroup)parent).removeView(mDrawingPreviewPlacerView);
+        }
         windowContentView.addView(mDrawingPreviewPlacerView);
     }
 
@@ -412,6 +457,7 @@ public final class MainKeyboardView extends KeyboardView implements MoreKeysPane
         if (moreKeys == null) {
             return null;
         }
+        final long startTime = LatencyStats.startMeasuring();
         Keyboard moreKeysKeyboard = mMoreKeysKeyboardCache.get(key);
         if (moreKeysKeyboard == null) {
             // {@link KeyPreviewDrawParams#mPreviewVisibleWidth} should have been set at
@@ -453,6 +499,7 @@ public final class MainKeyboardView extends KeyboardView implements MoreKeysPane
         final int pointY = key.getY() + mKeyPreviewDrawParams.getVisibleOffset()
                 + Math.round(moreKeysKeyboard.mBottomPadding);
         moreKeysKeyboardView.showMoreKeysPanel(this, this, pointX, pointY, mKeyboardActionListener);
+        LatencyStats.stopMeasuring(LatencyStats.STAGE_SHOW_MORE_KEYS_PANEL, startTime);
         return moreKeysKeyboardView;
     }
 
@@ -522,6 +569,8 @@ public final class MainKeyboardView extends KeyboardView implements MoreKeysPane
     }
 
     public boolean processMotionEvent(final MotionEvent event) {
+        final long startTime = LatencyStats.startMeasuring();
+        LatencyStats.onTouchEvent(event.getEventTime());
         final int index = event.getActionIndex();
         final int id = event.getPointerId(index);
         final PointerTracker tracker = PointerTracker.getPointerTracker(id);
@@ -532,6 +581,7 @@ public final class MainKeyboardView extends KeyboardView implements MoreKeysPane
             return true;
         }
         tracker.processMotionEvent(event, mKeyDetector);
+        LatencyStats.stopMeasuring(LatencyStats.STAGE_MOTION_EVENT, startTime);
         return true;
     }
 
@@ -18,8 +18,11 @@ package rkr.simplekeyboard.inputmethod.keyboard;
 
 import android.content.Context;
 import android.graphics.Paint;
+import android.graphics.Typeface;
 import android.util.Log;
 
+import java.util.HashMap;
+
 import rkr.simplekeyboard.inputmethod.R;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardBuilder;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardParams;
@@ -57,6 +60,32 @@ public final class MoreKeysKeyboard extends Keyboard {
             super();
         }
 
+        /**
+         * Copy the parameters that are loaded from the more keys keyboard template.
+         * @param template the parameters of the parsed template.
+         */
+        void copyTemplate(final MoreKeysKeyboardParams template) {
+            mId = template.mId;
+            mOccupiedHeight = template.mOccupiedHeight;
+            mOccupiedWidth = template.mOccupiedWidth;
+            mBaseHeight = template.mBaseHeight;
+            mBaseWidth = template.mBaseWidth;
+            mTopPadding = template.mTopPadding;
+            mBottomPadding = template.mBottomPadding;
+            mLeftPadding = template.mLeftPadding;
+            mRightPadding = template.mRightPadding;
+            mKeyVisualAttributes = template.mKeyVisualAttributes;
+            mDefaultRowHeight = template.mDefaultRowHeight;
+            mDefaultKeyPaddedWidth = template.mDefaultKeyPaddedWidth;
+            mHorizontalGap = template.mHorizontalGap;
+            mVerticalGap = template.mVerticalGap;
+            mMoreKeysTemplate = template.mMoreKeysTemplate;
+            mMaxMoreKeysKeyboardColumn = template.mMaxMoreKeysKeyboardColumn;
+            mGridWidth = template.mGridWidth;
+            mGridHeight = template.mGridHeight;
+            mIconsSet.copyFrom(template.mIconsSet);
+        }
+
         /**
          * Set keyboard parameters of more keys keyboard.
          *
@@ -293,6 +322,50 @@ public final class MoreKeysKeyboard extends Keyboard {
         }
     }
 
+    /**
+     * The more keys keyboard template of a parent keyboard, which is parsed when the first more
+     * keys keyboard is opened from it and shared by all of the following ones. The widths of the
+     * labels of the more keys are also kept here, since they are measured with the same paint.
+     */
+    static final class MoreKeysTemplate {
+        // The parameters loaded from the template, which must never be modified.
+        final MoreKeysKeyboardParams mParams;
+        private final HashMap<String, Float> mLabelWidths = new HashMap<>();
+        private float mLabelTextSize;
+        private Typeface mLabelTypeface;
+
+        private MoreKeysTemplate(final MoreKeysKeyboardParams params) {
+            mParams = params;
+        }
+
+        static MoreKeysTemplate getInstance(final Context context, final Keyboard keyboard) {
+            MoreKeysTemplate template = keyboard.mMoreKeysTemplateCache;
+            if (template == null) {
+                final MoreKeysKeyboardParams params = new MoreKeysKeyboardParams();
+                new KeyboardBuilder<>(context, params).load(keyboard.mMoreKeysTemplate,
+                        keyboard.mId);
+                template = new MoreKeysTemplate(params);
+                keyboard.mMoreKeysTemplateCache = template;
+            }
+            return template;
+        }
+
+        float getLabelWidth(final String label, final Paint paint) {
+            if (paint.getTextSize() != mLabelTextSize || paint.getTypeface() != mLabelTypeface) {
+                mLabelWidths.clear();
+                mLabelTextSize = paint.getTextSize();
+                mLabelTypeface = paint.getTypeface();
+            }
+            final Float cachedWidth = mLabelWidths.get(label);
+            if (cachedWidth != null) {
+                return cachedWidth;
+            }
+            final float width = TypefaceUtils.getStringWidth(label, paint);
+            mLabelWidths.put(label, width);
+            return width;
+        }
+    }
+
     public static class Builder extends KeyboardBuilder<MoreKeysKeyboardParams> {
         private final Key mParentKey;
 
@@ -313,7 +386,8 @@ public final class MoreKeysKeyboard extends Keyboard {
                 final boolean isSingleMoreKeyWithPreview, final int keyPreviewVisibleWidth,
                 final int keyPreviewVisibleHeight, final Paint paintToMeasure) {
             super(context, new MoreKeysKeyboardParams());
-            load(keyboard.mMoreKeysTemplate, keyboard.mId);
+            final MoreKeysTemplate template = MoreKeysTemplate.getInstance(context, keyboard);
+            mParams.copyTemplate(template.mParams);
 
             // TODO: More keys keyboard's vertical gap is currently calculated heuristically.
             // Should revise the algorithm.
@@ -356,8 +430,8 @@ public final class MoreKeysKeyboard extends Keyboard {
                         R.dimen.config_more_keys_keyboard_key_horizontal_padding)
                         + (key.hasLabelsInMoreKeys()
                         ? defaultKeyWidth * LABEL_PADDING_RATIO : 0.0f);
-                keyPaddedWidth = getMaxKeyWidth(key, defaultKeyWidth, padding, paintToMeasure)
-                        + mParams.mHorizontalGap;
+                keyPaddedWidth = getMaxKeyWidth(key, defaultKeyWidth, padding, paintToMeasure,
+                        template) + mParams.mHorizontalGap;
                 rowHeight = keyboard.mMostCommonKeyHeight + keyboard.mVerticalGap;
             }
             final MoreKeySpec[] moreKeys = key.getMoreKeys();
@@ -367,14 +441,14 @@ public final class MoreKeysKeyboard extends Keyboard {
         }
 
         private static float getMaxKeyWidth(final Key parentKey, final float minKeyWidth,
-                final float padding, final Paint paint) {
+                final float padding, final Paint paint, final MoreKeysTemplate template) {
             float maxWidth = minKeyWidth;
             for (final MoreKeySpec spec : parentKey.getMoreKeys()) {
                 final String label = spec.mLabel;
                 // If the label is single letter, minKeyWidth is enough to hold the label.
                 if (label != null && StringUtils.codePointCount(label) > 1) {
                     maxWidth = Math.max(maxWidth,
-                            TypefaceUtils.getStringWidth(label, paint) + padding);
+                            template.getLabelWidth(label, paint) + padding);
                 }
             }
             return maxWidth;
@@ -31,6 +31,7 @@ import rkr.simplekeyboard.inputmethod.keyboard.internal.TimerProxy;
 import rkr.simplekeyboard.inputmethod.latin.common.Constants;
 import rkr.simplekeyboard.inputmethod.latin.common.CoordinateUtils;
 import rkr.simplekeyboard.inputmethod.latin.define.DebugFlags;
+import rkr.simplekeyboard.inputmethod.latin.utils.LatencyStats;
 import rkr.simplekeyboard.inputmethod.latin.settings.Settings;
 
 public final class PointerTracker implements PointerTrackerQueue.Element {
@@ -426,13 +427,19 @@ public final class PointerTracker implements PointerTrackerQueue.Element {
         final int y = (int)me.getY(index);
         switch (action) {
         case MotionEvent.ACTION_DOWN:
-        case MotionEvent.ACTION_POINTER_DOWN:
+        case MotionEvent.ACTION_POINTER_DOWN: {
+            final long startTime = LatencyStats.startMeasuring();
             onDownEvent(x, y, eventTime, keyDetector);
+            LatencyStats.stopMeasuring(LatencyStats.STAGE_POINTER_DOWN, startTime);
             break;
+        }
         case MotionEvent.ACTION_UP:
-        case MotionEvent.ACTION_POINTER_UP:
+        case MotionEvent.ACTION_POINTER_UP: {
+            final long startTime = LatencyStats.startMeasuring();
             onUpEvent(x, y, eventTime);
+            LatencyStats.stopMeasuring(LatencyStats.STAGE_POINTER_UP, startTime);
             break;
+        }
         case MotionEvent.ACTION_CANCEL:
             onCancelEvent(x, y, eventTime);
             break;
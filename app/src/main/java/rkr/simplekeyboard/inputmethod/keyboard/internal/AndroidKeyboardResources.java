@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.content.res.XmlResourceParser;
+import android.graphics.drawable.Drawable;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * The keyboard resources of an app, read with the {@link Resources} and theme of a context.
+ */
+public final class AndroidKeyboardResources implements KeyboardResources {
+    private final Context mThemeContext;
+    private final Resources mResources;
+
+    /**
+     * @param themeContext the context of the keyboard theme, which the styled attributes are
+     *        obtained with.
+     */
+    public AndroidKeyboardResources(final Context themeContext) {
+        mThemeContext = themeContext;
+        mResources = themeContext.getResources();
+    }
+
+    @Override
+    public XmlPullParser openXml(final int xmlId) {
+        return mResources.getXml(xmlId);
+    }
+
+    @Override
+    public void closeXml(final XmlPullParser parser) {
+        ((XmlResourceParser)parser).close();
+    }
+
+    @Override
+    public KeyboardAttributes obtainAttributes(final XmlPullParser parser, final int[] attrs) {
+        return new Attributes(mResources.obtainAttributes(Xml.asAttributeSet(parser), attrs));
+    }
+
+    @Override
+    public KeyboardAttributes obtainStyledAttributes(final XmlPullParser parser,
+            final int[] attrs, final int defStyleAttr, final int defStyleRes) {
+        return new Attributes(mThemeContext.obtainStyledAttributes(Xml.asAttributeSet(parser),
+                attrs, defStyleAttr, defStyleRes));
+    }
+
+    @Override
+    public String getResourceEntryName(final int resId) {
+        return mResources.getResourceEntryName(resId);
+    }
+
+    @Override
+    public DisplayMetrics getDisplayMetrics() {
+        return mResources.getDisplayMetrics();
+    }
+
+    /**
+     * The attributes of a {@link TypedArray}.
+     */
+    public static final class Attributes implements KeyboardAttributes {
+        private final TypedArray mTypedArray;
+
+        public Attributes(final TypedArray typedArray) {
+            mTypedArray = typedArray;
+        }
+
+        @Override
+        public int getIndexCount() {
+            return mTypedArray.getIndexCount();
+        }
+
+        @Override
+        public int getIndex(final int at) {
+            return mTypedArray.getIndex(at);
+        }
+
+        @Override
+        public boolean hasValue(final int index) {
+            return mTypedArray.hasValue(index);
+        }
+
+        @Override
+        public TypedValue peekValue(final int index) {
+            return mTypedArray.peekValue(index);
+        }
+
+        @Override
+        public String getString(final int index) {
+            return mTypedArray.getString(index);
+        }
+
+        @Override
+        public int getInt(final int index, final int defValue) {
+            return mTypedArray.getInt(index, defValue);
+        }
+
+        @Override
+        public boolean getBoolean(final int index, final boolean defValue) {
+            return mTypedArray.getBoolean(index, defValue);
+        }
+
+        @Override
+        public int getResourceId(final int index, final int defValue) {
+            return mTypedArray.getResourceId(index, defValue);
+        }
+
+        @Override
+        public int getColor(final int index, final int defValue) {
+            return mTypedArray.getColor(index, defValue);
+        }
+
+        @Override
+        public float getFraction(final int index, final int base, final int pbase,
+                final float defValue) {
+            return mTypedArray.getFraction(index, base, pbase, defValue);
+        }
+
+        @Override
+        public int getDimensionPixelSize(final int index, final int defValue) {
+            return mTypedArray.getDimensionPixelSize(index, defValue);
+        }
+
+        @Override
+        public Drawable getDrawable(final int index) {
+            return mTypedArray.getDrawable(index);
+        }
+
+        @Override
+        public void recycle() {
+            mTypedArray.recycle();
+        }
+    }
+}
@@ -21,6 +21,7 @@ import android.animation.AnimatorListenerAdapter;
 import android.content.Context;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 
 import java.util.ArrayDeque;
 import java.util.HashMap;
@@ -44,6 +45,9 @@ public final class KeyPreviewChoreographer {
 
     private final KeyPreviewDrawParams mParams;
 
+    // Rough size of a key preview view, which is only used for the memory stats.
+    private static final int ESTIMATED_BYTES_PER_KEY_PREVIEW_VIEW = 2048;
+
     public KeyPreviewChoreographer(final KeyPreviewDrawParams params) {
         mParams = params;
     }
@@ -68,6 +72,25 @@ public final class KeyPreviewChoreographer {
         return keyPreviewView;
     }
 
+    /**
+     * Remove the key preview views that are not being displayed, so that they can be collected.
+     * They are created again when they are needed.
+     */
+    public void releaseFreeKeyPreviewViews() {
+        for (final KeyPreviewView keyPreviewView : mFreeKeyPreviewViews) {
+            final ViewParent parent = keyPreviewView.getParent();
+            if (parent instanceof ViewGroup) {
+                ((ViewGroup)parent).removeView(keyPreviewView);
+            }
+        }
+        mFreeKeyPreviewViews.clear();
+        KeyPreviewView.clearTextCache();
+    }
+
+    public long getEstimatedFreeKeyPreviewViewsBytes() {
+        return (long)mFreeKeyPreviewViews.size() * ESTIMATED_BYTES_PER_KEY_PREVIEW_VIEW;
+    }
+
     public void dismissKeyPreview(final Key key, final boolean withAnimation) {
         if (key == null) {
             return;
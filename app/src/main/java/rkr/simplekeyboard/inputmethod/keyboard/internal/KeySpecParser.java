@@ -69,15 +69,16 @@ public final class KeySpecParser {
         return keySpec.startsWith(PREFIX_HEX, labelEnd + 1);
     }
 
-    private static String parseEscape(final String text) {
-        if (text.indexOf(BACKSLASH) < 0) {
-            return text;
+    private static String parseEscape(final String text, final int start, final int end) {
+        final int escapeIndex = text.indexOf(BACKSLASH, start);
+        if (escapeIndex < 0 || escapeIndex >= end) {
+            return text.substring(start, end);
         }
-        final int length = text.length();
-        final StringBuilder sb = new StringBuilder();
-        for (int pos = 0; pos < length; pos++) {
+        final StringBuilder sb = new StringBuilder(end - start);
+        sb.append(text, start, escapeIndex);
+        for (int pos = escapeIndex; pos < end; pos++) {
             final char c = text.charAt(pos);
-            if (c == BACKSLASH && pos + 1 < length) {
+            if (c == BACKSLASH && pos + 1 < end) {
                 // Skip escape char
                 pos++;
                 sb.append(text.charAt(pos));
@@ -88,12 +89,19 @@ public final class KeySpecParser {
         return sb.toString();
     }
 
-    private static int indexOfLabelEnd(final String keySpec) {
+    /**
+     * Find the end of the label in the part of the key specification that starts at the specified
+     * index.
+     * @param keySpec the key specification.
+     * @param start the index in the key specification to start searching at.
+     * @return the index of the vertical bar that ends the label or -1 if there isn't one.
+     */
+    private static int indexOfLabelEnd(final String keySpec, final int start) {
         final int length = keySpec.length();
-        if (keySpec.indexOf(BACKSLASH) < 0) {
-            final int labelEnd = keySpec.indexOf(VERTICAL_BAR);
-            if (labelEnd == 0) {
-                if (length == 1) {
+        if (keySpec.indexOf(BACKSLASH, start) < 0) {
+            final int labelEnd = keySpec.indexOf(VERTICAL_BAR, start);
+            if (labelEnd == start) {
+                if (length - start == 1) {
                     // Treat a sole vertical bar as a special case of key label.
                     return -1;
                 }
@@ -101,7 +109,7 @@ public final class KeySpecParser {
             }
             return labelEnd;
         }
-        for (int pos = 0; pos < length; pos++) {
+        for (int pos = start; pos < length; pos++) {
             final char c = keySpec.charAt(pos);
             if (c == BACKSLASH && pos + 1 < length) {
                 // Skip escape char
@@ -113,130 +121,207 @@ public final class KeySpecParser {
         return -1;
     }
 
-    private static String getBeforeLabelEnd(final String keySpec, final int labelEnd) {
-        return (labelEnd < 0) ? keySpec : keySpec.substring(0, labelEnd);
-    }
-
-    private static String getAfterLabelEnd(final String keySpec, final int labelEnd) {
-        return keySpec.substring(labelEnd + /* VERTICAL_BAR */1);
-    }
-
     private static void checkDoubleLabelEnd(final String keySpec, final int labelEnd) {
-        if (indexOfLabelEnd(getAfterLabelEnd(keySpec, labelEnd)) < 0) {
+        if (indexOfLabelEnd(keySpec, labelEnd + /* VERTICAL_BAR */1) < 0) {
             return;
         }
         throw new KeySpecParserError("Multiple " + VERTICAL_BAR + ": " + keySpec);
     }
 
-    public static String getLabel(final String keySpec) {
-        if (keySpec == null) {
-            // TODO: Throw {@link KeySpecParserError} once Key.keyLabel attribute becomes mandatory.
-            return null;
-        }
-        if (hasIcon(keySpec)) {
-            return null;
+    /**
+     * The result of parsing a key specification. The key specification is only scanned once to
+     * find where its parts are, and the parts are only extracted (and unescaped) when they are
+     * requested, so getting the label, output text, code, and icon of a key specification doesn't
+     * need to repeatedly scan it. An instance can be reused for multiple key specifications by
+     * calling {@link #parse(String)} again.
+     */
+    public static final class ParsedKeySpec {
+        private String mKeySpec;
+        private boolean mHasIcon;
+        // The position of the label end is only found when it is needed so that a malformed key
+        // specification fails the same way as it would when using the static methods.
+        private boolean mIsLabelEndParsed;
+        private int mLabelEnd;
+        private boolean mHasCode;
+
+        // Lazily extracted parts of the key specification.
+        private boolean mIsLabelParsed;
+        private String mLabel;
+        private boolean mIsOutputTextParsed;
+        private String mOutputText;
+
+        public ParsedKeySpec parse(final String keySpec) {
+            mKeySpec = keySpec;
+            mIsLabelEndParsed = false;
+            mIsLabelParsed = false;
+            mLabel = null;
+            mIsOutputTextParsed = false;
+            mOutputText = null;
+            mHasIcon = keySpec != null && hasIcon(keySpec);
+            return this;
         }
-        final int labelEnd = indexOfLabelEnd(keySpec);
-        final String label = parseEscape(getBeforeLabelEnd(keySpec, labelEnd));
-        if (label.isEmpty()) {
-            throw new KeySpecParserError("Empty label: " + keySpec);
+
+        private void parseLabelEnd() {
+            if (mIsLabelEndParsed) {
+                return;
+            }
+            mLabelEnd = indexOfLabelEnd(mKeySpec, 0);
+            mHasCode = hasCode(mKeySpec, mLabelEnd);
+            mIsLabelEndParsed = true;
         }
-        return label;
-    }
 
-    private static String getOutputTextInternal(final String keySpec, final int labelEnd) {
-        if (labelEnd <= 0) {
-            return null;
+        public String getLabel() {
+            final String keySpec = mKeySpec;
+            if (keySpec == null) {
+                // TODO: Throw {@link KeySpecParserError} once Key.keyLabel attribute becomes
+                // mandatory.
+                return null;
+            }
+            if (mHasIcon) {
+                return null;
+            }
+            parseLabelEnd();
+            if (!mIsLabelParsed) {
+                final int labelEnd = (mLabelEnd < 0) ? keySpec.length() : mLabelEnd;
+                final String label = parseEscape(keySpec, 0, labelEnd);
+                if (label.isEmpty()) {
+                    throw new KeySpecParserError("Empty label: " + keySpec);
+                }
+                mLabel = label;
+                mIsLabelParsed = true;
+            }
+            return mLabel;
         }
-        checkDoubleLabelEnd(keySpec, labelEnd);
-        return parseEscape(getAfterLabelEnd(keySpec, labelEnd));
-    }
 
-    public static String getOutputText(final String keySpec) {
-        if (keySpec == null) {
-            // TODO: Throw {@link KeySpecParserError} once Key.keyLabel attribute becomes mandatory.
-            return null;
+        private String getOutputTextInternal() {
+            parseLabelEnd();
+            if (mLabelEnd <= 0) {
+                return null;
+            }
+            if (!mIsOutputTextParsed) {
+                checkDoubleLabelEnd(mKeySpec, mLabelEnd);
+                mOutputText = parseEscape(mKeySpec, mLabelEnd + /* VERTICAL_BAR */1,
+                        mKeySpec.length());
+                mIsOutputTextParsed = true;
+            }
+            return mOutputText;
         }
-        final int labelEnd = indexOfLabelEnd(keySpec);
-        if (hasCode(keySpec, labelEnd)) {
-            return null;
+
+        public String getOutputText() {
+            final String keySpec = mKeySpec;
+            if (keySpec == null) {
+                // TODO: Throw {@link KeySpecParserError} once Key.keyLabel attribute becomes
+                // mandatory.
+                return null;
+            }
+            parseLabelEnd();
+            if (mHasCode) {
+                return null;
+            }
+            final String outputText = getOutputTextInternal();
+            if (outputText != null) {
+                if (StringUtils.codePointCount(outputText) == 1) {
+                    // If output text is one code point, it should be treated as a code.
+                    // See {@link #getCode()}.
+                    return null;
+                }
+                if (outputText.isEmpty()) {
+                    throw new KeySpecParserError("Empty outputText: " + keySpec);
+                }
+                return outputText;
+            }
+            final String label = getLabel();
+            if (label == null) {
+                throw new KeySpecParserError("Empty label: " + keySpec);
+            }
+            // Code is automatically generated for one letter label. See {@link #getCode()}.
+            return (StringUtils.codePointCount(label) == 1) ? null : label;
         }
-        final String outputText = getOutputTextInternal(keySpec, labelEnd);
-        if (outputText != null) {
-            if (StringUtils.codePointCount(outputText) == 1) {
+
+        public int getCode() {
+            final String keySpec = mKeySpec;
+            if (keySpec == null) {
+                // TODO: Throw {@link KeySpecParserError} once Key.keyLabel attribute becomes
+                // mandatory.
+                return CODE_UNSPECIFIED;
+            }
+            parseLabelEnd();
+            if (mHasCode) {
+                checkDoubleLabelEnd(keySpec, mLabelEnd);
+                return parseCode(keySpec, mLabelEnd + /* VERTICAL_BAR */1, CODE_UNSPECIFIED);
+            }
+            final String outputText = getOutputTextInternal();
+            if (outputText != null) {
                 // If output text is one code point, it should be treated as a code.
-                // See {@link #getCode(Resources, String)}.
-                return null;
+                // See {@link #getOutputText()}.
+                if (StringUtils.codePointCount(outputText) == 1) {
+                    return outputText.codePointAt(0);
+                }
+                return CODE_OUTPUT_TEXT;
             }
-            if (outputText.isEmpty()) {
-                throw new KeySpecParserError("Empty outputText: " + keySpec);
+            final String label = getLabel();
+            if (label == null) {
+                throw new KeySpecParserError("Empty label: " + keySpec);
             }
-            return outputText;
+            // Code is automatically generated for one letter label.
+            return (StringUtils.codePointCount(label) == 1) ? label.codePointAt(0)
+                    : CODE_OUTPUT_TEXT;
         }
-        final String label = getLabel(keySpec);
-        if (label == null) {
-            throw new KeySpecParserError("Empty label: " + keySpec);
+
+        public int getIconId() {
+            final String keySpec = mKeySpec;
+            if (keySpec == null) {
+                // TODO: Throw {@link KeySpecParserError} once Key.keyLabel attribute becomes
+                // mandatory.
+                return KeyboardIconsSet.ICON_UNDEFINED;
+            }
+            if (!mHasIcon) {
+                return KeyboardIconsSet.ICON_UNDEFINED;
+            }
+            parseLabelEnd();
+            final int labelEnd = (mLabelEnd < 0) ? keySpec.length() : mLabelEnd;
+            final String iconName =
+                    keySpec.substring(KeyboardIconsSet.PREFIX_ICON.length(), labelEnd);
+            return KeyboardIconsSet.getIconId(iconName);
         }
-        // Code is automatically generated for one letter label. See {@link getCode()}.
-        return (StringUtils.codePointCount(label) == 1) ? null : label;
+    }
+
+    public static String getLabel(final String keySpec) {
+        return new ParsedKeySpec().parse(keySpec).getLabel();
+    }
+
+    public static String getOutputText(final String keySpec) {
+        return new ParsedKeySpec().parse(keySpec).getOutputText();
     }
 
     public static int getCode(final String keySpec) {
-        if (keySpec == null) {
-            // TODO: Throw {@link KeySpecParserError} once Key.keyLabel attribute becomes mandatory.
-            return CODE_UNSPECIFIED;
-        }
-        final int labelEnd = indexOfLabelEnd(keySpec);
-        if (hasCode(keySpec, labelEnd)) {
-            checkDoubleLabelEnd(keySpec, labelEnd);
-            return parseCode(getAfterLabelEnd(keySpec, labelEnd), CODE_UNSPECIFIED);
-        }
-        final String outputText = getOutputTextInternal(keySpec, labelEnd);
-        if (outputText != null) {
-            // If output text is one code point, it should be treated as a code.
-            // See {@link #getOutputText(String)}.
-            if (StringUtils.codePointCount(outputText) == 1) {
-                return outputText.codePointAt(0);
-            }
-            return CODE_OUTPUT_TEXT;
-        }
-        final String label = getLabel(keySpec);
-        if (label == null) {
-            throw new KeySpecParserError("Empty label: " + keySpec);
-        }
-        // Code is automatically generated for one letter label.
-        return (StringUtils.codePointCount(label) == 1) ? label.codePointAt(0) : CODE_OUTPUT_TEXT;
+        return new ParsedKeySpec().parse(keySpec).getCode();
+    }
+
+    public static int getIconId(final String keySpec) {
+        return new ParsedKeySpec().parse(keySpec).getIconId();
     }
 
     public static int parseCode(final String text, final int defaultCode) {
         if (text == null) {
             return defaultCode;
         }
-        if (text.startsWith(KeyboardCodesSet.PREFIX_CODE)) {
-            return KeyboardCodesSet.getCode(text.substring(KeyboardCodesSet.PREFIX_CODE.length()));
+        return parseCode(text, 0, defaultCode);
+    }
+
+    private static int parseCode(final String text, final int start, final int defaultCode) {
+        if (text.startsWith(KeyboardCodesSet.PREFIX_CODE, start)) {
+            return KeyboardCodesSet.getCode(
+                    text.substring(start + KeyboardCodesSet.PREFIX_CODE.length()));
         }
         // This is a workaround to have a key that has a supplementary code point. We can't put a
         // string in resource as a XML entity of a supplementary code point or a surrogate pair.
-        if (text.startsWith(PREFIX_HEX)) {
-            return Integer.parseInt(text.substring(PREFIX_HEX.length()), 16);
+        if (text.startsWith(PREFIX_HEX, start)) {
+            return Integer.parseInt(text.substring(start + PREFIX_HEX.length()), 16);
         }
         return defaultCode;
     }
 
-    public static int getIconId(final String keySpec) {
-        if (keySpec == null) {
-            // TODO: Throw {@link KeySpecParserError} once Key.keyLabel attribute becomes mandatory.
-            return KeyboardIconsSet.ICON_UNDEFINED;
-        }
-        if (!hasIcon(keySpec)) {
-            return KeyboardIconsSet.ICON_UNDEFINED;
-        }
-        final int labelEnd = indexOfLabelEnd(keySpec);
-        final String iconName = getBeforeLabelEnd(keySpec, labelEnd)
-                .substring(KeyboardIconsSet.PREFIX_ICON.length());
-        return KeyboardIconsSet.getIconId(iconName);
-    }
-
     @SuppressWarnings("serial")
     public static final class KeySpecParserError extends RuntimeException {
         public KeySpecParserError(final String message) {
@@ -16,7 +16,6 @@
 
 package rkr.simplekeyboard.inputmethod.keyboard.internal;
 
-import android.content.res.TypedArray;
 import android.util.Log;
 import android.util.SparseArray;
 
@@ -51,22 +50,22 @@ public final class KeyStylesSet {
         }
 
         @Override
-        public String[] getStringArray(final TypedArray a, final int index) {
+        public String[] getStringArray(final KeyboardAttributes a, final int index) {
             return parseStringArray(a, index);
         }
 
         @Override
-        public String getString(final TypedArray a, final int index) {
+        public String getString(final KeyboardAttributes a, final int index) {
             return parseString(a, index);
         }
 
         @Override
-        public int getInt(final TypedArray a, final int index, final int defaultValue) {
+        public int getInt(final KeyboardAttributes a, final int index, final int defaultValue) {
             return a.getInt(index, defaultValue);
         }
 
         @Override
-        public int getFlags(final TypedArray a, final int index) {
+        public int getFlags(final KeyboardAttributes a, final int index) {
             return a.getInt(index, 0);
         }
     }
@@ -85,7 +84,7 @@ public final class KeyStylesSet {
         }
 
         @Override
-        public String[] getStringArray(final TypedArray a, final int index) {
+        public String[] getStringArray(final KeyboardAttributes a, final int index) {
             if (a.hasValue(index)) {
                 return parseStringArray(a, index);
             }
@@ -99,7 +98,7 @@ public final class KeyStylesSet {
         }
 
         @Override
-        public String getString(final TypedArray a, final int index) {
+        public String getString(final KeyboardAttributes a, final int index) {
             if (a.hasValue(index)) {
                 return parseString(a, index);
             }
@@ -112,7 +111,7 @@ public final class KeyStylesSet {
         }
 
         @Override
-        public int getInt(final TypedArray a, final int index, final int defaultValue) {
+        public int getInt(final KeyboardAttributes a, final int index, final int defaultValue) {
             if (a.hasValue(index)) {
                 return a.getInt(index, defaultValue);
             }
@@ -125,7 +124,7 @@ public final class KeyStylesSet {
         }
 
         @Override
-        public int getFlags(final TypedArray a, final int index) {
+        public int getFlags(final KeyboardAttributes a, final int index) {
             final int parentFlags = mStyles.get(mParentStyleName).getFlags(a, index);
             final Integer value = (Integer)mStyleAttributes.get(index);
             final int styleFlags = (value != null) ? value : 0;
@@ -133,7 +132,7 @@ public final class KeyStylesSet {
             return flags | styleFlags | parentFlags;
         }
 
-        public void readKeyAttributes(final TypedArray keyAttr) {
+        public void readKeyAttributes(final KeyboardAttributes keyAttr) {
             // TODO: Currently not all Key attributes can be declared as style.
             readString(keyAttr, R.styleable.Keyboard_Key_altCode);
             readString(keyAttr, R.styleable.Keyboard_Key_keySpec);
@@ -146,19 +145,19 @@ public final class KeyStylesSet {
             readFlags(keyAttr, R.styleable.Keyboard_Key_keyActionFlags);
         }
 
-        private void readString(final TypedArray a, final int index) {
+        private void readString(final KeyboardAttributes a, final int index) {
             if (a.hasValue(index)) {
                 mStyleAttributes.put(index, parseString(a, index));
             }
         }
 
-        private void readInt(final TypedArray a, final int index) {
+        private void readInt(final KeyboardAttributes a, final int index) {
             if (a.hasValue(index)) {
                 mStyleAttributes.put(index, a.getInt(index, 0));
             }
         }
 
-        private void readFlags(final TypedArray a, final int index) {
+        private void readFlags(final KeyboardAttributes a, final int index) {
             if (a.hasValue(index)) {
                 final Integer value = (Integer)mStyleAttributes.get(index);
                 final int styleFlags = value != null ? value : 0;
@@ -166,15 +165,16 @@ public final class KeyStylesSet {
             }
         }
 
-        private void readStringArray(final TypedArray a, final int index) {
+        private void readStringArray(final KeyboardAttributes a, final int index) {
             if (a.hasValue(index)) {
                 mStyleAttributes.put(index, parseStringArray(a, index));
             }
         }
     }
 
-    public void parseKeyStyleAttributes(final TypedArray keyStyleAttr, final TypedArray keyAttrs,
-            final XmlPullParser parser) throws XmlPullParserException {
+    public void parseKeyStyleAttributes(final KeyboardAttributes keyStyleAttr,
+            final KeyboardAttributes keyAttrs, final XmlPullParser parser)
+            throws XmlPullParserException {
         final String styleName = keyStyleAttr.getString(R.styleable.Keyboard_KeyStyle_styleName);
         if (styleName == null) {
             throw new XmlParseUtils.ParseException(
@@ -202,7 +202,7 @@ public final class KeyStylesSet {
         mStyles.put(styleName, style);
     }
 
-    public KeyStyle getKeyStyle(final TypedArray keyAttr, final XmlPullParser parser)
+    public KeyStyle getKeyStyle(final KeyboardAttributes keyAttr, final XmlPullParser parser)
             throws XmlParseUtils.ParseException {
         final String styleName = keyAttr.getString(R.styleable.Keyboard_Key_keyStyle);
         if (styleName == null) {
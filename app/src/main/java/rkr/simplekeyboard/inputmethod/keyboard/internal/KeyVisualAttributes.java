@@ -16,8 +16,8 @@
 
 package rkr.simplekeyboard.inputmethod.keyboard.internal;
 
-import android.content.res.TypedArray;
 import android.graphics.Typeface;
+import android.util.TypedValue;
 import android.util.SparseIntArray;
 
 import rkr.simplekeyboard.inputmethod.R;
@@ -81,7 +81,7 @@ public final class KeyVisualAttributes {
         }
     }
 
-    public static KeyVisualAttributes newInstance(final TypedArray keyAttr) {
+    public static KeyVisualAttributes newInstance(final KeyboardAttributes keyAttr) {
         final int indexCount = keyAttr.getIndexCount();
         for (int i = 0; i < indexCount; i++) {
             final int attrId = keyAttr.getIndex(i);
@@ -93,7 +93,43 @@ public final class KeyVisualAttributes {
         return null;
     }
 
-    private KeyVisualAttributes(final TypedArray keyAttr) {
+    /**
+     * Checks whether two sets of visual attributes hold the same values, which happens for example
+     * for the keyboards of the different shift states of a layout since each of them is parsed
+     * separately.
+     * @param a the first set of visual attributes, or null.
+     * @param b the second set of visual attributes, or null.
+     * @return true if keys would be drawn the same way with either set of attributes.
+     */
+    public static boolean hasSameValues(final KeyVisualAttributes a, final KeyVisualAttributes b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        return a.mTypeface == b.mTypeface
+                && Float.compare(a.mLetterRatio, b.mLetterRatio) == 0
+                && a.mLetterSize == b.mLetterSize
+                && Float.compare(a.mLabelRatio, b.mLabelRatio) == 0
+                && a.mLabelSize == b.mLabelSize
+                && Float.compare(a.mLargeLetterRatio, b.mLargeLetterRatio) == 0
+                && Float.compare(a.mHintLetterRatio, b.mHintLetterRatio) == 0
+                && Float.compare(a.mShiftedLetterHintRatio, b.mShiftedLetterHintRatio) == 0
+                && Float.compare(a.mHintLabelRatio, b.mHintLabelRatio) == 0
+                && Float.compare(a.mPreviewTextRatio, b.mPreviewTextRatio) == 0
+                && a.mTextColor == b.mTextColor
+                && a.mTextInactivatedColor == b.mTextInactivatedColor
+                && a.mTextShadowColor == b.mTextShadowColor
+                && a.mFunctionalTextColor == b.mFunctionalTextColor
+                && a.mHintLetterColor == b.mHintLetterColor
+                && a.mHintLabelColor == b.mHintLabelColor
+                && a.mShiftedLetterHintInactivatedColor == b.mShiftedLetterHintInactivatedColor
+                && a.mShiftedLetterHintActivatedColor == b.mShiftedLetterHintActivatedColor
+                && a.mPreviewTextColor == b.mPreviewTextColor
+                && Float.compare(a.mHintLabelVerticalAdjustment,
+                        b.mHintLabelVerticalAdjustment) == 0
+                && Float.compare(a.mLabelOffCenterRatio, b.mLabelOffCenterRatio) == 0
+                && Float.compare(a.mHintLabelOffCenterRatio, b.mHintLabelOffCenterRatio) == 0;
+    }
+
+    private KeyVisualAttributes(final KeyboardAttributes keyAttr) {
         if (keyAttr.hasValue(R.styleable.Keyboard_Key_keyTypeface)) {
             mTypeface = Typeface.defaultFromStyle(
                     keyAttr.getInt(R.styleable.Keyboard_Key_keyTypeface, Typeface.NORMAL));
@@ -101,23 +137,23 @@ public final class KeyVisualAttributes {
             mTypeface = null;
         }
 
-        mLetterRatio = ResourceUtils.getFraction(keyAttr,
+        mLetterRatio = getFraction(keyAttr,
                 R.styleable.Keyboard_Key_keyLetterSize);
-        mLetterSize = ResourceUtils.getDimensionPixelSize(keyAttr,
+        mLetterSize = getDimensionPixelSize(keyAttr,
                 R.styleable.Keyboard_Key_keyLetterSize);
-        mLabelRatio = ResourceUtils.getFraction(keyAttr,
+        mLabelRatio = getFraction(keyAttr,
                 R.styleable.Keyboard_Key_keyLabelSize);
-        mLabelSize = ResourceUtils.getDimensionPixelSize(keyAttr,
+        mLabelSize = getDimensionPixelSize(keyAttr,
                 R.styleable.Keyboard_Key_keyLabelSize);
-        mLargeLetterRatio = ResourceUtils.getFraction(keyAttr,
+        mLargeLetterRatio = getFraction(keyAttr,
                 R.styleable.Keyboard_Key_keyLargeLetterRatio);
-        mHintLetterRatio = ResourceUtils.getFraction(keyAttr,
+        mHintLetterRatio = getFraction(keyAttr,
                 R.styleable.Keyboard_Key_keyHintLetterRatio);
-        mShiftedLetterHintRatio = ResourceUtils.getFraction(keyAttr,
+        mShiftedLetterHintRatio = getFraction(keyAttr,
                 R.styleable.Keyboard_Key_keyShiftedLetterHintRatio);
-        mHintLabelRatio = ResourceUtils.getFraction(keyAttr,
+        mHintLabelRatio = getFraction(keyAttr,
                 R.styleable.Keyboard_Key_keyHintLabelRatio);
-        mPreviewTextRatio = ResourceUtils.getFraction(keyAttr,
+        mPreviewTextRatio = getFraction(keyAttr,
                 R.styleable.Keyboard_Key_keyPreviewTextRatio);
 
         mTextColor = keyAttr.getColor(R.styleable.Keyboard_Key_keyTextColor, 0);
@@ -133,11 +169,32 @@ public final class KeyVisualAttributes {
                 R.styleable.Keyboard_Key_keyShiftedLetterHintActivatedColor, 0);
         mPreviewTextColor = keyAttr.getColor(R.styleable.Keyboard_Key_keyPreviewTextColor, 0);
 
-        mHintLabelVerticalAdjustment = ResourceUtils.getFraction(keyAttr,
+        mHintLabelVerticalAdjustment = getFraction(keyAttr,
                 R.styleable.Keyboard_Key_keyHintLabelVerticalAdjustment, 0.0f);
-        mLabelOffCenterRatio = ResourceUtils.getFraction(keyAttr,
+        mLabelOffCenterRatio = getFraction(keyAttr,
                 R.styleable.Keyboard_Key_keyLabelOffCenterRatio, 0.0f);
-        mHintLabelOffCenterRatio = ResourceUtils.getFraction(keyAttr,
+        mHintLabelOffCenterRatio = getFraction(keyAttr,
                 R.styleable.Keyboard_Key_keyHintLabelOffCenterRatio, 0.0f);
     }
+
+    private static float getFraction(final KeyboardAttributes a, final int index,
+            final float defValue) {
+        final TypedValue value = a.peekValue(index);
+        if (value == null || !ResourceUtils.isFractionValue(value)) {
+            return defValue;
+        }
+        return a.getFraction(index, 1, 1, defValue);
+    }
+
+    private static float getFraction(final KeyboardAttributes a, final int index) {
+        return getFraction(a, index, ResourceUtils.UNDEFINED_RATIO);
+    }
+
+    private static int getDimensionPixelSize(final KeyboardAttributes a, final int index) {
+        final TypedValue value = a.peekValue(index);
+        if (value == null || !ResourceUtils.isDimensionValue(value)) {
+            return ResourceUtils.UNDEFINED_DIMENSION;
+        }
+        return a.getDimensionPixelSize(index, ResourceUtils.UNDEFINED_DIMENSION);
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.graphics.drawable.Drawable;
+import android.util.TypedValue;
+
+/**
+ * The attributes of an element of a keyboard layout XML, read for one of the styleables of the
+ * keyboard. The index of an attribute is its index in that styleable, and the methods behave like
+ * the ones of {@link android.content.res.TypedArray} with the same name.
+ *
+ * The {@link KeyboardBuilder} and the classes it builds the keyboard with only read the layout
+ * attributes through this interface, so the keyboard can be built from attributes that weren't
+ * obtained through the Android resources.
+ */
+public interface KeyboardAttributes {
+    int getIndexCount();
+
+    /**
+     * @param at the position among the attributes that have a value, from 0 to
+     *        {@link #getIndexCount()} - 1.
+     * @return the index of the attribute.
+     */
+    int getIndex(int at);
+
+    boolean hasValue(int index);
+
+    /**
+     * @param index the index of the attribute.
+     * @return the value of the attribute, or null if it isn't specified. The value may be reused
+     * by the attributes, so it must be copied to be kept.
+     */
+    TypedValue peekValue(int index);
+
+    String getString(int index);
+
+    int getInt(int index, int defValue);
+
+    boolean getBoolean(int index, boolean defValue);
+
+    int getResourceId(int index, int defValue);
+
+    int getColor(int index, int defValue);
+
+    float getFraction(int index, int base, int pbase, float defValue);
+
+    int getDimensionPixelSize(int index, int defValue);
+
+    Drawable getDrawable(int index);
+
+    /**
+     * Release the attributes. They can't be read anymore afterwards.
+     */
+    void recycle();
+}
@@ -18,13 +18,10 @@ package rkr.simplekeyboard.inputmethod.keyboard.internal;
 
 import android.content.Context;
 import android.content.res.Resources;
-import android.content.res.TypedArray;
-import android.content.res.XmlResourceParser;
 import android.text.TextUtils;
-import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.TypedValue;
-import android.util.Xml;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -136,16 +133,33 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
     protected final KP mParams;
     protected final Context mContext;
     protected final Resources mResources;
+    // The layout XML and the attributes of its elements are read through this.
+    protected final KeyboardResources mKeyboardResources;
 
     private float mCurrentY = 0;
     private KeyboardRow mCurrentRow = null;
     private Key mPreviousKeyInRow = null;
     private boolean mKeyboardDefined = false;
+    // The layout of the keyboard that is parsed, which is kept to build the keyboard again for
+    // other sizes.
+    private final KeyboardLayoutModel mLayoutModel = new KeyboardLayoutModel();
 
     public KeyboardBuilder(final Context context, final KP params) {
+        this(context, new AndroidKeyboardResources(context), params);
+    }
+
+    /**
+     * @param context the context of the keyboard theme.
+     * @param keyboardResources the resources that the layout XML and its attributes are read
+     *        from.
+     * @param params the parameters of the keyboard to build.
+     */
+    public KeyboardBuilder(final Context context, final KeyboardResources keyboardResources,
+            final KP params) {
         mContext = context;
         final Resources res = context.getResources();
         mResources = res;
+        mKeyboardResources = keyboardResources;
 
         mParams = params;
 
@@ -159,7 +173,7 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
 
     public KeyboardBuilder<KP> load(final int xmlId, final KeyboardId id) {
         mParams.mId = id;
-        final XmlResourceParser parser = mResources.getXml(xmlId);
+        final XmlPullParser parser = mKeyboardResources.openXml(xmlId);
         try {
             parseKeyboard(parser, false);
             if (!mKeyboardDefined) {
@@ -172,11 +186,67 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
             Log.w(BUILDER_TAG, "keyboard XML parse error", e);
             throw new RuntimeException(e.getMessage(), e);
         } finally {
-            parser.close();
+            mKeyboardResources.closeXml(parser);
+        }
+        return this;
+    }
+
+    /**
+     * Load a keyboard from a layout that was parsed for a keyboard with the same id except for
+     * its size. This doesn't need to parse the XML again, since only the geometry of the keys
+     * depends on the size.
+     * @param model the layout from {@link #getLayoutModel()} of the builder that parsed it.
+     * @param id the id of the keyboard to build.
+     * @return this builder.
+     */
+    public KeyboardBuilder<KP> load(final KeyboardLayoutModel model, final KeyboardId id) {
+        mParams.mId = id;
+        setKeyboardAttributes(model);
+        mParams.mIconsSet.copyFrom(model.mIconsSet);
+        KeyboardRow row = null;
+        for (final KeyboardLayoutModel.Element element : model.mElements) {
+            switch (element.mType) {
+            case KeyboardLayoutModel.ELEMENT_START_ROW:
+                row = new KeyboardRow(mKeyboardResources, mParams, element, mCurrentY);
+                startRow(row);
+                break;
+            case KeyboardLayoutModel.ELEMENT_END_ROW:
+                endRow(row);
+                break;
+            case KeyboardLayoutModel.ELEMENT_KEY:
+                final Key key;
+                if (element.mKey.isSpacer()) {
+                    key = new Key.Spacer(element.mKey, element.mKeyXPos, element.mKeyWidth, row);
+                } else {
+                    key = new Key(element.mKey, element.mKeyXPos, element.mKeyWidth, row);
+                }
+                endKey(key, row);
+                break;
+            case KeyboardLayoutModel.ELEMENT_PUSH_ROW_ATTRIBUTES:
+                row.updateXPos(element.mKeyXPos);
+                row.pushRowAttributes(element);
+                break;
+            case KeyboardLayoutModel.ELEMENT_POP_ROW_ATTRIBUTES:
+                row.popRowAttributes();
+                break;
+            case KeyboardLayoutModel.ELEMENT_DEFAULT_ROW_HEIGHT:
+                setDefaultRowHeight(element.mRowHeight);
+                break;
+            }
         }
+        endKeyboard();
         return this;
     }
 
+    /**
+     * Get the layout of the keyboard that was parsed by {@link #load(int, KeyboardId)}.
+     * @return the layout, which can be passed to
+     * {@link #load(KeyboardLayoutModel, KeyboardId)} to build the keyboard for another size.
+     */
+    public KeyboardLayoutModel getLayoutModel() {
+        return mLayoutModel;
+    }
+
     public Keyboard build() {
         return new Keyboard(mParams);
     }
@@ -237,63 +307,71 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
     }
 
     private void parseKeyboardAttributes(final XmlPullParser parser) {
-        final AttributeSet attr = Xml.asAttributeSet(parser);
-        final TypedArray keyboardAttr = mContext.obtainStyledAttributes(
-                attr, R.styleable.Keyboard, R.attr.keyboardStyle, R.style.Keyboard);
-        final TypedArray keyAttr = mResources.obtainAttributes(attr, R.styleable.Keyboard_Key);
+        final KeyboardAttributes keyboardAttr = mKeyboardResources.obtainStyledAttributes(
+                parser, R.styleable.Keyboard, R.attr.keyboardStyle, R.style.Keyboard);
+        final KeyboardAttributes keyAttr = mKeyboardResources.obtainAttributes(
+                parser, R.styleable.Keyboard_Key);
         try {
-            final KeyboardParams params = mParams;
-            final int height = params.mId.mHeight;
-            final int width = params.mId.mWidth;
-            // The bonus height isn't used to determine the other dimensions (gap/padding) to allow
-            // those to stay consistent between layouts with and without the bonus height added.
-            final int bonusHeight = (int)keyboardAttr.getFraction(R.styleable.Keyboard_bonusHeight,
-                    height, height, 0);
-            params.mOccupiedHeight = height + bonusHeight;
-            params.mOccupiedWidth = width;
-            params.mTopPadding = ResourceUtils.getDimensionOrFraction(keyboardAttr,
-                    R.styleable.Keyboard_keyboardTopPadding, height, 0);
-            params.mBottomPadding = ResourceUtils.getDimensionOrFraction(keyboardAttr,
-                    R.styleable.Keyboard_keyboardBottomPadding, height, 0);
-            params.mLeftPadding = ResourceUtils.getDimensionOrFraction(keyboardAttr,
-                    R.styleable.Keyboard_keyboardLeftPadding, width, 0);
-            params.mRightPadding = ResourceUtils.getDimensionOrFraction(keyboardAttr,
-                    R.styleable.Keyboard_keyboardRightPadding, width, 0);
-
-            params.mHorizontalGap = keyboardAttr.getFraction(
-                    R.styleable.Keyboard_horizontalGap, width, width, 0);
-            final float baseWidth = params.mOccupiedWidth - params.mLeftPadding
-                    - params.mRightPadding + params.mHorizontalGap;
-            params.mBaseWidth = baseWidth;
-            params.mDefaultKeyPaddedWidth = ResourceUtils.getFraction(keyAttr,
-                    R.styleable.Keyboard_Key_keyWidth, baseWidth,
-                    baseWidth / DEFAULT_KEYBOARD_COLUMNS);
-            // TODO: Fix keyboard geometry calculation clearer. Historically vertical gap between
-            // rows are determined based on the entire keyboard height including top and bottom
-            // paddings.
-            params.mVerticalGap = keyboardAttr.getFraction(
-                    R.styleable.Keyboard_verticalGap, height, height, 0);
-            final float baseHeight = params.mOccupiedHeight - params.mTopPadding
-                    - params.mBottomPadding + params.mVerticalGap;
-            params.mBaseHeight = baseHeight;
-            params.mDefaultRowHeight = ResourceUtils.getDimensionOrFraction(keyboardAttr,
-                    R.styleable.Keyboard_rowHeight, baseHeight, baseHeight / DEFAULT_KEYBOARD_ROWS);
-
-            params.mKeyVisualAttributes = KeyVisualAttributes.newInstance(keyAttr);
-
-            params.mMoreKeysTemplate = keyboardAttr.getResourceId(
-                    R.styleable.Keyboard_moreKeysTemplate, 0);
-            params.mMaxMoreKeysKeyboardColumn = keyAttr.getInt(
-                    R.styleable.Keyboard_Key_maxMoreKeysColumn, 5);
-
-            params.mIconsSet.loadIcons(keyboardAttr);
-            params.mTextsSet.setLocale(params.mId.getLocale(), mContext);
+            mLayoutModel.setKeyboardAttributes(keyboardAttr, keyAttr,
+                    mResources.getConfiguration());
+            mLayoutModel.mIconsSet = mParams.mIconsSet;
+            setKeyboardAttributes(mLayoutModel);
+
+            mParams.mIconsSet.loadIcons(keyboardAttr, mContext);
+            mParams.mTextsSet.setLocale(mParams.mId.getLocale(), mContext);
         } finally {
             keyAttr.recycle();
             keyboardAttr.recycle();
         }
     }
 
+    private void setKeyboardAttributes(final KeyboardLayoutModel model) {
+        final DisplayMetrics metrics = mKeyboardResources.getDisplayMetrics();
+        final KeyboardParams params = mParams;
+        final int height = params.mId.mHeight;
+        final int width = params.mId.mWidth;
+        // The bonus height isn't used to determine the other dimensions (gap/padding) to allow
+        // those to stay consistent between layouts with and without the bonus height added.
+        final int bonusHeight = (int)ResourceUtils.getFraction(model.mBonusHeight, height, 0);
+        params.mOccupiedHeight = height + bonusHeight;
+        params.mOccupiedWidth = width;
+        params.mTopPadding = ResourceUtils.getDimensionOrFraction(model.mTopPadding, height, 0,
+                metrics);
+        params.mBottomPadding = ResourceUtils.getDimensionOrFraction(model.mBottomPadding, height,
+                0, metrics);
+        params.mLeftPadding = ResourceUtils.getDimensionOrFraction(model.mLeftPadding, width, 0,
+                metrics);
+        params.mRightPadding = ResourceUtils.getDimensionOrFraction(model.mRightPadding, width, 0,
+                metrics);
+
+        params.mHorizontalGap = ResourceUtils.getFraction(model.mHorizontalGap, width, 0);
+        final float baseWidth = params.mOccupiedWidth - params.mLeftPadding
+                - params.mRightPadding + params.mHorizontalGap;
+        params.mBaseWidth = baseWidth;
+        params.mDefaultKeyPaddedWidth = ResourceUtils.getFraction(model.mDefaultKeyWidth,
+                baseWidth, baseWidth / DEFAULT_KEYBOARD_COLUMNS);
+        // TODO: Fix keyboard geometry calculation clearer. Historically vertical gap between
+        // rows are determined based on the entire keyboard height including top and bottom
+        // paddings.
+        params.mVerticalGap = ResourceUtils.getFraction(model.mVerticalGap, height, 0);
+        final float baseHeight = params.mOccupiedHeight - params.mTopPadding
+                - params.mBottomPadding + params.mVerticalGap;
+        params.mBaseHeight = baseHeight;
+        params.mDefaultRowHeight = ResourceUtils.getDimensionOrFraction(model.mDefaultRowHeight,
+                baseHeight, baseHeight / DEFAULT_KEYBOARD_ROWS, metrics);
+
+        params.mKeyVisualAttributes = model.mKeyVisualAttributes;
+
+        params.mMoreKeysTemplate = model.mMoreKeysTemplate;
+        params.mMaxMoreKeysKeyboardColumn = model.mMaxMoreKeysKeyboardColumn;
+    }
+
+    private void setDefaultRowHeight(final TypedValue rowHeight) {
+        mParams.mDefaultRowHeight = ResourceUtils.getDimensionOrFraction(rowHeight,
+                mParams.mBaseHeight, mParams.mDefaultRowHeight,
+                mKeyboardResources.getDisplayMetrics());
+    }
+
     private void parseKeyboardContent(final XmlPullParser parser, final boolean skip)
             throws XmlPullParserException, IOException {
         while (parser.getEventType() != XmlPullParser.END_DOCUMENT) {
@@ -301,9 +379,12 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
             if (event == XmlPullParser.START_TAG) {
                 final String tag = parser.getName();
                 if (TAG_ROW.equals(tag)) {
-                    final KeyboardRow row = parseRowAttributes(parser);
+                    final KeyboardLayoutModel.Element rowElement = parseRowAttributes(parser);
+                    final KeyboardRow row = new KeyboardRow(mKeyboardResources, mParams, rowElement,
+                            mCurrentY);
                     if (DEBUG) startTag("<%s>%s", TAG_ROW, skip ? " skipped" : "");
                     if (!skip) {
+                        mLayoutModel.add(rowElement);
                         startRow(row);
                     }
                     parseRowContent(parser, row, skip);
@@ -331,10 +412,12 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
         }
     }
 
-    private KeyboardRow parseRowAttributes(final XmlPullParser parser)
+    private KeyboardLayoutModel.Element parseRowAttributes(final XmlPullParser parser)
             throws XmlPullParserException {
-        final AttributeSet attr = Xml.asAttributeSet(parser);
-        final TypedArray keyboardAttr = mResources.obtainAttributes(attr, R.styleable.Keyboard);
+        final KeyboardAttributes keyboardAttr = mKeyboardResources.obtainAttributes(
+                parser, R.styleable.Keyboard);
+        final KeyboardAttributes keyAttr = mKeyboardResources.obtainAttributes(
+                parser, R.styleable.Keyboard_Key);
         try {
             if (keyboardAttr.hasValue(R.styleable.Keyboard_horizontalGap)) {
                 throw new XmlParseUtils.IllegalAttribute(parser, TAG_ROW, "horizontalGap");
@@ -342,9 +425,10 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
             if (keyboardAttr.hasValue(R.styleable.Keyboard_verticalGap)) {
                 throw new XmlParseUtils.IllegalAttribute(parser, TAG_ROW, "verticalGap");
             }
-            return new KeyboardRow(mResources, mParams, parser, mCurrentY);
+            return KeyboardLayoutModel.newRow(keyboardAttr, keyAttr);
         } finally {
             keyboardAttr.recycle();
+            keyAttr.recycle();
         }
     }
 
@@ -372,6 +456,8 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
                 if (DEBUG) endTag("</%s>", tag);
                 if (TAG_ROW.equals(tag)) {
                     if (!skip) {
+                        mLayoutModel.add(new KeyboardLayoutModel.Element(
+                                KeyboardLayoutModel.ELEMENT_END_ROW));
                         endRow(row);
                     }
                     return;
@@ -391,14 +477,15 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
             if (DEBUG) startEndTag("<%s /> skipped", TAG_KEY);
             return;
         }
-        final TypedArray keyAttr = mResources.obtainAttributes(
-                Xml.asAttributeSet(parser), R.styleable.Keyboard_Key);
+        final KeyboardAttributes keyAttr = mKeyboardResources.obtainAttributes(
+                parser, R.styleable.Keyboard_Key);
         final KeyStyle keyStyle = mParams.mKeyStyles.getKeyStyle(keyAttr, parser);
         final String keySpec = keyStyle.getString(keyAttr, R.styleable.Keyboard_Key_keySpec);
         if (TextUtils.isEmpty(keySpec)) {
             throw new ParseException("Empty keySpec", parser);
         }
         final Key key = new Key(keySpec, keyAttr, keyStyle, mParams, row);
+        mLayoutModel.add(KeyboardLayoutModel.newKey(key, keyAttr));
         keyAttr.recycle();
         if (DEBUG) {
             startEndTag("<%s %s moreKeys=%s />", TAG_KEY, key, Arrays.toString(key.getMoreKeys()));
@@ -414,10 +501,11 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
             if (DEBUG) startEndTag("<%s /> skipped", TAG_SPACER);
             return;
         }
-        final TypedArray keyAttr = mResources.obtainAttributes(
-                Xml.asAttributeSet(parser), R.styleable.Keyboard_Key);
+        final KeyboardAttributes keyAttr = mKeyboardResources.obtainAttributes(
+                parser, R.styleable.Keyboard_Key);
         final KeyStyle keyStyle = mParams.mKeyStyles.getKeyStyle(keyAttr, parser);
         final Key spacer = new Key.Spacer(keyAttr, keyStyle, mParams, row);
+        mLayoutModel.add(KeyboardLayoutModel.newKey(spacer, keyAttr));
         keyAttr.recycle();
         if (DEBUG) startEndTag("<%s />", TAG_SPACER);
         XmlParseUtils.checkEndTag(TAG_SPACER, parser);
@@ -441,27 +529,36 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
             if (DEBUG) startEndTag("</%s> skipped", TAG_INCLUDE);
             return;
         }
-        final AttributeSet attr = Xml.asAttributeSet(parser);
-        final TypedArray keyboardAttr = mResources.obtainAttributes(
-                attr, R.styleable.Keyboard_Include);
-        final TypedArray includeAttr = mResources.obtainAttributes(
-                attr, R.styleable.Keyboard);
-        mParams.mDefaultRowHeight = ResourceUtils.getDimensionOrFraction(includeAttr,
-                R.styleable.Keyboard_rowHeight, mParams.mBaseHeight, mParams.mDefaultRowHeight);
-
-        final TypedArray keyAttr = mResources.obtainAttributes(attr, R.styleable.Keyboard_Key);
+        final KeyboardAttributes keyboardAttr = mKeyboardResources.obtainAttributes(
+                parser, R.styleable.Keyboard_Include);
+        final KeyboardAttributes includeAttr = mKeyboardResources.obtainAttributes(
+                parser, R.styleable.Keyboard);
+        final TypedValue rowHeight = KeyboardLayoutModel.getValue(includeAttr,
+                R.styleable.Keyboard_rowHeight);
+        if (rowHeight != null) {
+            mLayoutModel.add(KeyboardLayoutModel.newDefaultRowHeight(rowHeight));
+            setDefaultRowHeight(rowHeight);
+        }
+
+        final KeyboardAttributes keyAttr = mKeyboardResources.obtainAttributes(
+
+                parser, R.styleable.Keyboard_Key);
         int keyboardLayout = 0;
         try {
-            XmlParseUtils.checkAttributeExists(
-                    keyboardAttr, R.styleable.Keyboard_Include_keyboardLayout, "keyboardLayout",
-                    TAG_INCLUDE, parser);
+            if (!keyboardAttr.hasValue(R.styleable.Keyboard_Include_keyboardLayout)) {
+                throw new ParseException("No keyboardLayout attribute found in <" + TAG_INCLUDE
+                        + "/>", parser);
+            }
             keyboardLayout = keyboardAttr.getResourceId(
                     R.styleable.Keyboard_Include_keyboardLayout, 0);
             if (row != null) {
+                final KeyboardLayoutModel.Element include =
+                        KeyboardLayoutModel.newRowAttributes(keyAttr);
+                mLayoutModel.add(include);
                 // Override current x coordinate.
-                row.updateXPos(keyAttr);
+                row.updateXPos(include.mKeyXPos);
                 // Push current Row attributes and update with new attributes.
-                row.pushRowAttributes(keyAttr);
+                row.pushRowAttributes(include);
             }
         } finally {
             keyboardAttr.recycle();
@@ -472,17 +569,19 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
         XmlParseUtils.checkEndTag(TAG_INCLUDE, parser);
         if (DEBUG) {
             startEndTag("<%s keyboardLayout=%s />",TAG_INCLUDE,
-                    mResources.getResourceEntryName(keyboardLayout));
+                    mKeyboardResources.getResourceEntryName(keyboardLayout));
         }
-        final XmlResourceParser parserForInclude = mResources.getXml(keyboardLayout);
+        final XmlPullParser parserForInclude = mKeyboardResources.openXml(keyboardLayout);
         try {
             parseMerge(parserForInclude, row, skip);
         } finally {
             if (row != null) {
                 // Restore Row attributes.
+                mLayoutModel.add(new KeyboardLayoutModel.Element(
+                        KeyboardLayoutModel.ELEMENT_POP_ROW_ATTRIBUTES));
                 row.popRowAttributes();
             }
-            parserForInclude.close();
+            mKeyboardResources.closeXml(parserForInclude);
         }
     }
 
@@ -569,8 +668,8 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
         if (id == null) {
             return true;
         }
-        final AttributeSet attr = Xml.asAttributeSet(parser);
-        final TypedArray caseAttr = mResources.obtainAttributes(attr, R.styleable.Keyboard_Case);
+        final KeyboardAttributes caseAttr = mKeyboardResources.obtainAttributes(
+                parser, R.styleable.Keyboard_Case);
         if (DEBUG) startTag("<%s>", TAG_CASE);
         try {
             final boolean keyboardLayoutSetMatched = matchString(caseAttr,
@@ -623,39 +722,42 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
         }
     }
 
-    private static boolean matchLocaleCodes(TypedArray caseAttr, final Locale locale) {
+    private static boolean matchLocaleCodes(KeyboardAttributes caseAttr, final Locale locale) {
         return matchString(caseAttr, R.styleable.Keyboard_Case_localeCode, locale.toString());
     }
 
-    private static boolean matchLanguageCodes(TypedArray caseAttr, Locale locale) {
+    private static boolean matchLanguageCodes(KeyboardAttributes caseAttr, Locale locale) {
         return matchString(caseAttr, R.styleable.Keyboard_Case_languageCode, locale.getLanguage());
     }
 
-    private static boolean matchCountryCodes(TypedArray caseAttr, Locale locale) {
+    private static boolean matchCountryCodes(KeyboardAttributes caseAttr, Locale locale) {
         return matchString(caseAttr, R.styleable.Keyboard_Case_countryCode, locale.getCountry());
     }
 
-    private static boolean matchInteger(final TypedArray a, final int index, final int value) {
+    private static boolean matchInteger(final KeyboardAttributes a, final int index,
+            final int value) {
         // If <case> does not have "index" attribute, that means this <case> is wild-card for
         // the attribute.
         return !a.hasValue(index) || a.getInt(index, 0) == value;
     }
 
-    private static boolean matchBoolean(final TypedArray a, final int index, final boolean value) {
+    private static boolean matchBoolean(final KeyboardAttributes a, final int index,
+            final boolean value) {
         // If <case> does not have "index" attribute, that means this <case> is wild-card for
         // the attribute.
         return !a.hasValue(index) || a.getBoolean(index, false) == value;
     }
 
-    private static boolean matchString(final TypedArray a, final int index, final String value) {
+    private static boolean matchString(final KeyboardAttributes a, final int index,
+            final String value) {
         // If <case> does not have "index" attribute, that means this <case> is wild-card for
         // the attribute.
         return !a.hasValue(index)
                 || StringUtils.containsInArray(value, a.getString(index).split("\\|"));
     }
 
-    private static boolean matchTypedValue(final TypedArray a, final int index, final int intValue,
-            final String strValue) {
+    private static boolean matchTypedValue(final KeyboardAttributes a, final int index,
+            final int intValue, final String strValue) {
         // If <case> does not have "index" attribute, that means this <case> is wild-card for
         // the attribute.
         final TypedValue v = a.peekValue(index);
@@ -671,7 +773,7 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
         return false;
     }
 
-    private static boolean isIconDefined(final TypedArray a, final int index,
+    private static boolean isIconDefined(final KeyboardAttributes a, final int index,
             final KeyboardIconsSet iconsSet) {
         if (!a.hasValue(index)) {
             return true;
@@ -696,10 +798,10 @@ public class KeyboardBuilder<KP extends KeyboardParams> {
 
     private void parseKeyStyle(final XmlPullParser parser, final boolean skip)
             throws XmlPullParserException, IOException {
-        final AttributeSet attr = Xml.asAttributeSet(parser);
-        final TypedArray keyStyleAttr = mResources.obtainAttributes(
-                attr, R.styleable.Keyboard_KeyStyle);
-        final TypedArray keyAttrs = mResources.obtainAttributes(attr, R.styleable.Keyboard_Key);
+        final KeyboardAttributes keyStyleAttr = mKeyboardResources.obtainAttributes(
+                parser, R.styleable.Keyboard_KeyStyle);
+        final KeyboardAttributes keyAttrs = mKeyboardResources.obtainAttributes(
+                parser, R.styleable.Keyboard_Key);
         try {
             if (!keyStyleAttr.hasValue(R.styleable.Keyboard_KeyStyle_styleName)) {
                 throw new XmlParseUtils.ParseException("<" + TAG_KEY_STYLE
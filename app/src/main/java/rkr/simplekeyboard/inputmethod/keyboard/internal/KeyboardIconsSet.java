@@ -16,12 +16,13 @@
 
 package rkr.simplekeyboard.inputmethod.keyboard.internal;
 
+import android.content.Context;
 import android.content.res.Resources;
-import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
 import android.util.Log;
 import android.util.SparseIntArray;
 
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
 
 import rkr.simplekeyboard.inputmethod.R;
@@ -81,8 +82,16 @@ public final class KeyboardIconsSet {
     private static int NUM_ICONS = NAMES_AND_ATTR_IDS.length / 2;
     private static final String[] ICON_NAMES = new String[NUM_ICONS];
     private final Drawable[] mIcons = new Drawable[NUM_ICONS];
+    // Separate instances of the icons for the key previews, since the alpha of the icons in mIcons
+    // is changed whenever a key is drawn.
+    private final Drawable[] mPreviewIcons = new Drawable[NUM_ICONS];
     private final int[] mIconResourceIds = new int[NUM_ICONS];
 
+    // The icons only depend on the keyboard theme, so the icons loaded for the current theme are
+    // shared by every keyboard built with it rather than decoded again for each of them.
+    private static WeakReference<Context> sThemeContext;
+    private static KeyboardIconsSet sThemeIconsSet;
+
     static {
         int iconId = ICON_UNDEFINED;
         for (int i = 0; i < NAMES_AND_ATTR_IDS.length; i += 2) {
@@ -97,7 +106,36 @@ public final class KeyboardIconsSet {
         }
     }
 
-    public void loadIcons(final TypedArray keyboardAttrs) {
+    /**
+     * Forget the icons of the current keyboard theme. This should be called when the theme
+     * changes.
+     */
+    public static synchronized void onKeyboardThemeChanged() {
+        sThemeContext = null;
+        sThemeIconsSet = null;
+    }
+
+    /**
+     * Load the icons of a keyboard, or copy them from another keyboard that was built with the
+     * same theme.
+     * @param keyboardAttrs the attributes of the keyboard.
+     * @param themeContext the context of the keyboard theme the attributes were obtained with.
+     */
+    public void loadIcons(final KeyboardAttributes keyboardAttrs, final Context themeContext) {
+        synchronized (KeyboardIconsSet.class) {
+            if (sThemeIconsSet != null && sThemeContext.get() == themeContext) {
+                copyFrom(sThemeIconsSet);
+                return;
+            }
+        }
+        loadIcons(keyboardAttrs, themeContext.getResources());
+        synchronized (KeyboardIconsSet.class) {
+            sThemeContext = new WeakReference<>(themeContext);
+            sThemeIconsSet = this;
+        }
+    }
+
+    private void loadIcons(final KeyboardAttributes keyboardAttrs, final Resources res) {
         final int size = ATTR_ID_TO_ICON_ID.size();
         for (int index = 0; index < size; index++) {
             final int attrId = ATTR_ID_TO_ICON_ID.keyAt(index);
@@ -106,15 +144,22 @@ public final class KeyboardIconsSet {
                 setDefaultBounds(icon);
                 final Integer iconId = ATTR_ID_TO_ICON_ID.get(attrId);
                 mIcons[iconId] = icon;
+                mPreviewIcons[iconId] = newPreviewIcon(icon);
                 mIconResourceIds[iconId] = keyboardAttrs.getResourceId(attrId, 0);
             } catch (Resources.NotFoundException e) {
                 Log.w(TAG, "Drawable resource for icon #"
-                        + keyboardAttrs.getResources().getResourceEntryName(attrId)
+                        + res.getResourceEntryName(attrId)
                         + " not found");
             }
         }
     }
 
+    public void copyFrom(final KeyboardIconsSet other) {
+        System.arraycopy(other.mIcons, 0, mIcons, 0, NUM_ICONS);
+        System.arraycopy(other.mPreviewIcons, 0, mPreviewIcons, 0, NUM_ICONS);
+        System.arraycopy(other.mIconResourceIds, 0, mIconResourceIds, 0, NUM_ICONS);
+    }
+
     private static boolean isValidIconId(final int iconId) {
         return iconId >= 0 && iconId < ICON_NAMES.length;
     }
@@ -138,6 +183,23 @@ public final class KeyboardIconsSet {
         throw new RuntimeException("unknown icon id: " + getIconName(iconId));
     }
 
+    public Drawable getPreviewIconDrawable(final int iconId) {
+        if (isValidIconId(iconId)) {
+            return mPreviewIcons[iconId];
+        }
+        throw new RuntimeException("unknown icon id: " + getIconName(iconId));
+    }
+
+    private static Drawable newPreviewIcon(final Drawable icon) {
+        if (icon == null || icon.getConstantState() == null) {
+            return icon;
+        }
+        // Mutating keeps the alpha of the preview icon from being shared with the original icon.
+        final Drawable previewIcon = icon.getConstantState().newDrawable().mutate();
+        setDefaultBounds(previewIcon);
+        return previewIcon;
+    }
+
     private static void setDefaultBounds(final Drawable icon)  {
         if (icon != null) {
             icon.setBounds(0, 0, icon.getIntrinsicWidth(), icon.getIntrinsicHeight());
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.content.res.Configuration;
+import android.util.TypedValue;
+
+import java.util.ArrayList;
+
+import rkr.simplekeyboard.inputmethod.R;
+import rkr.simplekeyboard.inputmethod.keyboard.Key;
+import rkr.simplekeyboard.inputmethod.latin.utils.ResourceUtils;
+
+/**
+ * The layout of a keyboard independent of its size, which is recorded while the keyboard XML is
+ * parsed.
+ *
+ * The sizes are kept as the resource values they were specified with (fractions of the keyboard
+ * or dimensions), along with the rows, keys and includes in the order they were parsed. This is
+ * enough for the {@link KeyboardBuilder} to build the keyboard again for a different width and
+ * height without parsing the XML. Since the keyboard parsed from the XML is built from these same
+ * values, both produce the same keys.
+ */
+public final class KeyboardLayoutModel {
+    static final int ELEMENT_START_ROW = 0;
+    static final int ELEMENT_END_ROW = 1;
+    static final int ELEMENT_KEY = 2;
+    static final int ELEMENT_PUSH_ROW_ATTRIBUTES = 3;
+    static final int ELEMENT_POP_ROW_ATTRIBUTES = 4;
+    static final int ELEMENT_DEFAULT_ROW_HEIGHT = 5;
+
+    static final int BACKGROUND_TYPE_UNSPECIFIED = -1;
+
+    // Rough size of a recorded element and the key it holds, for the memory usage estimate.
+    private static final int ESTIMATED_BYTES_PER_ELEMENT = 256;
+
+    static final class Element {
+        final int mType;
+        /** The rowHeight attribute of a Row or an include. */
+        TypedValue mRowHeight;
+        /** The keyXPos attribute of a Key, Spacer or an include in a row. */
+        TypedValue mKeyXPos;
+        /** The keyWidth attribute of a Row, Key, Spacer or an include in a row. */
+        TypedValue mKeyWidth;
+        /** The keyLabelFlags attribute of a Row or an include in a row. */
+        int mKeyLabelFlags;
+        /** The backgroundType attribute of a Row or an include in a row. */
+        int mBackgroundType = BACKGROUND_TYPE_UNSPECIFIED;
+        /** The key that was parsed, which holds everything but the key's geometry. */
+        Key mKey;
+
+        Element(final int type) {
+            mType = type;
+        }
+    }
+
+    private Configuration mConfiguration;
+
+    // Keyboard attributes.
+    TypedValue mBonusHeight;
+    TypedValue mTopPadding;
+    TypedValue mBottomPadding;
+    TypedValue mLeftPadding;
+    TypedValue mRightPadding;
+    TypedValue mHorizontalGap;
+    TypedValue mVerticalGap;
+    TypedValue mDefaultKeyWidth;
+    TypedValue mDefaultRowHeight;
+    KeyVisualAttributes mKeyVisualAttributes;
+    int mMoreKeysTemplate;
+    int mMaxMoreKeysKeyboardColumn;
+    KeyboardIconsSet mIconsSet;
+
+    final ArrayList<Element> mElements = new ArrayList<>();
+
+    /**
+     * Copy a value from the attributes of an element. The value returned by
+     * {@link KeyboardAttributes#peekValue} may be reused by the attributes, so it can't be kept.
+     * @param a the attributes.
+     * @param index the index of the attribute.
+     * @return a copy of the value, or null if the attribute isn't specified.
+     */
+    static TypedValue getValue(final KeyboardAttributes a, final int index) {
+        final TypedValue value = a.peekValue(index);
+        if (value == null) {
+            return null;
+        }
+        final TypedValue copy = new TypedValue();
+        copy.setTo(value);
+        return copy;
+    }
+
+    void setKeyboardAttributes(final KeyboardAttributes keyboardAttr,
+            final KeyboardAttributes keyAttr, final Configuration configuration) {
+        mConfiguration = new Configuration(configuration);
+        mBonusHeight = getValue(keyboardAttr, R.styleable.Keyboard_bonusHeight);
+        mTopPadding = getValue(keyboardAttr, R.styleable.Keyboard_keyboardTopPadding);
+        mBottomPadding = getValue(keyboardAttr, R.styleable.Keyboard_keyboardBottomPadding);
+        mLeftPadding = getValue(keyboardAttr, R.styleable.Keyboard_keyboardLeftPadding);
+        mRightPadding = getValue(keyboardAttr, R.styleable.Keyboard_keyboardRightPadding);
+        mHorizontalGap = getValue(keyboardAttr, R.styleable.Keyboard_horizontalGap);
+        mVerticalGap = getValue(keyboardAttr, R.styleable.Keyboard_verticalGap);
+        mDefaultKeyWidth = getValue(keyAttr, R.styleable.Keyboard_Key_keyWidth);
+        mDefaultRowHeight = getValue(keyboardAttr, R.styleable.Keyboard_rowHeight);
+        mKeyVisualAttributes = KeyVisualAttributes.newInstance(keyAttr);
+        mMoreKeysTemplate = keyboardAttr.getResourceId(R.styleable.Keyboard_moreKeysTemplate, 0);
+        mMaxMoreKeysKeyboardColumn = keyAttr.getInt(R.styleable.Keyboard_Key_maxMoreKeysColumn, 5);
+    }
+
+    static Element newRow(final KeyboardAttributes keyboardAttr, final KeyboardAttributes keyAttr) {
+        final Element element = new Element(ELEMENT_START_ROW);
+        element.mRowHeight = getValue(keyboardAttr, R.styleable.Keyboard_rowHeight);
+        element.mKeyWidth = getValue(keyAttr, R.styleable.Keyboard_Key_keyWidth);
+        element.mKeyLabelFlags = keyAttr.getInt(R.styleable.Keyboard_Key_keyLabelFlags, 0);
+        element.mBackgroundType = keyAttr.getInt(R.styleable.Keyboard_Key_backgroundType,
+                BACKGROUND_TYPE_UNSPECIFIED);
+        return element;
+    }
+
+    static Element newRowAttributes(final KeyboardAttributes keyAttr) {
+        final Element element = new Element(ELEMENT_PUSH_ROW_ATTRIBUTES);
+        element.mKeyXPos = getValue(keyAttr, R.styleable.Keyboard_Key_keyXPos);
+        element.mKeyWidth = getValue(keyAttr, R.styleable.Keyboard_Key_keyWidth);
+        element.mKeyLabelFlags = keyAttr.getInt(R.styleable.Keyboard_Key_keyLabelFlags, 0);
+        element.mBackgroundType = keyAttr.getInt(R.styleable.Keyboard_Key_backgroundType,
+                BACKGROUND_TYPE_UNSPECIFIED);
+        return element;
+    }
+
+    static Element newKey(final Key key, final KeyboardAttributes keyAttr) {
+        final Element element = new Element(ELEMENT_KEY);
+        element.mKey = key;
+        element.mKeyXPos = getValue(keyAttr, R.styleable.Keyboard_Key_keyXPos);
+        element.mKeyWidth = getValue(keyAttr, R.styleable.Keyboard_Key_keyWidth);
+        return element;
+    }
+
+    static Element newDefaultRowHeight(final TypedValue rowHeight) {
+        final Element element = new Element(ELEMENT_DEFAULT_ROW_HEIGHT);
+        element.mRowHeight = rowHeight;
+        return element;
+    }
+
+    void add(final Element element) {
+        mElements.add(element);
+    }
+
+    /**
+     * Check whether the layout can be used with a resource configuration, since the resources
+     * for the keyboard may be different for another orientation, density, etc.
+     * @param configuration the current resource configuration.
+     * @return true if the layout was recorded with equivalent resources.
+     */
+    public boolean isValidFor(final Configuration configuration) {
+        return ResourceUtils.hasSameResources(mConfiguration, configuration);
+    }
+
+    public long getEstimatedBytes() {
+        return (long)mElements.size() * ESTIMATED_BYTES_PER_ELEMENT;
+    }
+}
@@ -19,9 +19,8 @@ package rkr.simplekeyboard.inputmethod.keyboard.internal;
 import android.util.SparseIntArray;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import rkr.simplekeyboard.inputmethod.keyboard.Key;
 import rkr.simplekeyboard.inputmethod.keyboard.KeyboardId;
@@ -58,8 +57,13 @@ public class KeyboardParams {
     public int mGridWidth;
     public int mGridHeight;
 
-    // Keys are sorted from top-left to bottom-right order.
-    public final SortedSet<Key> mSortedKeys = new TreeSet<>(ROW_COLUMN_COMPARATOR);
+    // Keys in the order they were added. The keyboard builder adds them row by row from the
+    // top-left, so they rarely need to be sorted. Only one key is kept for each position.
+    private static final int INITIAL_KEYS_CAPACITY = 64;
+    private Key[] mKeys = new Key[INITIAL_KEYS_CAPACITY];
+    private int mKeyCount;
+    // Whether a key was added before or at the same position as the previous key.
+    private boolean mKeysNeedSorting;
     public final ArrayList<Key> mShiftKeys = new ArrayList<>();
     public final ArrayList<Key> mAltCodeKeysWhileTyping = new ArrayList<>();
     public final KeyboardIconsSet mIconsSet = new KeyboardIconsSet();
@@ -67,6 +71,7 @@ public class KeyboardParams {
     public final KeyStylesSet mKeyStyles = new KeyStylesSet(mTextsSet);
 
     private final UniqueKeysCache mUniqueKeysCache;
+    public final MoreKeySpecsCache mMoreKeySpecsCache;
     public boolean mAllowRedundantMoreKeys;
 
     public int mMostCommonKeyHeight = 0;
@@ -85,11 +90,13 @@ public class KeyboardParams {
     };
 
     public KeyboardParams() {
-        this(UniqueKeysCache.NO_CACHE);
+        this(UniqueKeysCache.NO_CACHE, MoreKeySpecsCache.NO_CACHE);
     }
 
-    public KeyboardParams(final UniqueKeysCache keysCache) {
+    public KeyboardParams(final UniqueKeysCache keysCache,
+            final MoreKeySpecsCache moreKeySpecsCache) {
         mUniqueKeysCache = keysCache;
+        mMoreKeySpecsCache = moreKeySpecsCache;
     }
 
     public void onAddKey(final Key newKey) {
@@ -99,7 +106,13 @@ public class KeyboardParams {
             // Ignore zero width {@link Spacer}.
             return;
         }
-        mSortedKeys.add(key);
+        if (mKeyCount > 0 && ROW_COLUMN_COMPARATOR.compare(mKeys[mKeyCount - 1], key) >= 0) {
+            mKeysNeedSorting = true;
+        }
+        if (mKeyCount == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mKeyCount * 2);
+        }
+        mKeys[mKeyCount++] = key;
         if (isSpacer) {
             return;
         }
@@ -112,20 +125,54 @@ public class KeyboardParams {
         }
     }
 
+    /**
+     * Sort the keys from top-left to bottom-right order if they weren't added in that order, and
+     * drop the keys at the same position as an earlier key.
+     */
+    private void sortKeys() {
+        if (!mKeysNeedSorting) {
+            return;
+        }
+        // The sort is stable, so the first key that was added at a position stays first.
+        Arrays.sort(mKeys, 0, mKeyCount, ROW_COLUMN_COMPARATOR);
+        int count = 0;
+        for (int i = 0; i < mKeyCount; i++) {
+            if (count == 0 || ROW_COLUMN_COMPARATOR.compare(mKeys[count - 1], mKeys[i]) != 0) {
+                mKeys[count++] = mKeys[i];
+            }
+        }
+        Arrays.fill(mKeys, count, mKeyCount, null);
+        mKeyCount = count;
+        mKeysNeedSorting = false;
+    }
+
+    /**
+     * Get the keys sorted from top-left to bottom-right order. No keys should be added after
+     * this, since the array is shared with the caller.
+     * @return the sorted keys.
+     */
+    public Key[] getSortedKeys() {
+        sortKeys();
+        if (mKeys.length != mKeyCount) {
+            mKeys = Arrays.copyOf(mKeys, mKeyCount);
+        }
+        return mKeys;
+    }
+
     public void removeRedundantMoreKeys() {
         if (mAllowRedundantMoreKeys) {
             return;
         }
+        sortKeys();
         final MoreKeySpec.LettersOnBaseLayout lettersOnBaseLayout =
                 new MoreKeySpec.LettersOnBaseLayout();
-        for (final Key key : mSortedKeys) {
-            lettersOnBaseLayout.addLetter(key);
+        for (int i = 0; i < mKeyCount; i++) {
+            lettersOnBaseLayout.addLetter(mKeys[i]);
         }
-        final ArrayList<Key> allKeys = new ArrayList<>(mSortedKeys);
-        mSortedKeys.clear();
-        for (final Key key : allKeys) {
-            final Key filteredKey = Key.removeRedundantMoreKeys(key, lettersOnBaseLayout);
-            mSortedKeys.add(mUniqueKeysCache.getUniqueKey(filteredKey));
+        // Filtering the more keys doesn't change the position of the keys, so they stay sorted.
+        for (int i = 0; i < mKeyCount; i++) {
+            final Key filteredKey = Key.removeRedundantMoreKeys(mKeys[i], lettersOnBaseLayout);
+            mKeys[i] = mUniqueKeysCache.getUniqueKey(filteredKey);
         }
     }
 
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.util.DisplayMetrics;
+
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * The resources a keyboard is built from: the XML of its layouts, which the
+ * {@link KeyboardBuilder} reads as XML pull events, and the attributes of their elements.
+ *
+ * @see AndroidKeyboardResources
+ */
+public interface KeyboardResources {
+    /**
+     * Open the XML of a keyboard layout.
+     * @param xmlId the resource id of the layout.
+     * @return a parser positioned at the start of the document, which has to be closed with
+     * {@link #closeXml(XmlPullParser)}.
+     */
+    XmlPullParser openXml(int xmlId);
+
+    void closeXml(XmlPullParser parser);
+
+    /**
+     * Read the attributes of the element at the current position of a parser.
+     * @param parser the parser of a layout opened by {@link #openXml(int)}.
+     * @param attrs the styleable of the attributes to read.
+     * @return the attributes, which have to be recycled.
+     */
+    KeyboardAttributes obtainAttributes(XmlPullParser parser, int[] attrs);
+
+    /**
+     * Read the attributes of the element at the current position of a parser, with the values
+     * that aren't specified by the element taken from the keyboard theme.
+     * @param parser the parser of a layout opened by {@link #openXml(int)}.
+     * @param attrs the styleable of the attributes to read.
+     * @param defStyleAttr the theme attribute of the default style.
+     * @param defStyleRes the default style, used if the theme doesn't define defStyleAttr.
+     * @return the attributes, which have to be recycled.
+     */
+    KeyboardAttributes obtainStyledAttributes(XmlPullParser parser, int[] attrs,
+            int defStyleAttr, int defStyleRes);
+
+    /**
+     * @param resId a resource id.
+     * @return the name of the resource, which is used in log and error messages.
+     */
+    String getResourceEntryName(int resId);
+
+    /**
+     * @return the display metrics that the dimensions of the layouts are converted with.
+     */
+    DisplayMetrics getDisplayMetrics();
+}
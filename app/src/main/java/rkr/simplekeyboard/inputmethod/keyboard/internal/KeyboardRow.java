@@ -16,12 +16,9 @@
 
 package rkr.simplekeyboard.inputmethod.keyboard.internal;
 
-import android.content.res.Resources;
-import android.content.res.TypedArray;
+import android.util.DisplayMetrics;
 import android.util.Log;
-import android.util.Xml;
-
-import org.xmlpull.v1.XmlPullParser;
+import android.util.TypedValue;
 
 import java.util.ArrayDeque;
 
@@ -83,46 +80,44 @@ public final class KeyboardRow {
         public final int mDefaultBackgroundType;
 
         /**
-         * Parse and create key attributes. This constructor is used to parse Row tag.
+         * Create key attributes. This constructor is used for Row tag.
          *
-         * @param keyAttr an attributes array of Row tag.
+         * @param row the attributes of Row tag.
          * @param defaultKeyPaddedWidth a default padded key width.
          * @param keyboardWidth the keyboard width that is required to calculate keyWidth attribute.
          */
-        public RowAttributes(final TypedArray keyAttr, final float defaultKeyPaddedWidth,
-                final float keyboardWidth) {
-            mDefaultKeyPaddedWidth = ResourceUtils.getFraction(keyAttr,
-                    R.styleable.Keyboard_Key_keyWidth, keyboardWidth, defaultKeyPaddedWidth);
-            mDefaultKeyLabelFlags = keyAttr.getInt(R.styleable.Keyboard_Key_keyLabelFlags, 0);
-            mDefaultBackgroundType = keyAttr.getInt(R.styleable.Keyboard_Key_backgroundType,
-                    Key.BACKGROUND_TYPE_NORMAL);
+        public RowAttributes(final KeyboardLayoutModel.Element row,
+                final float defaultKeyPaddedWidth, final float keyboardWidth) {
+            mDefaultKeyPaddedWidth = ResourceUtils.getFraction(row.mKeyWidth, keyboardWidth,
+                    defaultKeyPaddedWidth);
+            mDefaultKeyLabelFlags = row.mKeyLabelFlags;
+            mDefaultBackgroundType =
+                    row.mBackgroundType != KeyboardLayoutModel.BACKGROUND_TYPE_UNSPECIFIED
+                            ? row.mBackgroundType : Key.BACKGROUND_TYPE_NORMAL;
         }
 
         /**
-         * Parse and update key attributes using default attributes. This constructor is used
-         * to parse include tag.
+         * Update key attributes using default attributes. This constructor is used for include
+         * tag.
          *
-         * @param keyAttr an attributes array of include tag.
+         * @param include the attributes of include tag.
          * @param defaultRowAttr default Row attributes.
          * @param keyboardWidth the keyboard width that is required to calculate keyWidth attribute.
          */
-        public RowAttributes(final TypedArray keyAttr, final RowAttributes defaultRowAttr,
-                final float keyboardWidth) {
-            mDefaultKeyPaddedWidth = ResourceUtils.getFraction(keyAttr,
-                    R.styleable.Keyboard_Key_keyWidth, keyboardWidth,
+        public RowAttributes(final KeyboardLayoutModel.Element include,
+                final RowAttributes defaultRowAttr, final float keyboardWidth) {
+            mDefaultKeyPaddedWidth = ResourceUtils.getFraction(include.mKeyWidth, keyboardWidth,
                     defaultRowAttr.mDefaultKeyPaddedWidth);
-            mDefaultKeyLabelFlags = keyAttr.getInt(R.styleable.Keyboard_Key_keyLabelFlags, 0)
-                    | defaultRowAttr.mDefaultKeyLabelFlags;
-            mDefaultBackgroundType = keyAttr.getInt(R.styleable.Keyboard_Key_backgroundType,
-                    defaultRowAttr.mDefaultBackgroundType);
+            mDefaultKeyLabelFlags = include.mKeyLabelFlags | defaultRowAttr.mDefaultKeyLabelFlags;
+            mDefaultBackgroundType =
+                    include.mBackgroundType != KeyboardLayoutModel.BACKGROUND_TYPE_UNSPECIFIED
+                            ? include.mBackgroundType : defaultRowAttr.mDefaultBackgroundType;
         }
     }
 
-    public KeyboardRow(final Resources res, final KeyboardParams params,
-            final XmlPullParser parser, final float y) {
+    public KeyboardRow(final KeyboardResources res, final KeyboardParams params,
+            final KeyboardLayoutModel.Element row, final float y) {
         mParams = params;
-        final TypedArray keyboardAttr = res.obtainAttributes(Xml.asAttributeSet(parser),
-                R.styleable.Keyboard);
         if (y < FLOAT_THRESHOLD) {
             // The top row should use the keyboard's top padding instead of the vertical gap
             mKeyTopPadding = params.mTopPadding;
@@ -131,8 +126,9 @@ public final class KeyboardRow {
             // top and bottom because it is probably more likely for users to click below a key
             mKeyTopPadding = 0;
         }
-        final float baseRowHeight = ResourceUtils.getDimensionOrFraction(keyboardAttr,
-                R.styleable.Keyboard_rowHeight, params.mBaseHeight, params.mDefaultRowHeight);
+        final DisplayMetrics metrics = res.getDisplayMetrics();
+        final float baseRowHeight = ResourceUtils.getDimensionOrFraction(row.mRowHeight,
+                params.mBaseHeight, params.mDefaultRowHeight, metrics);
         float keyHeight = baseRowHeight - params.mVerticalGap;
         final float rowEndY = y + mKeyTopPadding + keyHeight + params.mVerticalGap;
         final float keyboardBottomEdge = params.mOccupiedHeight - params.mBottomPadding;
@@ -156,21 +152,17 @@ public final class KeyboardRow {
             mKeyBottomPadding = params.mVerticalGap;
         }
         mRowHeight = mKeyTopPadding + keyHeight + mKeyBottomPadding;
-        keyboardAttr.recycle();
-        final TypedArray keyAttr = res.obtainAttributes(Xml.asAttributeSet(parser),
-                R.styleable.Keyboard_Key);
         mRowAttributesStack.push(new RowAttributes(
-                keyAttr, params.mDefaultKeyPaddedWidth, params.mBaseWidth));
-        keyAttr.recycle();
+                row, params.mDefaultKeyPaddedWidth, params.mBaseWidth));
 
         mY = y + mKeyTopPadding;
         mLastKeyRightEdge = 0;
         mNextKeyXPos = params.mLeftPadding;
     }
 
-    public void pushRowAttributes(final TypedArray keyAttr) {
+    public void pushRowAttributes(final KeyboardLayoutModel.Element include) {
         final RowAttributes newAttributes = new RowAttributes(
-                keyAttr, mRowAttributesStack.peek(), mParams.mBaseWidth);
+                include, mRowAttributesStack.peek(), mParams.mBaseWidth);
         mRowAttributesStack.push(newAttributes);
     }
 
@@ -192,17 +184,17 @@ public final class KeyboardRow {
 
     /**
      * Update the x position for the next key based on what is set in the keyXPos attribute.
-     * @param keyAttr the Key XML attributes array.
+     * @param keyXPosValue the keyXPos attribute, or null if it isn't specified.
      */
-    public void updateXPos(final TypedArray keyAttr) {
-        if (keyAttr == null || !keyAttr.hasValue(R.styleable.Keyboard_Key_keyXPos)) {
+    public void updateXPos(final TypedValue keyXPosValue) {
+        if (keyXPosValue == null) {
             return;
         }
 
         // keyXPos is based on the base width, but we need to add in the keyboard padding to
         // determine the actual position in the keyboard.
-        final float keyXPos = ResourceUtils.getFraction(keyAttr, R.styleable.Keyboard_Key_keyXPos,
-                mParams.mBaseWidth, 0) + mParams.mLeftPadding;
+        final float keyXPos = ResourceUtils.getFraction(keyXPosValue, mParams.mBaseWidth, 0)
+                + mParams.mLeftPadding;
         // keyXPos shouldn't be less than mLastKeyRightEdge or this key will overlap the adjacent
         // key on its left hand side.
         if (keyXPos + FLOAT_THRESHOLD < mLastKeyRightEdge) {
@@ -221,11 +213,25 @@ public final class KeyboardRow {
      * @param keyAttr the Key XML attributes array.
      * @param isSpacer flag indicating if the key is a spacer.
      */
-    public void setCurrentKey(final TypedArray keyAttr, final boolean isSpacer) {
+    public void setCurrentKey(final KeyboardAttributes keyAttr, final boolean isSpacer) {
+        setCurrentKey(KeyboardLayoutModel.getValue(keyAttr, R.styleable.Keyboard_Key_keyXPos),
+                KeyboardLayoutModel.getValue(keyAttr, R.styleable.Keyboard_Key_keyWidth),
+                isSpacer);
+    }
+
+    /**
+     * Determine the next key's dimensions so they can be retrieved using {@link #getKeyX()},
+     * {@link #getKeyWidth()}, etc.
+     * @param keyXPos the keyXPos attribute of the key, or null if it isn't specified.
+     * @param keyWidthValue the keyWidth attribute of the key, or null if it isn't specified.
+     * @param isSpacer flag indicating if the key is a spacer.
+     */
+    public void setCurrentKey(final TypedValue keyXPos, final TypedValue keyWidthValue,
+            final boolean isSpacer) {
         // Split gap on both sides of key
         final float defaultGap = mParams.mHorizontalGap / 2;
 
-        updateXPos(keyAttr);
+        updateXPos(keyXPos);
         final float keyboardRightEdge = mParams.mOccupiedWidth - mParams.mRightPadding;
         float keyWidth;
         if (isSpacer) {
@@ -233,7 +239,7 @@ public final class KeyboardRow {
                     defaultGap);
             // Spacers don't have horizontal gaps but should include that space in its width
             mCurrentX = mNextKeyXPos - leftGap;
-            keyWidth = getKeyWidth(keyAttr) + leftGap;
+            keyWidth = getKeyWidth(keyWidthValue) + leftGap;
             if (mCurrentX + keyWidth + FLOAT_THRESHOLD < keyboardRightEdge) {
                 // Add what is normally the default right gap for non-edge spacers
                 keyWidth += defaultGap;
@@ -250,7 +256,7 @@ public final class KeyboardRow {
                 // Split the gap between the adjacent keys
                 mCurrentKeyLeftPadding = (mCurrentX - mLastKeyRightEdge) / 2;
             }
-            keyWidth = getKeyWidth(keyAttr);
+            keyWidth = getKeyWidth(keyWidthValue);
             // We can't know this before seeing the next key, so just use the default. The key can
             // be updated later.
             mCurrentKeyRightPadding = defaultGap;
@@ -276,12 +282,8 @@ public final class KeyboardRow {
         mNextKeyXPos = mLastKeyRightEdge + (isSpacer ? defaultGap : mParams.mHorizontalGap);
     }
 
-    private float getKeyWidth(final TypedArray keyAttr) {
-        if (keyAttr == null) {
-            return getDefaultKeyPaddedWidth() - mParams.mHorizontalGap;
-        }
-        final int widthType = ResourceUtils.getEnumValue(keyAttr,
-                R.styleable.Keyboard_Key_keyWidth, KEYWIDTH_NOT_ENUM);
+    private float getKeyWidth(final TypedValue keyWidth) {
+        final int widthType = ResourceUtils.getEnumValue(keyWidth, KEYWIDTH_NOT_ENUM);
         switch (widthType) {
             case KEYWIDTH_FILL_RIGHT:
                 // If keyWidth is fillRight, the actual key width will be determined to fill
@@ -289,8 +291,8 @@ public final class KeyboardRow {
                 final float keyboardRightEdge = mParams.mOccupiedWidth - mParams.mRightPadding;
                 return keyboardRightEdge - mCurrentX;
             default: // KEYWIDTH_NOT_ENUM
-                return ResourceUtils.getFraction(keyAttr, R.styleable.Keyboard_Key_keyWidth,
-                        mParams.mBaseWidth, getDefaultKeyPaddedWidth()) - mParams.mHorizontalGap;
+                return ResourceUtils.getFraction(keyWidth, mParams.mBaseWidth,
+                        getDefaultKeyPaddedWidth()) - mParams.mHorizontalGap;
         }
     }
 
@@ -35,6 +35,11 @@ import rkr.simplekeyboard.inputmethod.latin.utils.RecapitalizeStatus;
  * {@link #onUpdateShiftState(int,int)}, {@link #onResetKeyboardStateToAlphabet(int,int)}.
  *
  * The actions are {@link SwitchActions}'s methods.
+ *
+ * The whole state is packed into a single int, and each input event is packed into another one
+ * along with the parts of its arguments that matter. The transition for a state and an event is
+ * computed by {@link Transition} the first time that it happens and is looked up in a table
+ * afterwards. A switch to the keyboard that was already set is never passed on.
  */
 public final class KeyboardState {
     private static final String TAG = KeyboardState.class.getSimpleName();
@@ -63,31 +68,138 @@ public final class KeyboardState {
         void cancelDoubleTapShiftKeyTimer();
     }
 
-    private final SwitchActions mSwitchActions;
-
-    private ShiftKeyState mShiftKeyState = new ShiftKeyState("Shift");
-    private ModifierKeyState mSymbolKeyState = new ModifierKeyState("Symbol");
-
-    // TODO: Merge {@link #mSwitchState}, {@link #mIsAlphabetMode}, {@link #mAlphabetShiftState},
-    // {@link #mIsSymbolShifted}, {@link #mPrevMainKeyboardWasShiftLocked}, and
-    // {@link #mPrevSymbolsKeyboardWasShifted} into single state variable.
+    // Values of the switch state.
     private static final int SWITCH_STATE_ALPHA = 0;
     private static final int SWITCH_STATE_SYMBOL_BEGIN = 1;
     private static final int SWITCH_STATE_SYMBOL = 2;
     private static final int SWITCH_STATE_MOMENTARY_ALPHA_AND_SYMBOL = 3;
     private static final int SWITCH_STATE_MOMENTARY_SYMBOL_AND_MORE = 4;
-    private int mSwitchState = SWITCH_STATE_ALPHA;
 
-    private boolean mIsAlphabetMode;
-    private AlphabetShiftState mAlphabetShiftState = new AlphabetShiftState();
-    private boolean mIsSymbolShifted;
-    private boolean mPrevMainKeyboardWasShiftLocked;
-    private boolean mPrevSymbolsKeyboardWasShifted;
-    private int mRecapitalizeMode;
+    // Values of the alphabet shift state.
+    private static final int ALPHABET_UNSHIFTED = 0;
+    private static final int ALPHABET_MANUAL_SHIFTED = 1;
+    private static final int ALPHABET_AUTOMATIC_SHIFTED = 2;
+    private static final int ALPHABET_SHIFT_LOCKED = 3;
+    private static final int ALPHABET_SHIFT_LOCK_SHIFTED = 4;
+
+    // Values of the shift and symbol key states. Only the shift key can be pressing on shifted or
+    // ignoring.
+    private static final int MODIFIER_KEY_RELEASING = 0;
+    private static final int MODIFIER_KEY_PRESSING = 1;
+    private static final int MODIFIER_KEY_CHORDING = 2;
+    // Both temporary shifted & shift locked.
+    private static final int MODIFIER_KEY_PRESSING_ON_SHIFTED = 3;
+    private static final int MODIFIER_KEY_IGNORING = 4;
+
+    // Values of the keyboard that was last set through {@link SwitchActions}.
+    private static final int KEYBOARD_NONE = 0;
+    private static final int KEYBOARD_ALPHABET = 1;
+    private static final int KEYBOARD_ALPHABET_MANUAL_SHIFTED = 2;
+    private static final int KEYBOARD_ALPHABET_AUTOMATIC_SHIFTED = 3;
+    private static final int KEYBOARD_ALPHABET_SHIFT_LOCKED = 4;
+    private static final int KEYBOARD_SYMBOLS = 5;
+    private static final int KEYBOARD_SYMBOLS_SHIFTED = 6;
 
+    // Layout of the packed state.
+    private static final int STATE_SWITCH_STATE_SHIFT = 0;
+    private static final int STATE_SWITCH_STATE_MASK = 0x7;
+    private static final int STATE_ALPHABET_MODE = 1 << 3;
+    private static final int STATE_ALPHABET_SHIFT_SHIFT = 4;
+    private static final int STATE_ALPHABET_SHIFT_MASK = 0x7;
+    private static final int STATE_SYMBOL_SHIFTED = 1 << 7;
+    private static final int STATE_PREV_MAIN_KEYBOARD_WAS_SHIFT_LOCKED = 1 << 8;
+    private static final int STATE_PREV_SYMBOLS_KEYBOARD_WAS_SHIFTED = 1 << 9;
+    // The recapitalize mode is stored plus one, so that {@link
+    // RecapitalizeStatus#NOT_A_RECAPITALIZE_MODE} is zero.
+    private static final int STATE_RECAPITALIZE_MODE_SHIFT = 10;
+    private static final int STATE_RECAPITALIZE_MODE_MASK = 0x7;
     // For handling double tap.
-    private boolean mIsInAlphabetUnshiftedFromShifted;
-    private boolean mIsInDoubleTapShiftKey;
+    private static final int STATE_IN_ALPHABET_UNSHIFTED_FROM_SHIFTED = 1 << 13;
+    private static final int STATE_IN_DOUBLE_TAP_SHIFT_KEY = 1 << 14;
+    private static final int STATE_SHIFT_KEY_SHIFT = 15;
+    private static final int STATE_SHIFT_KEY_MASK = 0x7;
+    private static final int STATE_SYMBOL_KEY_SHIFT = 18;
+    private static final int STATE_SYMBOL_KEY_MASK = 0x3;
+    private static final int STATE_KEYBOARD_SHIFT = 20;
+    private static final int STATE_KEYBOARD_MASK = 0x7;
+    private static final int STATE_BITS = 23;
+
+    // Kinds of events.
+    private static final int EVENT_PRESS_SHIFT = 0;
+    private static final int EVENT_PRESS_CAPSLOCK = 1;
+    private static final int EVENT_PRESS_SWITCH_ALPHA_SYMBOL = 2;
+    private static final int EVENT_PRESS_OTHER = 3;
+    private static final int EVENT_RELEASE_SHIFT = 4;
+    private static final int EVENT_RELEASE_CAPSLOCK = 5;
+    private static final int EVENT_RELEASE_SWITCH_ALPHA_SYMBOL = 6;
+    private static final int EVENT_RELEASE_OTHER = 7;
+    private static final int EVENT_CODE_SHIFT = 8;
+    private static final int EVENT_CODE_SWITCH_ALPHA_SYMBOL = 9;
+    private static final int EVENT_CODE_OUTPUT_TEXT = 10;
+    private static final int EVENT_CODE_SPACE = 11;
+    private static final int EVENT_CODE_ENTER = 12;
+    private static final int EVENT_CODE_LETTER = 13;
+    private static final int EVENT_CODE_OTHER = 14;
+    private static final int EVENT_UPDATE_SHIFT_STATE = 15;
+    private static final int EVENT_FINISH_SLIDING_INPUT = 16;
+    private static final int EVENT_RESET_TO_ALPHABET = 17;
+    private static final int EVENT_LOAD_KEYBOARD = 18;
+    private static final int EVENT_RESTORE_KEYBOARD = 19;
+
+    // Values of the auto caps mode of an event, which only matters for being off or for all
+    // characters.
+    private static final int AUTO_CAPS_OFF = 0;
+    private static final int AUTO_CAPS_CHARACTERS = 1;
+    private static final int AUTO_CAPS_OTHER = 2;
+
+    // Layout of the packed event.
+    private static final int EVENT_KIND_MASK = 0x1F;
+    private static final int EVENT_AUTO_CAPS_SHIFT = 5;
+    private static final int EVENT_AUTO_CAPS_MASK = 0x3;
+    private static final int EVENT_RECAPITALIZE_MODE_SHIFT = 7;
+    private static final int EVENT_RECAPITALIZE_MODE_MASK = 0x7;
+    // Whether a key is pressed by a single pointer, or released with sliding.
+    private static final int EVENT_POINTER_FLAG = 1 << 10;
+    private static final int EVENT_IN_DOUBLE_TAP_SHIFT_KEY_TIMEOUT = 1 << 11;
+    // The saved keyboard state of {@link #EVENT_RESTORE_KEYBOARD}.
+    private static final int EVENT_SAVED_ALPHABET_MODE = 1 << 12;
+    private static final int EVENT_SAVED_ALPHABET_SHIFT_LOCKED = 1 << 13;
+    private static final int EVENT_SAVED_SHIFT_MODE_SHIFT = 14;
+    private static final int EVENT_SAVED_SHIFT_MODE_MASK = 0x3;
+    // Set when the rest of an event is performed after calling back
+    // {@link SwitchActions#requestUpdatingShiftState(int,int)}.
+    private static final int EVENT_RESUMED = 1 << 16;
+    private static final int EVENT_BITS = 17;
+
+    // Layout of a transition, above the new state in the lower bits.
+    private static final long TRANSITION_STATE_MASK = (1L << STATE_BITS) - 1;
+    private static final long TRANSITION_CANCEL_DOUBLE_TAP_SHIFT_KEY_TIMER = 1L << 32;
+    private static final long TRANSITION_START_DOUBLE_TAP_SHIFT_KEY_TIMER = 1L << 33;
+    private static final long TRANSITION_REQUEST_UPDATING_SHIFT_STATE = 1L << 34;
+    // The rest of the event is performed once the shift state is updated.
+    private static final long TRANSITION_RESUME_EVENT = 1L << 35;
+    private static final long TRANSITION_ACTIONS_MASK = 0xFL << 32;
+
+    // The transitions that actually happen are a small part of all of them, so they are kept in
+    // an open addressing hash table. Once it fills up, the transitions that aren't in it are
+    // computed every time.
+    private static final int TRANSITION_TABLE_BITS = 10;
+    private static final int TRANSITION_TABLE_SIZE = 1 << TRANSITION_TABLE_BITS;
+    private static final int MAX_TRANSITION_COUNT = TRANSITION_TABLE_SIZE * 3 / 4;
+    // Set in the keys of the table so that zero marks an empty slot.
+    private static final long TRANSITION_KEY_USED = 1L << 63;
+
+    private static final int INITIAL_STATE = (RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE + 1)
+            << STATE_RECAPITALIZE_MODE_SHIFT;
+
+    private final SwitchActions mSwitchActions;
+
+    private int mState = INITIAL_STATE;
+
+    private final long[] mTransitionKeys = new long[TRANSITION_TABLE_SIZE];
+    private final long[] mTransitions = new long[TRANSITION_TABLE_SIZE];
+    private int mTransitionCount;
+    private final Transition mTransition = new Transition();
 
     private final SavedKeyboardState mSavedKeyboardState = new SavedKeyboardState();
 
@@ -112,29 +224,36 @@ public final class KeyboardState {
 
     public KeyboardState(final SwitchActions switchActions) {
         mSwitchActions = switchActions;
-        mRecapitalizeMode = RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE;
     }
 
     public void onLoadKeyboard(final int autoCapsFlags, final int recapitalizeMode) {
         if (DEBUG_EVENT) {
             Log.d(TAG, "onLoadKeyboard: " + stateToString(autoCapsFlags, recapitalizeMode));
         }
-        // Reset alphabet shift state.
-        mAlphabetShiftState.setShiftLocked(false);
-        mPrevMainKeyboardWasShiftLocked = false;
-        mPrevSymbolsKeyboardWasShifted = false;
-        mShiftKeyState.onRelease();
-        mSymbolKeyState.onRelease();
-        if (mSavedKeyboardState.mIsValid) {
-            onRestoreKeyboardState(autoCapsFlags, recapitalizeMode);
-            mSavedKeyboardState.mIsValid = false;
+        // The keyboard is set again from a new layout set, even if it is the same element.
+        mState &= ~(STATE_KEYBOARD_MASK << STATE_KEYBOARD_SHIFT);
+        final SavedKeyboardState state = mSavedKeyboardState;
+        if (state.mIsValid) {
+            if (DEBUG_EVENT) {
+                Log.d(TAG, "onRestoreKeyboardState: saved=" + state
+                        + " " + stateToString(autoCapsFlags, recapitalizeMode));
+            }
+            state.mIsValid = false;
+            int event = EVENT_RESTORE_KEYBOARD
+                    | (state.mShiftMode << EVENT_SAVED_SHIFT_MODE_SHIFT);
+            if (state.mIsAlphabetMode) {
+                event |= EVENT_SAVED_ALPHABET_MODE;
+            }
+            if (state.mIsAlphabetShiftLocked) {
+                event |= EVENT_SAVED_ALPHABET_SHIFT_LOCKED;
+            }
+            performTransition(event, autoCapsFlags, recapitalizeMode);
         } else {
-            // Reset keyboard to alphabet mode.
-            setAlphabetKeyboard(autoCapsFlags, recapitalizeMode);
+            performTransition(EVENT_LOAD_KEYBOARD, autoCapsFlags, recapitalizeMode);
         }
     }
 
-    // Constants for {@link SavedKeyboardState#mShiftMode} and {@link #setShifted(int)}.
+    // Constants for {@link SavedKeyboardState#mShiftMode} and {@link Transition#setShifted(int)}.
     private static final int UNSHIFT = 0;
     private static final int MANUAL_SHIFT = 1;
     private static final int AUTOMATIC_SHIFT = 2;
@@ -142,14 +261,17 @@ public final class KeyboardState {
 
     public void onSaveKeyboardState() {
         final SavedKeyboardState state = mSavedKeyboardState;
-        state.mIsAlphabetMode = mIsAlphabetMode;
-        if (mIsAlphabetMode) {
-            state.mIsAlphabetShiftLocked = mAlphabetShiftState.isShiftLocked();
-            state.mShiftMode = mAlphabetShiftState.isAutomaticShifted() ? AUTOMATIC_SHIFT
-                    : (mAlphabetShiftState.isShiftedOrShiftLocked() ? MANUAL_SHIFT : UNSHIFT);
+        final int currentState = mState;
+        state.mIsAlphabetMode = isAlphabetMode(currentState);
+        if (state.mIsAlphabetMode) {
+            final int alphabetShiftState = getAlphabetShiftState(currentState);
+            state.mIsAlphabetShiftLocked = isShiftLocked(alphabetShiftState);
+            state.mShiftMode = alphabetShiftState == ALPHABET_AUTOMATIC_SHIFTED ? AUTOMATIC_SHIFT
+                    : (alphabetShiftState != ALPHABET_UNSHIFTED ? MANUAL_SHIFT : UNSHIFT);
         } else {
-            state.mIsAlphabetShiftLocked = mPrevMainKeyboardWasShiftLocked;
-            state.mShiftMode = mIsSymbolShifted ? MANUAL_SHIFT : UNSHIFT;
+            state.mIsAlphabetShiftLocked =
+                    (currentState & STATE_PREV_MAIN_KEYBOARD_WAS_SHIFT_LOCKED) != 0;
+            state.mShiftMode = (currentState & STATE_SYMBOL_SHIFTED) != 0 ? MANUAL_SHIFT : UNSHIFT;
         }
         state.mIsValid = true;
         if (DEBUG_EVENT) {
@@ -157,190 +279,614 @@ public final class KeyboardState {
         }
     }
 
-    private void onRestoreKeyboardState(final int autoCapsFlags, final int recapitalizeMode) {
-        final SavedKeyboardState state = mSavedKeyboardState;
+    /**
+     * Forget which keyboard was set last, so that the next switch is passed on even if it is to
+     * the same keyboard, for example to set up a new keyboard view.
+     */
+    public void onKeyboardViewChanged() {
+        mState &= ~(STATE_KEYBOARD_MASK << STATE_KEYBOARD_SHIFT);
+    }
+
+    public void onPressKey(final int code, final boolean isSinglePointer, final int autoCapsFlags,
+            final int recapitalizeMode) {
         if (DEBUG_EVENT) {
-            Log.d(TAG, "onRestoreKeyboardState: saved=" + state
+            Log.d(TAG, "onPressKey: code=" + Constants.printableCode(code)
+                    + " single=" + isSinglePointer
                     + " " + stateToString(autoCapsFlags, recapitalizeMode));
         }
-        mPrevMainKeyboardWasShiftLocked = state.mIsAlphabetShiftLocked;
-        if (state.mIsAlphabetMode) {
-            setAlphabetKeyboard(autoCapsFlags, recapitalizeMode);
-            setShiftLocked(state.mIsAlphabetShiftLocked);
-            if (!state.mIsAlphabetShiftLocked) {
-                setShifted(state.mShiftMode);
+        final int event;
+        if (code == Constants.CODE_SHIFT) {
+            // The double tap shift key timer is only used when the shift key shifts the alphabet
+            // keyboard.
+            final int state = mState;
+            if (isAlphabetMode(state) && getRecapitalizeMode(state)
+                    == RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE
+                    && mSwitchActions.isInDoubleTapShiftKeyTimeout()) {
+                event = EVENT_PRESS_SHIFT | EVENT_IN_DOUBLE_TAP_SHIFT_KEY_TIMEOUT;
+            } else {
+                event = EVENT_PRESS_SHIFT;
             }
-            return;
+        } else if (code == Constants.CODE_CAPSLOCK) {
+            event = EVENT_PRESS_CAPSLOCK;
+        } else if (code == Constants.CODE_SWITCH_ALPHA_SYMBOL) {
+            event = EVENT_PRESS_SWITCH_ALPHA_SYMBOL;
+        } else {
+            event = EVENT_PRESS_OTHER | (isSinglePointer ? EVENT_POINTER_FLAG : 0);
+        }
+        performTransition(event, autoCapsFlags, recapitalizeMode);
+    }
+
+    public void onReleaseKey(final int code, final boolean withSliding, final int autoCapsFlags,
+            final int recapitalizeMode) {
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onReleaseKey: code=" + Constants.printableCode(code)
+                    + " sliding=" + withSliding
+                    + " " + stateToString(autoCapsFlags, recapitalizeMode));
         }
-        // Symbol mode
-        if (state.mShiftMode == MANUAL_SHIFT) {
-            setSymbolsShiftedKeyboard();
+        final int event;
+        if (code == Constants.CODE_SHIFT) {
+            event = EVENT_RELEASE_SHIFT;
+        } else if (code == Constants.CODE_CAPSLOCK) {
+            event = EVENT_RELEASE_CAPSLOCK;
+        } else if (code == Constants.CODE_SWITCH_ALPHA_SYMBOL) {
+            event = EVENT_RELEASE_SWITCH_ALPHA_SYMBOL;
         } else {
-            setSymbolsKeyboard();
+            event = EVENT_RELEASE_OTHER;
+        }
+        performTransition(event | (withSliding ? EVENT_POINTER_FLAG : 0), autoCapsFlags,
+                recapitalizeMode);
+    }
+
+    public void onUpdateShiftState(final int autoCapsFlags, final int recapitalizeMode) {
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onUpdateShiftState: " + stateToString(autoCapsFlags, recapitalizeMode));
+        }
+        performTransition(EVENT_UPDATE_SHIFT_STATE, autoCapsFlags, recapitalizeMode);
+    }
+
+    // TODO: Remove this method. Come up with a more comprehensive way to reset the keyboard layout
+    // when a keyboard layout set doesn't get reloaded in LatinIME.onStartInputViewInternal().
+    public void onResetKeyboardStateToAlphabet(final int autoCapsFlags,
+            final int recapitalizeMode) {
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onResetKeyboardStateToAlphabet: "
+                    + stateToString(autoCapsFlags, recapitalizeMode));
         }
+        performTransition(EVENT_RESET_TO_ALPHABET, autoCapsFlags, recapitalizeMode);
     }
 
-    private void setShifted(final int shiftMode) {
-        if (DEBUG_INTERNAL_ACTION) {
-            Log.d(TAG, "setShifted: shiftMode=" + shiftModeToString(shiftMode) + " " + this);
+    public void onFinishSlidingInput(final int autoCapsFlags, final int recapitalizeMode) {
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onFinishSlidingInput: " + stateToString(autoCapsFlags, recapitalizeMode));
         }
-        if (!mIsAlphabetMode) return;
-        final int prevShiftMode;
-        if (mAlphabetShiftState.isAutomaticShifted()) {
-            prevShiftMode = AUTOMATIC_SHIFT;
-        } else if (mAlphabetShiftState.isManualShifted()) {
-            prevShiftMode = MANUAL_SHIFT;
+        performTransition(EVENT_FINISH_SLIDING_INPUT, autoCapsFlags, recapitalizeMode);
+    }
+
+    public void onEvent(final Event event, final int autoCapsFlags, final int recapitalizeMode) {
+        final int code = event.isFunctionalKeyEvent() ? event.mKeyCode : event.mCodePoint;
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onEvent: code=" + Constants.printableCode(code)
+                    + " " + stateToString(autoCapsFlags, recapitalizeMode));
+        }
+        final int kind;
+        if (code == Constants.CODE_SHIFT) {
+            kind = EVENT_CODE_SHIFT;
+        } else if (code == Constants.CODE_SWITCH_ALPHA_SYMBOL) {
+            kind = EVENT_CODE_SWITCH_ALPHA_SYMBOL;
+        } else if (code == Constants.CODE_OUTPUT_TEXT) {
+            kind = EVENT_CODE_OUTPUT_TEXT;
+        } else if (code == Constants.CODE_SPACE) {
+            kind = EVENT_CODE_SPACE;
+        } else if (code == Constants.CODE_ENTER) {
+            kind = EVENT_CODE_ENTER;
+        } else if (Constants.isLetterCode(code)) {
+            kind = EVENT_CODE_LETTER;
         } else {
-            prevShiftMode = UNSHIFT;
+            kind = EVENT_CODE_OTHER;
         }
-        switch (shiftMode) {
-        case AUTOMATIC_SHIFT:
-            mAlphabetShiftState.setAutomaticShifted();
-            if (shiftMode != prevShiftMode) {
-                mSwitchActions.setAlphabetAutomaticShiftedKeyboard();
+        performTransition(kind, autoCapsFlags, recapitalizeMode);
+    }
+
+    private void performTransition(final int eventKind, final int autoCapsFlags,
+            final int recapitalizeMode) {
+        final int autoCaps;
+        if (autoCapsFlags == Constants.TextUtils.CAP_MODE_OFF) {
+            autoCaps = AUTO_CAPS_OFF;
+        } else if (autoCapsFlags == TextUtils.CAP_MODE_CHARACTERS) {
+            autoCaps = AUTO_CAPS_CHARACTERS;
+        } else {
+            autoCaps = AUTO_CAPS_OTHER;
+        }
+        final int event = eventKind | (autoCaps << EVENT_AUTO_CAPS_SHIFT)
+                | ((recapitalizeMode + 1) << EVENT_RECAPITALIZE_MODE_SHIFT);
+        final int oldState = mState;
+        final long transition = getTransition(oldState, event);
+        final int newState = (int)(transition & TRANSITION_STATE_MASK);
+        if (newState == oldState && (transition & TRANSITION_ACTIONS_MASK) == 0) {
+            return;
+        }
+        mState = newState;
+        if ((transition & TRANSITION_CANCEL_DOUBLE_TAP_SHIFT_KEY_TIMER) != 0) {
+            // Because the double tap shift key timer is to detect two consecutive shift key press,
+            // it should be canceled when a non-shift key is pressed.
+            mSwitchActions.cancelDoubleTapShiftKeyTimer();
+        }
+        if ((transition & TRANSITION_START_DOUBLE_TAP_SHIFT_KEY_TIMER) != 0) {
+            mSwitchActions.startDoubleTapShiftKeyTimer();
+        }
+        final int newKeyboard = getKeyboard(newState);
+        if (newKeyboard != getKeyboard(oldState)) {
+            setKeyboard(newKeyboard);
+        }
+        if ((transition & TRANSITION_REQUEST_UPDATING_SHIFT_STATE) != 0) {
+            // This may call back {@link #onUpdateShiftState(int,int)}, so the rest of the event
+            // is only performed on the state that it results in.
+            mSwitchActions.requestUpdatingShiftState(autoCapsFlags, recapitalizeMode);
+            if ((transition & TRANSITION_RESUME_EVENT) != 0) {
+                performTransition(eventKind | EVENT_RESUMED, autoCapsFlags, recapitalizeMode);
             }
-            break;
-        case MANUAL_SHIFT:
-            mAlphabetShiftState.setShifted(true);
-            if (shiftMode != prevShiftMode) {
-                mSwitchActions.setAlphabetManualShiftedKeyboard();
+        }
+    }
+
+    private long getTransition(final int state, final int event) {
+        final long key = ((long)state << EVENT_BITS) | event | TRANSITION_KEY_USED;
+        final int mask = TRANSITION_TABLE_SIZE - 1;
+        int index = (int)((key ^ (key >>> 29)) * 0x9E3779B97F4A7C15L >>> 40) & mask;
+        while (mTransitionKeys[index] != 0) {
+            if (mTransitionKeys[index] == key) {
+                return mTransitions[index];
             }
+            index = (index + 1) & mask;
+        }
+        final long transition = mTransition.compute(state, event);
+        if (mTransitionCount < MAX_TRANSITION_COUNT) {
+            mTransitionKeys[index] = key;
+            mTransitions[index] = transition;
+            mTransitionCount++;
+        }
+        return transition;
+    }
+
+    private void setKeyboard(final int keyboard) {
+        switch (keyboard) {
+        case KEYBOARD_ALPHABET:
+            mSwitchActions.setAlphabetKeyboard();
             break;
-        case UNSHIFT:
-            mAlphabetShiftState.setShifted(false);
-            if (shiftMode != prevShiftMode) {
-                mSwitchActions.setAlphabetKeyboard();
-            }
+        case KEYBOARD_ALPHABET_MANUAL_SHIFTED:
+            mSwitchActions.setAlphabetManualShiftedKeyboard();
+            break;
+        case KEYBOARD_ALPHABET_AUTOMATIC_SHIFTED:
+            mSwitchActions.setAlphabetAutomaticShiftedKeyboard();
+            break;
+        case KEYBOARD_ALPHABET_SHIFT_LOCKED:
+            mSwitchActions.setAlphabetShiftLockedKeyboard();
+            break;
+        case KEYBOARD_SYMBOLS:
+            mSwitchActions.setSymbolsKeyboard();
             break;
-        case SHIFT_LOCK_SHIFTED:
-            mAlphabetShiftState.setShifted(true);
+        case KEYBOARD_SYMBOLS_SHIFTED:
+            mSwitchActions.setSymbolsShiftedKeyboard();
             break;
         }
     }
 
-    private void setShiftLocked(final boolean shiftLocked) {
-        if (DEBUG_INTERNAL_ACTION) {
-            Log.d(TAG, "setShiftLocked: shiftLocked=" + shiftLocked + " " + this);
+    private static boolean isAlphabetMode(final int state) {
+        return (state & STATE_ALPHABET_MODE) != 0;
+    }
+
+    private static int getSwitchState(final int state) {
+        return (state >>> STATE_SWITCH_STATE_SHIFT) & STATE_SWITCH_STATE_MASK;
+    }
+
+    private static int getAlphabetShiftState(final int state) {
+        return (state >>> STATE_ALPHABET_SHIFT_SHIFT) & STATE_ALPHABET_SHIFT_MASK;
+    }
+
+    private static int getRecapitalizeMode(final int state) {
+        return ((state >>> STATE_RECAPITALIZE_MODE_SHIFT) & STATE_RECAPITALIZE_MODE_MASK) - 1;
+    }
+
+    private static int getShiftKeyState(final int state) {
+        return (state >>> STATE_SHIFT_KEY_SHIFT) & STATE_SHIFT_KEY_MASK;
+    }
+
+    private static int getSymbolKeyState(final int state) {
+        return (state >>> STATE_SYMBOL_KEY_SHIFT) & STATE_SYMBOL_KEY_MASK;
+    }
+
+    private static int getKeyboard(final int state) {
+        return (state >>> STATE_KEYBOARD_SHIFT) & STATE_KEYBOARD_MASK;
+    }
+
+    private static boolean isShiftLocked(final int alphabetShiftState) {
+        return alphabetShiftState == ALPHABET_SHIFT_LOCKED
+                || alphabetShiftState == ALPHABET_SHIFT_LOCK_SHIFTED;
+    }
+
+    private static boolean isManualShifted(final int alphabetShiftState) {
+        return alphabetShiftState == ALPHABET_MANUAL_SHIFTED
+                || alphabetShiftState == ALPHABET_SHIFT_LOCK_SHIFTED;
+    }
+
+    /**
+     * Computes the transitions of the state machine. This works on a single packed state, and
+     * records the actions that the transition takes instead of taking them, so that the result
+     * only depends on the state and the event.
+     */
+    private static final class Transition {
+        private int mState;
+        private long mActions;
+        private int mEvent;
+
+        public long compute(final int state, final int event) {
+            mState = state;
+            mActions = 0;
+            mEvent = event;
+            if ((event & EVENT_RESUMED) != 0) {
+                resume();
+            } else {
+                perform();
+            }
+            return (mState & TRANSITION_STATE_MASK) | mActions;
         }
-        if (!mIsAlphabetMode) return;
-        if (shiftLocked && (!mAlphabetShiftState.isShiftLocked()
-                || mAlphabetShiftState.isShiftLockShifted())) {
-            mSwitchActions.setAlphabetShiftLockedKeyboard();
+
+        private int getAutoCaps() {
+            return (mEvent >>> EVENT_AUTO_CAPS_SHIFT) & EVENT_AUTO_CAPS_MASK;
         }
-        if (!shiftLocked && mAlphabetShiftState.isShiftLocked()) {
-            mSwitchActions.setAlphabetKeyboard();
+
+        private int getEventRecapitalizeMode() {
+            return ((mEvent >>> EVENT_RECAPITALIZE_MODE_SHIFT) & EVENT_RECAPITALIZE_MODE_MASK) - 1;
         }
-        mAlphabetShiftState.setShiftLocked(shiftLocked);
-    }
 
-    private void toggleAlphabetAndSymbols(final int autoCapsFlags, final int recapitalizeMode) {
-        if (DEBUG_INTERNAL_ACTION) {
-            Log.d(TAG, "toggleAlphabetAndSymbols: "
-                    + stateToString(autoCapsFlags, recapitalizeMode));
+        private boolean hasPointerFlag() {
+            return (mEvent & EVENT_POINTER_FLAG) != 0;
         }
-        if (mIsAlphabetMode) {
-            mPrevMainKeyboardWasShiftLocked = mAlphabetShiftState.isShiftLocked();
-            if (mPrevSymbolsKeyboardWasShifted) {
+
+        private boolean isAlphabetMode() {
+            return KeyboardState.isAlphabetMode(mState);
+        }
+
+        private boolean hasFlag(final int flag) {
+            return (mState & flag) != 0;
+        }
+
+        private void setFlag(final int flag, final boolean value) {
+            mState = value ? (mState | flag) : (mState & ~flag);
+        }
+
+        private void setField(final int shift, final int mask, final int value) {
+            mState = (mState & ~(mask << shift)) | (value << shift);
+        }
+
+        private int getAlphabetShiftState() {
+            return KeyboardState.getAlphabetShiftState(mState);
+        }
+
+        private void setAlphabetShiftState(final int alphabetShiftState) {
+            setField(STATE_ALPHABET_SHIFT_SHIFT, STATE_ALPHABET_SHIFT_MASK, alphabetShiftState);
+        }
+
+        private int getShiftKeyState() {
+            return KeyboardState.getShiftKeyState(mState);
+        }
+
+        private void setShiftKeyState(final int shiftKeyState) {
+            setField(STATE_SHIFT_KEY_SHIFT, STATE_SHIFT_KEY_MASK, shiftKeyState);
+        }
+
+        private void setSymbolKeyState(final int symbolKeyState) {
+            setField(STATE_SYMBOL_KEY_SHIFT, STATE_SYMBOL_KEY_MASK, symbolKeyState);
+        }
+
+        private void setSwitchState(final int switchState) {
+            setField(STATE_SWITCH_STATE_SHIFT, STATE_SWITCH_STATE_MASK, switchState);
+        }
+
+        private void setRecapitalizeMode(final int recapitalizeMode) {
+            setField(STATE_RECAPITALIZE_MODE_SHIFT, STATE_RECAPITALIZE_MODE_MASK,
+                    recapitalizeMode + 1);
+        }
+
+        private void setKeyboard(final int keyboard) {
+            setField(STATE_KEYBOARD_SHIFT, STATE_KEYBOARD_MASK, keyboard);
+        }
+
+        // Calls back {@link KeyboardState#onUpdateShiftState(int,int)} after this part of the
+        // transition. When resumeEvent is true, the rest of it is performed by {@link #resume()}
+        // after that.
+        private void requestUpdatingShiftState(final boolean resumeEvent) {
+            mActions |= TRANSITION_REQUEST_UPDATING_SHIFT_STATE;
+            if (resumeEvent) {
+                mActions |= TRANSITION_RESUME_EVENT;
+            }
+        }
+
+        private void perform() {
+            switch (mEvent & EVENT_KIND_MASK) {
+            case EVENT_PRESS_SHIFT:
+                onPressShift();
+                break;
+            case EVENT_PRESS_CAPSLOCK:
+                // Nothing to do here. See {@link #onReleaseKey(int,boolean)}.
+                mActions |= TRANSITION_CANCEL_DOUBLE_TAP_SHIFT_KEY_TIMER;
+                break;
+            case EVENT_PRESS_SWITCH_ALPHA_SYMBOL:
+                mActions |= TRANSITION_CANCEL_DOUBLE_TAP_SHIFT_KEY_TIMER;
+                onPressSymbol();
+                break;
+            case EVENT_PRESS_OTHER:
+                mActions |= TRANSITION_CANCEL_DOUBLE_TAP_SHIFT_KEY_TIMER;
+                onPressOtherKey();
+                break;
+            case EVENT_RELEASE_SHIFT:
+                onReleaseShift();
+                break;
+            case EVENT_RELEASE_CAPSLOCK:
+                setShiftLocked(!KeyboardState.isShiftLocked(getAlphabetShiftState()));
+                break;
+            case EVENT_RELEASE_SWITCH_ALPHA_SYMBOL:
+                onReleaseSymbol();
+                break;
+            case EVENT_UPDATE_SHIFT_STATE:
+                setRecapitalizeMode(getEventRecapitalizeMode());
+                updateAlphabetShiftState();
+                break;
+            case EVENT_FINISH_SLIDING_INPUT:
+                onFinishSlidingInput();
+                break;
+            case EVENT_RESET_TO_ALPHABET:
+                // TODO: Remove this event. Come up with a more comprehensive way to reset the
+                // keyboard layout when a keyboard layout set doesn't get reloaded in
+                // LatinIME.onStartInputViewInternal().
+                if (!isAlphabetMode()) {
+                    toggleAlphabetAndSymbols();
+                }
+                break;
+            case EVENT_LOAD_KEYBOARD:
+            case EVENT_RESTORE_KEYBOARD:
+                onLoadKeyboard();
+                break;
+            case EVENT_RELEASE_OTHER:
+                break;
+            default:
+                onCodeInput();
+                break;
+            }
+        }
+
+        private void resume() {
+            switch (mEvent & EVENT_KIND_MASK) {
+            case EVENT_PRESS_SWITCH_ALPHA_SYMBOL:
+                resumeToggleAlphabetAndSymbols();
+                onSymbolPressed();
+                break;
+            case EVENT_RELEASE_SWITCH_ALPHA_SYMBOL:
+                resumeToggleAlphabetAndSymbols();
+                onSymbolReleased();
+                break;
+            case EVENT_FINISH_SLIDING_INPUT:
+            case EVENT_RESET_TO_ALPHABET:
+                resumeToggleAlphabetAndSymbols();
+                break;
+            case EVENT_CODE_SPACE:
+            case EVENT_CODE_ENTER:
+                resumeToggleAlphabetAndSymbols();
+                onSymbolsEnded();
+                break;
+            case EVENT_RESTORE_KEYBOARD:
+                onAlphabetKeyboardRestored();
+                break;
+            }
+        }
+
+        private void onLoadKeyboard() {
+            // Reset alphabet shift state.
+            setAlphabetShiftState(ALPHABET_UNSHIFTED);
+            setFlag(STATE_PREV_MAIN_KEYBOARD_WAS_SHIFT_LOCKED, false);
+            setFlag(STATE_PREV_SYMBOLS_KEYBOARD_WAS_SHIFTED, false);
+            setShiftKeyState(MODIFIER_KEY_RELEASING);
+            setSymbolKeyState(MODIFIER_KEY_RELEASING);
+            if ((mEvent & EVENT_KIND_MASK) == EVENT_LOAD_KEYBOARD) {
+                // Reset keyboard to alphabet mode.
+                setAlphabetKeyboard(false /* resumeEvent */);
+                return;
+            }
+            final boolean isAlphabetShiftLocked = (mEvent & EVENT_SAVED_ALPHABET_SHIFT_LOCKED) != 0;
+            setFlag(STATE_PREV_MAIN_KEYBOARD_WAS_SHIFT_LOCKED, isAlphabetShiftLocked);
+            if ((mEvent & EVENT_SAVED_ALPHABET_MODE) != 0) {
+                setAlphabetKeyboard(true /* resumeEvent */);
+                return;
+            }
+            // Symbol mode
+            if (getSavedShiftMode() == MANUAL_SHIFT) {
                 setSymbolsShiftedKeyboard();
             } else {
                 setSymbolsKeyboard();
             }
-            mPrevSymbolsKeyboardWasShifted = false;
-        } else {
-            mPrevSymbolsKeyboardWasShifted = mIsSymbolShifted;
-            setAlphabetKeyboard(autoCapsFlags, recapitalizeMode);
-            if (mPrevMainKeyboardWasShiftLocked) {
-                setShiftLocked(true);
+        }
+
+        private int getSavedShiftMode() {
+            return (mEvent >>> EVENT_SAVED_SHIFT_MODE_SHIFT) & EVENT_SAVED_SHIFT_MODE_MASK;
+        }
+
+        private void onAlphabetKeyboardRestored() {
+            final boolean isAlphabetShiftLocked = (mEvent & EVENT_SAVED_ALPHABET_SHIFT_LOCKED) != 0;
+            setShiftLocked(isAlphabetShiftLocked);
+            if (!isAlphabetShiftLocked) {
+                setShifted(getSavedShiftMode());
             }
-            mPrevMainKeyboardWasShiftLocked = false;
         }
-    }
 
-    // TODO: Remove this method. Come up with a more comprehensive way to reset the keyboard layout
-    // when a keyboard layout set doesn't get reloaded in LatinIME.onStartInputViewInternal().
-    private void resetKeyboardStateToAlphabet(final int autoCapsFlags, final int recapitalizeMode) {
-        if (DEBUG_INTERNAL_ACTION) {
-            Log.d(TAG, "resetKeyboardStateToAlphabet: "
-                    + stateToString(autoCapsFlags, recapitalizeMode));
+        private void setShifted(final int shiftMode) {
+            if (DEBUG_INTERNAL_ACTION) {
+                Log.d(TAG, "setShifted: shiftMode=" + shiftModeToString(shiftMode)
+                        + " " + stateToString(mState));
+            }
+            if (!isAlphabetMode()) return;
+            final int alphabetShiftState = getAlphabetShiftState();
+            final int prevShiftMode;
+            if (alphabetShiftState == ALPHABET_AUTOMATIC_SHIFTED) {
+                prevShiftMode = AUTOMATIC_SHIFT;
+            } else if (KeyboardState.isManualShifted(alphabetShiftState)) {
+                prevShiftMode = MANUAL_SHIFT;
+            } else {
+                prevShiftMode = UNSHIFT;
+            }
+            switch (shiftMode) {
+            case AUTOMATIC_SHIFT:
+                setAlphabetShiftState(ALPHABET_AUTOMATIC_SHIFTED);
+                if (shiftMode != prevShiftMode) {
+                    setKeyboard(KEYBOARD_ALPHABET_AUTOMATIC_SHIFTED);
+                }
+                break;
+            case MANUAL_SHIFT:
+                setAlphabetShifted(true);
+                if (shiftMode != prevShiftMode) {
+                    setKeyboard(KEYBOARD_ALPHABET_MANUAL_SHIFTED);
+                }
+                break;
+            case UNSHIFT:
+                setAlphabetShifted(false);
+                if (shiftMode != prevShiftMode) {
+                    setKeyboard(KEYBOARD_ALPHABET);
+                }
+                break;
+            case SHIFT_LOCK_SHIFTED:
+                setAlphabetShifted(true);
+                break;
+            }
         }
-        if (mIsAlphabetMode) return;
 
-        mPrevSymbolsKeyboardWasShifted = mIsSymbolShifted;
-        setAlphabetKeyboard(autoCapsFlags, recapitalizeMode);
-        if (mPrevMainKeyboardWasShiftLocked) {
-            setShiftLocked(true);
+        private void setAlphabetShifted(final boolean shifted) {
+            final int alphabetShiftState = getAlphabetShiftState();
+            if (shifted) {
+                switch (alphabetShiftState) {
+                case ALPHABET_UNSHIFTED:
+                    setAlphabetShiftState(ALPHABET_MANUAL_SHIFTED);
+                    break;
+                case ALPHABET_SHIFT_LOCKED:
+                    setAlphabetShiftState(ALPHABET_SHIFT_LOCK_SHIFTED);
+                    break;
+                }
+            } else {
+                switch (alphabetShiftState) {
+                case ALPHABET_MANUAL_SHIFTED:
+                case ALPHABET_AUTOMATIC_SHIFTED:
+                    setAlphabetShiftState(ALPHABET_UNSHIFTED);
+                    break;
+                case ALPHABET_SHIFT_LOCK_SHIFTED:
+                    setAlphabetShiftState(ALPHABET_SHIFT_LOCKED);
+                    break;
+                }
+            }
         }
-        mPrevMainKeyboardWasShiftLocked = false;
-    }
 
-    private void toggleShiftInSymbols() {
-        if (mIsSymbolShifted) {
-            setSymbolsKeyboard();
-        } else {
-            setSymbolsShiftedKeyboard();
+        private void setShiftLocked(final boolean shiftLocked) {
+            if (DEBUG_INTERNAL_ACTION) {
+                Log.d(TAG, "setShiftLocked: shiftLocked=" + shiftLocked
+                        + " " + stateToString(mState));
+            }
+            if (!isAlphabetMode()) return;
+            final int alphabetShiftState = getAlphabetShiftState();
+            if (shiftLocked && (!KeyboardState.isShiftLocked(alphabetShiftState)
+                    || alphabetShiftState == ALPHABET_SHIFT_LOCK_SHIFTED)) {
+                setKeyboard(KEYBOARD_ALPHABET_SHIFT_LOCKED);
+            }
+            if (!shiftLocked && KeyboardState.isShiftLocked(alphabetShiftState)) {
+                setKeyboard(KEYBOARD_ALPHABET);
+            }
+            if (!shiftLocked) {
+                setAlphabetShiftState(ALPHABET_UNSHIFTED);
+            } else if (!KeyboardState.isShiftLocked(alphabetShiftState)) {
+                setAlphabetShiftState(ALPHABET_SHIFT_LOCKED);
+            }
         }
-    }
 
-    private void setAlphabetKeyboard(final int autoCapsFlags, final int recapitalizeMode) {
-        if (DEBUG_INTERNAL_ACTION) {
-            Log.d(TAG, "setAlphabetKeyboard: " + stateToString(autoCapsFlags, recapitalizeMode));
+        /**
+         * @return whether the rest of the transition has to be resumed after updating the shift
+         * state, by calling {@link #resumeToggleAlphabetAndSymbols()}.
+         */
+        private boolean toggleAlphabetAndSymbols() {
+            if (DEBUG_INTERNAL_ACTION) {
+                Log.d(TAG, "toggleAlphabetAndSymbols: " + stateToString(mState));
+            }
+            if (isAlphabetMode()) {
+                setFlag(STATE_PREV_MAIN_KEYBOARD_WAS_SHIFT_LOCKED,
+                        KeyboardState.isShiftLocked(getAlphabetShiftState()));
+                if (hasFlag(STATE_PREV_SYMBOLS_KEYBOARD_WAS_SHIFTED)) {
+                    setSymbolsShiftedKeyboard();
+                } else {
+                    setSymbolsKeyboard();
+                }
+                setFlag(STATE_PREV_SYMBOLS_KEYBOARD_WAS_SHIFTED, false);
+                return false;
+            }
+            setFlag(STATE_PREV_SYMBOLS_KEYBOARD_WAS_SHIFTED, hasFlag(STATE_SYMBOL_SHIFTED));
+            setAlphabetKeyboard(true /* resumeEvent */);
+            return true;
         }
 
-        mSwitchActions.setAlphabetKeyboard();
-        mIsAlphabetMode = true;
-        mIsSymbolShifted = false;
-        mRecapitalizeMode = RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE;
-        mSwitchState = SWITCH_STATE_ALPHA;
-        mSwitchActions.requestUpdatingShiftState(autoCapsFlags, recapitalizeMode);
-    }
+        private void resumeToggleAlphabetAndSymbols() {
+            if (hasFlag(STATE_PREV_MAIN_KEYBOARD_WAS_SHIFT_LOCKED)) {
+                setShiftLocked(true);
+            }
+            setFlag(STATE_PREV_MAIN_KEYBOARD_WAS_SHIFT_LOCKED, false);
+        }
 
-    private void setSymbolsKeyboard() {
-        if (DEBUG_INTERNAL_ACTION) {
-            Log.d(TAG, "setSymbolsKeyboard");
+        private void toggleShiftInSymbols() {
+            if (hasFlag(STATE_SYMBOL_SHIFTED)) {
+                setSymbolsKeyboard();
+            } else {
+                setSymbolsShiftedKeyboard();
+            }
         }
-        mSwitchActions.setSymbolsKeyboard();
-        mIsAlphabetMode = false;
-        mIsSymbolShifted = false;
-        mRecapitalizeMode = RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE;
-        // Reset alphabet shift state.
-        mAlphabetShiftState.setShiftLocked(false);
-        mSwitchState = SWITCH_STATE_SYMBOL_BEGIN;
-    }
 
-    private void setSymbolsShiftedKeyboard() {
-        if (DEBUG_INTERNAL_ACTION) {
-            Log.d(TAG, "setSymbolsShiftedKeyboard");
+        private void setAlphabetKeyboard(final boolean resumeEvent) {
+            if (DEBUG_INTERNAL_ACTION) {
+                Log.d(TAG, "setAlphabetKeyboard: " + stateToString(mState));
+            }
+            setKeyboard(KEYBOARD_ALPHABET);
+            setFlag(STATE_ALPHABET_MODE, true);
+            setFlag(STATE_SYMBOL_SHIFTED, false);
+            setRecapitalizeMode(RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE);
+            setSwitchState(SWITCH_STATE_ALPHA);
+            requestUpdatingShiftState(resumeEvent);
         }
-        mSwitchActions.setSymbolsShiftedKeyboard();
-        mIsAlphabetMode = false;
-        mIsSymbolShifted = true;
-        mRecapitalizeMode = RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE;
-        // Reset alphabet shift state.
-        mAlphabetShiftState.setShiftLocked(false);
-        mSwitchState = SWITCH_STATE_SYMBOL_BEGIN;
-    }
 
-    public void onPressKey(final int code, final boolean isSinglePointer, final int autoCapsFlags,
-            final int recapitalizeMode) {
-        if (DEBUG_EVENT) {
-            Log.d(TAG, "onPressKey: code=" + Constants.printableCode(code)
-                    + " single=" + isSinglePointer
-                    + " " + stateToString(autoCapsFlags, recapitalizeMode));
+        private void setSymbolsKeyboard() {
+            if (DEBUG_INTERNAL_ACTION) {
+                Log.d(TAG, "setSymbolsKeyboard");
+            }
+            setSymbolsKeyboard(KEYBOARD_SYMBOLS, false /* shifted */);
         }
-        if (code != Constants.CODE_SHIFT) {
-            // Because the double tap shift key timer is to detect two consecutive shift key press,
-            // it should be canceled when a non-shift key is pressed.
-            mSwitchActions.cancelDoubleTapShiftKeyTimer();
+
+        private void setSymbolsShiftedKeyboard() {
+            if (DEBUG_INTERNAL_ACTION) {
+                Log.d(TAG, "setSymbolsShiftedKeyboard");
+            }
+            setSymbolsKeyboard(KEYBOARD_SYMBOLS_SHIFTED, true /* shifted */);
         }
-        if (code == Constants.CODE_SHIFT) {
-            onPressShift();
-        } else if (code == Constants.CODE_CAPSLOCK) {
-            // Nothing to do here. See {@link #onReleaseKey(int,boolean)}.
-        } else if (code == Constants.CODE_SWITCH_ALPHA_SYMBOL) {
-            onPressSymbol(autoCapsFlags, recapitalizeMode);
-        } else {
-            mShiftKeyState.onOtherKeyPressed();
-            mSymbolKeyState.onOtherKeyPressed();
+
+        private void setSymbolsKeyboard(final int keyboard, final boolean shifted) {
+            setKeyboard(keyboard);
+            setFlag(STATE_ALPHABET_MODE, false);
+            setFlag(STATE_SYMBOL_SHIFTED, shifted);
+            setRecapitalizeMode(RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE);
+            // Reset alphabet shift state.
+            setAlphabetShiftState(ALPHABET_UNSHIFTED);
+            setSwitchState(SWITCH_STATE_SYMBOL_BEGIN);
+        }
+
+        private void onPressOtherKey() {
+            final int shiftKeyState = getShiftKeyState();
+            if (shiftKeyState == MODIFIER_KEY_PRESSING) {
+                setShiftKeyState(MODIFIER_KEY_CHORDING);
+            } else if (shiftKeyState == MODIFIER_KEY_PRESSING_ON_SHIFTED) {
+                setShiftKeyState(MODIFIER_KEY_IGNORING);
+            }
+            if (getSymbolKeyState(mState) == MODIFIER_KEY_PRESSING) {
+                setSymbolKeyState(MODIFIER_KEY_CHORDING);
+            }
             // It is required to reset the auto caps state when all of the following conditions
             // are met:
             // 1) two or more fingers are in action
@@ -349,279 +895,259 @@ public final class KeyboardState {
             // As for #3, please note that it's required to check even when the auto caps mode is
             // off because, for example, we may be in the #1 state within the manual temporary
             // shifted mode.
-            if (!isSinglePointer && mIsAlphabetMode
-                    && autoCapsFlags != TextUtils.CAP_MODE_CHARACTERS) {
+            if (!hasPointerFlag() && isAlphabetMode() && getAutoCaps() != AUTO_CAPS_CHARACTERS) {
+                final int alphabetShiftState = getAlphabetShiftState();
                 final boolean needsToResetAutoCaps =
-                        (mAlphabetShiftState.isAutomaticShifted() && !mShiftKeyState.isChording())
-                        || (mAlphabetShiftState.isManualShifted() && mShiftKeyState.isReleasing());
+                        (alphabetShiftState == ALPHABET_AUTOMATIC_SHIFTED
+                                && getShiftKeyState() != MODIFIER_KEY_CHORDING)
+                        || (KeyboardState.isManualShifted(alphabetShiftState)
+                                && getShiftKeyState() == MODIFIER_KEY_RELEASING);
                 if (needsToResetAutoCaps) {
-                    mSwitchActions.setAlphabetKeyboard();
+                    setKeyboard(KEYBOARD_ALPHABET);
                 }
             }
         }
-    }
 
-    public void onReleaseKey(final int code, final boolean withSliding, final int autoCapsFlags,
-            final int recapitalizeMode) {
-        if (DEBUG_EVENT) {
-            Log.d(TAG, "onReleaseKey: code=" + Constants.printableCode(code)
-                    + " sliding=" + withSliding
-                    + " " + stateToString(autoCapsFlags, recapitalizeMode));
-        }
-        if (code == Constants.CODE_SHIFT) {
-            onReleaseShift(withSliding, autoCapsFlags, recapitalizeMode);
-        } else if (code == Constants.CODE_CAPSLOCK) {
-            setShiftLocked(!mAlphabetShiftState.isShiftLocked());
-        } else if (code == Constants.CODE_SWITCH_ALPHA_SYMBOL) {
-            onReleaseSymbol(withSliding, autoCapsFlags, recapitalizeMode);
+        private void onPressSymbol() {
+            if (toggleAlphabetAndSymbols()) {
+                return;
+            }
+            onSymbolPressed();
         }
-    }
 
-    private void onPressSymbol(final int autoCapsFlags,
-            final int recapitalizeMode) {
-        toggleAlphabetAndSymbols(autoCapsFlags, recapitalizeMode);
-        mSymbolKeyState.onPress();
-        mSwitchState = SWITCH_STATE_MOMENTARY_ALPHA_AND_SYMBOL;
-    }
-
-    private void onReleaseSymbol(final boolean withSliding, final int autoCapsFlags,
-            final int recapitalizeMode) {
-        if (mSymbolKeyState.isChording()) {
-            // Switch back to the previous keyboard mode if the user chords the mode change key and
-            // another key, then releases the mode change key.
-            toggleAlphabetAndSymbols(autoCapsFlags, recapitalizeMode);
-        } else if (!withSliding) {
-            // If the mode change key is being released without sliding, we should forget the
-            // previous symbols keyboard shift state and simply switch back to symbols layout
-            // (never symbols shifted) next time the mode gets changed to symbols layout.
-            mPrevSymbolsKeyboardWasShifted = false;
+        private void onSymbolPressed() {
+            setSymbolKeyState(MODIFIER_KEY_PRESSING);
+            setSwitchState(SWITCH_STATE_MOMENTARY_ALPHA_AND_SYMBOL);
         }
-        mSymbolKeyState.onRelease();
-    }
 
-    public void onUpdateShiftState(final int autoCapsFlags, final int recapitalizeMode) {
-        if (DEBUG_EVENT) {
-            Log.d(TAG, "onUpdateShiftState: " + stateToString(autoCapsFlags, recapitalizeMode));
+        private void onReleaseSymbol() {
+            if (getSymbolKeyState(mState) == MODIFIER_KEY_CHORDING) {
+                // Switch back to the previous keyboard mode if the user chords the mode change key
+                // and another key, then releases the mode change key.
+                if (toggleAlphabetAndSymbols()) {
+                    return;
+                }
+            } else if (!hasPointerFlag()) {
+                // If the mode change key is being released without sliding, we should forget the
+                // previous symbols keyboard shift state and simply switch back to symbols layout
+                // (never symbols shifted) next time the mode gets changed to symbols layout.
+                setFlag(STATE_PREV_SYMBOLS_KEYBOARD_WAS_SHIFTED, false);
+            }
+            onSymbolReleased();
         }
-        mRecapitalizeMode = recapitalizeMode;
-        updateAlphabetShiftState(autoCapsFlags, recapitalizeMode);
-    }
 
-    // TODO: Remove this method. Come up with a more comprehensive way to reset the keyboard layout
-    // when a keyboard layout set doesn't get reloaded in LatinIME.onStartInputViewInternal().
-    public void onResetKeyboardStateToAlphabet(final int autoCapsFlags,
-            final int recapitalizeMode) {
-        if (DEBUG_EVENT) {
-            Log.d(TAG, "onResetKeyboardStateToAlphabet: "
-                    + stateToString(autoCapsFlags, recapitalizeMode));
+        private void onSymbolReleased() {
+            setSymbolKeyState(MODIFIER_KEY_RELEASING);
         }
-        resetKeyboardStateToAlphabet(autoCapsFlags, recapitalizeMode);
-    }
 
-    private void updateShiftStateForRecapitalize(final int recapitalizeMode) {
-        switch (recapitalizeMode) {
-        case RecapitalizeStatus.CAPS_MODE_ALL_UPPER:
-            setShifted(SHIFT_LOCK_SHIFTED);
-            break;
-        case RecapitalizeStatus.CAPS_MODE_FIRST_WORD_UPPER:
-            setShifted(AUTOMATIC_SHIFT);
-            break;
-        case RecapitalizeStatus.CAPS_MODE_ALL_LOWER:
-        case RecapitalizeStatus.CAPS_MODE_ORIGINAL_MIXED_CASE:
-        default:
-            setShifted(UNSHIFT);
+        private void updateShiftStateForRecapitalize(final int recapitalizeMode) {
+            switch (recapitalizeMode) {
+            case RecapitalizeStatus.CAPS_MODE_ALL_UPPER:
+                setShifted(SHIFT_LOCK_SHIFTED);
+                break;
+            case RecapitalizeStatus.CAPS_MODE_FIRST_WORD_UPPER:
+                setShifted(AUTOMATIC_SHIFT);
+                break;
+            case RecapitalizeStatus.CAPS_MODE_ALL_LOWER:
+            case RecapitalizeStatus.CAPS_MODE_ORIGINAL_MIXED_CASE:
+            default:
+                setShifted(UNSHIFT);
+            }
         }
-    }
 
-    private void updateAlphabetShiftState(final int autoCapsFlags, final int recapitalizeMode) {
-        if (!mIsAlphabetMode) return;
-        if (RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE != recapitalizeMode) {
-            // We are recapitalizing. Match the keyboard to the current recapitalize state.
-            updateShiftStateForRecapitalize(recapitalizeMode);
-            return;
-        }
-        if (!mShiftKeyState.isReleasing()) {
-            // Ignore update shift state event while the shift key is being pressed (including
-            // chording).
-            return;
-        }
-        if (!mAlphabetShiftState.isShiftLocked() && !mShiftKeyState.isIgnoring()) {
-            if (mShiftKeyState.isReleasing() && autoCapsFlags != Constants.TextUtils.CAP_MODE_OFF) {
+        private void updateAlphabetShiftState() {
+            if (!isAlphabetMode()) return;
+            final int recapitalizeMode = getEventRecapitalizeMode();
+            if (RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE != recapitalizeMode) {
+                // We are recapitalizing. Match the keyboard to the current recapitalize state.
+                updateShiftStateForRecapitalize(recapitalizeMode);
+                return;
+            }
+            if (getShiftKeyState() != MODIFIER_KEY_RELEASING) {
+                // Ignore update shift state event while the shift key is being pressed (including
+                // chording).
+                return;
+            }
+            if (!KeyboardState.isShiftLocked(getAlphabetShiftState())) {
                 // Only when shift key is releasing, automatic temporary upper case will be set.
-                setShifted(AUTOMATIC_SHIFT);
-            } else {
-                setShifted(mShiftKeyState.isChording() ? MANUAL_SHIFT : UNSHIFT);
+                setShifted(getAutoCaps() != AUTO_CAPS_OFF ? AUTOMATIC_SHIFT : UNSHIFT);
             }
         }
-    }
 
-    private void onPressShift() {
-        // If we are recapitalizing, we don't do any of the normal processing, including
-        // importantly the double tap timer.
-        if (RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE != mRecapitalizeMode) {
-            return;
-        }
-        if (mIsAlphabetMode) {
-            mIsInDoubleTapShiftKey = mSwitchActions.isInDoubleTapShiftKeyTimeout();
-            if (!mIsInDoubleTapShiftKey) {
-                // This is first tap.
-                mSwitchActions.startDoubleTapShiftKeyTimer();
+        private void onPressShift() {
+            // If we are recapitalizing, we don't do any of the normal processing, including
+            // importantly the double tap timer.
+            if (RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE != getRecapitalizeMode(mState)) {
+                return;
             }
-            if (mIsInDoubleTapShiftKey) {
-                if (mAlphabetShiftState.isManualShifted() || mIsInAlphabetUnshiftedFromShifted) {
-                    // Shift key has been double tapped while in manual shifted or automatic
-                    // shifted state.
-                    setShiftLocked(true);
-                } else {
-                    // Shift key has been double tapped while in normal state. This is the second
-                    // tap to disable shift locked state, so just ignore this.
+            if (isAlphabetMode()) {
+                final boolean isInDoubleTapShiftKey =
+                        (mEvent & EVENT_IN_DOUBLE_TAP_SHIFT_KEY_TIMEOUT) != 0;
+                setFlag(STATE_IN_DOUBLE_TAP_SHIFT_KEY, isInDoubleTapShiftKey);
+                final int alphabetShiftState = getAlphabetShiftState();
+                if (isInDoubleTapShiftKey) {
+                    if (KeyboardState.isManualShifted(alphabetShiftState)
+                            || hasFlag(STATE_IN_ALPHABET_UNSHIFTED_FROM_SHIFTED)) {
+                        // Shift key has been double tapped while in manual shifted or automatic
+                        // shifted state.
+                        setShiftLocked(true);
+                    } else {
+                        // Shift key has been double tapped while in normal state. This is the
+                        // second tap to disable shift locked state, so just ignore this.
+                    }
+                    return;
                 }
-            } else {
-                if (mAlphabetShiftState.isShiftLocked()) {
+                // This is first tap.
+                mActions |= TRANSITION_START_DOUBLE_TAP_SHIFT_KEY_TIMER;
+                if (KeyboardState.isShiftLocked(alphabetShiftState)) {
                     // Shift key is pressed while shift locked state, we will treat this state as
                     // shift lock shifted state and mark as if shift key pressed while normal
                     // state.
                     setShifted(SHIFT_LOCK_SHIFTED);
-                    mShiftKeyState.onPress();
-                } else if (mAlphabetShiftState.isAutomaticShifted()) {
+                    setShiftKeyState(MODIFIER_KEY_PRESSING);
+                } else if (alphabetShiftState == ALPHABET_AUTOMATIC_SHIFTED) {
                     // Shift key pressed while automatic shifted isn't considered a manual shift
                     // since it doesn't change the keyboard into a shifted state.
-                    mShiftKeyState.onPress();
-                } else if (mAlphabetShiftState.isShiftedOrShiftLocked()) {
+                    setShiftKeyState(MODIFIER_KEY_PRESSING);
+                } else if (alphabetShiftState != ALPHABET_UNSHIFTED) {
                     // In manual shifted state, we just record shift key has been pressing while
                     // shifted state.
-                    mShiftKeyState.onPressOnShifted();
+                    setShiftKeyState(MODIFIER_KEY_PRESSING_ON_SHIFTED);
                 } else {
                     // In base layout, chording or manual shifted mode is started.
                     setShifted(MANUAL_SHIFT);
-                    mShiftKeyState.onPress();
+                    setShiftKeyState(MODIFIER_KEY_PRESSING);
                 }
+            } else {
+                // In symbol mode, just toggle symbol and symbol more keyboard.
+                toggleShiftInSymbols();
+                setSwitchState(SWITCH_STATE_MOMENTARY_SYMBOL_AND_MORE);
+                setShiftKeyState(MODIFIER_KEY_PRESSING);
             }
-        } else {
-            // In symbol mode, just toggle symbol and symbol more keyboard.
-            toggleShiftInSymbols();
-            mSwitchState = SWITCH_STATE_MOMENTARY_SYMBOL_AND_MORE;
-            mShiftKeyState.onPress();
         }
-    }
 
-    private void onReleaseShift(final boolean withSliding, final int autoCapsFlags,
-            final int recapitalizeMode) {
-        if (RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE != mRecapitalizeMode) {
-            // We are recapitalizing. We should match the keyboard state to the recapitalize
-            // state in priority.
-            updateShiftStateForRecapitalize(mRecapitalizeMode);
-        } else if (mIsAlphabetMode) {
-            final boolean isShiftLocked = mAlphabetShiftState.isShiftLocked();
-            mIsInAlphabetUnshiftedFromShifted = false;
-            if (mIsInDoubleTapShiftKey) {
-                // Double tap shift key has been handled in {@link #onPressShift}, so that just
-                // ignore this release shift key here.
-                mIsInDoubleTapShiftKey = false;
-            } else if (mShiftKeyState.isChording()) {
-                if (mAlphabetShiftState.isShiftLockShifted()) {
-                    // After chording input while shift locked state.
-                    setShiftLocked(true);
-                } else {
-                    // After chording input while normal state.
+        private void onReleaseShift() {
+            final int recapitalizeMode = getRecapitalizeMode(mState);
+            final boolean withSliding = hasPointerFlag();
+            if (RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE != recapitalizeMode) {
+                // We are recapitalizing. We should match the keyboard state to the recapitalize
+                // state in priority.
+                updateShiftStateForRecapitalize(recapitalizeMode);
+            } else if (isAlphabetMode()) {
+                final int alphabetShiftState = getAlphabetShiftState();
+                final int shiftKeyState = getShiftKeyState();
+                final boolean isShiftLocked = KeyboardState.isShiftLocked(alphabetShiftState);
+                setFlag(STATE_IN_ALPHABET_UNSHIFTED_FROM_SHIFTED, false);
+                if (hasFlag(STATE_IN_DOUBLE_TAP_SHIFT_KEY)) {
+                    // Double tap shift key has been handled in {@link #onPressShift}, so that just
+                    // ignore this release shift key here.
+                    setFlag(STATE_IN_DOUBLE_TAP_SHIFT_KEY, false);
+                } else if (shiftKeyState == MODIFIER_KEY_CHORDING) {
+                    if (alphabetShiftState == ALPHABET_SHIFT_LOCK_SHIFTED) {
+                        // After chording input while shift locked state.
+                        setShiftLocked(true);
+                    } else {
+                        // After chording input while normal state.
+                        setShifted(UNSHIFT);
+                    }
+                    // After chording input, automatic shift state may have been changed depending
+                    // on what characters were input.
+                    setShiftKeyState(MODIFIER_KEY_RELEASING);
+                    requestUpdatingShiftState(false /* resumeEvent */);
+                    return;
+                } else if (isShiftLocked && alphabetShiftState != ALPHABET_SHIFT_LOCK_SHIFTED
+                        && (shiftKeyState == MODIFIER_KEY_PRESSING
+                                || shiftKeyState == MODIFIER_KEY_PRESSING_ON_SHIFTED)
+                        && !withSliding) {
+                    // Shift has been long pressed, ignore this release.
+                } else if (isShiftLocked && shiftKeyState != MODIFIER_KEY_IGNORING
+                        && !withSliding) {
+                    // Shift has been pressed without chording while shift locked state.
+                    setShiftLocked(false);
+                } else if (alphabetShiftState != ALPHABET_UNSHIFTED
+                        && shiftKeyState == MODIFIER_KEY_PRESSING_ON_SHIFTED && !withSliding) {
+                    // Shift has been pressed without chording while shifted state.
                     setShifted(UNSHIFT);
+                    setFlag(STATE_IN_ALPHABET_UNSHIFTED_FROM_SHIFTED, true);
+                } else if (alphabetShiftState == ALPHABET_AUTOMATIC_SHIFTED
+                        && shiftKeyState == MODIFIER_KEY_PRESSING && !withSliding) {
+                    // Shift has been pressed without chording while automatic shifted
+                    setShifted(UNSHIFT);
+                    setFlag(STATE_IN_ALPHABET_UNSHIFTED_FROM_SHIFTED, true);
+                }
+            } else {
+                // In symbol mode, switch back to the previous keyboard mode if the user chords the
+                // shift key and another key, then releases the shift key.
+                if (getShiftKeyState() == MODIFIER_KEY_CHORDING) {
+                    toggleShiftInSymbols();
                 }
-                // After chording input, automatic shift state may have been changed depending on
-                // what characters were input.
-                mShiftKeyState.onRelease();
-                mSwitchActions.requestUpdatingShiftState(autoCapsFlags, recapitalizeMode);
-                return;
-            } else if (isShiftLocked && !mAlphabetShiftState.isShiftLockShifted()
-                    && (mShiftKeyState.isPressing() || mShiftKeyState.isPressingOnShifted())
-                    && !withSliding) {
-                // Shift has been long pressed, ignore this release.
-            } else if (isShiftLocked && !mShiftKeyState.isIgnoring() && !withSliding) {
-                // Shift has been pressed without chording while shift locked state.
-                setShiftLocked(false);
-            } else if (mAlphabetShiftState.isShiftedOrShiftLocked()
-                    && mShiftKeyState.isPressingOnShifted() && !withSliding) {
-                // Shift has been pressed without chording while shifted state.
-                setShifted(UNSHIFT);
-                mIsInAlphabetUnshiftedFromShifted = true;
-            } else if (mAlphabetShiftState.isAutomaticShifted() && mShiftKeyState.isPressing()
-                    && !withSliding) {
-                // Shift has been pressed without chording while automatic shifted
-                setShifted(UNSHIFT);
-                mIsInAlphabetUnshiftedFromShifted = true;
             }
-        } else {
-            // In symbol mode, switch back to the previous keyboard mode if the user chords the
-            // shift key and another key, then releases the shift key.
-            if (mShiftKeyState.isChording()) {
+            setShiftKeyState(MODIFIER_KEY_RELEASING);
+        }
+
+        private void onFinishSlidingInput() {
+            // Switch back to the previous keyboard mode if the user cancels sliding input.
+            switch (getSwitchState(mState)) {
+            case SWITCH_STATE_MOMENTARY_ALPHA_AND_SYMBOL:
+                toggleAlphabetAndSymbols();
+                break;
+            case SWITCH_STATE_MOMENTARY_SYMBOL_AND_MORE:
                 toggleShiftInSymbols();
+                break;
             }
         }
-        mShiftKeyState.onRelease();
-    }
 
-    public void onFinishSlidingInput(final int autoCapsFlags, final int recapitalizeMode) {
-        if (DEBUG_EVENT) {
-            Log.d(TAG, "onFinishSlidingInput: " + stateToString(autoCapsFlags, recapitalizeMode));
-        }
-        // Switch back to the previous keyboard mode if the user cancels sliding input.
-        switch (mSwitchState) {
-        case SWITCH_STATE_MOMENTARY_ALPHA_AND_SYMBOL:
-            toggleAlphabetAndSymbols(autoCapsFlags, recapitalizeMode);
-            break;
-        case SWITCH_STATE_MOMENTARY_SYMBOL_AND_MORE:
-            toggleShiftInSymbols();
-            break;
+        private void onCodeInput() {
+            final int kind = mEvent & EVENT_KIND_MASK;
+            switch (getSwitchState(mState)) {
+            case SWITCH_STATE_MOMENTARY_ALPHA_AND_SYMBOL:
+                if (kind == EVENT_CODE_SWITCH_ALPHA_SYMBOL) {
+                    // Detected only the mode change key has been pressed, and then released.
+                    if (isAlphabetMode()) {
+                        setSwitchState(SWITCH_STATE_ALPHA);
+                    } else {
+                        setSwitchState(SWITCH_STATE_SYMBOL_BEGIN);
+                    }
+                }
+                break;
+            case SWITCH_STATE_MOMENTARY_SYMBOL_AND_MORE:
+                if (kind == EVENT_CODE_SHIFT) {
+                    // Detected only the shift key has been pressed on symbol layout, and then
+                    // released.
+                    setSwitchState(SWITCH_STATE_SYMBOL_BEGIN);
+                }
+                break;
+            case SWITCH_STATE_SYMBOL_BEGIN:
+                if (kind == EVENT_CODE_LETTER || kind == EVENT_CODE_OUTPUT_TEXT) {
+                    setSwitchState(SWITCH_STATE_SYMBOL);
+                }
+                break;
+            case SWITCH_STATE_SYMBOL:
+                // Switch back to alpha keyboard mode if user types one or more non-space/enter
+                // characters followed by a space/enter.
+                if (kind == EVENT_CODE_SPACE || kind == EVENT_CODE_ENTER) {
+                    if (toggleAlphabetAndSymbols()) {
+                        return;
+                    }
+                    onSymbolsEnded();
+                    return;
+                }
+                break;
+            }
+            onCodeInputEnded();
         }
-    }
 
-    private static boolean isSpaceOrEnter(final int c) {
-        return c == Constants.CODE_SPACE || c == Constants.CODE_ENTER;
-    }
-
-    public void onEvent(final Event event, final int autoCapsFlags, final int recapitalizeMode) {
-        final int code = event.isFunctionalKeyEvent() ? event.mKeyCode : event.mCodePoint;
-        if (DEBUG_EVENT) {
-            Log.d(TAG, "onEvent: code=" + Constants.printableCode(code)
-                    + " " + stateToString(autoCapsFlags, recapitalizeMode));
+        private void onSymbolsEnded() {
+            setFlag(STATE_PREV_SYMBOLS_KEYBOARD_WAS_SHIFTED, false);
+            onCodeInputEnded();
         }
 
-        switch (mSwitchState) {
-        case SWITCH_STATE_MOMENTARY_ALPHA_AND_SYMBOL:
-            if (code == Constants.CODE_SWITCH_ALPHA_SYMBOL) {
-                // Detected only the mode change key has been pressed, and then released.
-                if (mIsAlphabetMode) {
-                    mSwitchState = SWITCH_STATE_ALPHA;
-                } else {
-                    mSwitchState = SWITCH_STATE_SYMBOL_BEGIN;
-                }
-            }
-            break;
-        case SWITCH_STATE_MOMENTARY_SYMBOL_AND_MORE:
-            if (code == Constants.CODE_SHIFT) {
-                // Detected only the shift key has been pressed on symbol layout, and then
-                // released.
-                mSwitchState = SWITCH_STATE_SYMBOL_BEGIN;
+        private void onCodeInputEnded() {
+            // If the code is a letter, update keyboard shift state.
+            final int kind = mEvent & EVENT_KIND_MASK;
+            if (kind == EVENT_CODE_LETTER || kind == EVENT_CODE_SPACE) {
+                updateAlphabetShiftState();
             }
-            break;
-        case SWITCH_STATE_SYMBOL_BEGIN:
-            if (!isSpaceOrEnter(code) && (Constants.isLetterCode(code)
-                    || code == Constants.CODE_OUTPUT_TEXT)) {
-                mSwitchState = SWITCH_STATE_SYMBOL;
-            }
-            break;
-        case SWITCH_STATE_SYMBOL:
-            // Switch back to alpha keyboard mode if user types one or more non-space/enter
-            // characters followed by a space/enter.
-            if (isSpaceOrEnter(code)) {
-                toggleAlphabetAndSymbols(autoCapsFlags, recapitalizeMode);
-                mPrevSymbolsKeyboardWasShifted = false;
-            }
-            break;
-        }
-
-        // If the code is a letter, update keyboard shift state.
-        if (Constants.isLetterCode(code)) {
-            updateAlphabetShiftState(autoCapsFlags, recapitalizeMode);
         }
     }
 
@@ -645,13 +1171,40 @@ public final class KeyboardState {
         }
     }
 
+    private static String alphabetShiftStateToString(final int alphabetShiftState) {
+        switch (alphabetShiftState) {
+        case ALPHABET_UNSHIFTED: return "UNSHIFTED";
+        case ALPHABET_MANUAL_SHIFTED: return "MANUAL_SHIFTED";
+        case ALPHABET_AUTOMATIC_SHIFTED: return "AUTOMATIC_SHIFTED";
+        case ALPHABET_SHIFT_LOCKED: return "SHIFT_LOCKED";
+        case ALPHABET_SHIFT_LOCK_SHIFTED: return "SHIFT_LOCK_SHIFTED";
+        default: return "UNKNOWN";
+        }
+    }
+
+    private static String modifierKeyStateToString(final int modifierKeyState) {
+        switch (modifierKeyState) {
+        case MODIFIER_KEY_RELEASING: return "RELEASING";
+        case MODIFIER_KEY_PRESSING: return "PRESSING";
+        case MODIFIER_KEY_CHORDING: return "CHORDING";
+        case MODIFIER_KEY_PRESSING_ON_SHIFTED: return "PRESSING_ON_SHIFTED";
+        case MODIFIER_KEY_IGNORING: return "IGNORING";
+        default: return "UNKNOWN";
+        }
+    }
+
+    private static String stateToString(final int state) {
+        return "[keyboard=" + (isAlphabetMode(state)
+                ? alphabetShiftStateToString(getAlphabetShiftState(state))
+                : ((state & STATE_SYMBOL_SHIFTED) != 0 ? "SYMBOLS_SHIFTED" : "SYMBOLS"))
+                + " shift=" + modifierKeyStateToString(getShiftKeyState(state))
+                + " symbol=" + modifierKeyStateToString(getSymbolKeyState(state))
+                + " switch=" + switchStateToString(getSwitchState(state)) + "]";
+    }
+
     @Override
     public String toString() {
-        return "[keyboard=" + (mIsAlphabetMode ? mAlphabetShiftState.toString()
-                : (mIsSymbolShifted ? "SYMBOLS_SHIFTED" : "SYMBOLS"))
-                + " shift=" + mShiftKeyState
-                + " symbol=" + mSymbolKeyState
-                + " switch=" + switchStateToString(mSwitchState) + "]";
+        return stateToString(mState);
     }
 
     private String stateToString(final int autoCapsFlags, final int recapitalizeMode) {
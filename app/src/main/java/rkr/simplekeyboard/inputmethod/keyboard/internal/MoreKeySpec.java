@@ -48,12 +48,26 @@ public final class MoreKeySpec {
 
     public MoreKeySpec(final String moreKeySpec, boolean needsToUpperCase,
             final Locale locale) {
+        this(moreKeySpec, needsToUpperCase, locale, new KeySpecParser.ParsedKeySpec());
+    }
+
+    /**
+     * Create a more key specification object.
+     * @param moreKeySpec the more key specification.
+     * @param needsToUpperCase whether the more key should be upper case.
+     * @param locale the locale to use for changing the case.
+     * @param parsedKeySpec a parsed key specification object that can be reused for parsing the
+     *                      more key specification.
+     */
+    public MoreKeySpec(final String moreKeySpec, boolean needsToUpperCase,
+            final Locale locale, final KeySpecParser.ParsedKeySpec parsedKeySpec) {
         if (moreKeySpec.isEmpty()) {
             throw new KeySpecParser.KeySpecParserError("Empty more key spec");
         }
-        final String label = KeySpecParser.getLabel(moreKeySpec);
+        parsedKeySpec.parse(moreKeySpec);
+        final String label = parsedKeySpec.getLabel();
         mLabel = needsToUpperCase ? StringUtils.toTitleCaseOfKeyLabel(label, locale) : label;
-        final int codeInSpec = KeySpecParser.getCode(moreKeySpec);
+        final int codeInSpec = parsedKeySpec.getCode();
         final int code = needsToUpperCase ? StringUtils.toTitleCaseOfKeyCode(codeInSpec, locale)
                 : codeInSpec;
         if (code == Constants.CODE_UNSPECIFIED) {
@@ -63,11 +77,11 @@ public final class MoreKeySpec {
             mOutputText = mLabel;
         } else {
             mCode = code;
-            final String outputText = KeySpecParser.getOutputText(moreKeySpec);
+            final String outputText = parsedKeySpec.getOutputText();
             mOutputText = needsToUpperCase
                     ? StringUtils.toTitleCaseOfKeyLabel(outputText, locale) : outputText;
         }
-        mIconId = KeySpecParser.getIconId(moreKeySpec);
+        mIconId = parsedKeySpec.getIconId();
     }
 
     public Key buildKey(final float x, final float y, final float width, final float height,
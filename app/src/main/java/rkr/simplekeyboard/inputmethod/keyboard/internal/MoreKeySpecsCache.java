@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Pool of the {@link MoreKeySpec} arrays created for keys. The same more keys specifications
+ * (eg: the accented letters of a vowel) are used by every shift state of every keyboard of a
+ * subtype and often by multiple subtypes, so they only need to be parsed once and all of the keys
+ * can share the resulting arrays. The shared arrays must never be modified.
+ */
+public abstract class MoreKeySpecsCache {
+    public abstract void clear();
+    public abstract MoreKeySpec[] getMoreKeySpecs(String[] moreKeys, boolean needsToUpperCase,
+            Locale locale);
+    public abstract String getStats();
+    public abstract long getEstimatedBytes();
+
+    public static final MoreKeySpecsCache NO_CACHE = new MoreKeySpecsCache() {
+        @Override
+        public void clear() {}
+
+        @Override
+        public MoreKeySpec[] getMoreKeySpecs(final String[] moreKeys,
+                final boolean needsToUpperCase, final Locale locale) {
+            return createMoreKeySpecs(moreKeys, needsToUpperCase, locale);
+        }
+
+        @Override
+        public String getStats() { return "disabled"; }
+
+        @Override
+        public long getEstimatedBytes() { return 0; }
+    };
+
+    public static MoreKeySpecsCache newInstance() {
+        return new MoreKeySpecsCacheImpl();
+    }
+
+    static MoreKeySpec[] createMoreKeySpecs(final String[] moreKeys,
+            final boolean needsToUpperCase, final Locale locale) {
+        final MoreKeySpec[] moreKeySpecs = new MoreKeySpec[moreKeys.length];
+        final KeySpecParser.ParsedKeySpec parsedKeySpec = new KeySpecParser.ParsedKeySpec();
+        for (int i = 0; i < moreKeys.length; i++) {
+            moreKeySpecs[i] = new MoreKeySpec(moreKeys[i], needsToUpperCase, locale,
+                    parsedKeySpec);
+        }
+        return moreKeySpecs;
+    }
+
+    private static final class SpecsKey {
+        private final String[] mMoreKeys;
+        private final boolean mNeedsToUpperCase;
+        private final Locale mLocale;
+        private final int mHashCode;
+
+        SpecsKey(final String[] moreKeys, final boolean needsToUpperCase, final Locale locale) {
+            mMoreKeys = moreKeys;
+            mNeedsToUpperCase = needsToUpperCase;
+            // The locale is only used for changing the case, so there is no need to distinguish
+            // the locales otherwise.
+            mLocale = needsToUpperCase ? locale : null;
+            mHashCode = computeHashCode(mMoreKeys, mNeedsToUpperCase, mLocale);
+        }
+
+        private static int computeHashCode(final String[] moreKeys,
+                final boolean needsToUpperCase, final Locale locale) {
+            // This is equivalent to hashing an array of the fields, but it avoids allocating the
+            // array and boxing the fields for every key that is built.
+            int hashCode = 1;
+            hashCode = 31 * hashCode + Arrays.hashCode(moreKeys);
+            hashCode = 31 * hashCode + (needsToUpperCase ? 1231 : 1237);
+            hashCode = 31 * hashCode + (locale == null ? 0 : locale.hashCode());
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SpecsKey)) {
+                return false;
+            }
+            final SpecsKey other = (SpecsKey)o;
+            return mHashCode == other.mHashCode
+                    && mNeedsToUpperCase == other.mNeedsToUpperCase
+                    && (mLocale == null ? other.mLocale == null : mLocale.equals(other.mLocale))
+                    && Arrays.equals(mMoreKeys, other.mMoreKeys);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    /**
+     * The arrays are split into two generations to bound the size of the cache: once the current
+     * generation is full, it becomes the old generation and the previous old generation is
+     * dropped. Arrays that are found in the old generation are moved back to the current one, so
+     * only arrays that haven't been looked up for a while are evicted. The keys that already use
+     * an evicted array keep it, it just isn't shared with the keys that are built after that.
+     */
+    private static final class MoreKeySpecsCacheImpl extends MoreKeySpecsCache {
+        private static final int MAX_SPECS_PER_GENERATION = 512;
+        // Rough sizes of the objects on a 32-bit runtime, which are only used for the stats.
+        private static final int OBJECT_HEADER_BYTES = 8;
+        private static final int ARRAY_HEADER_BYTES = 12;
+        private static final int REFERENCE_BYTES = 4;
+        private static final int STRING_BYTES = 24;
+        private static final int MORE_KEY_SPEC_BYTES = OBJECT_HEADER_BYTES + 4 * 4;
+
+        private HashMap<SpecsKey, MoreKeySpec[]> mCurrentGeneration = new HashMap<>();
+        private HashMap<SpecsKey, MoreKeySpec[]> mOldGeneration = new HashMap<>();
+        private long mCurrentGenerationBytes;
+        private long mOldGenerationBytes;
+        private int mGeneration;
+
+        private int mLookupCount;
+        private int mHitCount;
+        private long mSavedBytes;
+
+        @Override
+        public void clear() {
+            mCurrentGeneration = new HashMap<>();
+            mOldGeneration = new HashMap<>();
+            mCurrentGenerationBytes = 0;
+            mOldGenerationBytes = 0;
+            mGeneration++;
+            mLookupCount = 0;
+            mHitCount = 0;
+            mSavedBytes = 0;
+        }
+
+        @Override
+        public MoreKeySpec[] getMoreKeySpecs(final String[] moreKeys,
+                final boolean needsToUpperCase, final Locale locale) {
+            final SpecsKey key = new SpecsKey(moreKeys, needsToUpperCase, locale);
+            mLookupCount++;
+            final MoreKeySpec[] existingMoreKeySpecs = mCurrentGeneration.get(key);
+            if (existingMoreKeySpecs != null) {
+                mHitCount++;
+                mSavedBytes += estimateBytes(existingMoreKeySpecs);
+                return existingMoreKeySpecs;
+            }
+            final MoreKeySpec[] oldMoreKeySpecs = mOldGeneration.remove(key);
+            if (oldMoreKeySpecs != null) {
+                // The array is still in use, so keep it in the current generation.
+                mHitCount++;
+                final long bytes = estimateBytes(oldMoreKeySpecs);
+                mSavedBytes += bytes;
+                mOldGenerationBytes -= bytes;
+                put(key, oldMoreKeySpecs, bytes);
+                return oldMoreKeySpecs;
+            }
+            final MoreKeySpec[] moreKeySpecs =
+                    createMoreKeySpecs(moreKeys, needsToUpperCase, locale);
+            put(key, moreKeySpecs, estimateBytes(moreKeySpecs));
+            return moreKeySpecs;
+        }
+
+        private void put(final SpecsKey key, final MoreKeySpec[] moreKeySpecs, final long bytes) {
+            if (mCurrentGeneration.size() >= MAX_SPECS_PER_GENERATION) {
+                mOldGeneration = mCurrentGeneration;
+                mOldGenerationBytes = mCurrentGenerationBytes;
+                mCurrentGeneration = new HashMap<>();
+                mCurrentGenerationBytes = 0;
+                mGeneration++;
+            }
+            mCurrentGeneration.put(key, moreKeySpecs);
+            mCurrentGenerationBytes += bytes;
+        }
+
+        @Override
+        public String getStats() {
+            final int hitRate = mLookupCount == 0 ? 0 : mHitCount * 100 / mLookupCount;
+            return "entries=" + (mCurrentGeneration.size() + mOldGeneration.size())
+                    + " generation=" + mGeneration
+                    + " lookups=" + mLookupCount
+                    + " hitRate=" + hitRate + "%"
+                    + " cachedBytes=" + getEstimatedBytes()
+                    + " savedBytes=" + mSavedBytes;
+        }
+
+        @Override
+        public long getEstimatedBytes() {
+            return mCurrentGenerationBytes + mOldGenerationBytes;
+        }
+
+        private static long estimateBytes(final MoreKeySpec[] moreKeySpecs) {
+            long bytes = ARRAY_HEADER_BYTES + REFERENCE_BYTES * moreKeySpecs.length;
+            for (final MoreKeySpec moreKeySpec : moreKeySpecs) {
+                bytes += MORE_KEY_SPEC_BYTES + estimateBytes(moreKeySpec.mLabel)
+                        + estimateBytes(moreKeySpec.mOutputText);
+            }
+            return bytes;
+        }
+
+        private static long estimateBytes(final String string) {
+            return string == null ? 0 : STRING_BYTES + ARRAY_HEADER_BYTES + 2 * string.length();
+        }
+    }
+}
@@ -16,7 +16,8 @@
 
 package rkr.simplekeyboard.inputmethod.keyboard.internal;
 
-import java.util.HashMap;
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
 
 import rkr.simplekeyboard.inputmethod.keyboard.Key;
 
@@ -24,6 +25,8 @@ public abstract class UniqueKeysCache {
     public abstract void setEnabled(boolean enabled);
     public abstract void clear();
     public abstract Key getUniqueKey(Key key);
+    public abstract String getStats();
+    public abstract long getEstimatedBytes();
 
     public static final UniqueKeysCache NO_CACHE = new UniqueKeysCache() {
         @Override
@@ -34,19 +37,43 @@ public abstract class UniqueKeysCache {
 
         @Override
         public Key getUniqueKey(Key key) { return key; }
+
+        @Override
+        public String getStats() { return "disabled"; }
+
+        @Override
+        public long getEstimatedBytes() { return 0; }
     };
 
     public static UniqueKeysCache newInstance() {
         return new UniqueKeysCacheImpl();
     }
 
+    /**
+     * Cache that only weakly holds the keys so that keys that are no longer used by any keyboard
+     * can be collected. The keys are split into two generations to bound the size of the cache:
+     * once the current generation is full, it becomes the old generation and the previous old
+     * generation is dropped. Keys that are found in the old generation are moved back to the
+     * current one, so only keys that haven't been looked up for a while are evicted.
+     */
     private static final class UniqueKeysCacheImpl extends UniqueKeysCache {
-        private final HashMap<Key, Key> mCache;
+        private static final int MAX_KEYS_PER_GENERATION = 1024;
+        // Rough sizes of the objects on a 32-bit runtime, which are only used for the stats.
+        private static final int KEY_BYTES = 96;
+        private static final int STRING_BYTES = 24 + 12;
+
+        private WeakHashMap<Key, WeakReference<Key>> mCurrentGeneration;
+        private WeakHashMap<Key, WeakReference<Key>> mOldGeneration;
+        private int mGeneration;
 
         private boolean mEnabled;
 
+        private int mLookupCount;
+        private int mHitCount;
+
         UniqueKeysCacheImpl() {
-            mCache = new HashMap<>();
+            mCurrentGeneration = new WeakHashMap<>();
+            mOldGeneration = new WeakHashMap<>();
         }
 
         @Override
@@ -56,7 +83,11 @@ public abstract class UniqueKeysCache {
 
         @Override
         public void clear() {
-            mCache.clear();
+            mCurrentGeneration = new WeakHashMap<>();
+            mOldGeneration = new WeakHashMap<>();
+            mGeneration++;
+            mLookupCount = 0;
+            mHitCount = 0;
         }
 
         @Override
@@ -64,14 +95,67 @@ public abstract class UniqueKeysCache {
             if (!mEnabled) {
                 return key;
             }
-            final Key existingKey = mCache.get(key);
+            mLookupCount++;
+            final Key existingKey = get(mCurrentGeneration, key);
             if (existingKey != null) {
                 // Reuse the existing object that equals to "key" without adding "key" to
                 // the cache.
+                mHitCount++;
                 return existingKey;
             }
-            mCache.put(key, key);
+            final Key oldKey = get(mOldGeneration, key);
+            if (oldKey != null) {
+                // The key is still in use, so keep it in the current generation.
+                mHitCount++;
+                mOldGeneration.remove(oldKey);
+                put(oldKey);
+                return oldKey;
+            }
+            put(key);
             return key;
         }
+
+        private static Key get(final WeakHashMap<Key, WeakReference<Key>> generation,
+                final Key key) {
+            final WeakReference<Key> ref = generation.get(key);
+            return ref == null ? null : ref.get();
+        }
+
+        private void put(final Key key) {
+            if (mCurrentGeneration.size() >= MAX_KEYS_PER_GENERATION) {
+                mOldGeneration = mCurrentGeneration;
+                mCurrentGeneration = new WeakHashMap<>();
+                mGeneration++;
+            }
+            mCurrentGeneration.put(key, new WeakReference<>(key));
+        }
+
+        @Override
+        public String getStats() {
+            final int hitRate = mLookupCount == 0 ? 0 : mHitCount * 100 / mLookupCount;
+            return "entries=" + (mCurrentGeneration.size() + mOldGeneration.size())
+                    + " generation=" + mGeneration
+                    + " lookups=" + mLookupCount
+                    + " hitRate=" + hitRate + "%"
+                    + " estimatedBytes=" + getEstimatedBytes();
+        }
+
+        @Override
+        public long getEstimatedBytes() {
+            return estimateBytes(mCurrentGeneration) + estimateBytes(mOldGeneration);
+        }
+
+        private static long estimateBytes(final WeakHashMap<Key, WeakReference<Key>> generation) {
+            long bytes = 0;
+            for (final Key key : generation.keySet()) {
+                bytes += KEY_BYTES + estimateBytes(key.getLabel())
+                        + estimateBytes(key.getHintLabel()) + estimateBytes(key.getOutputText());
+            }
+            return bytes;
+        }
+
+        private static long estimateBytes(final String string) {
+            return string == null ? 0 : STRING_BYTES + 2 * string.length();
+        }
     }
 }
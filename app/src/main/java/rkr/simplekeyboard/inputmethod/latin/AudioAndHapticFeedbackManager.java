@@ -18,10 +18,15 @@ package rkr.simplekeyboard.inputmethod.latin;
 
 import android.content.Context;
 import android.media.AudioManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.os.Vibrator;
 import android.view.HapticFeedbackConstants;
 import android.view.View;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import rkr.simplekeyboard.inputmethod.latin.common.Constants;
 import rkr.simplekeyboard.inputmethod.latin.settings.SettingsValues;
 
@@ -30,13 +35,50 @@ import rkr.simplekeyboard.inputmethod.latin.settings.SettingsValues;
  *
  * It offers a consistent and simple interface that allows LatinIME to forget about the
  * complexity of settings and the like.
+ *
+ * Playing a sound effect and vibrating are calls to system services that may block, so key press
+ * feedback is handed over to a dedicated thread through a single slot mailbox. If a new key press
+ * comes in before the feedback thread got around to the previous one, the previous one is dropped.
  */
 public final class AudioAndHapticFeedbackManager {
+    // The pending feedback packs the bits of the sound volume in the upper 32 bits, the sound
+    // effect (plus one, so that zero means no sound) in the next 8 bits and the vibration duration
+    // in milliseconds in the lower 24 bits. The volume is taken along with the key press so that
+    // a settings change can't apply to a key press that was made before it.
+    private static final long NO_PENDING_FEEDBACK = 0;
+    private static final int NO_SOUND = -1;
+    private static final long MAX_VIBRATION_DURATION = 0xFFFFFFL;
+
     private AudioManager mAudioManager;
     private Vibrator mVibrator;
 
     private SettingsValues mSettingsValues;
     private boolean mSoundOn;
+    // Values precomputed from the settings for the key press path.
+    private boolean mVibrateOn;
+    private long mVibrationDuration;
+    private float mSoundVolume;
+
+    private final AtomicLong mPendingFeedback = new AtomicLong(NO_PENDING_FEEDBACK);
+    private Handler mFeedbackHandler;
+    private final Runnable mFeedbackRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final long feedback = mPendingFeedback.getAndSet(NO_PENDING_FEEDBACK);
+            if (feedback == NO_PENDING_FEEDBACK) {
+                return;
+            }
+            final float soundVolume = Float.intBitsToFloat((int)(feedback >>> 32));
+            final int sound = (int)((feedback >>> 24) & 0xFF) - 1;
+            final long vibrationDuration = feedback & MAX_VIBRATION_DURATION;
+            if (vibrationDuration > 0) {
+                vibrate(vibrationDuration);
+            }
+            if (sound != NO_SOUND && mAudioManager != null) {
+                mAudioManager.playSoundEffect(sound, soundVolume);
+            }
+        }
+    };
 
     private static final AudioAndHapticFeedbackManager sInstance =
             new AudioAndHapticFeedbackManager();
@@ -76,51 +118,72 @@ public final class AudioAndHapticFeedbackManager {
         return mAudioManager.getRingerMode() == AudioManager.RINGER_MODE_NORMAL;
     }
 
-    public void performAudioFeedback(final int code) {
-        // if mAudioManager is null, we can't play a sound anyway, so return
-        if (mAudioManager == null) {
-            return;
-        }
-        if (!mSoundOn) {
-            return;
+    /**
+     * Perform the audio and haptic feedback for a key press.
+     * @param code the code of the key that was pressed.
+     * @param withHapticFeedback whether haptic feedback should be performed along with the sound.
+     * @param viewToPerformHapticFeedbackOn the view to use for the system default haptic feedback.
+     */
+    public void performFeedback(final int code, final boolean withHapticFeedback,
+            final View viewToPerformHapticFeedbackOn) {
+        final int sound = mSoundOn && mAudioManager != null ? getSoundEffect(code) : NO_SOUND;
+        long vibrationDuration = 0;
+        if (withHapticFeedback && mVibrateOn) {
+            if (mVibrationDuration >= 0) {
+                vibrationDuration = mVibrationDuration;
+            } else if (viewToPerformHapticFeedbackOn != null) {
+                // Go ahead with the system default. This has to be done on the thread of the view.
+                viewToPerformHapticFeedbackOn.performHapticFeedback(
+                        HapticFeedbackConstants.KEYBOARD_TAP,
+                        HapticFeedbackConstants.FLAG_IGNORE_GLOBAL_SETTING);
+            }
         }
-        final int sound;
+        postFeedback(sound, mSoundVolume, vibrationDuration);
+    }
+
+    private static int getSoundEffect(final int code) {
         switch (code) {
         case Constants.CODE_DELETE:
-            sound = AudioManager.FX_KEYPRESS_DELETE;
-            break;
+            return AudioManager.FX_KEYPRESS_DELETE;
         case Constants.CODE_ENTER:
-            sound = AudioManager.FX_KEYPRESS_RETURN;
-            break;
+            return AudioManager.FX_KEYPRESS_RETURN;
         case Constants.CODE_SPACE:
-            sound = AudioManager.FX_KEYPRESS_SPACEBAR;
-            break;
+            return AudioManager.FX_KEYPRESS_SPACEBAR;
         default:
-            sound = AudioManager.FX_KEYPRESS_STANDARD;
-            break;
+            return AudioManager.FX_KEYPRESS_STANDARD;
         }
-        mAudioManager.playSoundEffect(sound, mSettingsValues.mKeypressSoundVolume);
     }
 
-    public void performHapticFeedback(final View viewToPerformHapticFeedbackOn) {
-        if (!mSettingsValues.mVibrateOn) {
+    private void postFeedback(final int sound, final float soundVolume,
+            final long vibrationDuration) {
+        if (sound == NO_SOUND && vibrationDuration <= 0) {
             return;
         }
-        if (mSettingsValues.mKeypressVibrationDuration >= 0) {
-            vibrate(mSettingsValues.mKeypressVibrationDuration);
-            return;
+        final long feedback = ((long)Float.floatToIntBits(soundVolume) << 32)
+                | ((long)(sound + 1) << 24)
+                | Math.min(Math.max(vibrationDuration, 0), MAX_VIBRATION_DURATION);
+        // Only wake up the feedback thread if it isn't already going to pick up the slot.
+        if (mPendingFeedback.getAndSet(feedback) == NO_PENDING_FEEDBACK) {
+            getFeedbackHandler().post(mFeedbackRunnable);
         }
-        // Go ahead with the system default
-        if (viewToPerformHapticFeedbackOn != null) {
-            viewToPerformHapticFeedbackOn.performHapticFeedback(
-                    HapticFeedbackConstants.KEYBOARD_TAP,
-                    HapticFeedbackConstants.FLAG_IGNORE_GLOBAL_SETTING);
+    }
+
+    private Handler getFeedbackHandler() {
+        if (mFeedbackHandler == null) {
+            final HandlerThread thread = new HandlerThread("AudioAndHapticFeedback",
+                    Process.THREAD_PRIORITY_DISPLAY);
+            thread.start();
+            mFeedbackHandler = new Handler(thread.getLooper());
         }
+        return mFeedbackHandler;
     }
 
     public void onSettingsChanged(final SettingsValues settingsValues) {
         mSettingsValues = settingsValues;
         mSoundOn = reevaluateIfSoundIsOn();
+        mVibrateOn = settingsValues.mVibrateOn;
+        mVibrationDuration = settingsValues.mKeypressVibrationDuration;
+        mSoundVolume = settingsValues.mKeypressSoundVolume;
     }
 
     public void onRingerModeChanged() {
@@ -57,6 +57,7 @@ import rkr.simplekeyboard.inputmethod.event.InputTransaction;
 import rkr.simplekeyboard.inputmethod.keyboard.Keyboard;
 import rkr.simplekeyboard.inputmethod.keyboard.KeyboardActionListener;
 import rkr.simplekeyboard.inputmethod.keyboard.KeyboardId;
+import rkr.simplekeyboard.inputmethod.keyboard.KeyboardLayoutSet;
 import rkr.simplekeyboard.inputmethod.keyboard.KeyboardSwitcher;
 import rkr.simplekeyboard.inputmethod.keyboard.MainKeyboardView;
 import rkr.simplekeyboard.inputmethod.latin.common.Constants;
@@ -66,6 +67,9 @@ import rkr.simplekeyboard.inputmethod.latin.settings.Settings;
 import rkr.simplekeyboard.inputmethod.latin.settings.SettingsActivity;
 import rkr.simplekeyboard.inputmethod.latin.settings.SettingsValues;
 import rkr.simplekeyboard.inputmethod.latin.utils.ApplicationUtils;
+import rkr.simplekeyboard.inputmethod.latin.utils.BitmapPool;
+import rkr.simplekeyboard.inputmethod.latin.utils.CacheRegistry;
+import rkr.simplekeyboard.inputmethod.latin.utils.LatencyStats;
 import rkr.simplekeyboard.inputmethod.latin.utils.LeakGuardHandlerWrapper;
 import rkr.simplekeyboard.inputmethod.latin.utils.ResourceUtils;
 import rkr.simplekeyboard.inputmethod.latin.utils.ViewLayoutUtils;
@@ -92,6 +96,9 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     // TODO: Move these {@link View}s to {@link KeyboardSwitcher}.
     private View mInputView;
     private InsetsUpdater mInsetsUpdater;
+    private final KeyboardInsets mKeyboardInsets = new KeyboardInsets();
+    // The inputArea of the input method window, which never changes once it is found.
+    private View mInputArea;
 
     private RichInputMethodManager mRichImm;
     final KeyboardSwitcher mKeyboardSwitcher;
@@ -349,6 +356,18 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         super.onConfigurationChanged(conf);
     }
 
+    @Override
+    public void onTrimMemory(final int level) {
+        super.onTrimMemory(level);
+        CacheRegistry.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        CacheRegistry.onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
     @Override
     public View onCreateInputView() {
         return mKeyboardSwitcher.onCreateInputView(getResources().getConfiguration().uiMode);
@@ -359,6 +378,7 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         super.setInputView(view);
         mInputView = view;
         mInsetsUpdater = ViewOutlineProviderCompatUtils.setInsetsOutlineProvider(view);
+        mKeyboardInsets.invalidate();
         updateSoftInputWindowLayoutParameters();
     }
 
@@ -519,6 +539,7 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     @Override
     public void onWindowShown() {
         super.onWindowShown();
+        LatencyStats.onWindowShown();
         if (isInputViewShown())
             setNavigationBarColor();
     }
@@ -534,6 +555,7 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     }
 
     void onFinishInputInternal() {
+        mInputLogic.mConnection.flushPendingCommit();
         super.onFinishInput();
 
         final MainKeyboardView mainKeyboardView = mKeyboardSwitcher.getMainKeyboardView();
@@ -585,6 +607,77 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         super.hideWindow();
     }
 
+    /**
+     * The insets of the keyboard, which are only computed again when something they depend on
+     * changes, since {@link #onComputeInsets} is called on every layout pass.
+     */
+    private static final class KeyboardInsets {
+        private boolean mIsValid;
+        private int mInputHeight;
+        private int mKeyboardWidth;
+        private int mKeyboardHeight;
+        private boolean mIsKeyboardShown;
+        private boolean mIsShowingMoreKeysPanel;
+        private boolean mIsSuppressedByHardwareKeyboard;
+
+        int mVisibleTopInsets;
+        boolean mHasTouchableRegion;
+        int mTouchTop;
+        int mTouchRight;
+        int mTouchBottom;
+
+        void invalidate() {
+            mIsValid = false;
+        }
+
+        /**
+         * Compute the insets again if anything they depend on changed.
+         * @return true if the insets changed.
+         */
+        boolean update(final int inputHeight, final int keyboardWidth, final int keyboardHeight,
+                final boolean isKeyboardShown, final boolean isShowingMoreKeysPanel,
+                final boolean isSuppressedByHardwareKeyboard) {
+            if (mIsValid && mInputHeight == inputHeight && mKeyboardWidth == keyboardWidth
+                    && mKeyboardHeight == keyboardHeight && mIsKeyboardShown == isKeyboardShown
+                    && mIsShowingMoreKeysPanel == isShowingMoreKeysPanel
+                    && mIsSuppressedByHardwareKeyboard == isSuppressedByHardwareKeyboard) {
+                return false;
+            }
+            mIsValid = true;
+            mInputHeight = inputHeight;
+            mKeyboardWidth = keyboardWidth;
+            mKeyboardHeight = keyboardHeight;
+            mIsKeyboardShown = isKeyboardShown;
+            mIsShowingMoreKeysPanel = isShowingMoreKeysPanel;
+            mIsSuppressedByHardwareKeyboard = isSuppressedByHardwareKeyboard;
+
+            if (isSuppressedByHardwareKeyboard && !isKeyboardShown) {
+                // If there is a hardware keyboard and a visible software keyboard view has been
+                // hidden, no visual element will be shown on the screen.
+                mVisibleTopInsets = inputHeight;
+                mHasTouchableRegion = false;
+                return true;
+            }
+            mVisibleTopInsets = inputHeight - keyboardHeight;
+            // Need to set expanded touchable region only if a keyboard view is being shown.
+            mHasTouchableRegion = isKeyboardShown;
+            mTouchTop = isShowingMoreKeysPanel ? 0 : mVisibleTopInsets;
+            mTouchRight = keyboardWidth;
+            // Extend touchable region below the keyboard.
+            mTouchBottom = inputHeight + EXTENDED_TOUCHABLE_REGION_HEIGHT;
+            return true;
+        }
+
+        void applyTo(final InputMethodService.Insets outInsets) {
+            if (mHasTouchableRegion) {
+                outInsets.touchableInsets = InputMethodService.Insets.TOUCHABLE_INSETS_REGION;
+                outInsets.touchableRegion.set(0, mTouchTop, mTouchRight, mTouchBottom);
+            }
+            outInsets.contentTopInsets = mVisibleTopInsets;
+            outInsets.visibleTopInsets = mVisibleTopInsets;
+        }
+    }
+
     @Override
     public void onComputeInsets(final InputMethodService.Insets outInsets) {
         super.onComputeInsets(outInsets);
@@ -596,30 +689,16 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         if (visibleKeyboardView == null) {
             return;
         }
-        final int inputHeight = mInputView.getHeight();
-        if (isImeSuppressedByHardwareKeyboard() && !visibleKeyboardView.isShown()) {
-            // If there is a hardware keyboard and a visible software keyboard view has been hidden,
-            // no visual element will be shown on the screen.
-            outInsets.contentTopInsets = inputHeight;
-            outInsets.visibleTopInsets = inputHeight;
+        final boolean isKeyboardShown = visibleKeyboardView.isShown();
+        final boolean insetsChanged = mKeyboardInsets.update(mInputView.getHeight(),
+                visibleKeyboardView.getWidth(), visibleKeyboardView.getHeight(), isKeyboardShown,
+                isKeyboardShown && mKeyboardSwitcher.isShowingMoreKeysPanel(),
+                !isKeyboardShown && isImeSuppressedByHardwareKeyboard());
+        // The framework hands out fresh insets every time, so they always need to be filled in.
+        mKeyboardInsets.applyTo(outInsets);
+        if (insetsChanged) {
             mInsetsUpdater.setInsets(outInsets);
-            return;
-        }
-        final int visibleTopY = inputHeight - visibleKeyboardView.getHeight();
-        // Need to set expanded touchable region only if a keyboard view is being shown.
-        if (visibleKeyboardView.isShown()) {
-            final int touchLeft = 0;
-            final int touchTop = mKeyboardSwitcher.isShowingMoreKeysPanel() ? 0 : visibleTopY;
-            final int touchRight = visibleKeyboardView.getWidth();
-            final int touchBottom = inputHeight
-                    // Extend touchable region below the keyboard.
-                    + EXTENDED_TOUCHABLE_REGION_HEIGHT;
-            outInsets.touchableInsets = InputMethodService.Insets.TOUCHABLE_INSETS_REGION;
-            outInsets.touchableRegion.set(touchLeft, touchTop, touchRight, touchBottom);
         }
-        outInsets.contentTopInsets = visibleTopY;
-        outInsets.visibleTopInsets = visibleTopY;
-        mInsetsUpdater.setInsets(outInsets);
     }
 
     @Override
@@ -671,9 +750,11 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             // com.android.internal.R.layout.input_method.xml.
             final int layoutHeight = isFullscreenMode()
                     ? LayoutParams.WRAP_CONTENT : LayoutParams.MATCH_PARENT;
-            final View inputArea = window.findViewById(android.R.id.inputArea);
-            ViewLayoutUtils.updateLayoutHeightOf(inputArea, layoutHeight);
-            ViewLayoutUtils.updateLayoutGravityOf(inputArea, Gravity.BOTTOM);
+            if (mInputArea == null) {
+                mInputArea = window.findViewById(android.R.id.inputArea);
+            }
+            ViewLayoutUtils.updateLayoutHeightOf(mInputArea, layoutHeight);
+            ViewLayoutUtils.updateLayoutGravityOf(mInputArea, Gravity.BOTTOM);
             ViewLayoutUtils.updateLayoutHeightOf(mInputView, layoutHeight);
         }
     }
@@ -791,10 +872,12 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     // This method is public for testability of LatinIME, but also in the future it should
     // completely replace #onCodeInput.
     public void onEvent(final Event event) {
+        final long startTime = LatencyStats.startMeasuring();
         final InputTransaction completeInputTransaction =
                 mInputLogic.onCodeInput(mSettings.getCurrent(), event);
         updateStateAfterInputTransaction(completeInputTransaction);
         mKeyboardSwitcher.onEvent(event, getCurrentAutoCapsState(), getCurrentRecapitalizeState());
+        LatencyStats.stopMeasuring(LatencyStats.STAGE_ON_EVENT, startTime);
     }
 
     // A helper method to split the code point and the key code. Ultimately, they should not be
@@ -885,11 +968,8 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         }
         final AudioAndHapticFeedbackManager feedbackManager =
                 AudioAndHapticFeedbackManager.getInstance();
-        if (repeatCount == 0) {
-            // TODO: Reconsider how to perform haptic feedback when repeating key.
-            feedbackManager.performHapticFeedback(keyboardView);
-        }
-        feedbackManager.performAudioFeedback(code);
+        // TODO: Reconsider how to perform haptic feedback when repeating key.
+        feedbackManager.performFeedback(code, repeatCount == 0, keyboardView);
     }
 
     // Callback of the {@link KeyboardActionListener}. This is called when a key is depressed;
@@ -954,6 +1034,11 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         final Keyboard keyboard = mKeyboardSwitcher.getKeyboard();
         final int keyboardMode = keyboard != null ? keyboard.mId.mMode : -1;
         p.println("  Keyboard mode = " + keyboardMode);
+        KeyboardLayoutSet.dump(p);
+        mKeyboardSwitcher.dump(p);
+        CacheRegistry.dump(p);
+        BitmapPool.dump(p);
+        LatencyStats.dump(p);
     }
 
     public boolean shouldSwitchToOtherInputMethods(final IBinder token) {
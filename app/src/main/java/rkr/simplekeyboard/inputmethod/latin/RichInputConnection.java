@@ -19,9 +19,11 @@ package rkr.simplekeyboard.inputmethod.latin;
 import android.inputmethodservice.InputMethodService;
 import android.os.SystemClock;
 import android.text.SpannableStringBuilder;
+import android.text.Spanned;
 import android.text.TextUtils;
 import android.text.style.CharacterStyle;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.KeyEvent;
 import android.view.inputmethod.ExtractedText;
 import android.view.inputmethod.ExtractedTextRequest;
@@ -30,9 +32,11 @@ import android.view.inputmethod.InputConnection;
 import rkr.simplekeyboard.inputmethod.latin.common.Constants;
 import rkr.simplekeyboard.inputmethod.latin.common.StringUtils;
 import rkr.simplekeyboard.inputmethod.latin.common.UnicodeSurrogate;
+import rkr.simplekeyboard.inputmethod.latin.define.DebugFlags;
 import rkr.simplekeyboard.inputmethod.latin.settings.SpacingAndPunctuations;
 import rkr.simplekeyboard.inputmethod.latin.utils.CapsModeUtils;
 import rkr.simplekeyboard.inputmethod.latin.utils.DebugLogUtils;
+import rkr.simplekeyboard.inputmethod.latin.utils.LatencyStats;
 
 /**
  * Enrichment class for InputConnection to simplify interaction and add functionality.
@@ -57,6 +61,31 @@ public final class RichInputConnection {
      * The amount of time a {@link #getTextBeforeCursor} call needs
      */
     private static final long SLOW_INPUT_CONNECTION_ON_PARTIAL_RELOAD_MS = 200;
+    /**
+     * The average read latency above which the connection is considered laggy and the keyboard
+     * enters degraded mode, relying on its own text tracking instead of querying the editor.
+     */
+    private static final float DEGRADED_MODE_ENTER_LATENCY_MS = 100.0f;
+    /**
+     * The average read latency below which degraded mode is left again. This is lower than the
+     * enter threshold so that a connection hovering around it doesn't flip back and forth.
+     */
+    private static final float DEGRADED_MODE_EXIT_LATENCY_MS = 25.0f;
+    /**
+     * The weight of the previous average when a new latency sample is added.
+     */
+    private static final int LATENCY_AVERAGE_WEIGHT = 8;
+    /**
+     * The amount of text to fetch when reloading the cache in degraded mode.
+     */
+    private static final int DEGRADED_MODE_EDITOR_CONTENTS_CACHE_SIZE = 256;
+    /**
+     * In degraded mode, the number of expected cursor moves to trust before reloading the cache
+     * anyway. This bounds how long the cache can drift and keeps sampling the latency so that
+     * degraded mode can be left.
+     */
+    /* package private for testing */
+    static final int DEGRADED_MODE_RELOAD_INTERVAL = 16;
 
     private static final int OPERATION_GET_TEXT_BEFORE_CURSOR = 0;
     private static final int OPERATION_GET_TEXT_AFTER_CURSOR = 1;
@@ -97,6 +126,29 @@ public final class RichInputConnection {
     private InputConnection mIC;
     private int mNestLevel;
 
+    /**
+     * Moving average of the time taken by reads from the editor, or a negative value if no read
+     * was timed yet in this editor session.
+     */
+    private float mAverageReadLatencyMs = -1.0f;
+    private boolean mIsInDegradedMode;
+    private int mSkippedReloadCount;
+
+    /**
+     * The plain text committed since the last frame that wasn't sent to the editor yet, see
+     * {@link #commitText}. The caches above already include it.
+     */
+    private final StringBuilder mPendingCommitText = new StringBuilder();
+    /** The input connection the pending text is to be committed to. */
+    private InputConnection mPendingCommitConnection;
+    private final Choreographer.FrameCallback mFlushPendingCommitCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(final long frameTimeNanos) {
+            flushPendingCommit();
+        }
+    };
+
     public RichInputConnection(final InputMethodService parent) {
         mParent = parent;
         mIC = null;
@@ -107,7 +159,19 @@ public final class RichInputConnection {
         return mIC != null;
     }
 
+    /**
+     * Forget the latency measured for the previous editor. This should be called when starting
+     * input in a new editor session.
+     */
+    public void onStartInput() {
+        flushPendingCommit();
+        mAverageReadLatencyMs = -1.0f;
+        mIsInDegradedMode = false;
+        mSkippedReloadCount = 0;
+    }
+
     private void checkConsistencyForDebug() {
+        flushPendingCommit();
         final ExtractedTextRequest r = new ExtractedTextRequest();
         r.hintMaxChars = 0;
         r.hintMaxLines = 0;
@@ -139,6 +203,7 @@ public final class RichInputConnection {
     }
 
     public void beginBatchEdit() {
+        flushPendingCommit();
         if (++mNestLevel == 1) {
             mIC = mParent.getCurrentInputConnection();
             if (isConnected()) {
@@ -179,8 +244,31 @@ public final class RichInputConnection {
      */
     public boolean resetCachesUponCursorMoveAndReturnSuccess(final int newSelStart,
             final int newSelEnd) {
-        mExpectedSelStart = newSelStart;
-        mExpectedSelEnd = newSelEnd;
+        final int pendingCommitLength = flushPendingCommit();
+        final int expectedSelStart;
+        final int expectedSelEnd;
+        if (pendingCommitLength > 0) {
+            // The selection reported by the editor doesn't include the text that was pending,
+            // which has just been committed at that selection.
+            expectedSelStart = Math.min(newSelStart, newSelEnd) + pendingCommitLength;
+            expectedSelEnd = expectedSelStart;
+        } else {
+            expectedSelStart = newSelStart;
+            expectedSelEnd = newSelEnd;
+        }
+        final boolean isExpectedCursorMove = expectedSelStart == mExpectedSelStart
+                && expectedSelEnd == mExpectedSelEnd;
+        mExpectedSelStart = expectedSelStart;
+        mExpectedSelEnd = expectedSelEnd;
+        if (mIsInDegradedMode && isExpectedCursorMove
+                && mCommittedTextBeforeComposingText.length() > 0
+                && mSkippedReloadCount < DEGRADED_MODE_RELOAD_INTERVAL) {
+            // The cursor is where the text tracked here says it is, so trust that text rather
+            // than waiting on the editor for it again.
+            mSkippedReloadCount++;
+            return true;
+        }
+        mSkippedReloadCount = 0;
         final boolean didReloadTextSuccessfully = reloadTextCache();
         if (!didReloadTextSuccessfully) {
             Log.d(TAG, "Will try to retrieve text later.");
@@ -202,7 +290,8 @@ public final class RichInputConnection {
         final CharSequence textBeforeCursor = getTextBeforeCursorAndDetectLaggyConnection(
                 OPERATION_RELOAD_TEXT_CACHE,
                 SLOW_INPUT_CONNECTION_ON_FULL_RELOAD_MS,
-                Constants.EDITOR_CONTENTS_CACHE_SIZE,
+                mIsInDegradedMode ? DEGRADED_MODE_EDITOR_CONTENTS_CACHE_SIZE
+                        : Constants.EDITOR_CONTENTS_CACHE_SIZE,
                 0 /* flags */);
         if (null == textBeforeCursor) {
             // For some reason the app thinks we are not connected to it. This looks like a
@@ -224,13 +313,49 @@ public final class RichInputConnection {
         }
     }
 
+    /**
+     * Check whether text can be held until the next frame to be committed along with the text
+     * typed until then. Only plain text that is typed outside of a batch edit can, and a new line
+     * is always committed right away since the editor may act on it.
+     */
+    private boolean canCoalesceCommit(final CharSequence text, final int newCursorPosition) {
+        return DebugFlags.isCoalesceCommitsEnabled() && mNestLevel == 0 && newCursorPosition == 1
+                && !(text instanceof Spanned) && TextUtils.indexOf(text, '\n') < 0;
+    }
+
+    /**
+     * Send the text that is waiting for the next frame to the editor. This needs to be called
+     * before anything else is sent to or read from the editor, so that it happens after the text
+     * was committed.
+     *
+     * @return the length of the text that was committed.
+     */
+    public int flushPendingCommit() {
+        final int length = mPendingCommitText.length();
+        if (length == 0) {
+            return 0;
+        }
+        Choreographer.getInstance().removeFrameCallback(mFlushPendingCommitCallback);
+        final InputConnection ic = mPendingCommitConnection;
+        final String text = mPendingCommitText.toString();
+        mPendingCommitText.setLength(0);
+        mPendingCommitConnection = null;
+        ic.commitText(text, 1);
+        LatencyStats.onCommitText();
+        return length;
+    }
+
     /**
      * Calls {@link InputConnection#commitText(CharSequence, int)}.
      *
+     * When enabled, plain text is held until the next frame and committed along with the text
+     * typed until then, so that fast typing doesn't cost an editor round trip per character.
+     *
      * @param text The text to commit. This may include styles.
      * @param newCursorPosition The new cursor position around the text.
      */
     public void commitText(final CharSequence text, final int newCursorPosition) {
+        final long startTime = LatencyStats.startMeasuring();
         RichInputMethodManager.getInstance().resetSubtypeCycleOrder();
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
         if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
@@ -242,6 +367,19 @@ public final class RichInputConnection {
             mExpectedSelStart += text.length();
             mExpectedSelEnd = mExpectedSelStart;
         }
+        if (isConnected() && canCoalesceCommit(text, newCursorPosition)) {
+            if (mPendingCommitConnection != mIC) {
+                flushPendingCommit();
+            }
+            if (mPendingCommitText.length() == 0) {
+                mPendingCommitConnection = mIC;
+                Choreographer.getInstance().postFrameCallback(mFlushPendingCommitCallback);
+            }
+            mPendingCommitText.append(text);
+            LatencyStats.stopMeasuring(LatencyStats.STAGE_COMMIT_TEXT, startTime);
+            return;
+        }
+        flushPendingCommit();
         if (isConnected()) {
             mTempObjectForCommitText.clear();
             mTempObjectForCommitText.append(text);
@@ -266,9 +404,12 @@ public final class RichInputConnection {
             }
             mIC.commitText(mTempObjectForCommitText, newCursorPosition);
         }
+        LatencyStats.stopMeasuring(LatencyStats.STAGE_COMMIT_TEXT, startTime);
+        LatencyStats.onCommitText();
     }
 
     public CharSequence getSelectedText(final int flags) {
+        flushPendingCommit();
         return isConnected() ?  mIC.getSelectedText(flags) : null;
     }
 
@@ -301,6 +442,15 @@ public final class RichInputConnection {
         // getCapsMode should be updated to be able to return a "not enough info" result so that
         // we can get more context only when needed.
         if (TextUtils.isEmpty(mCommittedTextBeforeComposingText) && 0 != mExpectedSelStart) {
+            if (mIsInDegradedMode) {
+                // Don't block on the editor just for the caps mode. When the cursor position
+                // isn't known either, this is what a failed reload would fall back to anyway.
+                // Otherwise only the modes that don't depend on the text are known until the
+                // empty cache is reloaded on the next cursor move, which updates the shift state.
+                return INVALID_CURSOR_POSITION == mExpectedSelStart
+                        ? CapsModeUtils.getCapsMode("", inputType, spacingAndPunctuations)
+                        : inputType & TextUtils.CAP_MODE_CHARACTERS;
+            }
             if (!reloadTextCache()) {
                 Log.w(TAG, "Unable to connect to the editor. "
                         + "Setting caps mode without knowing text.");
@@ -357,6 +507,7 @@ public final class RichInputConnection {
 
     private CharSequence getTextBeforeCursorAndDetectLaggyConnection(
             final int operation, final long timeout, final int n, final int flags) {
+        flushPendingCommit();
         mIC = mParent.getCurrentInputConnection();
         if (!isConnected()) {
             return null;
@@ -369,6 +520,7 @@ public final class RichInputConnection {
 
     private CharSequence getTextAfterCursorAndDetectLaggyConnection(
             final int operation, final long timeout, final int n, final int flags) {
+        flushPendingCommit();
         mIC = mParent.getCurrentInputConnection();
         if (!isConnected()) {
             return null;
@@ -385,15 +537,34 @@ public final class RichInputConnection {
             final String operationName = OPERATION_NAMES[operation];
             Log.w(TAG, "Slow InputConnection: " + operationName + " took " + duration + " ms.");
         }
+        updateDegradedMode(duration);
+    }
+
+    private void updateDegradedMode(final long duration) {
+        if (mAverageReadLatencyMs < 0) {
+            mAverageReadLatencyMs = duration;
+        } else {
+            mAverageReadLatencyMs += (duration - mAverageReadLatencyMs) / LATENCY_AVERAGE_WEIGHT;
+        }
+        if (!mIsInDegradedMode && mAverageReadLatencyMs >= DEGRADED_MODE_ENTER_LATENCY_MS) {
+            mIsInDegradedMode = true;
+            Log.w(TAG, "Entering degraded mode, average latency " + mAverageReadLatencyMs + " ms.");
+        } else if (mIsInDegradedMode && mAverageReadLatencyMs < DEGRADED_MODE_EXIT_LATENCY_MS) {
+            mIsInDegradedMode = false;
+            mSkippedReloadCount = 0;
+            Log.i(TAG, "Leaving degraded mode, average latency " + mAverageReadLatencyMs + " ms.");
+        }
     }
 
     public void replaceText(final int startPosition, final int endPosition, CharSequence text) {
+        flushPendingCommit();
         mIC.setComposingRegion(startPosition, endPosition);
         mIC.setComposingText(text, startPosition);
         mIC.finishComposingText();
     }
 
     public void performEditorAction(final int actionId) {
+        flushPendingCommit();
         mIC = mParent.getCurrentInputConnection();
         if (isConnected()) {
             mIC.performEditorAction(actionId);
@@ -401,6 +572,7 @@ public final class RichInputConnection {
     }
 
     public void sendKeyEvent(final KeyEvent keyEvent) {
+        flushPendingCommit();
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
         if (keyEvent.getAction() == KeyEvent.ACTION_DOWN) {
             if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
@@ -455,6 +627,30 @@ public final class RichInputConnection {
         }
     }
 
+    /**
+     * Delete text before the cursor.
+     *
+     * Calls through to {@link InputConnection#deleteSurroundingText(int, int)}, so unlike
+     * sending a delete key event this takes part in the current batch edit.
+     *
+     * @param beforeLength the number of characters to delete before the cursor.
+     */
+    public void deleteTextBeforeCursor(final int beforeLength) {
+        flushPendingCommit();
+        if (DEBUG_BATCH_NESTING) checkBatchEdit();
+        if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
+        final int cachedLength = mCommittedTextBeforeComposingText.length();
+        mCommittedTextBeforeComposingText.delete(Math.max(0, cachedLength - beforeLength),
+                cachedLength);
+        if (mExpectedSelStart > 0 && mExpectedSelStart == mExpectedSelEnd) {
+            mExpectedSelStart = Math.max(0, mExpectedSelStart - beforeLength);
+        }
+        mExpectedSelEnd = mExpectedSelStart;
+        if (isConnected()) {
+            mIC.deleteSurroundingText(beforeLength, 0);
+        }
+    }
+
     /**
      * Set the selection of the text editor.
      *
@@ -467,6 +663,7 @@ public final class RichInputConnection {
      * invalid arguments were passed.
      */
     public void setSelection(int start, int end) {
+        flushPendingCommit();
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
         if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
         if (start < 0 || end < 0) {
@@ -37,11 +37,14 @@ import android.view.inputmethod.InputMethodManager;
 import android.view.inputmethod.InputMethodSubtype;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Executors;
@@ -121,18 +124,15 @@ public class RichInputMethodManager {
     /**
      * Manager for the list of enabled subtypes that also handles which one is currently in use.
      * Only one of these should be created to avoid conflicts.
+     *
+     * The list is stored as an immutable {@link Snapshot} that is replaced (copy-on-write) by any
+     * change, so readers never need to lock or copy the list. Writers are serialized with the
+     * object's monitor and publish a new snapshot when they are done.
      */
     private static class SubtypeList {
-        /** The list of enabled subtypes ordered by how they should be cycled through when moving to
-         *  the next subtype. When a subtype is actually in use, it should be moved to the beginning
-         *  of the list so that the next time the user uses the switch to next subtype button, all
-         *  of the subtypes can be iterated through before potentially switching to a different
-         *  input method. */
-        private final List<Subtype> mSubtypes;
-        /** The index of the currently selected subtype. This is used for tracking the status of
-         *  cycling through subtypes. When actually using the keyboard, the subtype should be moved
-         *  to the beginning of the list, so this should normally be 0. */
-        private int mCurrentSubtypeIndex;
+        /** The current state of the enabled subtypes. This is only replaced while holding the
+         *  object's monitor, but it can be read at any time without locking. */
+        private volatile Snapshot mSnapshot;
 
         private final SharedPreferences mPrefs;
         private SubtypeChangedListener mSubtypeChangedListener;
@@ -145,14 +145,12 @@ public class RichInputMethodManager {
             mPrefs = PreferenceManagerCompat.getDeviceSharedPreferences(context);
 
             final String prefSubtypes = Settings.readPrefSubtypes(mPrefs);
-            final List<Subtype> subtypes = SubtypePreferenceUtils.createSubtypesFromPref(
+            List<Subtype> subtypes = SubtypePreferenceUtils.createSubtypesFromPref(
                     prefSubtypes, context.getResources());
             if (subtypes == null || subtypes.size() < 1) {
-                mSubtypes = SubtypeLocaleUtils.getDefaultSubtypes(context.getResources());
-            } else {
-                mSubtypes = subtypes;
+                subtypes = SubtypeLocaleUtils.getDefaultSubtypes(context.getResources());
             }
-            mCurrentSubtypeIndex = 0;
+            mSnapshot = new Snapshot(new SubtypeSet(subtypes.toArray(new Subtype[0])), 0);
         }
 
         /**
@@ -176,12 +174,8 @@ public class RichInputMethodManager {
          * Get all of the enabled languages.
          * @return the enabled languages.
          */
-        public synchronized Set<Locale> getAllLocales() {
-            final Set<Locale> locales = new HashSet<>();
-            for (final Subtype subtype: mSubtypes) {
-                locales.add(subtype.getLocaleObject());
-            }
-            return locales;
+        public Set<Locale> getAllLocales() {
+            return mSnapshot.mSubtypeSet.getLocales();
         }
 
         /**
@@ -189,13 +183,8 @@ public class RichInputMethodManager {
          * @param locale filter by Locale.
          * @return the enabled subtypes.
          */
-        public synchronized Set<Subtype> getAllForLocale(final String locale) {
-            final Set<Subtype> subtypes = new HashSet<>();
-            for (final Subtype subtype: mSubtypes) {
-                if (subtype.getLocale().equals(locale))
-                    subtypes.add(subtype);
-            }
-            return subtypes;
+        public Set<Subtype> getAllForLocale(final String locale) {
+            return mSnapshot.mSubtypeSet.getForLocale(locale);
         }
 
         /**
@@ -204,45 +193,26 @@ public class RichInputMethodManager {
          *                      name as opposed to having no particular order.
          * @return the enabled subtypes.
          */
-        public synchronized Set<Subtype> getAll(final boolean sortForDisplay) {
-            final Set<Subtype> subtypes;
-            if (sortForDisplay) {
-                subtypes = new TreeSet<>(new Comparator<Subtype>() {
-                    @Override
-                    public int compare(Subtype a, Subtype b) {
-                        if (a.equals(b)) {
-                            // ensure that this is consistent with equals
-                            return 0;
-                        }
-                        final int result = a.getName().compareToIgnoreCase(b.getName());
-                        if (result != 0) {
-                            return result;
-                        }
-                        // ensure that non-equal objects are distinguished to be consistent with
-                        // equals
-                        return a.hashCode() > b.hashCode() ? 1 : -1;
-                    }
-                });
-            } else {
-                subtypes = new HashSet<>();
-            }
-            subtypes.addAll(mSubtypes);
-            return subtypes;
+        public Set<Subtype> getAll(final boolean sortForDisplay) {
+            final SubtypeSet subtypeSet = mSnapshot.mSubtypeSet;
+            return sortForDisplay ? subtypeSet.getSortedForDisplay() : subtypeSet.getAll();
         }
 
         /**
          * Get the number of enabled subtypes.
          * @return the number of enabled subtypes.
          */
-        public synchronized int size() {
-            return mSubtypes.size();
+        public int size() {
+            return mSnapshot.mSubtypeSet.mSubtypes.length;
         }
 
         /**
          * Update the preference for the list of enabled subtypes.
+         * @param subtypeSet the subtypes to save.
          */
-        private void saveSubtypeListPref() {
-            final String prefSubtypes = SubtypePreferenceUtils.createPrefSubtypes(mSubtypes);
+        private void saveSubtypeListPref(final SubtypeSet subtypeSet) {
+            final String prefSubtypes =
+                    SubtypePreferenceUtils.createPrefSubtypes(Arrays.asList(subtypeSet.mSubtypes));
             Settings.writePrefSubtypes(mPrefs, prefSubtypes);
         }
 
@@ -252,15 +222,18 @@ public class RichInputMethodManager {
          * @return whether the subtype was added to the list (or already existed in the list).
          */
         public synchronized boolean addSubtype(final Subtype subtype) {
-            if (mSubtypes.contains(subtype)) {
+            final Snapshot snapshot = mSnapshot;
+            final Subtype[] subtypes = snapshot.mSubtypeSet.mSubtypes;
+            if (snapshot.mSubtypeSet.indexOf(subtype) >= 0) {
                 // don't allow duplicates, but since it's already in the list this can be considered
                 // successful
                 return true;
             }
-            if (!mSubtypes.add(subtype)) {
-                return false;
-            }
-            saveSubtypeListPref();
+            final Subtype[] newSubtypes = Arrays.copyOf(subtypes, subtypes.length + 1);
+            newSubtypes[subtypes.length] = subtype;
+            final SubtypeSet newSubtypeSet = new SubtypeSet(newSubtypes);
+            mSnapshot = new Snapshot(newSubtypeSet, snapshot.mCurrentSubtypeIndex);
+            saveSubtypeListPref(newSubtypeSet);
             return true;
         }
 
@@ -270,32 +243,41 @@ public class RichInputMethodManager {
          * @return whether the subtype was removed (or wasn't even in the list).
          */
         public synchronized boolean removeSubtype(final Subtype subtype) {
-            if (mSubtypes.size() == 1) {
+            final Snapshot snapshot = mSnapshot;
+            final Subtype[] subtypes = snapshot.mSubtypeSet.mSubtypes;
+            if (subtypes.length == 1) {
                 // there needs to be at least one subtype
                 return false;
             }
 
-            final int index = mSubtypes.indexOf(subtype);
+            final int index = snapshot.mSubtypeSet.indexOf(subtype);
             if (index < 0) {
                 // nothing to remove
                 return true;
             }
 
+            final int currentSubtypeIndex = snapshot.mCurrentSubtypeIndex;
+            final int newCurrentSubtypeIndex;
             final boolean subtypeChanged;
-            if (mCurrentSubtypeIndex == index) {
-                mCurrentSubtypeIndex = 0;
+            if (currentSubtypeIndex == index) {
+                newCurrentSubtypeIndex = 0;
                 subtypeChanged = true;
+            } else if (currentSubtypeIndex > index) {
+                // make sure the current subtype is still pointed to when the other subtype is
+                // removed
+                newCurrentSubtypeIndex = currentSubtypeIndex - 1;
+                subtypeChanged = false;
             } else {
-                if (mCurrentSubtypeIndex > index) {
-                    // make sure the current subtype is still pointed to when the other subtype is
-                    // removed
-                    mCurrentSubtypeIndex--;
-                }
+                newCurrentSubtypeIndex = currentSubtypeIndex;
                 subtypeChanged = false;
             }
 
-            mSubtypes.remove(index);
-            saveSubtypeListPref();
+            final Subtype[] newSubtypes = new Subtype[subtypes.length - 1];
+            System.arraycopy(subtypes, 0, newSubtypes, 0, index);
+            System.arraycopy(subtypes, index + 1, newSubtypes, index, newSubtypes.length - index);
+            final SubtypeSet newSubtypeSet = new SubtypeSet(newSubtypes);
+            mSnapshot = new Snapshot(newSubtypeSet, newCurrentSubtypeIndex);
+            saveSubtypeListPref(newSubtypeSet);
             if (subtypeChanged) {
                 notifySubtypeChanged();
             }
@@ -308,15 +290,36 @@ public class RichInputMethodManager {
          * called whenever the user is done cycling through subtypes (eg: when a subtype is actually
          * used or the keyboard is closed).
          */
-        public synchronized void resetSubtypeCycleOrder() {
-            if (mCurrentSubtypeIndex == 0) {
+        public void resetSubtypeCycleOrder() {
+            // this is called for every committed text, so avoid locking when the order is already
+            // reset, which is the normal case
+            if (mSnapshot.mCurrentSubtypeIndex == 0) {
+                return;
+            }
+            synchronized (this) {
+                resetSubtypeCycleOrderLocked();
+            }
+        }
+
+        /**
+         * Move the current subtype to the beginning of the list. This must be called while holding
+         * the object's monitor.
+         */
+        private void resetSubtypeCycleOrderLocked() {
+            final Snapshot snapshot = mSnapshot;
+            final int currentSubtypeIndex = snapshot.mCurrentSubtypeIndex;
+            if (currentSubtypeIndex == 0) {
                 return;
             }
 
             // move the current subtype to the top of the list and shift everything above it down
-            Collections.rotate(mSubtypes.subList(0, mCurrentSubtypeIndex + 1), 1);
-            mCurrentSubtypeIndex = 0;
-            saveSubtypeListPref();
+            final Subtype[] newSubtypes = snapshot.mSubtypeSet.mSubtypes.clone();
+            final Subtype currentSubtype = newSubtypes[currentSubtypeIndex];
+            System.arraycopy(newSubtypes, 0, newSubtypes, 1, currentSubtypeIndex);
+            newSubtypes[0] = currentSubtype;
+            final SubtypeSet newSubtypeSet = new SubtypeSet(newSubtypes);
+            mSnapshot = new Snapshot(newSubtypeSet, 0);
+            saveSubtypeListPref(newSubtypeSet);
         }
 
         /**
@@ -325,17 +328,17 @@ public class RichInputMethodManager {
          * @return whether the current subtype was set to the requested subtype.
          */
         public synchronized boolean setCurrentSubtype(final Subtype subtype) {
-            if (getCurrentSubtype().equals(subtype)) {
+            final Snapshot snapshot = mSnapshot;
+            if (snapshot.getCurrentSubtype().equals(subtype)) {
                 // nothing to do
                 return true;
             }
-            for (int i = 0; i < mSubtypes.size(); i++) {
-                if (mSubtypes.get(i).equals(subtype)) {
-                    setCurrentSubtype(i);
-                    return true;
-                }
+            final int index = snapshot.mSubtypeSet.indexOf(subtype);
+            if (index < 0) {
+                return false;
             }
-            return false;
+            setCurrentSubtype(index);
+            return true;
         }
 
         /**
@@ -344,16 +347,16 @@ public class RichInputMethodManager {
          * @return whether the current subtype was set to the requested locale.
          */
         public synchronized boolean setCurrentSubtype(final Locale locale) {
-            final ArrayList<Locale> enabledLocales = new ArrayList<>(mSubtypes.size());
-            for (final Subtype subtype : mSubtypes) {
+            final Subtype[] subtypes = mSnapshot.mSubtypeSet.mSubtypes;
+            final ArrayList<Locale> enabledLocales = new ArrayList<>(subtypes.length);
+            for (final Subtype subtype : subtypes) {
                 enabledLocales.add(subtype.getLocaleObject());
             }
             final Locale bestLocale = LocaleUtils.findBestLocale(locale, enabledLocales);
             if (bestLocale != null) {
                 // get the first subtype (most recently used) with a matching locale
-                for (int i = 0; i < mSubtypes.size(); i++) {
-                    final Subtype subtype = mSubtypes.get(i);
-                    if (bestLocale.equals(subtype.getLocaleObject())) {
+                for (int i = 0; i < subtypes.length; i++) {
+                    if (bestLocale.equals(subtypes[i].getLocaleObject())) {
                         setCurrentSubtype(i);
                         return true;
                     }
@@ -364,20 +367,22 @@ public class RichInputMethodManager {
 
         /**
          * Set the current subtype to a specified index. This should only be used when setting the
-         * subtype to something specific (not when just iterating through the subtypes).
+         * subtype to something specific (not when just iterating through the subtypes). This must
+         * be called while holding the object's monitor.
          * @param index the index of the subtype to set as current.
          */
         private void setCurrentSubtype(final int index) {
-            if (mCurrentSubtypeIndex == index)
+            final Snapshot snapshot = mSnapshot;
+            if (snapshot.mCurrentSubtypeIndex == index)
             {
                 // nothing to do
                 return;
             }
-            mCurrentSubtypeIndex = index;
+            mSnapshot = new Snapshot(snapshot.mSubtypeSet, index);
             if (index != 0) {
                 // since the subtype was selected directly, the cycle should be reset so switching
                 // to the next subtype can iterate through all of the rest of the subtypes
-                resetSubtypeCycleOrder();
+                resetSubtypeCycleOrderLocked();
             }
             notifySubtypeChanged();
         }
@@ -390,14 +395,15 @@ public class RichInputMethodManager {
          * @return whether the subtype changed listener was called.
          */
         public synchronized boolean switchToNextSubtype(final boolean notifyChangeOnCycle) {
-            final int nextIndex = mCurrentSubtypeIndex + 1;
-            if (nextIndex >= mSubtypes.size()) {
-                mCurrentSubtypeIndex = 0;
+            final Snapshot snapshot = mSnapshot;
+            final int nextIndex = snapshot.mCurrentSubtypeIndex + 1;
+            if (nextIndex >= snapshot.mSubtypeSet.mSubtypes.length) {
+                mSnapshot = new Snapshot(snapshot.mSubtypeSet, 0);
                 if (!notifyChangeOnCycle) {
                     return false;
                 }
             } else {
-                mCurrentSubtypeIndex = nextIndex;
+                mSnapshot = new Snapshot(snapshot.mSubtypeSet, nextIndex);
             }
             notifySubtypeChanged();
             return true;
@@ -407,8 +413,134 @@ public class RichInputMethodManager {
          * Get the subtype that is currently in use (or will be once the keyboard is opened).
          * @return the current subtype.
          */
-        public synchronized Subtype getCurrentSubtype() {
-            return mSubtypes.get(mCurrentSubtypeIndex);
+        public Subtype getCurrentSubtype() {
+            return mSnapshot.getCurrentSubtype();
+        }
+    }
+
+    /**
+     * Immutable state of the enabled subtypes and which one is currently selected.
+     */
+    private static final class Snapshot {
+        /** The enabled subtypes ordered by how they should be cycled through when moving to the
+         *  next subtype. When a subtype is actually in use, it should be moved to the beginning of
+         *  the list so that the next time the user uses the switch to next subtype button, all of
+         *  the subtypes can be iterated through before potentially switching to a different input
+         *  method. */
+        public final SubtypeSet mSubtypeSet;
+        /** The index of the currently selected subtype. This is used for tracking the status of
+         *  cycling through subtypes. When actually using the keyboard, the subtype should be moved
+         *  to the beginning of the list, so this should normally be 0. */
+        public final int mCurrentSubtypeIndex;
+
+        public Snapshot(final SubtypeSet subtypeSet, final int currentSubtypeIndex) {
+            mSubtypeSet = subtypeSet;
+            mCurrentSubtypeIndex = currentSubtypeIndex;
+        }
+
+        public Subtype getCurrentSubtype() {
+            return mSubtypeSet.mSubtypes[mCurrentSubtypeIndex];
+        }
+    }
+
+    /**
+     * Immutable list of enabled subtypes. The sets that are handed out to callers are built lazily
+     * and then shared by all callers until the list changes.
+     */
+    private static final class SubtypeSet {
+        private static final Comparator<Subtype> DISPLAY_COMPARATOR = new Comparator<Subtype>() {
+            @Override
+            public int compare(Subtype a, Subtype b) {
+                if (a.equals(b)) {
+                    // ensure that this is consistent with equals
+                    return 0;
+                }
+                final int result = a.getName().compareToIgnoreCase(b.getName());
+                if (result != 0) {
+                    return result;
+                }
+                // ensure that non-equal objects are distinguished to be consistent with
+                // equals
+                return a.hashCode() > b.hashCode() ? 1 : -1;
+            }
+        };
+
+        /** This must never be modified after the object is created. */
+        public final Subtype[] mSubtypes;
+
+        // These are only caches of data derived from mSubtypes. Racing to build them is harmless
+        // since the results are equivalent and the unmodifiable wrappers are safely published.
+        private Set<Subtype> mAll;
+        private Set<Subtype> mSortedForDisplay;
+        private Set<Locale> mLocales;
+        private Map<String, Set<Subtype>> mForLocale;
+
+        public SubtypeSet(final Subtype[] subtypes) {
+            mSubtypes = subtypes;
+        }
+
+        public int indexOf(final Subtype subtype) {
+            for (int i = 0; i < mSubtypes.length; i++) {
+                if (mSubtypes[i].equals(subtype)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public Set<Subtype> getAll() {
+            Set<Subtype> all = mAll;
+            if (all == null) {
+                all = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(mSubtypes)));
+                mAll = all;
+            }
+            return all;
+        }
+
+        public Set<Subtype> getSortedForDisplay() {
+            Set<Subtype> sorted = mSortedForDisplay;
+            if (sorted == null) {
+                final Set<Subtype> subtypes = new TreeSet<>(DISPLAY_COMPARATOR);
+                Collections.addAll(subtypes, mSubtypes);
+                sorted = Collections.unmodifiableSet(subtypes);
+                mSortedForDisplay = sorted;
+            }
+            return sorted;
+        }
+
+        public Set<Locale> getLocales() {
+            Set<Locale> locales = mLocales;
+            if (locales == null) {
+                final Set<Locale> localeSet = new HashSet<>();
+                for (final Subtype subtype : mSubtypes) {
+                    localeSet.add(subtype.getLocaleObject());
+                }
+                locales = Collections.unmodifiableSet(localeSet);
+                mLocales = locales;
+            }
+            return locales;
+        }
+
+        public Set<Subtype> getForLocale(final String locale) {
+            Map<String, Set<Subtype>> forLocale = mForLocale;
+            if (forLocale == null) {
+                final Map<String, Set<Subtype>> map = new HashMap<>();
+                for (final Subtype subtype : mSubtypes) {
+                    Set<Subtype> subtypes = map.get(subtype.getLocale());
+                    if (subtypes == null) {
+                        subtypes = new HashSet<>();
+                        map.put(subtype.getLocale(), subtypes);
+                    }
+                    subtypes.add(subtype);
+                }
+                for (final Map.Entry<String, Set<Subtype>> entry : map.entrySet()) {
+                    entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+                }
+                forLocale = Collections.unmodifiableMap(map);
+                mForLocale = forLocale;
+            }
+            final Set<Subtype> subtypes = forLocale.get(locale);
+            return subtypes != null ? subtypes : Collections.<Subtype>emptySet();
         }
     }
 
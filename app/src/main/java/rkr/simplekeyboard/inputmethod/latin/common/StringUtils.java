@@ -16,9 +16,6 @@
 
 package rkr.simplekeyboard.inputmethod.latin.common;
 
-import android.text.TextUtils;
-
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Locale;
 
@@ -29,8 +26,14 @@ public final class StringUtils {
         // This utility class is not publicly instantiable.
     }
 
+    // This package doesn't depend on the Android framework, so that it can be used by code that
+    // runs on a plain JVM.
+    private static boolean isEmpty(final CharSequence text) {
+        return text == null || text.length() == 0;
+    }
+
     public static int codePointCount(final CharSequence text) {
-        if (TextUtils.isEmpty(text)) {
+        if (isEmpty(text)) {
             return 0;
         }
         return Character.codePointCount(text, 0, text.length());
@@ -65,7 +68,7 @@ public final class StringUtils {
 
     public static boolean containsInCommaSplittableText(final String text,
             final String extraValues) {
-        if (TextUtils.isEmpty(extraValues)) {
+        if (isEmpty(extraValues)) {
             return false;
         }
         return containsInArray(text, extraValues.split(SEPARATOR_FOR_COMMA_SPLITTABLE_TEXT));
@@ -73,20 +76,26 @@ public final class StringUtils {
 
     public static String removeFromCommaSplittableTextIfExists(final String text,
             final String extraValues) {
-        if (TextUtils.isEmpty(extraValues)) {
+        if (isEmpty(extraValues)) {
             return EMPTY_STRING;
         }
         final String[] elements = extraValues.split(SEPARATOR_FOR_COMMA_SPLITTABLE_TEXT);
         if (!containsInArray(text, elements)) {
             return extraValues;
         }
-        final ArrayList<String> result = new ArrayList<>(elements.length - 1);
+        final StringBuilder result = new StringBuilder(extraValues.length());
+        boolean isFirstElement = true;
         for (final String element : elements) {
-            if (!text.equals(element)) {
-                result.add(element);
+            if (text.equals(element)) {
+                continue;
+            }
+            if (!isFirstElement) {
+                result.append(SEPARATOR_FOR_COMMA_SPLITTABLE_TEXT);
             }
+            result.append(element);
+            isFirstElement = false;
         }
-        return TextUtils.join(SEPARATOR_FOR_COMMA_SPLITTABLE_TEXT, result);
+        return result.toString();
     }
 
     public static String capitalizeFirstCodePoint(final String s,
@@ -209,6 +218,46 @@ public final class StringUtils {
         return true;
     }
 
+    /**
+     * Get the length of the common prefix of two strings, without splitting a surrogate pair.
+     * @param a the first string.
+     * @param b the second string.
+     * @return the number of chars at the start of both strings that are the same.
+     */
+    public static int getCommonPrefixLength(final String a, final String b) {
+        final int maxLength = Math.min(a.length(), b.length());
+        int length = 0;
+        while (length < maxLength && a.charAt(length) == b.charAt(length)) {
+            length++;
+        }
+        if (length > 0 && Character.isHighSurrogate(a.charAt(length - 1))) {
+            length--;
+        }
+        return length;
+    }
+
+    /**
+     * Get the length of the common suffix of two strings, without splitting a surrogate pair.
+     * @param a the first string.
+     * @param b the second string.
+     * @param maxLength the maximum length to return, to keep the suffix from overlapping a prefix
+     * that was already matched.
+     * @return the number of chars at the end of both strings that are the same.
+     */
+    public static int getCommonSuffixLength(final String a, final String b, final int maxLength) {
+        final int aLength = a.length();
+        final int bLength = b.length();
+        int length = 0;
+        while (length < maxLength
+                && a.charAt(aLength - length - 1) == b.charAt(bLength - length - 1)) {
+            length++;
+        }
+        if (length > 0 && Character.isLowSurrogate(a.charAt(aLength - length))) {
+            length--;
+        }
+        return length;
+    }
+
     // TODO: like capitalizeFirst*, this does not work perfectly for Dutch because of the IJ digraph
     // which should be capitalized together in *some* cases.
     public static String capitalizeEachWord(final String text, final Locale locale) {
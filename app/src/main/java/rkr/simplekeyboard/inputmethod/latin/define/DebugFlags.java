@@ -21,11 +21,35 @@ import android.content.SharedPreferences;
 public final class DebugFlags {
     public static final boolean DEBUG_ENABLED = false;
 
+    // Preference to record the latency of the input pipeline, printed by dumpsys.
+    public static final String PREF_LATENCY_STATS = "pref_debug_latency_stats";
+
+    // Preference to send the characters typed within a frame to the editor in a single commit.
+    public static final String PREF_COALESCE_COMMITS = "pref_debug_coalesce_commits";
+
+    private static boolean sLatencyStatsEnabled = false;
+    private static boolean sCoalesceCommitsEnabled = false;
+
     private DebugFlags() {
         // This class is not publicly instantiable.
     }
 
-    @SuppressWarnings("unused")
     public static void init(final SharedPreferences prefs) {
+        sLatencyStatsEnabled = prefs.getBoolean(PREF_LATENCY_STATS, false);
+        sCoalesceCommitsEnabled = prefs.getBoolean(PREF_COALESCE_COMMITS, false);
+    }
+
+    public static void onSharedPreferenceChanged(final SharedPreferences prefs, final String key) {
+        if (PREF_LATENCY_STATS.equals(key) || PREF_COALESCE_COMMITS.equals(key)) {
+            init(prefs);
+        }
+    }
+
+    public static boolean isLatencyStatsEnabled() {
+        return sLatencyStatsEnabled;
+    }
+
+    public static boolean isCoalesceCommitsEnabled() {
+        return sCoalesceCommitsEnabled;
     }
 }
@@ -17,13 +17,12 @@
 package rkr.simplekeyboard.inputmethod.latin.inputlogic;
 
 import android.os.SystemClock;
+import android.text.InputType;
 import android.text.TextUtils;
 import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
 import android.view.inputmethod.EditorInfo;
 
-import java.util.TreeSet;
-
 import rkr.simplekeyboard.inputmethod.event.Event;
 import rkr.simplekeyboard.inputmethod.event.InputTransaction;
 import rkr.simplekeyboard.inputmethod.latin.LatinIME;
@@ -31,7 +30,9 @@ import rkr.simplekeyboard.inputmethod.latin.RichInputConnection;
 import rkr.simplekeyboard.inputmethod.latin.common.Constants;
 import rkr.simplekeyboard.inputmethod.latin.common.StringUtils;
 import rkr.simplekeyboard.inputmethod.latin.settings.SettingsValues;
+import rkr.simplekeyboard.inputmethod.latin.settings.SpacingAndPunctuations;
 import rkr.simplekeyboard.inputmethod.latin.utils.InputTypeUtils;
+import rkr.simplekeyboard.inputmethod.latin.utils.LatencyStats;
 import rkr.simplekeyboard.inputmethod.latin.utils.RecapitalizeStatus;
 import rkr.simplekeyboard.inputmethod.latin.utils.SubtypeLocaleUtils;
 
@@ -39,6 +40,17 @@ import rkr.simplekeyboard.inputmethod.latin.utils.SubtypeLocaleUtils;
  * This class manages the input logic.
  */
 public final class InputLogic {
+    // Once the delete key has repeated this many times, each further repeat deletes a whole word
+    // instead of a single character. With the default repeat interval this is about one second.
+    private static final int REPEAT_COUNT_FOR_WORD_DELETION = 20;
+    // Once the delete key has repeated this many times, each further repeat deletes a sentence.
+    private static final int REPEAT_COUNT_FOR_SENTENCE_DELETION = 50;
+    // The maximum number of characters a single accelerated repeat of the delete key can delete.
+    private static final int MAX_CHARACTERS_FOR_ACCELERATED_DELETION = 256;
+    // The maximum number of characters sent to the editor in a single replacement when
+    // recapitalizing.
+    private static final int MAX_CHARACTERS_PER_REPLACEMENT = 4096;
+
     // TODO : Remove this member when we can.
     final LatinIME mLatinIME;
 
@@ -46,7 +58,8 @@ public final class InputLogic {
     public final RichInputConnection mConnection;
     private final RecapitalizeStatus mRecapitalizeStatus = new RecapitalizeStatus();
 
-    public final TreeSet<Long> mCurrentlyPressedHardwareKeys = new TreeSet<>();
+    // The number of times the delete key has repeated since it was pressed.
+    private int mDeleteRepeatCount;
 
     /**
      * Create a new instance of the input logic.
@@ -65,7 +78,7 @@ public final class InputLogic {
      */
     public void startInput() {
         mRecapitalizeStatus.disable(); // Do not perform recapitalize until the cursor is moved once
-        mCurrentlyPressedHardwareKeys.clear();
+        mConnection.onStartInput();
     }
 
     /**
@@ -125,10 +138,17 @@ public final class InputLogic {
      * @return the complete transaction object
      */
     public InputTransaction onCodeInput(final SettingsValues settingsValues, final Event event) {
+        final long startTime = LatencyStats.startMeasuring();
         final InputTransaction inputTransaction = new InputTransaction(settingsValues);
 
         Event currentEvent = event;
         while (null != currentEvent) {
+            if (currentEvent.isFunctionalKeyEvent()
+                    || currentEvent.mCodePoint == Constants.CODE_ENTER) {
+                // Keys like delete, enter or shift act on the text typed so far, so it needs to
+                // have reached the editor first.
+                mConnection.flushPendingCommit();
+            }
             if (currentEvent.isConsumed()) {
                 handleConsumedEvent(currentEvent);
             } else if (currentEvent.isFunctionalKeyEvent()) {
@@ -138,6 +158,7 @@ public final class InputLogic {
             }
             currentEvent = currentEvent.mNextEvent;
         }
+        LatencyStats.stopMeasuring(LatencyStats.STAGE_ON_CODE_INPUT, startTime);
         return inputTransaction;
     }
 
@@ -314,9 +335,104 @@ public final class InputLogic {
                 ? InputTransaction.SHIFT_UPDATE_LATER : InputTransaction.SHIFT_UPDATE_NOW;
         inputTransaction.requireShiftUpdate(shiftUpdateKind);
 
+        mDeleteRepeatCount = event.isKeyRepeat() ? mDeleteRepeatCount + 1 : 0;
+        if (mDeleteRepeatCount >= REPEAT_COUNT_FOR_WORD_DELETION
+                && performAcceleratedDeletion(inputTransaction.mSettingsValues,
+                        mDeleteRepeatCount >= REPEAT_COUNT_FOR_SENTENCE_DELETION)) {
+            return;
+        }
         sendDownUpKeyEvent(KeyEvent.KEYCODE_DEL);
     }
 
+    /**
+     * Delete the word or the sentence before the cursor with a single call to the editor.
+     *
+     * This is used when the delete key has been repeating for a while, so that holding it on a
+     * long text doesn't go through one key event per character.
+     *
+     * @param settingsValues the current settings values.
+     * @param isSentenceDeletion true to delete the sentence before the cursor, false to delete
+     *   the word before the cursor.
+     * @return true if the text was deleted, false if a plain delete key event should be sent
+     *   instead.
+     */
+    private boolean performAcceleratedDeletion(final SettingsValues settingsValues,
+            final boolean isSentenceDeletion) {
+        final EditorInfo editorInfo = getCurrentInputEditorInfo();
+        if (editorInfo == null || editorInfo.inputType == InputType.TYPE_NULL) {
+            // Editors without a text input type rely on the key events.
+            return false;
+        }
+        if (mConnection.hasSelection() || !mConnection.canDeleteCharacters()) {
+            return false;
+        }
+        final CharSequence textBeforeCursor =
+                mConnection.getTextBeforeCursor(MAX_CHARACTERS_FOR_ACCELERATED_DELETION, 0);
+        if (TextUtils.isEmpty(textBeforeCursor)) {
+            return false;
+        }
+        final int length = getAcceleratedDeletionLength(textBeforeCursor,
+                settingsValues.mSpacingAndPunctuations, isSentenceDeletion);
+        if (length <= 0) {
+            return false;
+        }
+        mConnection.beginBatchEdit();
+        mConnection.deleteTextBeforeCursor(length);
+        mConnection.endBatchEdit();
+        return true;
+    }
+
+    /**
+     * Get the number of characters at the end of a text that make up its last word or sentence,
+     * including the separators or terminators that follow it.
+     *
+     * @param text the text before the cursor.
+     * @param spacingAndPunctuations the spacing and punctuation settings for the current locale.
+     * @param isSentenceDeletion true to measure the last sentence, false to measure the last
+     *   word.
+     * @return the number of characters to delete.
+     */
+    private static int getAcceleratedDeletionLength(final CharSequence text,
+            final SpacingAndPunctuations spacingAndPunctuations,
+            final boolean isSentenceDeletion) {
+        final int length = text.length();
+        int start = length;
+        // Take the separators after the word or sentence along with it.
+        while (start > 0) {
+            final int codePoint = Character.codePointBefore(text, start);
+            if (!isAcceleratedDeletionBoundary(codePoint, spacingAndPunctuations,
+                    isSentenceDeletion) && !Character.isWhitespace(codePoint)) {
+                break;
+            }
+            start -= Character.charCount(codePoint);
+        }
+        while (start > 0) {
+            final int codePoint = Character.codePointBefore(text, start);
+            if (isAcceleratedDeletionBoundary(codePoint, spacingAndPunctuations,
+                    isSentenceDeletion)) {
+                break;
+            }
+            start -= Character.charCount(codePoint);
+        }
+        if (start == 0 && Character.isLowSurrogate(text.charAt(0))) {
+            // The text may have been cut in the middle of a surrogate pair: don't delete half of
+            // it.
+            start = 1;
+        }
+        return length - start;
+    }
+
+    private static boolean isAcceleratedDeletionBoundary(final int codePoint,
+            final SpacingAndPunctuations spacingAndPunctuations,
+            final boolean isSentenceDeletion) {
+        if (isSentenceDeletion) {
+            return spacingAndPunctuations.isSentenceTerminator(codePoint)
+                    || Constants.CODE_ENTER == codePoint;
+        }
+        return spacingAndPunctuations.isWordSeparator(codePoint)
+                || Character.isWhitespace(codePoint);
+    }
+
     /**
      * Handle a press on the language switch key (the "globe key")
      */
@@ -350,14 +466,53 @@ public final class InputLogic {
             // We trim leading and trailing whitespace.
             mRecapitalizeStatus.trim();
         }
+        // The string that is in the editor, which may be smaller than the selection if it was
+        // trimmed.
+        final int stringStart = mRecapitalizeStatus.getNewCursorStart();
+        final String oldString = mRecapitalizeStatus.getRecapitalizedString();
         mConnection.beginBatchEdit();
         mConnection.setSelection(selectionStart, selectionStart);
         mRecapitalizeStatus.rotate();
-        mConnection.replaceText(selectionStart, selectionEnd, mRecapitalizeStatus.getRecapitalizedString());
+        replaceChangedText(stringStart, oldString, mRecapitalizeStatus.getRecapitalizedString());
         mConnection.setSelection(mRecapitalizeStatus.getNewCursorStart(), mRecapitalizeStatus.getNewCursorEnd());
         mConnection.endBatchEdit();
     }
 
+    /**
+     * Replace text in the editor, only sending the part that differs from what is already there.
+     * When the text keeps its length, the changed part is sent in pieces so that no single call
+     * to the editor carries a huge string.
+     * @param start the position of the text in the editor.
+     * @param oldText the text that is in the editor.
+     * @param newText the text to replace it with.
+     */
+    private void replaceChangedText(final int start, final String oldText, final String newText) {
+        final int prefixLength = StringUtils.getCommonPrefixLength(oldText, newText);
+        final int suffixLength = StringUtils.getCommonSuffixLength(oldText, newText,
+                Math.min(oldText.length(), newText.length()) - prefixLength);
+        final int oldEnd = oldText.length() - suffixLength;
+        final int newEnd = newText.length() - suffixLength;
+        if (oldEnd != newEnd) {
+            // The positions past the first change don't match between the two texts, so it has
+            // to be replaced at once.
+            mConnection.replaceText(start + prefixLength, start + oldEnd,
+                    newText.substring(prefixLength, newEnd));
+            return;
+        }
+        int chunkStart = prefixLength;
+        while (chunkStart < newEnd) {
+            int chunkEnd = Math.min(chunkStart + MAX_CHARACTERS_PER_REPLACEMENT, newEnd);
+            if (chunkEnd < newEnd && (Character.isHighSurrogate(newText.charAt(chunkEnd - 1))
+                    || Character.isHighSurrogate(oldText.charAt(chunkEnd - 1)))) {
+                // Don't split a surrogate pair.
+                chunkEnd--;
+            }
+            mConnection.replaceText(start + chunkStart, start + chunkEnd,
+                    newText.substring(chunkStart, chunkEnd));
+            chunkStart = chunkEnd;
+        }
+    }
+
     /**
      * Gets the current auto-caps state, factoring in the space state.
      *
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.latin.settings;
+
+import android.os.Bundle;
+
+import rkr.simplekeyboard.inputmethod.R;
+
+/**
+ * "Debug" settings sub screen.
+ *
+ * This settings sub screen handles the following debug preferences.
+ * - Record input latency
+ * - Combine typed characters
+ *
+ * The screen is only listed in the settings of debug builds.
+ */
+public final class DebugSettingsFragment extends SubScreenFragment {
+    @Override
+    public void onCreate(final Bundle icicle) {
+        super.onCreate(icicle);
+        addPreferencesFromResource(R.xml.prefs_screen_debug);
+    }
+}
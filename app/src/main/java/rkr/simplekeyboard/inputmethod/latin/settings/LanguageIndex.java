@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.latin.settings;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import rkr.simplekeyboard.inputmethod.latin.Subtype;
+import rkr.simplekeyboard.inputmethod.latin.common.LocaleUtils;
+import rkr.simplekeyboard.inputmethod.latin.utils.LocaleResourceUtils;
+import rkr.simplekeyboard.inputmethod.latin.utils.SubtypeLocaleUtils;
+
+/**
+ * The languages shown in the "Languages" settings screen, sorted by their display name in the
+ * system locale, along with whether each of them is enabled.
+ *
+ * Getting the display names is slow, so they are only computed once for each system locale,
+ * which can be done in the background with {@link #prefetch} before the screen is opened. The
+ * enabled flags are updated in place as languages are added and removed. A language of an enabled
+ * subtype whose locale isn't supported anymore is only listed while it is enabled, so that it can
+ * be removed but not added again.
+ */
+final class LanguageIndex {
+    static final class Entry {
+        final String mLocaleString;
+        final String mDisplayName;
+        final boolean mIsSupported;
+        boolean mIsEnabled;
+
+        Entry(final String localeString, final boolean isSupported) {
+            mLocaleString = localeString;
+            mDisplayName = LocaleResourceUtils.getLocaleDisplayNameInSystemLocale(localeString);
+            mIsSupported = isSupported;
+        }
+    }
+
+    private static final Comparator<Entry> DISPLAY_NAME_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry a, final Entry b) {
+            final int result = a.mDisplayName.compareToIgnoreCase(b.mDisplayName);
+            if (result != 0) {
+                return result;
+            }
+            return a.mLocaleString.compareTo(b.mLocaleString);
+        }
+    };
+
+    // Builds the languages in the background. The thread goes away when it has been idle for a
+    // while, since this is only needed when the settings are opened.
+    private static final Executor sPrefetchExecutor = new ThreadPoolExecutor(0, 1,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+    private static LanguageIndex sInstance;
+
+    private final Locale mSystemLocale;
+    // Sorted with DISPLAY_NAME_COMPARATOR.
+    private final ArrayList<Entry> mEntries;
+    private final HashMap<String, Entry> mEntriesByLocale;
+
+    private LanguageIndex(final Locale systemLocale) {
+        mSystemLocale = systemLocale;
+        final List<String> localeStrings = SubtypeLocaleUtils.getSupportedLocales();
+        mEntries = new ArrayList<>(localeStrings.size());
+        mEntriesByLocale = new HashMap<>(localeStrings.size() * 2);
+        for (final String localeString : localeStrings) {
+            // Normalize the locale string the same way as the locales of the subtypes.
+            final String normalizedLocaleString = LocaleUtils.getLocaleString(
+                    LocaleUtils.constructLocaleFromString(localeString));
+            if (mEntriesByLocale.containsKey(normalizedLocaleString)) {
+                continue;
+            }
+            final Entry entry = new Entry(normalizedLocaleString, true /* isSupported */);
+            mEntries.add(entry);
+            mEntriesByLocale.put(normalizedLocaleString, entry);
+        }
+        Collections.sort(mEntries, DISPLAY_NAME_COMPARATOR);
+    }
+
+    /**
+     * Get the languages for the current system locale, building them if they weren't built yet
+     * for it. If they are being built in the background, this waits for them to be done.
+     * @param context the context to get the system locale and display names.
+     * @return the languages.
+     */
+    static synchronized LanguageIndex getInstance(final Context context) {
+        LocaleResourceUtils.init(context);
+        final Locale systemLocale = context.getResources().getConfiguration().locale;
+        if (sInstance == null || !sInstance.mSystemLocale.equals(systemLocale)) {
+            sInstance = new LanguageIndex(systemLocale);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Start building the languages in the background, so that they are ready when the settings
+     * screen for them is opened.
+     * @param context the context to get the system locale and display names.
+     */
+    static void prefetch(final Context context) {
+        final Context appContext = context.getApplicationContext();
+        sPrefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                getInstance(appContext);
+            }
+        });
+    }
+
+    /**
+     * Get all of the languages.
+     * @return the languages sorted by their display name.
+     */
+    ArrayList<Entry> getEntries() {
+        return mEntries;
+    }
+
+    /**
+     * Set the languages that are enabled.
+     * @param enabledSubtypes the subtypes that are enabled.
+     */
+    void setEnabledSubtypes(final Set<Subtype> enabledSubtypes) {
+        final Iterator<Entry> it = mEntries.iterator();
+        while (it.hasNext()) {
+            final Entry entry = it.next();
+            if (!entry.mIsSupported) {
+                it.remove();
+                mEntriesByLocale.remove(entry.mLocaleString);
+                continue;
+            }
+            entry.mIsEnabled = false;
+        }
+        for (final Subtype subtype : enabledSubtypes) {
+            setEnabled(LocaleUtils.getLocaleString(subtype.getLocaleObject()), true);
+        }
+    }
+
+    /**
+     * Set whether a language is enabled.
+     * @param localeString the locale of the language.
+     * @param isEnabled whether the language is enabled.
+     */
+    void setEnabled(final String localeString, final boolean isEnabled) {
+        Entry entry = mEntriesByLocale.get(localeString);
+        if (entry == null) {
+            if (!isEnabled) {
+                return;
+            }
+            // A subtype with a locale that isn't supported anymore. It is listed while it is
+            // enabled, so that it can be removed.
+            entry = new Entry(localeString, false /* isSupported */);
+            final int index = Collections.binarySearch(mEntries, entry, DISPLAY_NAME_COMPARATOR);
+            mEntries.add(index < 0 ? -index - 1 : index, entry);
+            mEntriesByLocale.put(localeString, entry);
+        } else if (!isEnabled && !entry.mIsSupported) {
+            mEntries.remove(entry);
+            mEntriesByLocale.remove(localeString);
+            return;
+        }
+        entry.mIsEnabled = isEnabled;
+    }
+}
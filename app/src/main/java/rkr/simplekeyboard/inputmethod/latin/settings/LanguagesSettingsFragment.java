@@ -32,18 +32,13 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 
-import java.util.Comparator;
-import java.util.Locale;
+import java.util.ArrayList;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import rkr.simplekeyboard.inputmethod.R;
 import rkr.simplekeyboard.inputmethod.compat.MenuItemIconColorCompat;
 import rkr.simplekeyboard.inputmethod.latin.Subtype;
 import rkr.simplekeyboard.inputmethod.latin.RichInputMethodManager;
-import rkr.simplekeyboard.inputmethod.latin.common.LocaleUtils;
-import rkr.simplekeyboard.inputmethod.latin.utils.LocaleResourceUtils;
 import rkr.simplekeyboard.inputmethod.latin.utils.SubtypeLocaleUtils;
 
 import static rkr.simplekeyboard.inputmethod.latin.settings.SingleLanguageSettingsFragment.LOCALE_BUNDLE_KEY;
@@ -57,6 +52,7 @@ public final class LanguagesSettingsFragment extends PreferenceFragment {
     private static final boolean DEBUG_SUBTYPE_ID = false;
 
     private RichInputMethodManager mRichImm;
+    private LanguageIndex mLanguageIndex;
     private CharSequence[] mUsedLocaleNames;
     private String[] mUsedLocaleValues;
     private CharSequence[] mUnusedLocaleNames;
@@ -123,109 +119,60 @@ public final class LanguagesSettingsFragment extends PreferenceFragment {
      * Build the preferences and them to this settings screen.
      */
     private void buildContent() {
-        final Context context = getActivity();
-        final PreferenceGroup group = getPreferenceScreen();
-        group.removeAll();
-
-        final PreferenceCategory languageCategory = new PreferenceCategory(context);
-        languageCategory.setTitle(R.string.user_languages);
-        group.addPreference(languageCategory);
-
-        final Comparator<Locale> comparator = new LocaleUtils.LocaleComparator();
+        // The languages may have been changed from another screen, so the enabled ones are read
+        // again from the subtypes. This is cheap since the display names are already known.
+        mLanguageIndex = LanguageIndex.getInstance(getActivity());
         final Set<Subtype> enabledSubtypes = mRichImm.getEnabledSubtypes(false);
-        final SortedSet<Locale> usedLocales = getUsedLocales(enabledSubtypes, comparator);
-        final SortedSet<Locale> unusedLocales = getUnusedLocales(usedLocales, comparator);
-
-        buildLanguagePreferences(usedLocales, group, context);
-        setLocaleEntries(usedLocales, unusedLocales);
-    }
-
-    /**
-     * Get all of the unique languages from the subtypes that have been enabled.
-     * @param subtypes the list of subtypes for this IME that have been enabled.
-     * @param comparator the comparator to sort the languages.
-     * @return a set of locales for the used languages sorted using the specified comparator.
-     */
-    private SortedSet<Locale> getUsedLocales(final Set<Subtype> subtypes,
-                                             final Comparator<Locale> comparator) {
-        final SortedSet<Locale> locales = new TreeSet<>(comparator);
-
-        for (final Subtype subtype : subtypes) {
-            if (DEBUG_SUBTYPE_ID) {
+        if (DEBUG_SUBTYPE_ID) {
+            for (final Subtype subtype : enabledSubtypes) {
                 Log.d(TAG, String.format("Enabled subtype: %-6s 0x%08x %11d %s",
                         subtype.getLocale(), subtype.hashCode(), subtype.hashCode(),
                         subtype.getName()));
             }
-            locales.add(subtype.getLocaleObject());
         }
-
-        return locales;
+        mLanguageIndex.setEnabledSubtypes(enabledSubtypes);
+        buildLanguageContent();
     }
 
     /**
-     * Get the list of languages supported by this IME that aren't included in
-     * {@link #getUsedLocales}.
-     * @param usedLocales the used locales.
-     * @param comparator the comparator to sort the languages.
-     * @return a set of locales for the unused languages sorted using the specified comparator.
+     * Build the preferences for the enabled languages and the lists for the dialogs from the
+     * languages in {@link #mLanguageIndex}.
      */
-    private SortedSet<Locale> getUnusedLocales(final Set<Locale> usedLocales,
-                                               final Comparator<Locale> comparator) {
-        final SortedSet<Locale> locales = new TreeSet<>(comparator);
-        for (String localeString : SubtypeLocaleUtils.getSupportedLocales()) {
-            final Locale locale = LocaleUtils.constructLocaleFromString(localeString);
-            if (usedLocales.contains(locale)) {
-                continue;
-            }
-            locales.add(locale);
-        }
-        return locales;
-    }
+    private void buildLanguageContent() {
+        final Context context = getActivity();
+        final PreferenceGroup group = getPreferenceScreen();
+        group.removeAll();
 
-    /**
-     * Create a language preference for each of the specified locales in the preference group. These
-     * preferences will be added to the group in the order of the locales that are passed in.
-     * @param locales the locales to add preferences for.
-     * @param group the preference group to add preferences to.
-     * @param context the context for this application.
-     */
-    private void buildLanguagePreferences(final SortedSet<Locale> locales,
-                                          final PreferenceGroup group, final Context context) {
-        for (final Locale locale : locales) {
-            final String localeString = LocaleUtils.getLocaleString(locale);
-            final SingleLanguagePreference pref =
-                    new SingleLanguagePreference(context, localeString);
-            group.addPreference(pref);
-        }
-    }
+        final PreferenceCategory languageCategory = new PreferenceCategory(context);
+        languageCategory.setTitle(R.string.user_languages);
+        group.addPreference(languageCategory);
 
-    /**
-     * Set the lists of used languages that can be removed and unused languages that can be added.
-     * @param usedLocales the enabled locales for this IME.
-     * @param unusedLocales the unused locales that are supported in this IME.
-     */
-    private void setLocaleEntries(final SortedSet<Locale> usedLocales,
-                                  final SortedSet<Locale> unusedLocales) {
-        mUsedLocaleNames = new CharSequence[usedLocales.size()];
-        mUsedLocaleValues = new String[usedLocales.size()];
-        int i = 0;
-        for (Locale locale : usedLocales) {
-            final String localeString = LocaleUtils.getLocaleString(locale);
-            mUsedLocaleValues[i] = localeString;
-            mUsedLocaleNames[i] =
-                    LocaleResourceUtils.getLocaleDisplayNameInSystemLocale(localeString);
-            i++;
+        final ArrayList<LanguageIndex.Entry> entries = mLanguageIndex.getEntries();
+        int usedCount = 0;
+        for (final LanguageIndex.Entry entry : entries) {
+            if (entry.mIsEnabled) {
+                usedCount++;
+            }
         }
-
-        mUnusedLocaleNames = new CharSequence[unusedLocales.size()];
-        mUnusedLocaleValues = new String[unusedLocales.size()];
-        i = 0;
-        for (Locale locale : unusedLocales) {
-            final String localeString = LocaleUtils.getLocaleString(locale);
-            mUnusedLocaleValues[i] = localeString;
-            mUnusedLocaleNames[i] =
-                    LocaleResourceUtils.getLocaleDisplayNameInSystemLocale(localeString);
-            i++;
+        final int unusedCount = entries.size() - usedCount;
+        mUsedLocaleNames = new CharSequence[usedCount];
+        mUsedLocaleValues = new String[usedCount];
+        mUnusedLocaleNames = new CharSequence[unusedCount];
+        mUnusedLocaleValues = new String[unusedCount];
+        int usedIndex = 0;
+        int unusedIndex = 0;
+        for (final LanguageIndex.Entry entry : entries) {
+            if (entry.mIsEnabled) {
+                mUsedLocaleValues[usedIndex] = entry.mLocaleString;
+                mUsedLocaleNames[usedIndex] = entry.mDisplayName;
+                usedIndex++;
+                group.addPreference(new SingleLanguagePreference(context, entry.mLocaleString,
+                        entry.mDisplayName));
+            } else {
+                mUnusedLocaleValues[unusedIndex] = entry.mLocaleString;
+                mUnusedLocaleNames[unusedIndex] = entry.mDisplayName;
+                unusedIndex++;
+            }
         }
     }
 
@@ -246,11 +193,12 @@ public final class LanguagesSettingsFragment extends PreferenceFragment {
                                     mUnusedLocaleValues[i],
                                     LanguagesSettingsFragment.this.getResources());
                             mRichImm.addSubtype(subtype);
+                            mLanguageIndex.setEnabled(mUnusedLocaleValues[i], true);
                         }
 
                         // refresh the list of enabled languages
                         getActivity().invalidateOptionsMenu();
-                        buildContent();
+                        buildLanguageContent();
                     }
                 });
     }
@@ -273,11 +221,12 @@ public final class LanguagesSettingsFragment extends PreferenceFragment {
                             for (final Subtype subtype : subtypes) {
                                 mRichImm.removeSubtype(subtype);
                             }
+                            mLanguageIndex.setEnabled(mUsedLocaleValues[i], false);
                         }
 
                         // refresh the list of enabled languages
                         getActivity().invalidateOptionsMenu();
-                        buildContent();
+                        buildLanguageContent();
                     }
                 });
     }
@@ -365,12 +314,14 @@ public final class LanguagesSettingsFragment extends PreferenceFragment {
          * @param context the context for this application.
          * @param localeString a string specification of a locale, in a format of "ll_cc_variant",
          *                     where "ll" is a language code, "cc" is a country code.
+         * @param displayName the display name of the locale in the system locale.
          */
-        public SingleLanguagePreference(final Context context, final String localeString) {
+        public SingleLanguagePreference(final Context context, final String localeString,
+                                        final String displayName) {
             super(context);
             mLocale = localeString;
 
-            setTitle(LocaleResourceUtils.getLocaleDisplayNameInSystemLocale(localeString));
+            setTitle(displayName);
             setFragment(SingleLanguageSettingsFragment.class.getName());
         }
 
@@ -24,7 +24,6 @@ import android.preference.Preference;
 import android.preference.SwitchPreference;
 
 import rkr.simplekeyboard.inputmethod.R;
-import rkr.simplekeyboard.inputmethod.keyboard.KeyboardLayoutSet;
 
 /**
  * "Preferences" settings sub screen.
@@ -53,10 +52,7 @@ public final class PreferencesSettingsFragment extends SubScreenFragment {
 
     @Override
     public void onSharedPreferenceChanged(final SharedPreferences prefs, final String key) {
-        if (key.equals(Settings.PREF_HIDE_SPECIAL_CHARS) ||
-                key.equals(Settings.PREF_SHOW_NUMBER_ROW)) {
-            KeyboardLayoutSet.onKeyboardThemeChanged();
-        } else if (key.equals(Settings.PREF_HIDE_LANGUAGE_SWITCH_KEY)) {
+        if (key.equals(Settings.PREF_HIDE_LANGUAGE_SWITCH_KEY)) {
             updateImeSwitchEnabledPref();
         }
     }
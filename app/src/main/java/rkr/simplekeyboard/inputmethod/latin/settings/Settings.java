@@ -23,6 +23,7 @@ import android.content.res.Resources;
 import android.graphics.Color;
 import android.util.Log;
 
+import java.util.ArrayList;
 import java.util.concurrent.locks.ReentrantLock;
 
 import rkr.simplekeyboard.inputmethod.R;
@@ -30,12 +31,14 @@ import rkr.simplekeyboard.inputmethod.compat.PreferenceManagerCompat;
 import rkr.simplekeyboard.inputmethod.keyboard.KeyboardTheme;
 import rkr.simplekeyboard.inputmethod.latin.AudioAndHapticFeedbackManager;
 import rkr.simplekeyboard.inputmethod.latin.InputAttributes;
+import rkr.simplekeyboard.inputmethod.latin.define.DebugFlags;
 import rkr.simplekeyboard.inputmethod.latin.utils.ResourceUtils;
 
 public final class Settings implements SharedPreferences.OnSharedPreferenceChangeListener {
     private static final String TAG = Settings.class.getSimpleName();
     // Settings screens
     public static final String SCREEN_THEME = "screen_theme";
+    public static final String SCREEN_DEBUG = "screen_debug";
     // In the same order as xml/prefs.xml
     public static final String PREF_AUTO_CAP = "auto_cap";
     public static final String PREF_VIBRATE_ON = "vibrate_on";
@@ -58,10 +61,26 @@ public final class Settings implements SharedPreferences.OnSharedPreferenceChang
     private static final float UNDEFINED_PREFERENCE_VALUE_FLOAT = -1.0f;
     private static final int UNDEFINED_PREFERENCE_VALUE_INT = -1;
 
+    /**
+     * Listener for changes of the current settings values.
+     */
+    public interface OnSettingsChangedListener {
+        /**
+         * Called on the main thread after new settings values were published.
+         * @param settingsValues the new settings values.
+         * @param changedFields a bit mask of the SettingsValues.FIELD_* constants for the fields
+         * that have a different value than in the previous settings values.
+         */
+        void onSettingsChanged(SettingsValues settingsValues, int changedFields);
+    }
+
     private Resources mRes;
     private SharedPreferences mPrefs;
-    private SettingsValues mSettingsValues;
+    // The settings values are immutable, so they are published without locking readers out. The
+    // lock is only held while building new settings values from the previous ones.
+    private volatile SettingsValues mSettingsValues;
     private final ReentrantLock mSettingsValuesLock = new ReentrantLock();
+    private final ArrayList<OnSettingsChangedListener> mListeners = new ArrayList<>();
 
     private static final Settings sInstance = new Settings();
 
@@ -87,24 +106,57 @@ public final class Settings implements SharedPreferences.OnSharedPreferenceChang
         mPrefs.unregisterOnSharedPreferenceChangeListener(this);
     }
 
+    public void addOnSettingsChangedListener(final OnSettingsChangedListener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeOnSettingsChangedListener(final OnSettingsChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
     @Override
     public void onSharedPreferenceChanged(final SharedPreferences prefs, final String key) {
+        DebugFlags.onSharedPreferenceChanged(prefs, key);
+        if (!SettingsValues.isSettingsValuesPreference(key)) {
+            return;
+        }
+        final SettingsValues previousSettingsValues;
+        final SettingsValues settingsValues;
         mSettingsValuesLock.lock();
         try {
-            if (mSettingsValues == null) {
+            previousSettingsValues = mSettingsValues;
+            if (previousSettingsValues == null) {
                 // TODO: Introduce a static function to register this class and ensure that
                 // loadSettings must be called before "onSharedPreferenceChanged" is called.
                 Log.w(TAG, "onSharedPreferenceChanged called before loadSettings.");
                 return;
             }
-            loadSettings(mSettingsValues.mInputAttributes);
+            settingsValues = new SettingsValues(previousSettingsValues, prefs, mRes, key);
+            mSettingsValues = settingsValues;
         } finally {
             mSettingsValuesLock.unlock();
         }
+        notifySettingsChanged(settingsValues, previousSettingsValues);
     }
 
     public void loadSettings(final InputAttributes inputAttributes) {
-        mSettingsValues = new SettingsValues(mPrefs, mRes, inputAttributes);
+        final SettingsValues previousSettingsValues = mSettingsValues;
+        final SettingsValues settingsValues = new SettingsValues(mPrefs, mRes, inputAttributes);
+        mSettingsValues = settingsValues;
+        notifySettingsChanged(settingsValues, previousSettingsValues);
+    }
+
+    private void notifySettingsChanged(final SettingsValues settingsValues,
+            final SettingsValues previousSettingsValues) {
+        final int changedFields = settingsValues.getChangedFields(previousSettingsValues);
+        if (changedFields == 0) {
+            return;
+        }
+        for (final OnSettingsChangedListener listener : mListeners) {
+            listener.onSettingsChanged(settingsValues, changedFields);
+        }
     }
 
     // TODO: Remove this method and add proxy method to SettingsValues.
@@ -93,6 +93,8 @@ public class SettingsActivity extends PreferenceActivity {
             actionBar.setDisplayHomeAsUpEnabled(true);
             actionBar.setHomeButtonEnabled(true);
         }
+        // Get the languages ready for when their settings screen is opened.
+        LanguageIndex.prefetch(this);
     }
 
     @Override
@@ -19,7 +19,9 @@ package rkr.simplekeyboard.inputmethod.latin.settings;
 import android.os.Bundle;
 import android.preference.PreferenceScreen;
 
+import rkr.simplekeyboard.inputmethod.BuildConfig;
 import rkr.simplekeyboard.inputmethod.R;
+import rkr.simplekeyboard.inputmethod.latin.define.DebugFlags;
 import rkr.simplekeyboard.inputmethod.latin.utils.ApplicationUtils;
 
 public final class SettingsFragment extends InputMethodSettingsFragment {
@@ -31,5 +33,9 @@ public final class SettingsFragment extends InputMethodSettingsFragment {
         final PreferenceScreen preferenceScreen = getPreferenceScreen();
         preferenceScreen.setTitle(
                 ApplicationUtils.getActivityTitleResId(getActivity(), SettingsActivity.class));
+        if (!DebugFlags.DEBUG_ENABLED && !BuildConfig.DEBUG) {
+            // The debug settings are experimental and only meant for development builds.
+            preferenceScreen.removePreference(findPreference(Settings.SCREEN_DEBUG));
+        }
     }
 }
@@ -28,6 +28,29 @@ import rkr.simplekeyboard.inputmethod.latin.InputAttributes;
 public class SettingsValues {
     public static final float DEFAULT_SIZE_SCALE = 1.0f; // 100%
 
+    // Bits identifying the fields read from preferences, for {@link #getChangedFields}.
+    public static final int FIELD_AUTO_CAP = 1 << 0;
+    public static final int FIELD_VIBRATE_ON = 1 << 1;
+    public static final int FIELD_SOUND_ON = 1 << 2;
+    public static final int FIELD_KEY_PREVIEW_POPUP_ON = 1 << 3;
+    public static final int FIELD_SHOWS_LANGUAGE_SWITCH_KEY = 1 << 4;
+    public static final int FIELD_IME_SWITCH_ENABLED = 1 << 5;
+    public static final int FIELD_KEY_LONGPRESS_TIMEOUT = 1 << 6;
+    public static final int FIELD_HIDE_SPECIAL_CHARS = 1 << 7;
+    public static final int FIELD_SHOW_NUMBER_ROW = 1 << 8;
+    public static final int FIELD_SPACE_SWIPE_ENABLED = 1 << 9;
+    public static final int FIELD_DELETE_SWIPE_ENABLED = 1 << 10;
+    public static final int FIELD_USE_MATCHING_NAVBAR_COLOR = 1 << 11;
+    public static final int FIELD_KEYPRESS_VIBRATION_DURATION = 1 << 12;
+    public static final int FIELD_KEYPRESS_SOUND_VOLUME = 1 << 13;
+    public static final int FIELD_KEYBOARD_HEIGHT_SCALE = 1 << 14;
+    public static final int ALL_FIELDS = (1 << 15) - 1;
+    // The fields that change the keys of a keyboard without being part of its
+    // {@link rkr.simplekeyboard.inputmethod.keyboard.KeyboardId}, so the keyboards that were built
+    // with the previous values can't be reused.
+    public static final int FIELDS_AFFECTING_KEYBOARD_LAYOUT =
+            FIELD_HIDE_SPECIAL_CHARS | FIELD_SHOW_NUMBER_ROW;
+
     // From resources:
     public final SpacingAndPunctuations mSpacingAndPunctuations;
     // From configuration:
@@ -89,6 +112,130 @@ public class SettingsValues {
         mUseMatchingNavbarColor = Settings.readUseMatchingNavbarColor(prefs);
     }
 
+    /**
+     * Create settings values after a single preference changed. Only the fields that depend on
+     * that preference are read again, the others are taken from the previous settings values.
+     * @param previous the settings values before the preference changed.
+     * @param prefs the shared preferences.
+     * @param res the resources.
+     * @param key the key of the preference that changed.
+     */
+    public SettingsValues(final SettingsValues previous, final SharedPreferences prefs,
+            final Resources res, final String key) {
+        mSpacingAndPunctuations = previous.mSpacingAndPunctuations;
+        mInputAttributes = previous.mInputAttributes;
+        mHasHardwareKeyboard = previous.mHasHardwareKeyboard;
+        mDisplayOrientation = previous.mDisplayOrientation;
+        mKeyPreviewPopupDismissDelay = previous.mKeyPreviewPopupDismissDelay;
+
+        mAutoCap = Settings.PREF_AUTO_CAP.equals(key)
+                ? prefs.getBoolean(Settings.PREF_AUTO_CAP, true) : previous.mAutoCap;
+        mVibrateOn = Settings.PREF_VIBRATE_ON.equals(key)
+                ? Settings.readVibrationEnabled(prefs, res) : previous.mVibrateOn;
+        mSoundOn = Settings.PREF_SOUND_ON.equals(key)
+                ? Settings.readKeypressSoundEnabled(prefs, res) : previous.mSoundOn;
+        mKeyPreviewPopupOn = Settings.PREF_POPUP_ON.equals(key)
+                ? Settings.readKeyPreviewPopupEnabled(prefs, res) : previous.mKeyPreviewPopupOn;
+        mShowsLanguageSwitchKey = Settings.PREF_HIDE_LANGUAGE_SWITCH_KEY.equals(key)
+                ? Settings.readShowLanguageSwitchKey(prefs) : previous.mShowsLanguageSwitchKey;
+        mImeSwitchEnabled = Settings.PREF_ENABLE_IME_SWITCH.equals(key)
+                ? Settings.readEnableImeSwitch(prefs) : previous.mImeSwitchEnabled;
+        mKeyLongpressTimeout = Settings.PREF_KEY_LONGPRESS_TIMEOUT.equals(key)
+                ? Settings.readKeyLongpressTimeout(prefs, res) : previous.mKeyLongpressTimeout;
+        mKeypressVibrationDuration = Settings.PREF_VIBRATION_DURATION_SETTINGS.equals(key)
+                ? Settings.readKeypressVibrationDuration(prefs, res)
+                : previous.mKeypressVibrationDuration;
+        mKeypressSoundVolume = Settings.PREF_KEYPRESS_SOUND_VOLUME.equals(key)
+                ? Settings.readKeypressSoundVolume(prefs, res) : previous.mKeypressSoundVolume;
+        mKeyboardHeightScale = Settings.PREF_KEYBOARD_HEIGHT.equals(key)
+                ? Settings.readKeyboardHeight(prefs, DEFAULT_SIZE_SCALE)
+                : previous.mKeyboardHeightScale;
+        mHideSpecialChars = Settings.PREF_HIDE_SPECIAL_CHARS.equals(key)
+                ? Settings.readHideSpecialChars(prefs) : previous.mHideSpecialChars;
+        mShowNumberRow = Settings.PREF_SHOW_NUMBER_ROW.equals(key)
+                ? Settings.readShowNumberRow(prefs) : previous.mShowNumberRow;
+        mSpaceSwipeEnabled = Settings.PREF_SPACE_SWIPE.equals(key)
+                ? Settings.readSpaceSwipeEnabled(prefs) : previous.mSpaceSwipeEnabled;
+        mDeleteSwipeEnabled = Settings.PREF_DELETE_SWIPE.equals(key)
+                ? Settings.readDeleteSwipeEnabled(prefs) : previous.mDeleteSwipeEnabled;
+        mUseMatchingNavbarColor = Settings.PREF_MATCHING_NAVBAR_COLOR.equals(key)
+                ? Settings.readUseMatchingNavbarColor(prefs) : previous.mUseMatchingNavbarColor;
+    }
+
+    /**
+     * Check whether a preference is read into any of the fields of the settings values.
+     * @param key the key of the preference.
+     * @return true if the settings values depend on the preference.
+     */
+    public static boolean isSettingsValuesPreference(final String key) {
+        return Settings.PREF_AUTO_CAP.equals(key)
+                || Settings.PREF_VIBRATE_ON.equals(key)
+                || Settings.PREF_SOUND_ON.equals(key)
+                || Settings.PREF_POPUP_ON.equals(key)
+                || Settings.PREF_HIDE_LANGUAGE_SWITCH_KEY.equals(key)
+                || Settings.PREF_ENABLE_IME_SWITCH.equals(key)
+                || Settings.PREF_KEY_LONGPRESS_TIMEOUT.equals(key)
+                || Settings.PREF_VIBRATION_DURATION_SETTINGS.equals(key)
+                || Settings.PREF_KEYPRESS_SOUND_VOLUME.equals(key)
+                || Settings.PREF_KEYBOARD_HEIGHT.equals(key)
+                || Settings.PREF_HIDE_SPECIAL_CHARS.equals(key)
+                || Settings.PREF_SHOW_NUMBER_ROW.equals(key)
+                || Settings.PREF_SPACE_SWIPE.equals(key)
+                || Settings.PREF_DELETE_SWIPE.equals(key)
+                || Settings.PREF_MATCHING_NAVBAR_COLOR.equals(key);
+    }
+
+    /**
+     * Get the fields read from preferences that have a different value in other settings values.
+     * @param other the settings values to compare with, or null.
+     * @return a bit mask of the FIELD_* constants for the fields that differ, which is
+     * {@link #ALL_FIELDS} if there are no other settings values.
+     */
+    public int getChangedFields(final SettingsValues other) {
+        if (other == null) {
+            return ALL_FIELDS;
+        }
+        int changedFields = 0;
+        if (mAutoCap != other.mAutoCap) changedFields |= FIELD_AUTO_CAP;
+        if (mVibrateOn != other.mVibrateOn) changedFields |= FIELD_VIBRATE_ON;
+        if (mSoundOn != other.mSoundOn) changedFields |= FIELD_SOUND_ON;
+        if (mKeyPreviewPopupOn != other.mKeyPreviewPopupOn) {
+            changedFields |= FIELD_KEY_PREVIEW_POPUP_ON;
+        }
+        if (mShowsLanguageSwitchKey != other.mShowsLanguageSwitchKey) {
+            changedFields |= FIELD_SHOWS_LANGUAGE_SWITCH_KEY;
+        }
+        if (mImeSwitchEnabled != other.mImeSwitchEnabled) {
+            changedFields |= FIELD_IME_SWITCH_ENABLED;
+        }
+        if (mKeyLongpressTimeout != other.mKeyLongpressTimeout) {
+            changedFields |= FIELD_KEY_LONGPRESS_TIMEOUT;
+        }
+        if (mHideSpecialChars != other.mHideSpecialChars) {
+            changedFields |= FIELD_HIDE_SPECIAL_CHARS;
+        }
+        if (mShowNumberRow != other.mShowNumberRow) changedFields |= FIELD_SHOW_NUMBER_ROW;
+        if (mSpaceSwipeEnabled != other.mSpaceSwipeEnabled) {
+            changedFields |= FIELD_SPACE_SWIPE_ENABLED;
+        }
+        if (mDeleteSwipeEnabled != other.mDeleteSwipeEnabled) {
+            changedFields |= FIELD_DELETE_SWIPE_ENABLED;
+        }
+        if (mUseMatchingNavbarColor != other.mUseMatchingNavbarColor) {
+            changedFields |= FIELD_USE_MATCHING_NAVBAR_COLOR;
+        }
+        if (mKeypressVibrationDuration != other.mKeypressVibrationDuration) {
+            changedFields |= FIELD_KEYPRESS_VIBRATION_DURATION;
+        }
+        if (Float.compare(mKeypressSoundVolume, other.mKeypressSoundVolume) != 0) {
+            changedFields |= FIELD_KEYPRESS_SOUND_VOLUME;
+        }
+        if (Float.compare(mKeyboardHeightScale, other.mKeyboardHeightScale) != 0) {
+            changedFields |= FIELD_KEYBOARD_HEIGHT_SCALE;
+        }
+        return changedFields;
+    }
+
     public boolean isWordSeparator(final int code) {
         return mSpacingAndPunctuations.isWordSeparator(code);
     }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.latin.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.util.Printer;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+/**
+ * Process-wide pool of the bitmaps that the keyboard views render into.
+ *
+ * A view releases its bitmap to the pool when it is hidden rather than recycling it, so the next
+ * view of the same size doesn't need to allocate a new one. The pool keeps the content of the
+ * bitmaps: a bitmap is released along with the content it holds, and the view that displays that
+ * content again can get it back as it was, to only draw what changed since.
+ *
+ * The pooled bitmaps are only recycled when memory is actually low, not whenever the keyboard is
+ * hidden, since that is exactly when they are waiting to be reused.
+ */
+public final class BitmapPool {
+    // The main keyboard and one more keys keyboard, or the keyboards for both orientations.
+    private static final int MAX_POOLED_BITMAPS = 2;
+
+    private static final class Entry {
+        final Bitmap mBitmap;
+        final WeakReference<Object> mContent;
+
+        Entry(final Bitmap bitmap, final Object content) {
+            mBitmap = bitmap;
+            mContent = new WeakReference<>(content);
+        }
+
+        boolean matches(final int width, final int height, final Bitmap.Config config) {
+            return mBitmap.getWidth() == width && mBitmap.getHeight() == height
+                    && mBitmap.getConfig() == config;
+        }
+    }
+
+    // Ordered from the least to the most recently released.
+    private static final ArrayList<Entry> sEntries = new ArrayList<>();
+    private static int sSnapshotHitCount;
+    private static int sHitCount;
+    private static int sMissCount;
+
+    private static final CacheRegistry.TrimmableCache sTrimmer =
+            new CacheRegistry.TrimmableCache() {
+        @Override
+        public long getEstimatedBytes() {
+            return BitmapPool.getEstimatedBytes();
+        }
+
+        @Override
+        public void trim() {
+            clear();
+        }
+    };
+
+    static {
+        CacheRegistry.register("Bitmap pool", CacheRegistry.REBUILD_MODERATE, sTrimmer);
+    }
+
+    private BitmapPool() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Get a bitmap that still holds some content.
+     * @param width the width of the bitmap.
+     * @param height the height of the bitmap.
+     * @param config the config of the bitmap.
+     * @param content the object that identifies the content, as passed to {@link #release}.
+     * @return the bitmap that was released with the content, or null if there isn't any.
+     */
+    public static synchronized Bitmap obtainSnapshot(final int width, final int height,
+            final Bitmap.Config config, final Object content) {
+        if (content == null) {
+            return null;
+        }
+        for (int i = sEntries.size() - 1; i >= 0; i--) {
+            final Entry entry = sEntries.get(i);
+            if (entry.mContent.get() == content && entry.matches(width, height, config)) {
+                sEntries.remove(i);
+                sSnapshotHitCount++;
+                return entry.mBitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a bitmap from the pool, or allocate a new one. The bitmap is transparent like a newly
+     * allocated one, since the keyboard views only clear it when they have a background.
+     * @param width the width of the bitmap.
+     * @param height the height of the bitmap.
+     * @param config the config of the bitmap.
+     * @return a mutable bitmap.
+     */
+    public static synchronized Bitmap obtain(final int width, final int height,
+            final Bitmap.Config config) {
+        for (int i = sEntries.size() - 1; i >= 0; i--) {
+            final Entry entry = sEntries.get(i);
+            if (entry.matches(width, height, config)) {
+                sEntries.remove(i);
+                sHitCount++;
+                entry.mBitmap.eraseColor(Color.TRANSPARENT);
+                return entry.mBitmap;
+            }
+        }
+        sMissCount++;
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Return a bitmap to the pool. The bitmap must not be used by the caller anymore.
+     * @param bitmap the bitmap.
+     * @param content the object that identifies what the bitmap holds, to get it back with
+     * {@link #obtainSnapshot}, or null if the content isn't meant to be reused.
+     */
+    public static synchronized void release(final Bitmap bitmap, final Object content) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (sEntries.size() >= MAX_POOLED_BITMAPS) {
+            sEntries.remove(0).mBitmap.recycle();
+        }
+        sEntries.add(new Entry(bitmap, content));
+    }
+
+    public static synchronized void clear() {
+        for (final Entry entry : sEntries) {
+            entry.mBitmap.recycle();
+        }
+        sEntries.clear();
+    }
+
+    private static synchronized long getEstimatedBytes() {
+        long bytes = 0;
+        for (final Entry entry : sEntries) {
+            bytes += entry.mBitmap.getByteCount();
+        }
+        return bytes;
+    }
+
+    public static synchronized void dump(final Printer p) {
+        p.println("  Bitmap pool: size=" + sEntries.size() + " snapshotHits=" + sSnapshotHitCount
+                + " hits=" + sHitCount + " misses=" + sMissCount);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.latin.utils;
+
+import android.content.ComponentCallbacks2;
+import android.util.Printer;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+/**
+ * Registry of the caches that can be released when the system is low on memory.
+ *
+ * Each cache declares how expensive it is to rebuild, and {@link #onTrimMemory} releases the
+ * caches from the cheapest to the most expensive, going further the more memory is needed. The
+ * registry only holds weak references to the caches, so registering a cache that belongs to a view
+ * doesn't keep the view alive.
+ */
+public final class CacheRegistry {
+    private static final int NOTHING = -1;
+    /** Bitmaps, views and measurements that are simply recreated when they are next used. */
+    public static final int REBUILD_CHEAP = 0;
+    /** Keyboards that are built again from the parsed layouts when they are next used. */
+    public static final int REBUILD_MODERATE = 1;
+    /** Parsed layouts that need to be read from the resources again. */
+    public static final int REBUILD_EXPENSIVE = 2;
+    private static final String[] REBUILD_PRICE_NAMES = new String[] {
+            "CHEAP",
+            "MODERATE",
+            "EXPENSIVE"};
+
+    public interface TrimmableCache {
+        /**
+         * Get an estimate of the memory that would be released by {@link #trim}.
+         * @return the estimated number of bytes.
+         */
+        long getEstimatedBytes();
+
+        /**
+         * Release the memory held by the cache.
+         */
+        void trim();
+    }
+
+    private static final class Entry {
+        final String mName;
+        final int mRebuildPrice;
+        final WeakReference<TrimmableCache> mCache;
+        long mFreedBytes;
+
+        Entry(final String name, final int rebuildPrice, final TrimmableCache cache) {
+            mName = name;
+            mRebuildPrice = rebuildPrice;
+            mCache = new WeakReference<>(cache);
+        }
+    }
+
+    // Sorted by rebuild price so that the cheapest caches are released first.
+    private static final ArrayList<Entry> sEntries = new ArrayList<>();
+    private static int sLastTrimLevel = NOTHING;
+    private static int sTrimCount;
+    private static long sFreedBytes;
+
+    private CacheRegistry() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Register a cache to be released when memory is low.
+     * @param name the name of the cache, used in the dump.
+     * @param rebuildPrice how expensive it is to rebuild the cache, one of REBUILD_*.
+     * @param cache the cache. The caller needs to hold a reference to it for as long as it should
+     * stay registered.
+     */
+    public static synchronized void register(final String name, final int rebuildPrice,
+            final TrimmableCache cache) {
+        // Forget the caches that were collected, since views register a cache every time they
+        // are created.
+        for (int i = sEntries.size() - 1; i >= 0; i--) {
+            if (sEntries.get(i).mCache.get() == null) {
+                sEntries.remove(i);
+            }
+        }
+        int index = sEntries.size();
+        while (index > 0 && sEntries.get(index - 1).mRebuildPrice > rebuildPrice) {
+            index--;
+        }
+        sEntries.add(index, new Entry(name, rebuildPrice, cache));
+    }
+
+    /**
+     * Get the most expensive caches to release for a trim level.
+     * @param level the level passed to {@link ComponentCallbacks2#onTrimMemory}.
+     * @return the highest rebuild price of the caches to release.
+     */
+    private static int getMaxRebuildPriceToRelease(final int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            // The process is on the list of processes to kill, so release everything that can be
+            // released to stay off it for longer.
+            return REBUILD_EXPENSIVE;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            // The keyboard isn't displayed, so there is no need for anything that is only used
+            // for drawing it.
+            return REBUILD_CHEAP;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            // The keyboard may be in use, so only keep what is needed for the current keyboard.
+            return REBUILD_MODERATE;
+        }
+        return NOTHING;
+    }
+
+    public static synchronized void onTrimMemory(final int level) {
+        final int maxRebuildPrice = getMaxRebuildPriceToRelease(level);
+        sLastTrimLevel = level;
+        sTrimCount++;
+        for (int i = 0; i < sEntries.size(); i++) {
+            final Entry entry = sEntries.get(i);
+            final TrimmableCache cache = entry.mCache.get();
+            if (cache == null) {
+                sEntries.remove(i--);
+                continue;
+            }
+            if (entry.mRebuildPrice > maxRebuildPrice) {
+                // The entries are sorted by price, so everything else is even more expensive.
+                break;
+            }
+            final long bytesBefore = cache.getEstimatedBytes();
+            cache.trim();
+            final long freedBytes = Math.max(0, bytesBefore - cache.getEstimatedBytes());
+            entry.mFreedBytes += freedBytes;
+            sFreedBytes += freedBytes;
+        }
+    }
+
+    public static synchronized void dump(final Printer p) {
+        p.println("  Cache registry: trims=" + sTrimCount + " lastTrimLevel=" + sLastTrimLevel
+                + " freedBytes=" + sFreedBytes);
+        for (final Entry entry : sEntries) {
+            final TrimmableCache cache = entry.mCache.get();
+            if (cache == null) {
+                continue;
+            }
+            p.println("    " + entry.mName + ": rebuild=" + REBUILD_PRICE_NAMES[entry.mRebuildPrice]
+                    + " estimatedBytes=" + cache.getEstimatedBytes()
+                    + " freedBytes=" + entry.mFreedBytes);
+        }
+    }
+}
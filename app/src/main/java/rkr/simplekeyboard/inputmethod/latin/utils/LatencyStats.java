@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.latin.utils;
+
+import android.os.SystemClock;
+import android.util.Printer;
+
+import rkr.simplekeyboard.inputmethod.latin.define.DebugFlags;
+
+/**
+ * Latency histograms for the stages of the input pipeline, printed by dumpsys.
+ *
+ * Nothing is recorded unless {@link DebugFlags#isLatencyStatsEnabled()}, which is set on the debug
+ * settings screen. When it is, no allocation happens after class initialization. Measurements are
+ * expected to be taken on the UI thread; the dump may read slightly inconsistent counts, which is
+ * fine for statistics.
+ */
+public final class LatencyStats {
+    public static final int STAGE_TOUCH_DISPATCH = 0;
+    public static final int STAGE_MOTION_EVENT = 1;
+    public static final int STAGE_POINTER_DOWN = 2;
+    public static final int STAGE_POINTER_UP = 3;
+    public static final int STAGE_ON_EVENT = 4;
+    public static final int STAGE_ON_CODE_INPUT = 5;
+    public static final int STAGE_COMMIT_TEXT = 6;
+    public static final int STAGE_TOUCH_TO_COMMIT = 7;
+    public static final int STAGE_DRAW = 8;
+    public static final int STAGE_SHOW_MORE_KEYS_PANEL = 9;
+    public static final int STAGE_SHOW_TO_FIRST_FRAME = 10;
+    private static final String[] STAGE_NAMES = new String[] {
+            "TOUCH_DISPATCH",
+            "MOTION_EVENT",
+            "POINTER_DOWN",
+            "POINTER_UP",
+            "ON_EVENT",
+            "ON_CODE_INPUT",
+            "COMMIT_TEXT",
+            "TOUCH_TO_COMMIT",
+            "DRAW",
+            "SHOW_MORE_KEYS_PANEL",
+            "SHOW_TO_FIRST_FRAME"};
+    private static final int STAGE_COUNT = STAGE_NAMES.length;
+
+    public static final long NOT_MEASURED = 0;
+
+    // Values are bucketed log-linearly: each power of two is split into 2^SUB_BUCKET_BITS buckets,
+    // so that every bucket is within 1/2^SUB_BUCKET_BITS of the values it holds.
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Values are in microseconds, so this covers up to about 30 seconds. Anything longer goes
+    // into the last bucket.
+    private static final int MAX_MAGNITUDE = 24;
+    private static final int BUCKET_COUNT =
+            (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private static final long[][] sCounts = new long[STAGE_COUNT][BUCKET_COUNT];
+    private static final long[] sTotalCounts = new long[STAGE_COUNT];
+    private static final long[] sMaxValues = new long[STAGE_COUNT];
+    private static final double[] PERCENTILES = new double[] { 50.0, 90.0, 99.0 };
+
+    private static long sLastTouchEventTime = NOT_MEASURED;
+    private static long sWindowShownTime = NOT_MEASURED;
+
+    private LatencyStats() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Start measuring a stage.
+     * @return the start time to pass to {@link #stopMeasuring}, or {@link #NOT_MEASURED} if the
+     * stats are disabled.
+     */
+    public static long startMeasuring() {
+        if (!DebugFlags.isLatencyStatsEnabled()) {
+            return NOT_MEASURED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Stop measuring a stage and record its duration.
+     * @param stage the stage that was measured.
+     * @param startTime the value returned by {@link #startMeasuring}.
+     */
+    public static void stopMeasuring(final int stage, final long startTime) {
+        if (startTime == NOT_MEASURED) {
+            return;
+        }
+        record(stage, (System.nanoTime() - startTime) / 1000);
+    }
+
+    /**
+     * Record the delivery of a touch event, to measure its dispatch delay and the time until the
+     * resulting text is committed.
+     * @param eventTime the time of the event, in the {@link SystemClock#uptimeMillis} time base.
+     */
+    public static void onTouchEvent(final long eventTime) {
+        if (!DebugFlags.isLatencyStatsEnabled()) {
+            return;
+        }
+        record(STAGE_TOUCH_DISPATCH, (SystemClock.uptimeMillis() - eventTime) * 1000);
+        sLastTouchEventTime = eventTime;
+    }
+
+    /**
+     * Record that text is being committed. Only the first commit following a touch event is
+     * counted, so that text typed with a hardware keyboard is not attributed to an old touch.
+     */
+    public static void onCommitText() {
+        if (!DebugFlags.isLatencyStatsEnabled() || sLastTouchEventTime == NOT_MEASURED) {
+            return;
+        }
+        record(STAGE_TOUCH_TO_COMMIT, (SystemClock.uptimeMillis() - sLastTouchEventTime) * 1000);
+        sLastTouchEventTime = NOT_MEASURED;
+    }
+
+    /**
+     * Record that the keyboard window is being shown, to measure the time until the keyboard is
+     * drawn.
+     */
+    public static void onWindowShown() {
+        sWindowShownTime = startMeasuring();
+    }
+
+    /**
+     * Record that a keyboard frame was drawn. Only the first frame after the window is shown is
+     * counted.
+     */
+    public static void onFrameDrawn() {
+        if (sWindowShownTime == NOT_MEASURED) {
+            return;
+        }
+        stopMeasuring(STAGE_SHOW_TO_FIRST_FRAME, sWindowShownTime);
+        sWindowShownTime = NOT_MEASURED;
+    }
+
+    private static void record(final int stage, final long valueUs) {
+        final long value = Math.max(0, valueUs);
+        sCounts[stage][getBucketIndex(value)]++;
+        sTotalCounts[stage]++;
+        if (value > sMaxValues[stage]) {
+            sMaxValues[stage] = value;
+        }
+    }
+
+    private static int getBucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKET_COUNT - 1;
+        }
+        final int subBucket = (int)(value >> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Get the highest value that can be recorded in a bucket.
+     */
+    private static long getBucketUpperBound(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int magnitude = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        final int subBucket = index % SUB_BUCKET_COUNT;
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        return ((long)(SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+
+    private static long getPercentile(final int stage, final double percentile) {
+        final long total = sTotalCounts[stage];
+        final long threshold = Math.max(1, (long)Math.ceil(total * percentile / 100.0));
+        final long[] counts = sCounts[stage];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts[i];
+            if (count >= threshold) {
+                return Math.min(getBucketUpperBound(i), sMaxValues[stage]);
+            }
+        }
+        return sMaxValues[stage];
+    }
+
+    public static void dump(final Printer p) {
+        if (!DebugFlags.isLatencyStatsEnabled()) {
+            return;
+        }
+        p.println("LatencyStats (us):");
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            final long total = sTotalCounts[stage];
+            final StringBuilder sb = new StringBuilder();
+            sb.append("  ").append(STAGE_NAMES[stage]).append(": count=").append(total);
+            if (total > 0) {
+                for (final double percentile : PERCENTILES) {
+                    sb.append(" p").append((int)percentile).append('=')
+                            .append(getPercentile(stage, percentile));
+                }
+                sb.append(" max=").append(sMaxValues[stage]);
+            }
+            p.println(sb.toString());
+        }
+    }
+}
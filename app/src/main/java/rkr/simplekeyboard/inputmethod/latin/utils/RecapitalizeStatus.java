@@ -72,6 +72,9 @@ public class RecapitalizeStatus {
     private boolean mSkipOriginalMixedCaseMode;
     private Locale mLocale;
     private String mStringAfter;
+    // The string in each of the modes, indexed by mode, which are computed when they are first
+    // needed and kept for as long as the same string is being recapitalized.
+    private final String[] mStringsForModes = new String[ROTATION_STYLE.length];
     private boolean mIsStarted;
     private boolean mIsEnabled = true;
 
@@ -90,6 +93,7 @@ public class RecapitalizeStatus {
         mCursorStartAfter = cursorStart;
         mCursorEndAfter = cursorEnd;
         mStringAfter = string;
+        clearStringsForModes();
         final int initialMode = getStringMode(mStringBefore);
         mLocale = locale;
         if (CAPS_MODE_ORIGINAL_MIXED_CASE == initialMode) {
@@ -113,6 +117,36 @@ public class RecapitalizeStatus {
         mIsStarted = false;
     }
 
+    private void clearStringsForModes() {
+        for (int i = 0; i < mStringsForModes.length; i++) {
+            mStringsForModes[i] = null;
+        }
+    }
+
+    private String getStringForMode(final int mode) {
+        final String cachedString = mStringsForModes[mode];
+        if (cachedString != null) {
+            return cachedString;
+        }
+        final String string;
+        switch (mode) {
+        case CAPS_MODE_ALL_LOWER:
+            string = mStringBefore.toLowerCase(mLocale);
+            break;
+        case CAPS_MODE_FIRST_WORD_UPPER:
+            string = StringUtils.capitalizeEachWord(mStringBefore, mLocale);
+            break;
+        case CAPS_MODE_ALL_UPPER:
+            string = mStringBefore.toUpperCase(mLocale);
+            break;
+        case CAPS_MODE_ORIGINAL_MIXED_CASE:
+        default:
+            string = mStringBefore;
+        }
+        mStringsForModes[mode] = string;
+        return string;
+    }
+
     public boolean isStarted() {
         return mIsStarted;
     }
@@ -147,22 +181,7 @@ public class RecapitalizeStatus {
                         (mRotationStyleCurrentIndex + 1) % ROTATION_STYLE.length;
             }
             ++count;
-            switch (ROTATION_STYLE[mRotationStyleCurrentIndex]) {
-            case CAPS_MODE_ORIGINAL_MIXED_CASE:
-                mStringAfter = mStringBefore;
-                break;
-            case CAPS_MODE_ALL_LOWER:
-                mStringAfter = mStringBefore.toLowerCase(mLocale);
-                break;
-            case CAPS_MODE_FIRST_WORD_UPPER:
-                mStringAfter = StringUtils.capitalizeEachWord(mStringBefore, mLocale);
-                break;
-            case CAPS_MODE_ALL_UPPER:
-                mStringAfter = mStringBefore.toUpperCase(mLocale);
-                break;
-            default:
-                mStringAfter = mStringBefore;
-            }
+            mStringAfter = getStringForMode(ROTATION_STYLE[mRotationStyleCurrentIndex]);
         } while (mStringAfter.equals(oldResult) && count < ROTATION_STYLE.length + 1);
         mCursorEndAfter = mCursorStartAfter + mStringAfter.length();
     }
@@ -192,6 +211,7 @@ public class RecapitalizeStatus {
             mCursorStartBefore = mCursorStartAfter = mCursorStartBefore + nonWhitespaceStart;
             mStringAfter = mStringBefore =
                     mStringBefore.substring(nonWhitespaceStart, nonWhitespaceEnd);
+            clearStringsForModes();
         }
     }
 
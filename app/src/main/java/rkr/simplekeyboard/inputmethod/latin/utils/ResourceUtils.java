@@ -16,8 +16,9 @@
 
 package rkr.simplekeyboard.inputmethod.latin.utils;
 
+import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
 import android.content.res.Resources;
-import android.content.res.TypedArray;
 import android.graphics.Color;
 import android.os.Build;
 import android.text.TextUtils;
@@ -38,6 +39,14 @@ public final class ResourceUtils {
     public static final float UNDEFINED_RATIO = -1.0f;
     public static final int UNDEFINED_DIMENSION = -1;
 
+    // The changes to the resource configuration that may select different resources for the
+    // keyboard, since it has resources specific to the orientation, the smallest width, the night
+    // mode and the locale.
+    private static final int RESOURCE_CONFIG_CHANGES = ActivityInfo.CONFIG_ORIENTATION
+            | ActivityInfo.CONFIG_SMALLEST_SCREEN_SIZE | ActivityInfo.CONFIG_DENSITY
+            | ActivityInfo.CONFIG_FONT_SCALE | ActivityInfo.CONFIG_UI_MODE
+            | ActivityInfo.CONFIG_LOCALE;
+
     private ResourceUtils() {
         // This utility class is not publicly instantiable.
     }
@@ -180,6 +189,19 @@ public final class ResourceUtils {
         return matchedAll;
     }
 
+    /**
+     * Check whether the resources of the keyboard are the same for two resource configurations,
+     * so that what was loaded from the resources with one configuration can be used with the other.
+     * @param configuration the configuration the resources were loaded with.
+     * @param newConfiguration the current configuration.
+     * @return true if the configurations select the same resources.
+     */
+    public static boolean hasSameResources(final Configuration configuration,
+            final Configuration newConfiguration) {
+        return configuration != null
+                && (configuration.diff(newConfiguration) & RESOURCE_CONFIG_CHANGES) == 0;
+    }
+
     public static int getKeyboardHeight(final Resources res, final SettingsValues settingsValues) {
         final int defaultKeyboardHeight = getDefaultKeyboardHeight(res);
         float scale = settingsValues.mKeyboardHeightScale;
@@ -213,70 +235,34 @@ public final class ResourceUtils {
         return dimension > 0;
     }
 
-    public static float getFraction(final TypedArray a, final int index, final float defValue) {
-        final TypedValue value = a.peekValue(index);
-        if (value == null || !isFractionValue(value)) {
-            return defValue;
-        }
-        return a.getFraction(index, 1, 1, defValue);
-    }
-
-    public static float getFraction(final TypedArray a, final int index) {
-        return getFraction(a, index, UNDEFINED_RATIO);
-    }
-
-    public static float getFraction(final TypedArray a, final int index, final float base,
+    public static float getFraction(final TypedValue value, final float base,
                                     final float defValue) {
-        final TypedValue value = a.peekValue(index);
         if (value == null || !isFractionValue(value)) {
             return defValue;
         }
         return value.getFraction(base, base);
     }
 
-    public static int getDimensionPixelSize(final TypedArray a, final int index) {
-        final TypedValue value = a.peekValue(index);
-        if (value == null || !isDimensionValue(value)) {
-            return ResourceUtils.UNDEFINED_DIMENSION;
-        }
-        return a.getDimensionPixelSize(index, ResourceUtils.UNDEFINED_DIMENSION);
-    }
-
-    public static float getDimensionOrFraction(final TypedArray a, final int index, final int base,
-            final float defValue) {
-        final TypedValue value = a.peekValue(index);
-        if (value == null) {
-            return defValue;
-        }
-        if (isFractionValue(value)) {
-            return a.getFraction(index, base, base, defValue);
-        } else if (isDimensionValue(value)) {
-            return a.getDimension(index, defValue);
-        }
-        return defValue;
-    }
-
-    public static float getDimensionOrFraction(final TypedArray a, final int index,
-                                               final float base, final float defValue) {
-        final TypedValue value = a.peekValue(index);
+    public static float getDimensionOrFraction(final TypedValue value, final float base,
+                                               final float defValue,
+                                               final DisplayMetrics metrics) {
         if (value == null) {
             return defValue;
         }
         if (isFractionValue(value)) {
-            return value.getFraction(index, base);
+            return value.getFraction(base, base);
         } else if (isDimensionValue(value)) {
-            return a.getDimension(index, defValue);
+            return value.getDimension(metrics);
         }
         return defValue;
     }
 
-    public static int getEnumValue(final TypedArray a, final int index, final int defValue) {
-        final TypedValue value = a.peekValue(index);
+    public static int getEnumValue(final TypedValue value, final int defValue) {
         if (value == null) {
             return defValue;
         }
         if (isIntegerValue(value)) {
-            return a.getInt(index, defValue);
+            return value.data;
         }
         return defValue;
     }
@@ -25,6 +25,10 @@ public final class TypefaceUtils {
     private static final char[] KEY_LABEL_REFERENCE_CHAR = { 'M' };
     private static final char[] KEY_NUMERIC_HINT_LABEL_REFERENCE_CHAR = { '8' };
 
+    // Rough size of a cached measurement on a 32-bit runtime, which is only used for the memory
+    // stats.
+    private static final int ESTIMATED_BYTES_PER_ENTRY = 24;
+
     private TypefaceUtils() {
         // This utility class is not publicly instantiable.
     }
@@ -99,6 +103,34 @@ public final class TypefaceUtils {
     // Working variable for the following method.
     private static final Rect sStringWidthBounds = new Rect();
 
+    private static final CacheRegistry.TrimmableCache sCharGeometryCacheTrimmer =
+            new CacheRegistry.TrimmableCache() {
+        @Override
+        public long getEstimatedBytes() {
+            final int size;
+            synchronized (sTextHeightCache) {
+                synchronized (sTextWidthCache) {
+                    size = sTextHeightCache.size() + sTextWidthCache.size();
+                }
+            }
+            return (long)size * ESTIMATED_BYTES_PER_ENTRY;
+        }
+
+        @Override
+        public void trim() {
+            synchronized (sTextHeightCache) {
+                sTextHeightCache.clear();
+            }
+            synchronized (sTextWidthCache) {
+                sTextWidthCache.clear();
+            }
+        }
+    };
+    static {
+        CacheRegistry.register("Reference character sizes", CacheRegistry.REBUILD_CHEAP,
+                sCharGeometryCacheTrimmer);
+    }
+
     public static float getStringWidth(final String string, final Paint paint) {
         synchronized (sStringWidthBounds) {
             paint.getTextBounds(string, 0, string.length(), sStringWidthBounds);
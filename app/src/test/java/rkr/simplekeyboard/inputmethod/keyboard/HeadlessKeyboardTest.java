@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.keyboard;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import rkr.simplekeyboard.inputmethod.headless.ResourceTable;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.HeadlessKeyboardResources;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyVisualAttributes;
+import rkr.simplekeyboard.inputmethod.latin.Subtype;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Builds the keyboards with the layouts read by the headless resources, and checks that they are
+ * the same as the ones built with the layouts read by the Android resources.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class HeadlessKeyboardTest {
+    private static String describeKey(final Key key) {
+        return key + " label=" + key.getLabel() + " hint=" + key.getHintLabel()
+                + " icon=" + key.getIconId() + " output=" + key.getOutputText()
+                + " altCode=" + key.getAltCode()
+                + " moreKeys=" + Arrays.toString(key.getMoreKeys())
+                + " moreKeysColumns=" + key.getMoreKeysColumnNumber()
+                + " moreKeyLabelFlags=" + key.getMoreKeyLabelFlags()
+                + " defined=" + key.getDefinedWidth() + "x" + key.getDefinedHeight()
+                + " padding=" + key.getLeftPadding() + "," + key.getTopPadding() + ","
+                + key.getRightPadding() + "," + key.getBottomPadding();
+    }
+
+    private static void assertSameKeyboard(final String message, final Keyboard expected,
+            final Keyboard actual) {
+        assertEquals(message, expected.mId, actual.mId);
+        assertEquals(message, expected.mOccupiedWidth, actual.mOccupiedWidth);
+        assertEquals(message, expected.mOccupiedHeight, actual.mOccupiedHeight);
+        assertEquals(message, expected.mVerticalGap, actual.mVerticalGap, 0.0f);
+        assertEquals(message, expected.mHorizontalGap, actual.mHorizontalGap, 0.0f);
+        assertEquals(message, expected.mBottomPadding, actual.mBottomPadding, 0.0f);
+        assertEquals(message, expected.mMoreKeysTemplate, actual.mMoreKeysTemplate);
+        assertTrue(message, KeyVisualAttributes.hasSameValues(expected.mKeyVisualAttributes,
+                actual.mKeyVisualAttributes));
+        final List<Key> expectedKeys = expected.getSortedKeys();
+        final List<Key> actualKeys = actual.getSortedKeys();
+        assertEquals(message, expectedKeys.size(), actualKeys.size());
+        for (int i = 0; i < expectedKeys.size(); i++) {
+            final Key expectedKey = expectedKeys.get(i);
+            final Key actualKey = actualKeys.get(i);
+            assertEquals(message, describeKey(expectedKey), describeKey(actualKey));
+            assertEquals(message + " " + expectedKey, expectedKey, actualKey);
+            assertTrue(message + " " + expectedKey, expectedKey.hasSameVisualsAs(actualKey));
+        }
+    }
+
+    @Test
+    public void testKeyboardsMatchBaselineGeometry()
+            throws IOException, XmlPullParserException {
+        final Context context = RuntimeEnvironment.getApplication();
+        final Map<String, String> baseline;
+        try (final InputStream in =
+                getClass().getResourceAsStream(KeyGeometry.RESOURCE_NAME)) {
+            baseline = KeyGeometry.read(in);
+        }
+        final ResourceTable table =
+                HeadlessKeyboardResources.loadResourceTable(context.getResources());
+        final List<KeyGeometry.Case> cases = KeyGeometry.getCases(context.getResources());
+        assertEquals(baseline.size(), cases.size());
+        for (final KeyGeometry.Case c : cases) {
+            final String expected = baseline.get(c.mName);
+            assertNotNull(c.mName, expected);
+            KeyboardLayoutSet.onKeyboardLayoutSettingsChanged();
+            final Keyboard keyboard = c.build(context, c.mWidth, c.mHeight,
+                    new HeadlessKeyboardResources(context, table, c.mTheme.mStyleId));
+            assertEquals(c.mName, expected, KeyGeometry.describe(keyboard));
+        }
+    }
+
+    @Test
+    public void testKeyboardsMatchKeyboardsFromAndroidResources()
+            throws IOException, XmlPullParserException {
+        final Context context = RuntimeEnvironment.getApplication();
+        final List<Subtype> subtypes =
+                KeyGeometry.getSubtypeForEachLayoutSet(context.getResources());
+        assertFalse(subtypes.isEmpty());
+        final ResourceTable table =
+                HeadlessKeyboardResources.loadResourceTable(context.getResources());
+        for (final KeyboardTheme theme : KeyboardTheme.KEYBOARD_THEMES) {
+            KeyboardLayoutSet.onKeyboardLayoutSettingsChanged();
+            final List<Keyboard> expectedKeyboards =
+                    KeyboardBuildBenchmark.buildKeyboards(context, theme, subtypes, null);
+            KeyboardLayoutSet.onKeyboardLayoutSettingsChanged();
+            final List<Keyboard> keyboards = KeyboardBuildBenchmark.buildKeyboards(context,
+                    theme, subtypes,
+                    new HeadlessKeyboardResources(context, table, theme.mStyleId));
+            assertEquals(theme.mThemeName, expectedKeyboards.size(), keyboards.size());
+            for (int i = 0; i < keyboards.size(); i++) {
+                assertSameKeyboard(theme.mThemeName + " " + expectedKeyboards.get(i).mId,
+                        expectedKeyboards.get(i), keyboards.get(i));
+            }
+        }
+    }
+}
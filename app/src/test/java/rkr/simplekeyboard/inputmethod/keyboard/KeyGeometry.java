@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.keyboard;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.text.InputType;
+import android.view.ContextThemeWrapper;
+import android.view.inputmethod.EditorInfo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardResources;
+import rkr.simplekeyboard.inputmethod.latin.Subtype;
+import rkr.simplekeyboard.inputmethod.latin.utils.SubtypeLocaleUtils;
+
+/**
+ * The keyboards whose key geometry is recorded in {@link #RESOURCE_NAME}, and the text the
+ * geometry of a keyboard is recorded as.
+ *
+ * The recorded geometry was captured by running this class against the keyboard builder as it was
+ * before keyboards could be built from a {@link rkr.simplekeyboard.inputmethod.keyboard.internal
+ * .KeyboardLayoutModel}, so it only uses methods that existed then.
+ */
+final class KeyGeometry {
+    static final String RESOURCE_NAME = "baseline_key_geometry.txt";
+    private static final String CASE_PREFIX = "== ";
+
+    private static final int[][] SIZES = { { 1080, 700 }, { 801, 333 } };
+    private static final int[] TEXT_ELEMENT_IDS = {
+            KeyboardId.ELEMENT_ALPHABET,
+            KeyboardId.ELEMENT_SYMBOLS,
+            KeyboardId.ELEMENT_SYMBOLS_SHIFTED
+    };
+    private static final int[] NUMERIC_INPUT_TYPES = {
+            InputType.TYPE_CLASS_PHONE,
+            InputType.TYPE_CLASS_NUMBER
+    };
+
+    private KeyGeometry() {
+        // This utility class is not publicly instantiable.
+    }
+
+    static final class Case {
+        final String mName;
+        final KeyboardTheme mTheme;
+        final Subtype mSubtype;
+        final int mWidth;
+        final int mHeight;
+        final boolean mShowNumberRow;
+        final int mInputType;
+        final int mElementId;
+
+        Case(final KeyboardTheme theme, final Subtype subtype, final int[] size,
+                final boolean showNumberRow, final int inputType, final int elementId) {
+            mTheme = theme;
+            mSubtype = subtype;
+            mWidth = size[0];
+            mHeight = size[1];
+            mShowNumberRow = showNumberRow;
+            mInputType = inputType;
+            mElementId = elementId;
+            mName = theme.mThemeName + " " + subtype.getKeyboardLayoutSet() + " "
+                    + subtype.getLocale() + " " + mWidth + "x" + mHeight
+                    + (showNumberRow ? " numberRow" : "") + " inputType=" + inputType + " "
+                    + KeyboardId.elementIdToName(elementId);
+        }
+
+        Keyboard build(final Context context, final int width, final int height) {
+            return build(context, width, height, null);
+        }
+
+        /**
+         * @param keyboardResources the resources that the layouts are read from, or null to read
+         *        them from the resources of the context.
+         */
+        Keyboard build(final Context context, final int width, final int height,
+                final KeyboardResources keyboardResources) {
+            final EditorInfo editorInfo = new EditorInfo();
+            editorInfo.inputType = mInputType;
+            final KeyboardLayoutSet.Builder builder = new KeyboardLayoutSet.Builder(
+                    new ContextThemeWrapper(context, mTheme.mStyleId), editorInfo)
+                    .setKeyboardTheme(mTheme.mThemeId)
+                    .setKeyboardGeometry(width, height)
+                    .setSubtype(mSubtype)
+                    .setLanguageSwitchKeyEnabled(true)
+                    .setShowSpecialChars(true)
+                    .setShowNumberRow(mShowNumberRow);
+            if (keyboardResources != null) {
+                builder.setKeyboardResources(keyboardResources);
+            }
+            return builder.build().getKeyboard(mElementId);
+        }
+
+        Keyboard build(final Context context) {
+            return build(context, mWidth, mHeight);
+        }
+    }
+
+    // One subtype for each layout set, with a locale that has the texts the layout set refers to.
+    static List<Subtype> getSubtypeForEachLayoutSet(final Resources res) {
+        final ArrayList<Subtype> subtypes = new ArrayList<>();
+        final HashSet<String> layoutSetNames = new HashSet<>();
+        for (final String locale : SubtypeLocaleUtils.getSupportedLocales()) {
+            for (final Subtype subtype : SubtypeLocaleUtils.getSubtypes(locale, res)) {
+                if (layoutSetNames.add(subtype.getKeyboardLayoutSet())) {
+                    subtypes.add(subtype);
+                }
+            }
+        }
+        return subtypes;
+    }
+
+    /**
+     * Get the recorded keyboards: the text keyboards of every layout set at two sizes, the one at
+     * the second size with the number row, the numeric keyboards, and the alphabet keyboard in
+     * every theme.
+     */
+    static List<Case> getCases(final Resources res) {
+        final List<Subtype> subtypes = getSubtypeForEachLayoutSet(res);
+        final KeyboardTheme defaultTheme = KeyboardTheme.KEYBOARD_THEMES[0];
+        final ArrayList<Case> cases = new ArrayList<>();
+        for (final Subtype subtype : subtypes) {
+            for (final int elementId : TEXT_ELEMENT_IDS) {
+                cases.add(new Case(defaultTheme, subtype, SIZES[0], false,
+                        InputType.TYPE_CLASS_TEXT, elementId));
+            }
+            cases.add(new Case(defaultTheme, subtype, SIZES[1], true, InputType.TYPE_CLASS_TEXT,
+                    KeyboardId.ELEMENT_ALPHABET));
+        }
+        for (final int inputType : NUMERIC_INPUT_TYPES) {
+            for (final int[] size : SIZES) {
+                cases.add(new Case(defaultTheme, subtypes.get(0), size, false, inputType,
+                        KeyboardId.ELEMENT_ALPHABET));
+            }
+        }
+        for (final KeyboardTheme theme : KeyboardTheme.KEYBOARD_THEMES) {
+            if (theme != defaultTheme) {
+                cases.add(new Case(theme, subtypes.get(0), SIZES[0], false,
+                        InputType.TYPE_CLASS_TEXT, KeyboardId.ELEMENT_ALPHABET));
+            }
+        }
+        return cases;
+    }
+
+    static String describe(final Keyboard keyboard) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("keyboard ").append(keyboard.mOccupiedWidth).append('x')
+                .append(keyboard.mOccupiedHeight).append(" common ")
+                .append(keyboard.mMostCommonKeyWidth).append('x')
+                .append(keyboard.mMostCommonKeyHeight).append('\n');
+        for (final Key key : keyboard.getSortedKeys()) {
+            sb.append(key.getCode()).append(' ').append(key.getLabel()).append(' ')
+                    .append(key.getX()).append(',').append(key.getY()).append(' ')
+                    .append(key.getWidth()).append('x').append(key.getHeight()).append(" pad ")
+                    .append(key.getLeftPadding()).append(',').append(key.getTopPadding())
+                    .append(',').append(key.getRightPadding()).append(',')
+                    .append(key.getBottomPadding()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    static String describe(final Case c, final Keyboard keyboard) {
+        return CASE_PREFIX + c.mName + '\n' + describe(keyboard);
+    }
+
+    /**
+     * Read the recorded geometry.
+     * @return the text of each keyboard as returned by {@link #describe(Keyboard)}, by the name
+     * of its case.
+     */
+    static Map<String, String> read(final InputStream in) throws IOException {
+        final LinkedHashMap<String, String> geometry = new LinkedHashMap<>();
+        final BufferedReader reader =
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String name = null;
+        final StringBuilder sb = new StringBuilder();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.startsWith(CASE_PREFIX)) {
+                if (name != null) {
+                    geometry.put(name, sb.toString());
+                }
+                name = line.substring(CASE_PREFIX.length());
+                sb.setLength(0);
+            } else {
+                sb.append(line).append('\n');
+            }
+        }
+        if (name != null) {
+            geometry.put(name, sb.toString());
+        }
+        return geometry;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.keyboard;
+
+import android.content.Context;
+import android.text.InputType;
+import android.view.ContextThemeWrapper;
+import android.view.inputmethod.EditorInfo;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import rkr.simplekeyboard.inputmethod.headless.ResourceTable;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.HeadlessKeyboardResources;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardResources;
+import rkr.simplekeyboard.inputmethod.latin.Subtype;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark of building every keyboard: each element of the layout set of every subtype, for
+ * text, phone and number fields, with the layouts read by the headless resources.
+ *
+ * Like a JMH benchmark, it builds all the keyboards for some warmup iterations before it measures
+ * the time and the bytes allocated by each of the following iterations, and it reports their
+ * medians. It fails if a median exceeds the budget in {@link #BUDGET_RESOURCE} by more than its
+ * tolerance, so a regression is caught by the build.
+ *
+ * The benchmark only runs when the system property "keyboardBenchmark" is true, which
+ * "gradlew test -PkeyboardBenchmark" sets, since it takes a while and its times depend on the
+ * machine. The budget is for the CI machines.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class KeyboardBuildBenchmark {
+    private static final String BUDGET_RESOURCE = "keyboard_build_budget.properties";
+    private static final String BUDGET_TIME = "timeMillis";
+    private static final String BUDGET_ALLOCATED_BYTES = "allocatedBytes";
+    // The time of an iteration varies much more between runs than the bytes it allocates.
+    private static final float TIME_TOLERANCE = 1.5f;
+    private static final float ALLOCATION_TOLERANCE = 1.1f;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 15;
+
+    private static final int[] SIZE = { 1080, 700 };
+    // The input types of the keyboards, with the elements of the layout set that each has.
+    private static final int[] INPUT_TYPES = {
+            InputType.TYPE_CLASS_TEXT,
+            InputType.TYPE_CLASS_PHONE,
+            InputType.TYPE_CLASS_NUMBER
+    };
+    private static final int[][] ELEMENT_IDS = {
+            {
+                    KeyboardId.ELEMENT_ALPHABET,
+                    KeyboardId.ELEMENT_ALPHABET_MANUAL_SHIFTED,
+                    KeyboardId.ELEMENT_ALPHABET_AUTOMATIC_SHIFTED,
+                    KeyboardId.ELEMENT_ALPHABET_SHIFT_LOCKED,
+                    KeyboardId.ELEMENT_SYMBOLS,
+                    KeyboardId.ELEMENT_SYMBOLS_SHIFTED
+            },
+            // The phone and phone symbols keyboards.
+            { KeyboardId.ELEMENT_ALPHABET, KeyboardId.ELEMENT_SYMBOLS },
+            // The number keyboard.
+            { KeyboardId.ELEMENT_ALPHABET }
+    };
+
+    /**
+     * Build the keyboards of the benchmark.
+     * @param context the context.
+     * @param theme the keyboard theme.
+     * @param subtypes the subtypes, whose layout sets are built.
+     * @param keyboardResources the resources that the layouts are read from, or null to read
+     *        them from the resources of the context.
+     * @return the keyboards.
+     */
+    static List<Keyboard> buildKeyboards(final Context context, final KeyboardTheme theme,
+            final List<Subtype> subtypes, final KeyboardResources keyboardResources) {
+        final Context themeContext = new ContextThemeWrapper(context, theme.mStyleId);
+        final ArrayList<Keyboard> keyboards = new ArrayList<>();
+        for (final Subtype subtype : subtypes) {
+            for (int i = 0; i < INPUT_TYPES.length; i++) {
+                final EditorInfo editorInfo = new EditorInfo();
+                editorInfo.inputType = INPUT_TYPES[i];
+                final KeyboardLayoutSet.Builder builder =
+                        new KeyboardLayoutSet.Builder(themeContext, editorInfo)
+                                .setKeyboardTheme(theme.mThemeId)
+                                .setKeyboardGeometry(SIZE[0], SIZE[1])
+                                .setSubtype(subtype)
+                                .setLanguageSwitchKeyEnabled(true)
+                                .setShowSpecialChars(true);
+                if (keyboardResources != null) {
+                    builder.setKeyboardResources(keyboardResources);
+                }
+                final KeyboardLayoutSet layoutSet = builder.build();
+                for (final int elementId : ELEMENT_IDS[i]) {
+                    keyboards.add(layoutSet.getKeyboard(elementId));
+                }
+            }
+        }
+        return keyboards;
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long median(final long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    @Test
+    public void testKeyboardBuildIsWithinBudget() throws Exception {
+        Assume.assumeTrue("Run with -PkeyboardBenchmark",
+                Boolean.getBoolean("keyboardBenchmark"));
+        final Context context = RuntimeEnvironment.getApplication();
+        final List<Subtype> subtypes =
+                KeyGeometry.getSubtypeForEachLayoutSet(context.getResources());
+        assertFalse(subtypes.isEmpty());
+        final KeyboardTheme theme = KeyboardTheme.KEYBOARD_THEMES[0];
+        final ResourceTable table =
+                HeadlessKeyboardResources.loadResourceTable(context.getResources());
+        final KeyboardResources keyboardResources =
+                new HeadlessKeyboardResources(context, table, theme.mStyleId);
+
+        final long[] times = new long[MEASURED_ITERATIONS];
+        final long[] allocatedBytes = new long[MEASURED_ITERATIONS];
+        int keyboardCount = 0;
+        for (int i = -WARMUP_ITERATIONS; i < MEASURED_ITERATIONS; i++) {
+            // Every iteration builds the keyboards from their layouts.
+            KeyboardLayoutSet.onKeyboardThemeChanged();
+            final long startBytes = getAllocatedBytes();
+            final long startTime = System.nanoTime();
+            keyboardCount = buildKeyboards(context, theme, subtypes, keyboardResources).size();
+            final long time = System.nanoTime() - startTime;
+            final long bytes = getAllocatedBytes() - startBytes;
+            if (i >= 0) {
+                times[i] = time;
+                allocatedBytes[i] = bytes;
+            }
+        }
+        final long timeMillis = median(times) / 1000000;
+        final long bytes = median(allocatedBytes);
+        System.out.println(String.format(Locale.ROOT,
+                "Keyboard build benchmark: %d keyboards, median %d ms and %d allocated bytes"
+                        + " per iteration", keyboardCount, timeMillis, bytes));
+
+        final Properties budget = new Properties();
+        try (final InputStream in = getClass().getResourceAsStream(BUDGET_RESOURCE)) {
+            budget.load(in);
+        }
+        final long budgetTime = Long.parseLong(budget.getProperty(BUDGET_TIME));
+        final long budgetBytes = Long.parseLong(budget.getProperty(BUDGET_ALLOCATED_BYTES));
+        assertTrue("Building the keyboards took " + timeMillis + " ms, the budget is "
+                + budgetTime + " ms", timeMillis <= budgetTime * TIME_TOLERANCE);
+        assertTrue("Building the keyboards allocated " + bytes + " bytes, the budget is "
+                + budgetBytes + " bytes", bytes <= budgetBytes * ALLOCATION_TOLERANCE);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.keyboard;
+
+import android.content.Context;
+import android.text.InputType;
+import android.view.ContextThemeWrapper;
+import android.view.inputmethod.EditorInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import rkr.simplekeyboard.inputmethod.latin.Subtype;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Builds every keyboard layout at several sizes both by parsing its XML and from the layout that
+ * was recorded while parsing it for another size, and checks that both keyboards have the same
+ * keys at the same places. Both are also checked against the key geometry that the keyboard
+ * builder produced before it recorded layouts, for the keyboards of {@link KeyGeometry}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class KeyboardLayoutModelTest {
+    // The first size is only parsed, the keyboards for the following ones are built from the
+    // layout of the previous size and compared with the ones parsed for that size.
+    private static final int[][] SIZES = {
+            { 1080, 700 }, { 720, 480 }, { 1440, 1013 }, { 801, 333 }, { 2560, 640 }
+    };
+    private static final int[] ELEMENT_IDS = {
+            KeyboardId.ELEMENT_ALPHABET,
+            KeyboardId.ELEMENT_ALPHABET_MANUAL_SHIFTED,
+            KeyboardId.ELEMENT_ALPHABET_AUTOMATIC_SHIFTED,
+            KeyboardId.ELEMENT_ALPHABET_SHIFT_LOCKED,
+            KeyboardId.ELEMENT_SYMBOLS,
+            KeyboardId.ELEMENT_SYMBOLS_SHIFTED
+    };
+    private static final int[] INPUT_TYPES = {
+            InputType.TYPE_CLASS_TEXT,
+            InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_VARIATION_EMAIL_ADDRESS,
+            InputType.TYPE_CLASS_PHONE,
+            InputType.TYPE_CLASS_NUMBER
+    };
+    // The size that the layouts are recorded at before the keyboards in the recorded key
+    // geometry are built from them.
+    private static final int[] LAYOUT_MODEL_SIZE = { 720, 480 };
+
+    private static List<Keyboard> getKeyboards(final Context context,
+            final KeyboardTheme keyboardTheme, final Subtype subtype, final int[] size,
+            final boolean showNumberRow) {
+        final ArrayList<Keyboard> keyboards = new ArrayList<>();
+        for (final int inputType : INPUT_TYPES) {
+            final EditorInfo editorInfo = new EditorInfo();
+            editorInfo.inputType = inputType;
+            final KeyboardLayoutSet layoutSet = new KeyboardLayoutSet.Builder(context, editorInfo)
+                    .setKeyboardTheme(keyboardTheme.mThemeId)
+                    .setKeyboardGeometry(size[0], size[1])
+                    .setSubtype(subtype)
+                    .setLanguageSwitchKeyEnabled(true)
+                    .setShowSpecialChars(true)
+                    .setShowNumberRow(showNumberRow)
+                    .build();
+            for (final int elementId : ELEMENT_IDS) {
+                keyboards.add(layoutSet.getKeyboard(elementId));
+            }
+        }
+        return keyboards;
+    }
+
+    private static String describeKey(final Key key) {
+        return key + " label=" + key.getLabel()
+                + " defined=" + key.getDefinedWidth() + "x" + key.getDefinedHeight()
+                + " padding=" + key.getLeftPadding() + "," + key.getTopPadding() + ","
+                + key.getRightPadding() + "," + key.getBottomPadding();
+    }
+
+    private static void assertSameKeyboard(final String message, final Keyboard expected,
+            final Keyboard actual) {
+        assertEquals(message, expected.mId, actual.mId);
+        assertEquals(message, expected.mOccupiedWidth, actual.mOccupiedWidth);
+        assertEquals(message, expected.mOccupiedHeight, actual.mOccupiedHeight);
+        assertEquals(message, expected.mMostCommonKeyWidth, actual.mMostCommonKeyWidth);
+        assertEquals(message, expected.mMostCommonKeyHeight, actual.mMostCommonKeyHeight);
+        assertEquals(message, expected.mVerticalGap, actual.mVerticalGap, 0.0f);
+        assertEquals(message, expected.mHorizontalGap, actual.mHorizontalGap, 0.0f);
+        assertEquals(message, expected.mBottomPadding, actual.mBottomPadding, 0.0f);
+        final List<Key> expectedKeys = expected.getSortedKeys();
+        final List<Key> actualKeys = actual.getSortedKeys();
+        assertEquals(message, expectedKeys.size(), actualKeys.size());
+        for (int i = 0; i < expectedKeys.size(); i++) {
+            final Key expectedKey = expectedKeys.get(i);
+            final Key actualKey = actualKeys.get(i);
+            assertEquals(message, describeKey(expectedKey), describeKey(actualKey));
+            // The keys near the center of each key must be the same too.
+            final int x = expectedKey.getX() + expectedKey.getWidth() / 2;
+            final int y = expectedKey.getY() + expectedKey.getHeight() / 2;
+            assertEquals(message + " near " + x + "," + y,
+                    expected.getNearestKeys(x, y).toString(),
+                    actual.getNearestKeys(x, y).toString());
+        }
+    }
+
+    @Test
+    public void testKeyboardsFromLayoutModelMatchParsedKeyboards() {
+        final List<Subtype> subtypes = KeyGeometry.getSubtypeForEachLayoutSet(
+                RuntimeEnvironment.getApplication().getResources());
+        assertFalse(subtypes.isEmpty());
+        for (final KeyboardTheme keyboardTheme : KeyboardTheme.KEYBOARD_THEMES) {
+            final Context context = new ContextThemeWrapper(RuntimeEnvironment.getApplication(),
+                    keyboardTheme.mStyleId);
+            for (final Subtype subtype : subtypes) {
+                for (final boolean showNumberRow : new boolean[] { false, true }) {
+                    KeyboardLayoutSet.onKeyboardLayoutSettingsChanged();
+                    getKeyboards(context, keyboardTheme, subtype, SIZES[0], showNumberRow);
+                    for (int i = 1; i < SIZES.length; i++) {
+                        final int[] size = SIZES[i];
+                        final String message = keyboardTheme.mThemeName + " " + subtype
+                                + " " + size[0] + "x" + size[1]
+                                + (showNumberRow ? " with number row" : "");
+                        final int hitCount = KeyboardLayoutSet.getLayoutModelHitCount();
+                        final List<Keyboard> keyboardsFromLayoutModel = getKeyboards(context,
+                                keyboardTheme, subtype, size, showNumberRow);
+                        assertTrue(message, KeyboardLayoutSet.getLayoutModelHitCount() > hitCount);
+                        // Clearing the cached layouts has the keyboards parsed again.
+                        KeyboardLayoutSet.onKeyboardLayoutSettingsChanged();
+                        final List<Keyboard> parsedKeyboards = getKeyboards(context,
+                                keyboardTheme, subtype, size, showNumberRow);
+                        assertEquals(message, parsedKeyboards.size(),
+                                keyboardsFromLayoutModel.size());
+                        for (int j = 0; j < parsedKeyboards.size(); j++) {
+                            assertSameKeyboard(message + " " + parsedKeyboards.get(j).mId,
+                                    parsedKeyboards.get(j), keyboardsFromLayoutModel.get(j));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testKeyboardsMatchBaselineGeometry() throws IOException {
+        final Context context = RuntimeEnvironment.getApplication();
+        final Map<String, String> baseline;
+        try (final InputStream in =
+                getClass().getResourceAsStream(KeyGeometry.RESOURCE_NAME)) {
+            baseline = KeyGeometry.read(in);
+        }
+        final List<KeyGeometry.Case> cases = KeyGeometry.getCases(context.getResources());
+        assertEquals(baseline.size(), cases.size());
+        for (final KeyGeometry.Case c : cases) {
+            final String expected = baseline.get(c.mName);
+            assertNotNull(c.mName, expected);
+
+            KeyboardLayoutSet.onKeyboardLayoutSettingsChanged();
+            assertEquals(c.mName + " parsed", expected, KeyGeometry.describe(c.build(context)));
+
+            KeyboardLayoutSet.onKeyboardLayoutSettingsChanged();
+            c.build(context, LAYOUT_MODEL_SIZE[0], LAYOUT_MODEL_SIZE[1]);
+            final int hitCount = KeyboardLayoutSet.getLayoutModelHitCount();
+            final Keyboard keyboardFromLayoutModel = c.build(context);
+            assertTrue(c.mName, KeyboardLayoutSet.getLayoutModelHitCount() > hitCount);
+            assertEquals(c.mName + " from layout model", expected,
+                    KeyGeometry.describe(keyboardFromLayoutModel));
+        }
+    }
+}
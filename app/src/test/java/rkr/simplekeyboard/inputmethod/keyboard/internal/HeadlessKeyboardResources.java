@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+import android.view.ContextThemeWrapper;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+
+import rkr.simplekeyboard.inputmethod.R;
+import rkr.simplekeyboard.inputmethod.headless.ResourceQualifiers;
+import rkr.simplekeyboard.inputmethod.headless.ResourceTable;
+import rkr.simplekeyboard.inputmethod.headless.ResourceTheme;
+import rkr.simplekeyboard.inputmethod.headless.ResourceValue;
+
+/**
+ * Keyboard resources that are read from the source resource directory by a {@link ResourceTable}
+ * of the headless module, with a standard pull parser, instead of from the resources compiled
+ * into the app.
+ *
+ * The resource ids that the keyboard builder passes are mapped to the names of the resources with
+ * the R class. Only the drawables of the icons and the values of the framework, like its system
+ * colors, are still loaded through the resources of the context, since the table doesn't decode
+ * them.
+ */
+public final class HeadlessKeyboardResources implements KeyboardResources {
+    // The resource directory of the app, relative to the app module that the unit tests run in.
+    public static final File RES_DIR = new File("src/main/res");
+
+    private static final String TYPE_ATTR = "attr";
+    private static final String TYPE_STYLE = "style";
+    private static final String TYPE_XML = "xml";
+
+    // The type and name of the resources of the app by their ids, and the other way around.
+    private static HashMap<Integer, String[]> sResourceNames;
+    private static HashMap<String, Integer> sResourceIds;
+
+    private final Context mThemeContext;
+    private final Resources mResources;
+    private final ResourceTable mTable;
+    private final ResourceTheme mTheme;
+    // The names of the attributes of the styleables that were read.
+    private final IdentityHashMap<int[], String[]> mStyleableNames = new IdentityHashMap<>();
+
+    /**
+     * @param context the context, which the drawables and the values of the framework are loaded
+     *        with.
+     * @param table the resources of the app.
+     * @param themeStyleId the style of the keyboard theme.
+     */
+    public HeadlessKeyboardResources(final Context context, final ResourceTable table,
+            final int themeStyleId) {
+        mThemeContext = new ContextThemeWrapper(context, themeStyleId);
+        mResources = context.getResources();
+        mTable = table;
+        mTheme = table.newTheme(getResourceName(themeStyleId, TYPE_STYLE));
+    }
+
+    /**
+     * Load the resources of the app as they are selected for the configuration of some resources.
+     * @param res the resources of the configuration.
+     * @return the resources of the app.
+     */
+    public static ResourceTable loadResourceTable(final Resources res)
+            throws IOException, XmlPullParserException {
+        final Configuration config = res.getConfiguration();
+        final Locale locale = config.getLocales().get(0);
+        final StringBuilder qualifiers = new StringBuilder(locale.getLanguage());
+        if (!locale.getCountry().isEmpty()) {
+            qualifiers.append("-r").append(locale.getCountry());
+        }
+        qualifiers.append("-sw").append(config.smallestScreenWidthDp).append("dp")
+                .append((config.orientation == Configuration.ORIENTATION_LANDSCAPE)
+                        ? "-land" : "-port")
+                .append(((config.uiMode & Configuration.UI_MODE_NIGHT_MASK)
+                        == Configuration.UI_MODE_NIGHT_YES) ? "-night" : "-notnight")
+                .append("-v").append(Build.VERSION.SDK_INT);
+        return ResourceTable.load(RES_DIR, ResourceQualifiers.parse(qualifiers.toString()));
+    }
+
+    private static synchronized void loadResourceNames() {
+        if (sResourceNames != null) {
+            return;
+        }
+        sResourceNames = new HashMap<>();
+        sResourceIds = new HashMap<>();
+        for (final Class<?> typeClass : R.class.getClasses()) {
+            final String type = typeClass.getSimpleName();
+            for (final Field field : typeClass.getFields()) {
+                if (field.getType() != int.class || !Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                try {
+                    final int id = field.getInt(null);
+                    sResourceNames.put(id, new String[] { type, field.getName() });
+                    sResourceIds.put(type + "/" + field.getName(), id);
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    private static String getResourceName(final int resId, final String type) {
+        loadResourceNames();
+        final String[] name = sResourceNames.get(resId);
+        if (name == null || (type != null && !type.equals(name[0]))) {
+            throw new Resources.NotFoundException("Resource ID #0x" + Integer.toHexString(resId)
+                    + ((type == null) ? "" : " of type " + type));
+        }
+        return name[1];
+    }
+
+    private static int findResourceId(final ResourceValue value) {
+        if (ResourceValue.PACKAGE_ANDROID.equals(value.mPackage)) {
+            try {
+                return Class.forName("android.R$" + value.mResourceType)
+                        .getField(value.mResourceName).getInt(null);
+            } catch (ReflectiveOperationException e) {
+                throw new Resources.NotFoundException(value.toString());
+            }
+        }
+        loadResourceNames();
+        final Integer id = sResourceIds.get(value.mResourceType + "/" + value.mResourceName);
+        if (id == null) {
+            throw new Resources.NotFoundException(value.toString());
+        }
+        return id;
+    }
+
+    private String[] getAttributeNames(final int[] attrs) {
+        String[] names = mStyleableNames.get(attrs);
+        if (names == null) {
+            names = new String[attrs.length];
+            for (int i = 0; i < attrs.length; i++) {
+                names[i] = getResourceName(attrs[i], TYPE_ATTR);
+            }
+            mStyleableNames.put(attrs, names);
+        }
+        return names;
+    }
+
+    @Override
+    public XmlPullParser openXml(final int xmlId) {
+        try {
+            return mTable.openXml(getResourceName(xmlId, TYPE_XML));
+        } catch (IOException | XmlPullParserException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void closeXml(final XmlPullParser parser) {
+        try {
+            mTable.closeXml(parser);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public KeyboardAttributes obtainAttributes(final XmlPullParser parser, final int[] attrs) {
+        return new Attributes(mTable.obtainAttributes(parser, getAttributeNames(attrs)));
+    }
+
+    @Override
+    public KeyboardAttributes obtainStyledAttributes(final XmlPullParser parser,
+            final int[] attrs, final int defStyleAttr, final int defStyleRes) {
+        return new Attributes(mTheme.obtainStyledAttributes(parser, getAttributeNames(attrs),
+                (defStyleAttr == 0) ? null : getResourceName(defStyleAttr, TYPE_ATTR),
+                (defStyleRes == 0) ? null : getResourceName(defStyleRes, TYPE_STYLE)));
+    }
+
+    @Override
+    public String getResourceEntryName(final int resId) {
+        return getResourceName(resId, null);
+    }
+
+    @Override
+    public DisplayMetrics getDisplayMetrics() {
+        return mResources.getDisplayMetrics();
+    }
+
+    /**
+     * The attributes of an element, with the same semantics as a TypedArray.
+     */
+    private final class Attributes implements KeyboardAttributes {
+        private final TypedValue[] mValues;
+        private final int[] mIndices;
+
+        Attributes(final ResourceValue[] values) {
+            mValues = new TypedValue[values.length];
+            int count = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    mValues[i] = toTypedValue(values[i]);
+                    count++;
+                }
+            }
+            mIndices = new int[count];
+            for (int i = 0, at = 0; i < values.length; i++) {
+                if (mValues[i] != null) {
+                    mIndices[at++] = i;
+                }
+            }
+        }
+
+        private TypedValue toTypedValue(final ResourceValue value) {
+            final TypedValue typedValue = new TypedValue();
+            if (ResourceValue.PACKAGE_ANDROID.equals(value.mPackage)) {
+                // The values of the framework are resolved by the resources of the context.
+                if (value.mType == ResourceValue.TYPE_ATTRIBUTE) {
+                    mThemeContext.getTheme().resolveAttribute(findResourceId(value), typedValue,
+                            true);
+                } else {
+                    mResources.getValue(findResourceId(value), typedValue, true);
+                }
+                return typedValue;
+            }
+            typedValue.type = value.mType;
+            typedValue.data = value.mData;
+            typedValue.string = value.mString;
+            typedValue.resourceId = (value.mResourceName == null
+                    || value.mType == ResourceValue.TYPE_ATTRIBUTE) ? 0 : findResourceId(value);
+            return typedValue;
+        }
+
+        private boolean isInteger(final TypedValue value) {
+            return value.type >= TypedValue.TYPE_FIRST_INT
+                    && value.type <= TypedValue.TYPE_LAST_INT;
+        }
+
+        private UnsupportedOperationException newConversionException(final int index,
+                final String to) {
+            return new UnsupportedOperationException("Can't convert value at index " + index
+                    + " to " + to + ": " + mValues[index]);
+        }
+
+        @Override
+        public int getIndexCount() {
+            return mIndices.length;
+        }
+
+        @Override
+        public int getIndex(final int at) {
+            return mIndices[at];
+        }
+
+        @Override
+        public boolean hasValue(final int index) {
+            return mValues[index] != null;
+        }
+
+        @Override
+        public TypedValue peekValue(final int index) {
+            return mValues[index];
+        }
+
+        @Override
+        public String getString(final int index) {
+            final TypedValue value = mValues[index];
+            if (value == null) {
+                return null;
+            }
+            final CharSequence string = value.coerceToString();
+            return (string == null) ? null : string.toString();
+        }
+
+        @Override
+        public int getInt(final int index, final int defValue) {
+            final TypedValue value = mValues[index];
+            if (value == null) {
+                return defValue;
+            }
+            if (isInteger(value)) {
+                return value.data;
+            }
+            try {
+                return Integer.decode(getString(index));
+            } catch (NumberFormatException e) {
+                return defValue;
+            }
+        }
+
+        @Override
+        public boolean getBoolean(final int index, final boolean defValue) {
+            final TypedValue value = mValues[index];
+            if (value == null) {
+                return defValue;
+            }
+            if (isInteger(value)) {
+                return value.data != 0;
+            }
+            final String string = getString(index);
+            return "1".equals(string) || "true".equalsIgnoreCase(string);
+        }
+
+        @Override
+        public int getResourceId(final int index, final int defValue) {
+            final TypedValue value = mValues[index];
+            return (value == null || value.resourceId == 0) ? defValue : value.resourceId;
+        }
+
+        @Override
+        public int getColor(final int index, final int defValue) {
+            final TypedValue value = mValues[index];
+            if (value == null) {
+                return defValue;
+            }
+            if (isInteger(value)) {
+                return value.data;
+            }
+            if (value.type == TypedValue.TYPE_STRING && value.resourceId != 0) {
+                return mThemeContext.getColorStateList(value.resourceId).getDefaultColor();
+            }
+            throw newConversionException(index, "color");
+        }
+
+        @Override
+        public float getFraction(final int index, final int base, final int pbase,
+                final float defValue) {
+            final TypedValue value = mValues[index];
+            if (value == null) {
+                return defValue;
+            }
+            if (value.type == TypedValue.TYPE_FRACTION) {
+                return TypedValue.complexToFraction(value.data, base, pbase);
+            }
+            throw newConversionException(index, "fraction");
+        }
+
+        @Override
+        public int getDimensionPixelSize(final int index, final int defValue) {
+            final TypedValue value = mValues[index];
+            if (value == null) {
+                return defValue;
+            }
+            if (value.type == TypedValue.TYPE_DIMENSION) {
+                return TypedValue.complexToDimensionPixelSize(value.data, getDisplayMetrics());
+            }
+            throw newConversionException(index, "dimension");
+        }
+
+        @Override
+        public Drawable getDrawable(final int index) {
+            final TypedValue value = mValues[index];
+            if (value == null) {
+                return null;
+            }
+            if (value.type >= TypedValue.TYPE_FIRST_COLOR_INT
+                    && value.type <= TypedValue.TYPE_LAST_COLOR_INT) {
+                return new ColorDrawable(value.data);
+            }
+            if (value.resourceId == 0) {
+                throw newConversionException(index, "drawable");
+            }
+            return mThemeContext.getDrawable(value.resourceId);
+        }
+
+        @Override
+        public void recycle() {
+            // The values aren't pooled.
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import rkr.simplekeyboard.inputmethod.latin.common.Constants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the label, output text, code, and icon that {@link KeySpecParser} gets from some key
+ * specifications, including malformed ones, and from every key specification in
+ * {@link KeyboardTextsTable} and the keyboard layout XMLs. The expected results of the latter
+ * were recorded from the parser that preceded {@link KeySpecParser.ParsedKeySpec}, in
+ * {@link #BASELINE_RESOURCE_NAME}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class KeySpecParserTest {
+    private static final String[] KEY_SPEC_ATTRIBUTES = {
+            "latin:keySpec"
+    };
+    private static final String[] MORE_KEYS_ATTRIBUTES = {
+            "latin:moreKeys", "latin:additionalMoreKeys"
+    };
+
+    // Each line of the file has a key specification and its label, output text, code, and icon
+    // name, separated by tabs. Tabs, new lines and backslashes are escaped with a backslash, and
+    // the label, output text and icon name are quoted unless they are null. A rejected
+    // specification has an error instead of its results.
+    private static final String BASELINE_RESOURCE_NAME = "baseline_key_specs.txt";
+    private static final String ERROR = "error";
+
+    private static final Class<KeySpecParser.KeySpecParserError> REJECTED =
+            KeySpecParser.KeySpecParserError.class;
+    private static final String EMOJI = new String(Character.toChars(0x1F600));
+
+    // Each key specification along with its expected label, output text, code, and icon name. An
+    // exception class is expected to be thrown instead of returning a result.
+    private static final Object[][] KEY_SPECS = {
+            { "a", "a", null, (int)'a', null },
+            { "ab", "ab", "ab", Constants.CODE_OUTPUT_TEXT, null },
+            { EMOJI, EMOJI, null, 0x1F600, null },
+            { "\\|", "|", null, (int)'|', null },
+            { "\\\\", "\\", null, (int)'\\', null },
+            { "\\!icon/a", "!icon/a", "!icon/a", Constants.CODE_OUTPUT_TEXT, null },
+            { "|", "|", null, (int)'|', null },
+            { "a|b", "a", null, (int)'b', null },
+            { "a|bc", "a", "bc", Constants.CODE_OUTPUT_TEXT, null },
+            { "a|" + EMOJI, "a", null, 0x1F600, null },
+            { "a|0x1F600", "a", null, 0x1F600, null },
+            { "0x1F600", "0x1F600", "0x1F600", Constants.CODE_OUTPUT_TEXT, null },
+            { "Ab|!code/key_shift", "Ab", null, Constants.CODE_SHIFT, null },
+            { "!code/key_delete", "!code/key_delete", "!code/key_delete",
+                    Constants.CODE_OUTPUT_TEXT, null },
+            { "!icon/delete_key|!code/key_delete", null, null, Constants.CODE_DELETE,
+                    KeyboardIconsSet.NAME_DELETE_KEY },
+            { "!text/", "!text/", "!text/", Constants.CODE_OUTPUT_TEXT, null },
+            { null, null, null, Constants.CODE_UNSPECIFIED, null },
+            // Malformed specifications.
+            { "", REJECTED, REJECTED, REJECTED, null },
+            { "||", REJECTED, REJECTED, REJECTED, null },
+            { "|a", REJECTED, REJECTED, REJECTED, null },
+            { "a|", "a", REJECTED, Constants.CODE_OUTPUT_TEXT, null },
+            { "a||b", "a", REJECTED, REJECTED, null },
+            { "a|b|c", "a", REJECTED, REJECTED, null },
+            { "\\", "\\", null, (int)'\\', null },
+            { "a\\", "a\\", "a\\", Constants.CODE_OUTPUT_TEXT, null },
+            { "!code/", "!code/", "!code/", Constants.CODE_OUTPUT_TEXT, null },
+            { "a|!code/", "a", null, RuntimeException.class, null },
+            { "a|0x", "a", null, NumberFormatException.class, null },
+            { "!icon/", null, REJECTED, REJECTED, RuntimeException.class },
+            { "!icon/|a", null, null, (int)'a', RuntimeException.class },
+            { "!icon/unknown|a", null, null, (int)'a', RuntimeException.class },
+            { "!icon/delete_key|", null, REJECTED, Constants.CODE_OUTPUT_TEXT,
+                    KeyboardIconsSet.NAME_DELETE_KEY },
+            { "!icon/delete_key||a", null, REJECTED, REJECTED, KeyboardIconsSet.NAME_DELETE_KEY }
+    };
+
+    private interface Accessor {
+        Object get(String keySpec);
+    }
+
+    @Test
+    public void testKeySpecs() {
+        // The same instance is reused for all of the key specifications like when building keys.
+        final KeySpecParser.ParsedKeySpec parsedKeySpec = new KeySpecParser.ParsedKeySpec();
+        for (final Object[] keySpec : KEY_SPECS) {
+            assertResults(parsedKeySpec, (String)keySpec[0],
+                    new Object[] { keySpec[1], keySpec[2], keySpec[3], keySpec[4] });
+        }
+    }
+
+    @Test
+    public void testKeyboardTextsTable() throws Exception {
+        final Set<String> keySpecs = new LinkedHashSet<>();
+        for (final String[] textsTable : getTextsTables()) {
+            for (final String text : textsTable) {
+                addMoreKeySpecs(keySpecs, text);
+            }
+        }
+        assertTrue("No key specifications found", keySpecs.size() > 100);
+        assertBaselineResults(keySpecs);
+    }
+
+    @Test
+    public void testLayoutXmls() throws Exception {
+        final Set<String> keySpecs = new LinkedHashSet<>();
+        final DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        int fileCount = 0;
+        for (final File xmlDir : getXmlDirs()) {
+            final File[] files = xmlDir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (final File file : files) {
+                if (!file.getName().endsWith(".xml")) {
+                    continue;
+                }
+                fileCount++;
+                addKeySpecs(keySpecs, builder.parse(file));
+            }
+        }
+        assertTrue("No layout XMLs found", fileCount > 0);
+        assertTrue("No key specifications found", keySpecs.size() > 100);
+        assertBaselineResults(keySpecs);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<String[]> getTextsTables() throws Exception {
+        final Field field = KeyboardTextsTable.class.getDeclaredField("sLocaleToTextsTableMap");
+        field.setAccessible(true);
+        return ((Map<String, String[]>)field.get(null)).values();
+    }
+
+    private static ArrayList<File> getXmlDirs() {
+        // Unit tests are usually run from the module directory, but also allow running them from
+        // the project directory.
+        File resDir = new File("src/main/res");
+        if (!resDir.isDirectory()) {
+            resDir = new File("app/src/main/res");
+        }
+        final ArrayList<File> xmlDirs = new ArrayList<>();
+        final File[] dirs = resDir.listFiles();
+        if (dirs != null) {
+            for (final File dir : dirs) {
+                if (dir.getName().startsWith("xml")) {
+                    xmlDirs.add(dir);
+                }
+            }
+        }
+        return xmlDirs;
+    }
+
+    private static void addKeySpecs(final Set<String> keySpecs, final Node node) {
+        if (node instanceof Element) {
+            final NamedNodeMap attributes = node.getAttributes();
+            for (final String name : KEY_SPEC_ATTRIBUTES) {
+                final Node attribute = attributes.getNamedItem(name);
+                if (attribute != null) {
+                    keySpecs.add(attribute.getNodeValue());
+                }
+            }
+            for (final String name : MORE_KEYS_ATTRIBUTES) {
+                final Node attribute = attributes.getNamedItem(name);
+                if (attribute != null) {
+                    addMoreKeySpecs(keySpecs, attribute.getNodeValue());
+                }
+            }
+        }
+        final NodeList children = node.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            addKeySpecs(keySpecs, children.item(i));
+        }
+    }
+
+    private static void addMoreKeySpecs(final Set<String> keySpecs, final String text) {
+        final String[] moreKeySpecs = MoreKeySpec.splitKeySpecs(text);
+        if (moreKeySpecs == null) {
+            return;
+        }
+        for (final String moreKeySpec : moreKeySpecs) {
+            keySpecs.add(moreKeySpec);
+        }
+    }
+
+    private void assertBaselineResults(final Set<String> keySpecs) throws IOException {
+        final Map<String, Object[]> baseline;
+        try (final InputStream in = getClass().getResourceAsStream(BASELINE_RESOURCE_NAME)) {
+            baseline = readBaseline(in);
+        }
+        final KeySpecParser.ParsedKeySpec parsedKeySpec = new KeySpecParser.ParsedKeySpec();
+        for (final String keySpec : keySpecs) {
+            final Object[] results = baseline.get(keySpec);
+            assertNotNull("No results for " + keySpec + " in " + BASELINE_RESOURCE_NAME, results);
+            assertResults(parsedKeySpec, keySpec, results);
+        }
+    }
+
+    private static Map<String, Object[]> readBaseline(final InputStream in) throws IOException {
+        final HashMap<String, Object[]> baseline = new HashMap<>();
+        final BufferedReader reader =
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            final String[] fields = line.split("\t", -1);
+            assertEquals(line, 5, fields.length);
+            baseline.put(unescape(fields[0]), new Object[] {
+                    parseResult(fields[1]), parseResult(fields[2]),
+                    fields[3].equals(ERROR) ? REJECTED : Integer.valueOf(fields[3]),
+                    parseResult(fields[4])
+            });
+        }
+        return baseline;
+    }
+
+    private static Object parseResult(final String field) {
+        if (field.equals(ERROR)) {
+            return REJECTED;
+        }
+        if (field.equals("null")) {
+            return null;
+        }
+        return unescape(field.substring(1, field.length() - 1));
+    }
+
+    private static String unescape(final String text) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            i++;
+            final char escaped = text.charAt(i);
+            sb.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped);
+        }
+        return sb.toString();
+    }
+
+    private static void assertResults(final KeySpecParser.ParsedKeySpec parsedKeySpec,
+            final String keySpec, final Object[] expected) {
+        parsedKeySpec.parse(keySpec);
+        assertResult("label", keySpec, expected[0], new Accessor() {
+            @Override
+            public Object get(final String keySpec) {
+                return parsedKeySpec.getLabel();
+            }
+        });
+        assertResult("outputText", keySpec, expected[1], new Accessor() {
+            @Override
+            public Object get(final String keySpec) {
+                return parsedKeySpec.getOutputText();
+            }
+        });
+        assertResult("code", keySpec, expected[2], new Accessor() {
+            @Override
+            public Object get(final String keySpec) {
+                return parsedKeySpec.getCode();
+            }
+        });
+        assertResult("icon", keySpec, expected[3], new Accessor() {
+            @Override
+            public Object get(final String keySpec) {
+                final int iconId = parsedKeySpec.getIconId();
+                return iconId == KeyboardIconsSet.ICON_UNDEFINED ? null
+                        : KeyboardIconsSet.getIconName(iconId);
+            }
+        });
+        // The static methods must agree as well.
+        assertResult("static code", keySpec, expected[2], new Accessor() {
+            @Override
+            public Object get(final String keySpec) {
+                return KeySpecParser.getCode(keySpec);
+            }
+        });
+    }
+
+    private static void assertResult(final String name, final String keySpec,
+            final Object expected, final Accessor actual) {
+        Object result;
+        try {
+            result = actual.get(keySpec);
+        } catch (final RuntimeException e) {
+            result = e.getClass();
+        }
+        assertEquals(name + " of " + keySpec, expected, result);
+    }
+}
@@ -0,0 +1,581 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.text.TextUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import rkr.simplekeyboard.inputmethod.event.Event;
+import rkr.simplekeyboard.inputmethod.latin.common.Constants;
+import rkr.simplekeyboard.inputmethod.latin.utils.RecapitalizeStatus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exhaustive differential test of {@link KeyboardState} against {@link LegacyKeyboardState}.
+ * Starting from a new keyboard, every input is sent to both of them in every state that they can
+ * get into. They must take the same actions in the same order and end up on the same keyboard,
+ * and each of their states must correspond to a single state of the other one. The current
+ * implementation may only leave out switches to the keyboard that is already set, and may switch
+ * the keyboard after the timer actions between two shift state updates instead of in between
+ * them: {@link rkr.simplekeyboard.inputmethod.keyboard.KeyboardSwitcher} only cancels the long
+ * press timers when it switches the keyboard, so the double tap shift key timer doesn't depend on
+ * when that happens.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class KeyboardStateTest {
+    private static final int[] AUTO_CAPS_FLAGS = {
+            Constants.TextUtils.CAP_MODE_OFF,
+            TextUtils.CAP_MODE_CHARACTERS,
+            TextUtils.CAP_MODE_WORDS | TextUtils.CAP_MODE_SENTENCES
+    };
+    private static final int[] RECAPITALIZE_MODES = {
+            RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE,
+            RecapitalizeStatus.CAPS_MODE_ORIGINAL_MIXED_CASE,
+            RecapitalizeStatus.CAPS_MODE_ALL_LOWER,
+            RecapitalizeStatus.CAPS_MODE_FIRST_WORD_UPPER,
+            RecapitalizeStatus.CAPS_MODE_ALL_UPPER
+    };
+    private static final int[] KEY_CODES = {
+            Constants.CODE_SHIFT, Constants.CODE_CAPSLOCK, Constants.CODE_SWITCH_ALPHA_SYMBOL, 'a'
+    };
+    private static final int[] EVENT_CODES = {
+            Constants.CODE_SHIFT, Constants.CODE_SWITCH_ALPHA_SYMBOL, Constants.CODE_OUTPUT_TEXT,
+            Constants.CODE_SPACE, Constants.CODE_ENTER, 'a', Constants.CODE_DELETE
+    };
+
+    private static final String NO_KEYBOARD = "none";
+    private static final String SET_KEYBOARD_ACTION = "setKeyboard ";
+    private static final String REQUEST_UPDATING_SHIFT_STATE_ACTION = "requestUpdatingShiftState ";
+
+    private static final int INPUT_PRESS_KEY = 0;
+    private static final int INPUT_RELEASE_KEY = 1;
+    private static final int INPUT_EVENT = 2;
+    private static final int INPUT_UPDATE_SHIFT_STATE = 3;
+    private static final int INPUT_FINISH_SLIDING_INPUT = 4;
+    private static final int INPUT_RESET_TO_ALPHABET = 5;
+    private static final int INPUT_LOAD_KEYBOARD = 6;
+    private static final int INPUT_SAVE_AND_LOAD_KEYBOARD = 7;
+
+    private static final class Input {
+        final int mType;
+        final int mCode;
+        // Whether a key is pressed by a single pointer, or released with sliding.
+        final boolean mPointerFlag;
+        final boolean mIsInDoubleTapShiftKeyTimeout;
+        final int mAutoCapsFlags;
+        final int mRecapitalizeMode;
+
+        Input(final int type, final int code, final boolean pointerFlag,
+                final boolean isInDoubleTapShiftKeyTimeout, final int autoCapsFlags,
+                final int recapitalizeMode) {
+            mType = type;
+            mCode = code;
+            mPointerFlag = pointerFlag;
+            mIsInDoubleTapShiftKeyTimeout = isInDoubleTapShiftKeyTimeout;
+            mAutoCapsFlags = autoCapsFlags;
+            mRecapitalizeMode = recapitalizeMode;
+        }
+
+        Event createEvent() {
+            if (mCode == Constants.CODE_OUTPUT_TEXT) {
+                return Event.createSoftwareTextEvent("text", Constants.CODE_OUTPUT_TEXT);
+            }
+            return Event.createSoftwareKeypressEvent(mCode < 0 ? Event.NOT_A_CODE_POINT : mCode,
+                    mCode, Constants.NOT_A_COORDINATE, Constants.NOT_A_COORDINATE,
+                    false /* isKeyRepeat */);
+        }
+
+        @Override
+        public String toString() {
+            return "[type=" + mType + " code=" + Constants.printableCode(mCode)
+                    + " pointerFlag=" + mPointerFlag
+                    + " doubleTapTimeout=" + mIsInDoubleTapShiftKeyTimeout
+                    + " autoCapsFlags=" + mAutoCapsFlags
+                    + " recapitalizeMode=" + mRecapitalizeMode + "]";
+        }
+    }
+
+    /**
+     * Records the actions of a state machine in order, and calls it back to update the shift
+     * state like the keyboard switcher does.
+     */
+    private abstract static class RecordingSwitchActions implements KeyboardState.SwitchActions {
+        final ArrayList<String> mActions = new ArrayList<>();
+        String mKeyboard = NO_KEYBOARD;
+        boolean mIsInDoubleTapShiftKeyTimeout;
+
+        abstract void onUpdateShiftState(int autoCapsFlags, int recapitalizeMode);
+
+        abstract void pressKey(int code, boolean isSinglePointer, int autoCapsFlags,
+                int recapitalizeMode);
+
+        abstract void releaseKey(int code, boolean withSliding, int autoCapsFlags,
+                int recapitalizeMode);
+
+        abstract void onEvent(Event event, int autoCapsFlags, int recapitalizeMode);
+
+        abstract void finishSlidingInput(int autoCapsFlags, int recapitalizeMode);
+
+        abstract void resetToAlphabet(int autoCapsFlags, int recapitalizeMode);
+
+        abstract void loadKeyboard(int autoCapsFlags, int recapitalizeMode);
+
+        abstract void saveKeyboardState();
+
+        void perform(final Input input, final String keyboard) {
+            mActions.clear();
+            mKeyboard = keyboard;
+            mIsInDoubleTapShiftKeyTimeout = input.mIsInDoubleTapShiftKeyTimeout;
+            final int autoCapsFlags = input.mAutoCapsFlags;
+            final int recapitalizeMode = input.mRecapitalizeMode;
+            switch (input.mType) {
+            case INPUT_PRESS_KEY:
+                pressKey(input.mCode, input.mPointerFlag, autoCapsFlags, recapitalizeMode);
+                break;
+            case INPUT_RELEASE_KEY:
+                releaseKey(input.mCode, input.mPointerFlag, autoCapsFlags, recapitalizeMode);
+                break;
+            case INPUT_EVENT:
+                onEvent(input.createEvent(), autoCapsFlags, recapitalizeMode);
+                break;
+            case INPUT_UPDATE_SHIFT_STATE:
+                onUpdateShiftState(autoCapsFlags, recapitalizeMode);
+                break;
+            case INPUT_FINISH_SLIDING_INPUT:
+                finishSlidingInput(autoCapsFlags, recapitalizeMode);
+                break;
+            case INPUT_RESET_TO_ALPHABET:
+                resetToAlphabet(autoCapsFlags, recapitalizeMode);
+                break;
+            case INPUT_LOAD_KEYBOARD:
+                loadKeyboard(autoCapsFlags, recapitalizeMode);
+                break;
+            case INPUT_SAVE_AND_LOAD_KEYBOARD:
+                saveKeyboardState();
+                loadKeyboard(autoCapsFlags, recapitalizeMode);
+                break;
+            }
+        }
+
+        List<String> getKeyboards() {
+            return KeyboardStateTest.getKeyboards(mActions);
+        }
+
+        private void setKeyboard(final String keyboard) {
+            mActions.add(SET_KEYBOARD_ACTION + keyboard);
+            mKeyboard = keyboard;
+        }
+
+        @Override
+        public void setAlphabetKeyboard() {
+            setKeyboard("alphabet");
+        }
+
+        @Override
+        public void setAlphabetManualShiftedKeyboard() {
+            setKeyboard("alphabetManualShifted");
+        }
+
+        @Override
+        public void setAlphabetAutomaticShiftedKeyboard() {
+            setKeyboard("alphabetAutomaticShifted");
+        }
+
+        @Override
+        public void setAlphabetShiftLockedKeyboard() {
+            setKeyboard("alphabetShiftLocked");
+        }
+
+        @Override
+        public void setSymbolsKeyboard() {
+            setKeyboard("symbols");
+        }
+
+        @Override
+        public void setSymbolsShiftedKeyboard() {
+            setKeyboard("symbolsShifted");
+        }
+
+        @Override
+        public void requestUpdatingShiftState(final int autoCapsFlags,
+                final int recapitalizeMode) {
+            mActions.add(REQUEST_UPDATING_SHIFT_STATE_ACTION + autoCapsFlags + " "
+                    + recapitalizeMode);
+            onUpdateShiftState(autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        public void startDoubleTapShiftKeyTimer() {
+            mActions.add("startDoubleTapShiftKeyTimer");
+        }
+
+        @Override
+        public boolean isInDoubleTapShiftKeyTimeout() {
+            mActions.add("isInDoubleTapShiftKeyTimeout");
+            return mIsInDoubleTapShiftKeyTimeout;
+        }
+
+        @Override
+        public void cancelDoubleTapShiftKeyTimer() {
+            mActions.add("cancelDoubleTapShiftKeyTimer");
+        }
+    }
+
+    private static final class LegacyStateMachine extends RecordingSwitchActions {
+        final LegacyKeyboardState mState = new LegacyKeyboardState(this);
+
+        @Override
+        void onUpdateShiftState(final int autoCapsFlags, final int recapitalizeMode) {
+            mState.onUpdateShiftState(autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void pressKey(final int code, final boolean isSinglePointer, final int autoCapsFlags,
+                final int recapitalizeMode) {
+            mState.onPressKey(code, isSinglePointer, autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void releaseKey(final int code, final boolean withSliding, final int autoCapsFlags,
+                final int recapitalizeMode) {
+            mState.onReleaseKey(code, withSliding, autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void onEvent(final Event event, final int autoCapsFlags, final int recapitalizeMode) {
+            mState.onEvent(event, autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void finishSlidingInput(final int autoCapsFlags, final int recapitalizeMode) {
+            mState.onFinishSlidingInput(autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void resetToAlphabet(final int autoCapsFlags, final int recapitalizeMode) {
+            mState.onResetKeyboardStateToAlphabet(autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void loadKeyboard(final int autoCapsFlags, final int recapitalizeMode) {
+            mState.onLoadKeyboard(autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void saveKeyboardState() {
+            mState.onSaveKeyboardState();
+        }
+    }
+
+    private static final class StateMachine extends RecordingSwitchActions {
+        final KeyboardState mState = new KeyboardState(this);
+
+        @Override
+        void onUpdateShiftState(final int autoCapsFlags, final int recapitalizeMode) {
+            mState.onUpdateShiftState(autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void pressKey(final int code, final boolean isSinglePointer, final int autoCapsFlags,
+                final int recapitalizeMode) {
+            mState.onPressKey(code, isSinglePointer, autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void releaseKey(final int code, final boolean withSliding, final int autoCapsFlags,
+                final int recapitalizeMode) {
+            mState.onReleaseKey(code, withSliding, autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void onEvent(final Event event, final int autoCapsFlags, final int recapitalizeMode) {
+            mState.onEvent(event, autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void finishSlidingInput(final int autoCapsFlags, final int recapitalizeMode) {
+            mState.onFinishSlidingInput(autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void resetToAlphabet(final int autoCapsFlags, final int recapitalizeMode) {
+            mState.onResetKeyboardStateToAlphabet(autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void loadKeyboard(final int autoCapsFlags, final int recapitalizeMode) {
+            mState.onLoadKeyboard(autoCapsFlags, recapitalizeMode);
+        }
+
+        @Override
+        void saveKeyboardState() {
+            mState.onSaveKeyboardState();
+        }
+    }
+
+    /** A state of the legacy implementation, along with the keyboard that it set last. */
+    private static final class LegacyState {
+        final long mSnapshot;
+        final String mKeyboard;
+
+        LegacyState(final long snapshot, final String keyboard) {
+            mSnapshot = snapshot;
+            mKeyboard = keyboard;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof LegacyState)) {
+                return false;
+            }
+            final LegacyState other = (LegacyState)o;
+            return mSnapshot == other.mSnapshot && mKeyboard.equals(other.mKeyboard);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.valueOf(mSnapshot).hashCode() * 31 + mKeyboard.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return Long.toHexString(mSnapshot) + "/" + mKeyboard;
+        }
+    }
+
+    private static List<Input> getInputs() {
+        final ArrayList<Input> inputs = new ArrayList<>();
+        for (final int autoCapsFlags : AUTO_CAPS_FLAGS) {
+            for (final int recapitalizeMode : RECAPITALIZE_MODES) {
+                for (final int code : KEY_CODES) {
+                    for (final boolean pointerFlag : new boolean[] { false, true }) {
+                        for (final boolean timeout : new boolean[] { false, true }) {
+                            inputs.add(new Input(INPUT_PRESS_KEY, code, pointerFlag, timeout,
+                                    autoCapsFlags, recapitalizeMode));
+                        }
+                        inputs.add(new Input(INPUT_RELEASE_KEY, code, pointerFlag, false,
+                                autoCapsFlags, recapitalizeMode));
+                    }
+                }
+                for (final int code : EVENT_CODES) {
+                    inputs.add(new Input(INPUT_EVENT, code, false, false, autoCapsFlags,
+                            recapitalizeMode));
+                }
+                for (final int type : new int[] { INPUT_UPDATE_SHIFT_STATE,
+                        INPUT_FINISH_SLIDING_INPUT, INPUT_RESET_TO_ALPHABET, INPUT_LOAD_KEYBOARD,
+                        INPUT_SAVE_AND_LOAD_KEYBOARD }) {
+                    inputs.add(new Input(type, Constants.CODE_UNSPECIFIED, false, false,
+                            autoCapsFlags, recapitalizeMode));
+                }
+            }
+        }
+        return inputs;
+    }
+
+    private static Field getStateField() throws Exception {
+        final Field field = KeyboardState.class.getDeclaredField("mState");
+        field.setAccessible(true);
+        return field;
+    }
+
+    @Test
+    public void testAllTransitions() throws Exception {
+        final Field stateField = getStateField();
+        final List<Input> inputs = getInputs();
+
+        final LegacyStateMachine initialLegacy = new LegacyStateMachine();
+        final StateMachine initial = new StateMachine();
+        final LegacyState initialLegacyState =
+                new LegacyState(initialLegacy.mState.getSnapshot(), NO_KEYBOARD);
+        final HashMap<LegacyState, Integer> legacyToState = new HashMap<>();
+        final HashMap<Integer, LegacyState> stateToLegacy = new HashMap<>();
+        legacyToState.put(initialLegacyState, stateField.getInt(initial.mState));
+        stateToLegacy.put(stateField.getInt(initial.mState), initialLegacyState);
+        final ArrayDeque<LegacyState> pending = new ArrayDeque<>();
+        pending.add(initialLegacyState);
+
+        int transitionCount = 0;
+        while (!pending.isEmpty()) {
+            final LegacyState legacyState = pending.poll();
+            final int state = legacyToState.get(legacyState);
+            // Each state gets a new state machine so that its transitions are looked up from the
+            // table on the second time.
+            final StateMachine stateMachine = new StateMachine();
+            for (int i = 0; i < 2; i++) {
+                for (final Input input : inputs) {
+                    final LegacyStateMachine legacy = new LegacyStateMachine();
+                    legacy.mState.setSnapshot(legacyState.mSnapshot);
+                    legacy.perform(input, legacyState.mKeyboard);
+                    stateField.setInt(stateMachine.mState, state);
+                    stateMachine.perform(input, legacyState.mKeyboard);
+                    final String message = "state=" + legacyState + " input=" + input
+                            + " legacyActions=" + legacy.mActions
+                            + " actions=" + stateMachine.mActions;
+                    assertEquals(message, legacy.mKeyboard, stateMachine.mKeyboard);
+                    // The keyboard of a new layout set has to be set, even if it's the same one.
+                    final boolean isLoading = input.mType == INPUT_LOAD_KEYBOARD
+                            || input.mType == INPUT_SAVE_AND_LOAD_KEYBOARD;
+                    assertSameActions(message, isLoading ? NO_KEYBOARD : legacyState.mKeyboard,
+                            legacy.mActions, stateMachine.mActions);
+
+                    final LegacyState newLegacyState =
+                            new LegacyState(legacy.mState.getSnapshot(), legacy.mKeyboard);
+                    final int newState = stateField.getInt(stateMachine.mState);
+                    final Integer knownState = legacyToState.get(newLegacyState);
+                    final LegacyState knownLegacyState = stateToLegacy.get(newState);
+                    if (knownState == null && knownLegacyState == null) {
+                        legacyToState.put(newLegacyState, newState);
+                        stateToLegacy.put(newState, newLegacyState);
+                        pending.add(newLegacyState);
+                    } else {
+                        assertEquals(message, knownState, Integer.valueOf(newState));
+                        assertEquals(message, knownLegacyState, newLegacyState);
+                    }
+                    transitionCount++;
+                }
+            }
+        }
+        assertTrue("Only found " + legacyToState.size() + " states",
+                legacyToState.size() > 100);
+        assertEquals(legacyToState.size() * inputs.size() * 2, transitionCount);
+    }
+
+    private static List<String> getKeyboards(final List<String> actions) {
+        final ArrayList<String> keyboards = new ArrayList<>();
+        for (final String action : actions) {
+            if (action.startsWith(SET_KEYBOARD_ACTION)) {
+                keyboards.add(action.substring(SET_KEYBOARD_ACTION.length()));
+            }
+        }
+        return keyboards;
+    }
+
+    private static List<String> getTimerActions(final List<String> actions) {
+        final ArrayList<String> timerActions = new ArrayList<>();
+        for (final String action : actions) {
+            if (!action.startsWith(SET_KEYBOARD_ACTION)) {
+                timerActions.add(action);
+            }
+        }
+        return timerActions;
+    }
+
+    /**
+     * Split the actions after each shift state update, which calls back the state machine.
+     */
+    private static List<List<String>> splitAtShiftStateUpdates(final List<String> actions) {
+        final ArrayList<List<String>> parts = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < actions.size(); i++) {
+            if (actions.get(i).startsWith(REQUEST_UPDATING_SHIFT_STATE_ACTION)) {
+                parts.add(actions.subList(start, i + 1));
+                start = i + 1;
+            }
+        }
+        parts.add(actions.subList(start, actions.size()));
+        return parts;
+    }
+
+    private static void assertSameActions(final String message, final String initialKeyboard,
+            final List<String> legacyActions, final List<String> actions) {
+        final List<List<String>> legacyParts = splitAtShiftStateUpdates(legacyActions);
+        final List<List<String>> parts = splitAtShiftStateUpdates(actions);
+        assertEquals(message, legacyParts.size(), parts.size());
+        String legacyKeyboard = initialKeyboard;
+        String keyboard = initialKeyboard;
+        for (int i = 0; i < parts.size(); i++) {
+            // The timer actions and the shift state updates are taken in the same order, and the
+            // same keyboard is set whenever the shift state is updated.
+            assertEquals(message, getTimerActions(legacyParts.get(i)),
+                    getTimerActions(parts.get(i)));
+            final List<String> legacyKeyboards = getKeyboards(legacyParts.get(i));
+            final List<String> keyboards = getKeyboards(parts.get(i));
+            assertSkipsOnlyUnchangedKeyboards(message, keyboard, legacyKeyboards, keyboards);
+            if (!legacyKeyboards.isEmpty()) {
+                legacyKeyboard = legacyKeyboards.get(legacyKeyboards.size() - 1);
+            }
+            if (!keyboards.isEmpty()) {
+                keyboard = keyboards.get(keyboards.size() - 1);
+            }
+            assertEquals(message, legacyKeyboard, keyboard);
+        }
+    }
+
+    private static void assertSkipsOnlyUnchangedKeyboards(final String message,
+            final String initialKeyboard, final List<String> legacyKeyboards,
+            final List<String> keyboards) {
+        String keyboard = initialKeyboard;
+        int legacyIndex = 0;
+        for (final String newKeyboard : keyboards) {
+            assertNotEquals(message, keyboard, newKeyboard);
+            // The keyboards must have been set in the same order.
+            while (legacyIndex < legacyKeyboards.size()
+                    && !legacyKeyboards.get(legacyIndex).equals(newKeyboard)) {
+                legacyIndex++;
+            }
+            assertTrue(message, legacyIndex < legacyKeyboards.size());
+            legacyIndex++;
+            keyboard = newKeyboard;
+        }
+        if (keyboards.isEmpty() && !legacyKeyboards.isEmpty()) {
+            assertEquals(message, initialKeyboard, legacyKeyboards.get(0));
+        }
+    }
+
+    @Test
+    public void testKeyboardIsSetAgainForNewLayoutOrView() {
+        final int autoCapsFlags = TextUtils.CAP_MODE_WORDS;
+        final StateMachine stateMachine = new StateMachine();
+        final Input load = new Input(INPUT_LOAD_KEYBOARD, Constants.CODE_UNSPECIFIED, false,
+                false, autoCapsFlags, RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE);
+        final List<String> loadedKeyboards =
+                Arrays.asList("alphabet", "alphabetAutomaticShifted");
+        stateMachine.perform(load, NO_KEYBOARD);
+        assertEquals(loadedKeyboards, stateMachine.getKeyboards());
+        // The layout set has changed, so the same keyboards have to be set from it.
+        stateMachine.perform(load, stateMachine.mKeyboard);
+        assertEquals(loadedKeyboards, stateMachine.getKeyboards());
+
+        // Pressing a key with another pointer resets the automatic shift, but only the first time
+        // changes the keyboard.
+        final Input press = new Input(INPUT_PRESS_KEY, 'a', false /* pointerFlag */, false,
+                autoCapsFlags, RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE);
+        stateMachine.perform(press, stateMachine.mKeyboard);
+        assertEquals(Arrays.asList("alphabet"), stateMachine.getKeyboards());
+        stateMachine.perform(press, stateMachine.mKeyboard);
+        assertEquals(Arrays.<String>asList(), stateMachine.getKeyboards());
+        // A new keyboard view has to be set up even for the same keyboard.
+        stateMachine.mState.onKeyboardViewChanged();
+        stateMachine.perform(press, stateMachine.mKeyboard);
+        assertEquals(Arrays.asList("alphabet"), stateMachine.getKeyboards());
+    }
+}
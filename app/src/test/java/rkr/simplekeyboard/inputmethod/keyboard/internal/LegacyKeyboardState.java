@@ -0,0 +1,890 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import rkr.simplekeyboard.inputmethod.event.Event;
+import rkr.simplekeyboard.inputmethod.latin.common.Constants;
+import rkr.simplekeyboard.inputmethod.latin.utils.CapsModeUtils;
+import rkr.simplekeyboard.inputmethod.latin.utils.RecapitalizeStatus;
+
+/**
+ * The implementation of {@link KeyboardState} before its state was packed into an int and its
+ * transitions were looked up in a table, which {@link KeyboardStateTest} checks that the current
+ * implementation still agrees with. This must not be changed, other than for the snapshots that
+ * the test uses to set the state.
+ *
+ * Keyboard state machine.
+ *
+ * This class contains all keyboard state transition logic.
+ *
+ * The input events are {@link #onLoadKeyboard(int, int)}, {@link #onSaveKeyboardState()},
+ * {@link #onPressKey(int,boolean,int,int)}, {@link #onReleaseKey(int,boolean,int,int)},
+ * {@link #onEvent(Event,int,int)}, {@link #onFinishSlidingInput(int,int)},
+ * {@link #onUpdateShiftState(int,int)}, {@link #onResetKeyboardStateToAlphabet(int,int)}.
+ *
+ * The actions are {@link KeyboardState.SwitchActions}'s methods.
+ */
+final class LegacyKeyboardState {
+    private static final String TAG = LegacyKeyboardState.class.getSimpleName();
+    private static final boolean DEBUG_EVENT = false;
+    private static final boolean DEBUG_INTERNAL_ACTION = false;
+
+    private final KeyboardState.SwitchActions mSwitchActions;
+
+    private LegacyShiftKeyState mShiftKeyState = new LegacyShiftKeyState("Shift");
+    private LegacyModifierKeyState mSymbolKeyState = new LegacyModifierKeyState("Symbol");
+
+    // TODO: Merge {@link #mSwitchState}, {@link #mIsAlphabetMode}, {@link #mAlphabetShiftState},
+    // {@link #mIsSymbolShifted}, {@link #mPrevMainKeyboardWasShiftLocked}, and
+    // {@link #mPrevSymbolsKeyboardWasShifted} into single state variable.
+    private static final int SWITCH_STATE_ALPHA = 0;
+    private static final int SWITCH_STATE_SYMBOL_BEGIN = 1;
+    private static final int SWITCH_STATE_SYMBOL = 2;
+    private static final int SWITCH_STATE_MOMENTARY_ALPHA_AND_SYMBOL = 3;
+    private static final int SWITCH_STATE_MOMENTARY_SYMBOL_AND_MORE = 4;
+    private int mSwitchState = SWITCH_STATE_ALPHA;
+
+    private boolean mIsAlphabetMode;
+    private LegacyAlphabetShiftState mAlphabetShiftState = new LegacyAlphabetShiftState();
+    private boolean mIsSymbolShifted;
+    private boolean mPrevMainKeyboardWasShiftLocked;
+    private boolean mPrevSymbolsKeyboardWasShifted;
+    private int mRecapitalizeMode;
+
+    // For handling double tap.
+    private boolean mIsInAlphabetUnshiftedFromShifted;
+    private boolean mIsInDoubleTapShiftKey;
+
+    private final SavedKeyboardState mSavedKeyboardState = new SavedKeyboardState();
+
+    static final class SavedKeyboardState {
+        public boolean mIsValid;
+        public boolean mIsAlphabetMode;
+        public boolean mIsAlphabetShiftLocked;
+        public int mShiftMode;
+
+        @Override
+        public String toString() {
+            if (!mIsValid) {
+                return "INVALID";
+            }
+            if (mIsAlphabetMode) {
+                return mIsAlphabetShiftLocked ? "ALPHABET_SHIFT_LOCKED"
+                        : "ALPHABET_" + shiftModeToString(mShiftMode);
+            }
+            return "SYMBOLS_" + shiftModeToString(mShiftMode);
+        }
+    }
+
+    LegacyKeyboardState(final KeyboardState.SwitchActions switchActions) {
+        mSwitchActions = switchActions;
+        mRecapitalizeMode = RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE;
+    }
+
+    public void onLoadKeyboard(final int autoCapsFlags, final int recapitalizeMode) {
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onLoadKeyboard: " + stateToString(autoCapsFlags, recapitalizeMode));
+        }
+        // Reset alphabet shift state.
+        mAlphabetShiftState.setShiftLocked(false);
+        mPrevMainKeyboardWasShiftLocked = false;
+        mPrevSymbolsKeyboardWasShifted = false;
+        mShiftKeyState.onRelease();
+        mSymbolKeyState.onRelease();
+        if (mSavedKeyboardState.mIsValid) {
+            onRestoreKeyboardState(autoCapsFlags, recapitalizeMode);
+            mSavedKeyboardState.mIsValid = false;
+        } else {
+            // Reset keyboard to alphabet mode.
+            setAlphabetKeyboard(autoCapsFlags, recapitalizeMode);
+        }
+    }
+
+    // Constants for {@link SavedKeyboardState#mShiftMode} and {@link #setShifted(int)}.
+    private static final int UNSHIFT = 0;
+    private static final int MANUAL_SHIFT = 1;
+    private static final int AUTOMATIC_SHIFT = 2;
+    private static final int SHIFT_LOCK_SHIFTED = 3;
+
+    public void onSaveKeyboardState() {
+        final SavedKeyboardState state = mSavedKeyboardState;
+        state.mIsAlphabetMode = mIsAlphabetMode;
+        if (mIsAlphabetMode) {
+            state.mIsAlphabetShiftLocked = mAlphabetShiftState.isShiftLocked();
+            state.mShiftMode = mAlphabetShiftState.isAutomaticShifted() ? AUTOMATIC_SHIFT
+                    : (mAlphabetShiftState.isShiftedOrShiftLocked() ? MANUAL_SHIFT : UNSHIFT);
+        } else {
+            state.mIsAlphabetShiftLocked = mPrevMainKeyboardWasShiftLocked;
+            state.mShiftMode = mIsSymbolShifted ? MANUAL_SHIFT : UNSHIFT;
+        }
+        state.mIsValid = true;
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onSaveKeyboardState: saved=" + state + " " + this);
+        }
+    }
+
+    private void onRestoreKeyboardState(final int autoCapsFlags, final int recapitalizeMode) {
+        final SavedKeyboardState state = mSavedKeyboardState;
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onRestoreKeyboardState: saved=" + state
+                    + " " + stateToString(autoCapsFlags, recapitalizeMode));
+        }
+        mPrevMainKeyboardWasShiftLocked = state.mIsAlphabetShiftLocked;
+        if (state.mIsAlphabetMode) {
+            setAlphabetKeyboard(autoCapsFlags, recapitalizeMode);
+            setShiftLocked(state.mIsAlphabetShiftLocked);
+            if (!state.mIsAlphabetShiftLocked) {
+                setShifted(state.mShiftMode);
+            }
+            return;
+        }
+        // Symbol mode
+        if (state.mShiftMode == MANUAL_SHIFT) {
+            setSymbolsShiftedKeyboard();
+        } else {
+            setSymbolsKeyboard();
+        }
+    }
+
+    private void setShifted(final int shiftMode) {
+        if (DEBUG_INTERNAL_ACTION) {
+            Log.d(TAG, "setShifted: shiftMode=" + shiftModeToString(shiftMode) + " " + this);
+        }
+        if (!mIsAlphabetMode) return;
+        final int prevShiftMode;
+        if (mAlphabetShiftState.isAutomaticShifted()) {
+            prevShiftMode = AUTOMATIC_SHIFT;
+        } else if (mAlphabetShiftState.isManualShifted()) {
+            prevShiftMode = MANUAL_SHIFT;
+        } else {
+            prevShiftMode = UNSHIFT;
+        }
+        switch (shiftMode) {
+        case AUTOMATIC_SHIFT:
+            mAlphabetShiftState.setAutomaticShifted();
+            if (shiftMode != prevShiftMode) {
+                mSwitchActions.setAlphabetAutomaticShiftedKeyboard();
+            }
+            break;
+        case MANUAL_SHIFT:
+            mAlphabetShiftState.setShifted(true);
+            if (shiftMode != prevShiftMode) {
+                mSwitchActions.setAlphabetManualShiftedKeyboard();
+            }
+            break;
+        case UNSHIFT:
+            mAlphabetShiftState.setShifted(false);
+            if (shiftMode != prevShiftMode) {
+                mSwitchActions.setAlphabetKeyboard();
+            }
+            break;
+        case SHIFT_LOCK_SHIFTED:
+            mAlphabetShiftState.setShifted(true);
+            break;
+        }
+    }
+
+    private void setShiftLocked(final boolean shiftLocked) {
+        if (DEBUG_INTERNAL_ACTION) {
+            Log.d(TAG, "setShiftLocked: shiftLocked=" + shiftLocked + " " + this);
+        }
+        if (!mIsAlphabetMode) return;
+        if (shiftLocked && (!mAlphabetShiftState.isShiftLocked()
+                || mAlphabetShiftState.isShiftLockShifted())) {
+            mSwitchActions.setAlphabetShiftLockedKeyboard();
+        }
+        if (!shiftLocked && mAlphabetShiftState.isShiftLocked()) {
+            mSwitchActions.setAlphabetKeyboard();
+        }
+        mAlphabetShiftState.setShiftLocked(shiftLocked);
+    }
+
+    private void toggleAlphabetAndSymbols(final int autoCapsFlags, final int recapitalizeMode) {
+        if (DEBUG_INTERNAL_ACTION) {
+            Log.d(TAG, "toggleAlphabetAndSymbols: "
+                    + stateToString(autoCapsFlags, recapitalizeMode));
+        }
+        if (mIsAlphabetMode) {
+            mPrevMainKeyboardWasShiftLocked = mAlphabetShiftState.isShiftLocked();
+            if (mPrevSymbolsKeyboardWasShifted) {
+                setSymbolsShiftedKeyboard();
+            } else {
+                setSymbolsKeyboard();
+            }
+            mPrevSymbolsKeyboardWasShifted = false;
+        } else {
+            mPrevSymbolsKeyboardWasShifted = mIsSymbolShifted;
+            setAlphabetKeyboard(autoCapsFlags, recapitalizeMode);
+            if (mPrevMainKeyboardWasShiftLocked) {
+                setShiftLocked(true);
+            }
+            mPrevMainKeyboardWasShiftLocked = false;
+        }
+    }
+
+    // TODO: Remove this method. Come up with a more comprehensive way to reset the keyboard layout
+    // when a keyboard layout set doesn't get reloaded in LatinIME.onStartInputViewInternal().
+    private void resetKeyboardStateToAlphabet(final int autoCapsFlags, final int recapitalizeMode) {
+        if (DEBUG_INTERNAL_ACTION) {
+            Log.d(TAG, "resetKeyboardStateToAlphabet: "
+                    + stateToString(autoCapsFlags, recapitalizeMode));
+        }
+        if (mIsAlphabetMode) return;
+
+        mPrevSymbolsKeyboardWasShifted = mIsSymbolShifted;
+        setAlphabetKeyboard(autoCapsFlags, recapitalizeMode);
+        if (mPrevMainKeyboardWasShiftLocked) {
+            setShiftLocked(true);
+        }
+        mPrevMainKeyboardWasShiftLocked = false;
+    }
+
+    private void toggleShiftInSymbols() {
+        if (mIsSymbolShifted) {
+            setSymbolsKeyboard();
+        } else {
+            setSymbolsShiftedKeyboard();
+        }
+    }
+
+    private void setAlphabetKeyboard(final int autoCapsFlags, final int recapitalizeMode) {
+        if (DEBUG_INTERNAL_ACTION) {
+            Log.d(TAG, "setAlphabetKeyboard: " + stateToString(autoCapsFlags, recapitalizeMode));
+        }
+
+        mSwitchActions.setAlphabetKeyboard();
+        mIsAlphabetMode = true;
+        mIsSymbolShifted = false;
+        mRecapitalizeMode = RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE;
+        mSwitchState = SWITCH_STATE_ALPHA;
+        mSwitchActions.requestUpdatingShiftState(autoCapsFlags, recapitalizeMode);
+    }
+
+    private void setSymbolsKeyboard() {
+        if (DEBUG_INTERNAL_ACTION) {
+            Log.d(TAG, "setSymbolsKeyboard");
+        }
+        mSwitchActions.setSymbolsKeyboard();
+        mIsAlphabetMode = false;
+        mIsSymbolShifted = false;
+        mRecapitalizeMode = RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE;
+        // Reset alphabet shift state.
+        mAlphabetShiftState.setShiftLocked(false);
+        mSwitchState = SWITCH_STATE_SYMBOL_BEGIN;
+    }
+
+    private void setSymbolsShiftedKeyboard() {
+        if (DEBUG_INTERNAL_ACTION) {
+            Log.d(TAG, "setSymbolsShiftedKeyboard");
+        }
+        mSwitchActions.setSymbolsShiftedKeyboard();
+        mIsAlphabetMode = false;
+        mIsSymbolShifted = true;
+        mRecapitalizeMode = RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE;
+        // Reset alphabet shift state.
+        mAlphabetShiftState.setShiftLocked(false);
+        mSwitchState = SWITCH_STATE_SYMBOL_BEGIN;
+    }
+
+    public void onPressKey(final int code, final boolean isSinglePointer, final int autoCapsFlags,
+            final int recapitalizeMode) {
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onPressKey: code=" + Constants.printableCode(code)
+                    + " single=" + isSinglePointer
+                    + " " + stateToString(autoCapsFlags, recapitalizeMode));
+        }
+        if (code != Constants.CODE_SHIFT) {
+            // Because the double tap shift key timer is to detect two consecutive shift key press,
+            // it should be canceled when a non-shift key is pressed.
+            mSwitchActions.cancelDoubleTapShiftKeyTimer();
+        }
+        if (code == Constants.CODE_SHIFT) {
+            onPressShift();
+        } else if (code == Constants.CODE_CAPSLOCK) {
+            // Nothing to do here. See {@link #onReleaseKey(int,boolean)}.
+        } else if (code == Constants.CODE_SWITCH_ALPHA_SYMBOL) {
+            onPressSymbol(autoCapsFlags, recapitalizeMode);
+        } else {
+            mShiftKeyState.onOtherKeyPressed();
+            mSymbolKeyState.onOtherKeyPressed();
+            // It is required to reset the auto caps state when all of the following conditions
+            // are met:
+            // 1) two or more fingers are in action
+            // 2) in alphabet layout
+            // 3) not in all characters caps mode
+            // As for #3, please note that it's required to check even when the auto caps mode is
+            // off because, for example, we may be in the #1 state within the manual temporary
+            // shifted mode.
+            if (!isSinglePointer && mIsAlphabetMode
+                    && autoCapsFlags != TextUtils.CAP_MODE_CHARACTERS) {
+                final boolean needsToResetAutoCaps =
+                        (mAlphabetShiftState.isAutomaticShifted() && !mShiftKeyState.isChording())
+                        || (mAlphabetShiftState.isManualShifted() && mShiftKeyState.isReleasing());
+                if (needsToResetAutoCaps) {
+                    mSwitchActions.setAlphabetKeyboard();
+                }
+            }
+        }
+    }
+
+    public void onReleaseKey(final int code, final boolean withSliding, final int autoCapsFlags,
+            final int recapitalizeMode) {
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onReleaseKey: code=" + Constants.printableCode(code)
+                    + " sliding=" + withSliding
+                    + " " + stateToString(autoCapsFlags, recapitalizeMode));
+        }
+        if (code == Constants.CODE_SHIFT) {
+            onReleaseShift(withSliding, autoCapsFlags, recapitalizeMode);
+        } else if (code == Constants.CODE_CAPSLOCK) {
+            setShiftLocked(!mAlphabetShiftState.isShiftLocked());
+        } else if (code == Constants.CODE_SWITCH_ALPHA_SYMBOL) {
+            onReleaseSymbol(withSliding, autoCapsFlags, recapitalizeMode);
+        }
+    }
+
+    private void onPressSymbol(final int autoCapsFlags,
+            final int recapitalizeMode) {
+        toggleAlphabetAndSymbols(autoCapsFlags, recapitalizeMode);
+        mSymbolKeyState.onPress();
+        mSwitchState = SWITCH_STATE_MOMENTARY_ALPHA_AND_SYMBOL;
+    }
+
+    private void onReleaseSymbol(final boolean withSliding, final int autoCapsFlags,
+            final int recapitalizeMode) {
+        if (mSymbolKeyState.isChording()) {
+            // Switch back to the previous keyboard mode if the user chords the mode change key and
+            // another key, then releases the mode change key.
+            toggleAlphabetAndSymbols(autoCapsFlags, recapitalizeMode);
+        } else if (!withSliding) {
+            // If the mode change key is being released without sliding, we should forget the
+            // previous symbols keyboard shift state and simply switch back to symbols layout
+            // (never symbols shifted) next time the mode gets changed to symbols layout.
+            mPrevSymbolsKeyboardWasShifted = false;
+        }
+        mSymbolKeyState.onRelease();
+    }
+
+    public void onUpdateShiftState(final int autoCapsFlags, final int recapitalizeMode) {
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onUpdateShiftState: " + stateToString(autoCapsFlags, recapitalizeMode));
+        }
+        mRecapitalizeMode = recapitalizeMode;
+        updateAlphabetShiftState(autoCapsFlags, recapitalizeMode);
+    }
+
+    // TODO: Remove this method. Come up with a more comprehensive way to reset the keyboard layout
+    // when a keyboard layout set doesn't get reloaded in LatinIME.onStartInputViewInternal().
+    public void onResetKeyboardStateToAlphabet(final int autoCapsFlags,
+            final int recapitalizeMode) {
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onResetKeyboardStateToAlphabet: "
+                    + stateToString(autoCapsFlags, recapitalizeMode));
+        }
+        resetKeyboardStateToAlphabet(autoCapsFlags, recapitalizeMode);
+    }
+
+    private void updateShiftStateForRecapitalize(final int recapitalizeMode) {
+        switch (recapitalizeMode) {
+        case RecapitalizeStatus.CAPS_MODE_ALL_UPPER:
+            setShifted(SHIFT_LOCK_SHIFTED);
+            break;
+        case RecapitalizeStatus.CAPS_MODE_FIRST_WORD_UPPER:
+            setShifted(AUTOMATIC_SHIFT);
+            break;
+        case RecapitalizeStatus.CAPS_MODE_ALL_LOWER:
+        case RecapitalizeStatus.CAPS_MODE_ORIGINAL_MIXED_CASE:
+        default:
+            setShifted(UNSHIFT);
+        }
+    }
+
+    private void updateAlphabetShiftState(final int autoCapsFlags, final int recapitalizeMode) {
+        if (!mIsAlphabetMode) return;
+        if (RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE != recapitalizeMode) {
+            // We are recapitalizing. Match the keyboard to the current recapitalize state.
+            updateShiftStateForRecapitalize(recapitalizeMode);
+            return;
+        }
+        if (!mShiftKeyState.isReleasing()) {
+            // Ignore update shift state event while the shift key is being pressed (including
+            // chording).
+            return;
+        }
+        if (!mAlphabetShiftState.isShiftLocked() && !mShiftKeyState.isIgnoring()) {
+            if (mShiftKeyState.isReleasing() && autoCapsFlags != Constants.TextUtils.CAP_MODE_OFF) {
+                // Only when shift key is releasing, automatic temporary upper case will be set.
+                setShifted(AUTOMATIC_SHIFT);
+            } else {
+                setShifted(mShiftKeyState.isChording() ? MANUAL_SHIFT : UNSHIFT);
+            }
+        }
+    }
+
+    private void onPressShift() {
+        // If we are recapitalizing, we don't do any of the normal processing, including
+        // importantly the double tap timer.
+        if (RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE != mRecapitalizeMode) {
+            return;
+        }
+        if (mIsAlphabetMode) {
+            mIsInDoubleTapShiftKey = mSwitchActions.isInDoubleTapShiftKeyTimeout();
+            if (!mIsInDoubleTapShiftKey) {
+                // This is first tap.
+                mSwitchActions.startDoubleTapShiftKeyTimer();
+            }
+            if (mIsInDoubleTapShiftKey) {
+                if (mAlphabetShiftState.isManualShifted() || mIsInAlphabetUnshiftedFromShifted) {
+                    // Shift key has been double tapped while in manual shifted or automatic
+                    // shifted state.
+                    setShiftLocked(true);
+                } else {
+                    // Shift key has been double tapped while in normal state. This is the second
+                    // tap to disable shift locked state, so just ignore this.
+                }
+            } else {
+                if (mAlphabetShiftState.isShiftLocked()) {
+                    // Shift key is pressed while shift locked state, we will treat this state as
+                    // shift lock shifted state and mark as if shift key pressed while normal
+                    // state.
+                    setShifted(SHIFT_LOCK_SHIFTED);
+                    mShiftKeyState.onPress();
+                } else if (mAlphabetShiftState.isAutomaticShifted()) {
+                    // Shift key pressed while automatic shifted isn't considered a manual shift
+                    // since it doesn't change the keyboard into a shifted state.
+                    mShiftKeyState.onPress();
+                } else if (mAlphabetShiftState.isShiftedOrShiftLocked()) {
+                    // In manual shifted state, we just record shift key has been pressing while
+                    // shifted state.
+                    mShiftKeyState.onPressOnShifted();
+                } else {
+                    // In base layout, chording or manual shifted mode is started.
+                    setShifted(MANUAL_SHIFT);
+                    mShiftKeyState.onPress();
+                }
+            }
+        } else {
+            // In symbol mode, just toggle symbol and symbol more keyboard.
+            toggleShiftInSymbols();
+            mSwitchState = SWITCH_STATE_MOMENTARY_SYMBOL_AND_MORE;
+            mShiftKeyState.onPress();
+        }
+    }
+
+    private void onReleaseShift(final boolean withSliding, final int autoCapsFlags,
+            final int recapitalizeMode) {
+        if (RecapitalizeStatus.NOT_A_RECAPITALIZE_MODE != mRecapitalizeMode) {
+            // We are recapitalizing. We should match the keyboard state to the recapitalize
+            // state in priority.
+            updateShiftStateForRecapitalize(mRecapitalizeMode);
+        } else if (mIsAlphabetMode) {
+            final boolean isShiftLocked = mAlphabetShiftState.isShiftLocked();
+            mIsInAlphabetUnshiftedFromShifted = false;
+            if (mIsInDoubleTapShiftKey) {
+                // Double tap shift key has been handled in {@link #onPressShift}, so that just
+                // ignore this release shift key here.
+                mIsInDoubleTapShiftKey = false;
+            } else if (mShiftKeyState.isChording()) {
+                if (mAlphabetShiftState.isShiftLockShifted()) {
+                    // After chording input while shift locked state.
+                    setShiftLocked(true);
+                } else {
+                    // After chording input while normal state.
+                    setShifted(UNSHIFT);
+                }
+                // After chording input, automatic shift state may have been changed depending on
+                // what characters were input.
+                mShiftKeyState.onRelease();
+                mSwitchActions.requestUpdatingShiftState(autoCapsFlags, recapitalizeMode);
+                return;
+            } else if (isShiftLocked && !mAlphabetShiftState.isShiftLockShifted()
+                    && (mShiftKeyState.isPressing() || mShiftKeyState.isPressingOnShifted())
+                    && !withSliding) {
+                // Shift has been long pressed, ignore this release.
+            } else if (isShiftLocked && !mShiftKeyState.isIgnoring() && !withSliding) {
+                // Shift has been pressed without chording while shift locked state.
+                setShiftLocked(false);
+            } else if (mAlphabetShiftState.isShiftedOrShiftLocked()
+                    && mShiftKeyState.isPressingOnShifted() && !withSliding) {
+                // Shift has been pressed without chording while shifted state.
+                setShifted(UNSHIFT);
+                mIsInAlphabetUnshiftedFromShifted = true;
+            } else if (mAlphabetShiftState.isAutomaticShifted() && mShiftKeyState.isPressing()
+                    && !withSliding) {
+                // Shift has been pressed without chording while automatic shifted
+                setShifted(UNSHIFT);
+                mIsInAlphabetUnshiftedFromShifted = true;
+            }
+        } else {
+            // In symbol mode, switch back to the previous keyboard mode if the user chords the
+            // shift key and another key, then releases the shift key.
+            if (mShiftKeyState.isChording()) {
+                toggleShiftInSymbols();
+            }
+        }
+        mShiftKeyState.onRelease();
+    }
+
+    public void onFinishSlidingInput(final int autoCapsFlags, final int recapitalizeMode) {
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onFinishSlidingInput: " + stateToString(autoCapsFlags, recapitalizeMode));
+        }
+        // Switch back to the previous keyboard mode if the user cancels sliding input.
+        switch (mSwitchState) {
+        case SWITCH_STATE_MOMENTARY_ALPHA_AND_SYMBOL:
+            toggleAlphabetAndSymbols(autoCapsFlags, recapitalizeMode);
+            break;
+        case SWITCH_STATE_MOMENTARY_SYMBOL_AND_MORE:
+            toggleShiftInSymbols();
+            break;
+        }
+    }
+
+    private static boolean isSpaceOrEnter(final int c) {
+        return c == Constants.CODE_SPACE || c == Constants.CODE_ENTER;
+    }
+
+    public void onEvent(final Event event, final int autoCapsFlags, final int recapitalizeMode) {
+        final int code = event.isFunctionalKeyEvent() ? event.mKeyCode : event.mCodePoint;
+        if (DEBUG_EVENT) {
+            Log.d(TAG, "onEvent: code=" + Constants.printableCode(code)
+                    + " " + stateToString(autoCapsFlags, recapitalizeMode));
+        }
+
+        switch (mSwitchState) {
+        case SWITCH_STATE_MOMENTARY_ALPHA_AND_SYMBOL:
+            if (code == Constants.CODE_SWITCH_ALPHA_SYMBOL) {
+                // Detected only the mode change key has been pressed, and then released.
+                if (mIsAlphabetMode) {
+                    mSwitchState = SWITCH_STATE_ALPHA;
+                } else {
+                    mSwitchState = SWITCH_STATE_SYMBOL_BEGIN;
+                }
+            }
+            break;
+        case SWITCH_STATE_MOMENTARY_SYMBOL_AND_MORE:
+            if (code == Constants.CODE_SHIFT) {
+                // Detected only the shift key has been pressed on symbol layout, and then
+                // released.
+                mSwitchState = SWITCH_STATE_SYMBOL_BEGIN;
+            }
+            break;
+        case SWITCH_STATE_SYMBOL_BEGIN:
+            if (!isSpaceOrEnter(code) && (Constants.isLetterCode(code)
+                    || code == Constants.CODE_OUTPUT_TEXT)) {
+                mSwitchState = SWITCH_STATE_SYMBOL;
+            }
+            break;
+        case SWITCH_STATE_SYMBOL:
+            // Switch back to alpha keyboard mode if user types one or more non-space/enter
+            // characters followed by a space/enter.
+            if (isSpaceOrEnter(code)) {
+                toggleAlphabetAndSymbols(autoCapsFlags, recapitalizeMode);
+                mPrevSymbolsKeyboardWasShifted = false;
+            }
+            break;
+        }
+
+        // If the code is a letter, update keyboard shift state.
+        if (Constants.isLetterCode(code)) {
+            updateAlphabetShiftState(autoCapsFlags, recapitalizeMode);
+        }
+    }
+
+    static String shiftModeToString(final int shiftMode) {
+        switch (shiftMode) {
+        case UNSHIFT: return "UNSHIFT";
+        case MANUAL_SHIFT: return "MANUAL";
+        case AUTOMATIC_SHIFT: return "AUTOMATIC";
+        default: return null;
+        }
+    }
+
+    private static String switchStateToString(final int switchState) {
+        switch (switchState) {
+        case SWITCH_STATE_ALPHA: return "ALPHA";
+        case SWITCH_STATE_SYMBOL_BEGIN: return "SYMBOL-BEGIN";
+        case SWITCH_STATE_SYMBOL: return "SYMBOL";
+        case SWITCH_STATE_MOMENTARY_ALPHA_AND_SYMBOL: return "MOMENTARY-ALPHA-SYMBOL";
+        case SWITCH_STATE_MOMENTARY_SYMBOL_AND_MORE: return "MOMENTARY-SYMBOL-MORE";
+        default: return null;
+        }
+    }
+
+    /**
+     * Pack all of the fields of the state machine into a long, so that the unit tests can explore
+     * every state that it can get into.
+     */
+    long getSnapshot() {
+        long snapshot = mSwitchState;
+        snapshot = (snapshot << 1) | (mIsAlphabetMode ? 1 : 0);
+        snapshot = (snapshot << 3) | mAlphabetShiftState.mState;
+        snapshot = (snapshot << 1) | (mIsSymbolShifted ? 1 : 0);
+        snapshot = (snapshot << 1) | (mPrevMainKeyboardWasShiftLocked ? 1 : 0);
+        snapshot = (snapshot << 1) | (mPrevSymbolsKeyboardWasShifted ? 1 : 0);
+        snapshot = (snapshot << 3) | (mRecapitalizeMode + 1);
+        snapshot = (snapshot << 1) | (mIsInAlphabetUnshiftedFromShifted ? 1 : 0);
+        snapshot = (snapshot << 1) | (mIsInDoubleTapShiftKey ? 1 : 0);
+        snapshot = (snapshot << 3) | mShiftKeyState.mState;
+        snapshot = (snapshot << 2) | mSymbolKeyState.mState;
+        return snapshot;
+    }
+
+    void setSnapshot(final long snapshot) {
+        long s = snapshot;
+        mSymbolKeyState.mState = (int)(s & 0x3);
+        s >>>= 2;
+        mShiftKeyState.mState = (int)(s & 0x7);
+        s >>>= 3;
+        mIsInDoubleTapShiftKey = (s & 0x1) != 0;
+        s >>>= 1;
+        mIsInAlphabetUnshiftedFromShifted = (s & 0x1) != 0;
+        s >>>= 1;
+        mRecapitalizeMode = (int)(s & 0x7) - 1;
+        s >>>= 3;
+        mPrevSymbolsKeyboardWasShifted = (s & 0x1) != 0;
+        s >>>= 1;
+        mPrevMainKeyboardWasShiftLocked = (s & 0x1) != 0;
+        s >>>= 1;
+        mIsSymbolShifted = (s & 0x1) != 0;
+        s >>>= 1;
+        mAlphabetShiftState.mState = (int)(s & 0x7);
+        s >>>= 3;
+        mIsAlphabetMode = (s & 0x1) != 0;
+        s >>>= 1;
+        mSwitchState = (int)s;
+    }
+
+    @Override
+    public String toString() {
+        return "[keyboard=" + (mIsAlphabetMode ? mAlphabetShiftState.toString()
+                : (mIsSymbolShifted ? "SYMBOLS_SHIFTED" : "SYMBOLS"))
+                + " shift=" + mShiftKeyState
+                + " symbol=" + mSymbolKeyState
+                + " switch=" + switchStateToString(mSwitchState) + "]";
+    }
+
+    private String stateToString(final int autoCapsFlags, final int recapitalizeMode) {
+        return this + " autoCapsFlags=" + CapsModeUtils.flagsToString(autoCapsFlags)
+                + " recapitalizeMode=" + RecapitalizeStatus.modeToString(recapitalizeMode);
+    }
+
+    static final class LegacyAlphabetShiftState {
+        private static final String TAG = LegacyAlphabetShiftState.class.getSimpleName();
+        private static final boolean DEBUG = false;
+
+        private static final int UNSHIFTED = 0;
+        private static final int MANUAL_SHIFTED = 1;
+        private static final int AUTOMATIC_SHIFTED = 2;
+        private static final int SHIFT_LOCKED = 3;
+        private static final int SHIFT_LOCK_SHIFTED = 4;
+
+        private int mState = UNSHIFTED;
+
+        public void setShifted(boolean newShiftState) {
+            final int oldState = mState;
+            if (newShiftState) {
+                switch (oldState) {
+                case UNSHIFTED:
+                    mState = MANUAL_SHIFTED;
+                    break;
+                case SHIFT_LOCKED:
+                    mState = SHIFT_LOCK_SHIFTED;
+                    break;
+                }
+            } else {
+                switch (oldState) {
+                case MANUAL_SHIFTED:
+                case AUTOMATIC_SHIFTED:
+                    mState = UNSHIFTED;
+                    break;
+                case SHIFT_LOCK_SHIFTED:
+                    mState = SHIFT_LOCKED;
+                    break;
+                }
+            }
+            if (DEBUG)
+                Log.d(TAG, "setShifted(" + newShiftState + "): " + toString(oldState) + " > " + this);
+        }
+
+        public void setShiftLocked(boolean newShiftLockState) {
+            final int oldState = mState;
+            if (newShiftLockState) {
+                switch (oldState) {
+                case UNSHIFTED:
+                case MANUAL_SHIFTED:
+                case AUTOMATIC_SHIFTED:
+                    mState = SHIFT_LOCKED;
+                    break;
+                }
+            } else {
+                mState = UNSHIFTED;
+            }
+            if (DEBUG)
+                Log.d(TAG, "setShiftLocked(" + newShiftLockState + "): " + toString(oldState)
+                        + " > " + this);
+        }
+
+        public void setAutomaticShifted() {
+            mState = AUTOMATIC_SHIFTED;
+        }
+
+        public boolean isShiftedOrShiftLocked() {
+            return mState != UNSHIFTED;
+        }
+
+        public boolean isShiftLocked() {
+            return mState == SHIFT_LOCKED || mState == SHIFT_LOCK_SHIFTED;
+        }
+
+        public boolean isShiftLockShifted() {
+            return mState == SHIFT_LOCK_SHIFTED;
+        }
+
+        public boolean isAutomaticShifted() {
+            return mState == AUTOMATIC_SHIFTED;
+        }
+
+        public boolean isManualShifted() {
+            return mState == MANUAL_SHIFTED || mState == SHIFT_LOCK_SHIFTED;
+        }
+
+        @Override
+        public String toString() {
+            return toString(mState);
+        }
+
+        private static String toString(int state) {
+            switch (state) {
+            case UNSHIFTED: return "UNSHIFTED";
+            case MANUAL_SHIFTED: return "MANUAL_SHIFTED";
+            case AUTOMATIC_SHIFTED: return "AUTOMATIC_SHIFTED";
+            case SHIFT_LOCKED: return "SHIFT_LOCKED";
+            case SHIFT_LOCK_SHIFTED: return "SHIFT_LOCK_SHIFTED";
+            default: return "UNKNOWN";
+            }
+        }
+    }
+
+    static class LegacyModifierKeyState {
+        protected static final String TAG = LegacyModifierKeyState.class.getSimpleName();
+        protected static final boolean DEBUG = false;
+
+        protected static final int RELEASING = 0;
+        protected static final int PRESSING = 1;
+        protected static final int CHORDING = 2;
+
+        protected final String mName;
+        protected int mState = RELEASING;
+
+        public LegacyModifierKeyState(String name) {
+            mName = name;
+        }
+
+        public void onPress() {
+            mState = PRESSING;
+        }
+
+        public void onRelease() {
+            mState = RELEASING;
+        }
+
+        public void onOtherKeyPressed() {
+            final int oldState = mState;
+            if (oldState == PRESSING)
+                mState = CHORDING;
+            if (DEBUG)
+                Log.d(TAG, mName + ".onOtherKeyPressed: " + toString(oldState) + " > " + this);
+        }
+
+        public boolean isPressing() {
+            return mState == PRESSING;
+        }
+
+        public boolean isReleasing() {
+            return mState == RELEASING;
+        }
+
+        public boolean isChording() {
+            return mState == CHORDING;
+        }
+
+        @Override
+        public String toString() {
+            return toString(mState);
+        }
+
+        protected String toString(int state) {
+            switch (state) {
+            case RELEASING: return "RELEASING";
+            case PRESSING: return "PRESSING";
+            case CHORDING: return "CHORDING";
+            default: return "UNKNOWN";
+            }
+        }
+    }
+
+    static final class LegacyShiftKeyState extends LegacyModifierKeyState {
+        private static final int PRESSING_ON_SHIFTED = 3; // both temporary shifted & shift locked
+        private static final int IGNORING = 4;
+
+        public LegacyShiftKeyState(String name) {
+            super(name);
+        }
+
+        @Override
+        public void onOtherKeyPressed() {
+            int oldState = mState;
+            if (oldState == PRESSING) {
+                mState = CHORDING;
+            } else if (oldState == PRESSING_ON_SHIFTED) {
+                mState = IGNORING;
+            }
+            if (DEBUG)
+                Log.d(TAG, mName + ".onOtherKeyPressed: " + toString(oldState) + " > " + this);
+        }
+
+        public void onPressOnShifted() {
+            mState = PRESSING_ON_SHIFTED;
+        }
+
+        public boolean isPressingOnShifted() {
+            return mState == PRESSING_ON_SHIFTED;
+        }
+
+        public boolean isIgnoring() {
+            return mState == IGNORING;
+        }
+
+        @Override
+        public String toString() {
+            return toString(mState);
+        }
+
+        @Override
+        protected String toString(int state) {
+            switch (state) {
+            case PRESSING_ON_SHIFTED: return "PRESSING_ON_SHIFTED";
+            case IGNORING: return "IGNORING";
+            default: return super.toString(state);
+            }
+        }
+    }
+}
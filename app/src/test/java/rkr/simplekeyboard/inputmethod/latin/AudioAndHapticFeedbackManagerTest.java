@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.latin;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.AudioManager;
+import android.os.Build;
+import android.preference.PreferenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowAudioManager;
+import org.robolectric.shadows.ShadowSystemVibrator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import rkr.simplekeyboard.inputmethod.latin.settings.Settings;
+import rkr.simplekeyboard.inputmethod.latin.settings.SettingsValues;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the key press feedback is performed on the feedback thread, so that a vibrator or
+ * an audio manager that blocks can't delay the key press, and that the feedback for key presses
+ * that were made while it was blocked is dropped in favor of the latest one.
+ */
+@RunWith(RobolectricTestRunner.class)
+// The blocking vibrator shadows the vibrator service of the recent versions only.
+@Config(sdk = Build.VERSION_CODES.UPSIDE_DOWN_CAKE, shadows = {
+        AudioAndHapticFeedbackManagerTest.BlockingVibratorShadow.class,
+        AudioAndHapticFeedbackManagerTest.RecordingAudioManagerShadow.class
+})
+public class AudioAndHapticFeedbackManagerTest {
+    private static final long TIMEOUT_MS = 10000;
+    private static final int VIBRATION_DURATION_MS = 20;
+
+    /** A vibrator that blocks in each call until it is released, like a busy system service. */
+    @Implements(className = "android.os.SystemVibrator", isInAndroidSdk = false,
+            looseSignatures = true)
+    public static class BlockingVibratorShadow extends ShadowSystemVibrator {
+        static volatile CountDownLatch sRelease = new CountDownLatch(0);
+        static volatile CountDownLatch sEntered = new CountDownLatch(1);
+        static final List<Thread> sCallingThreads = new ArrayList<>();
+        static volatile boolean sTimedOut;
+
+        static void clearCalls() {
+            sRelease = new CountDownLatch(1);
+            sEntered = new CountDownLatch(1);
+            synchronized (sCallingThreads) {
+                sCallingThreads.clear();
+            }
+            sTimedOut = false;
+        }
+
+        static int getCallCount() {
+            synchronized (sCallingThreads) {
+                return sCallingThreads.size();
+            }
+        }
+
+        @Override
+        @Implementation(minSdk = 31)
+        protected void vibrate(final Object uid, final Object opPkg, final Object effect,
+                final Object reason, final Object attributes) {
+            synchronized (sCallingThreads) {
+                sCallingThreads.add(Thread.currentThread());
+            }
+            sEntered.countDown();
+            try {
+                if (!sRelease.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    sTimedOut = true;
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** An audio manager that records the sound effects that it plays. */
+    @Implements(AudioManager.class)
+    public static class RecordingAudioManagerShadow extends ShadowAudioManager {
+        static final List<Float> sVolumes = new ArrayList<>();
+
+        static void clearCalls() {
+            synchronized (sVolumes) {
+                sVolumes.clear();
+            }
+        }
+
+        static List<Float> getVolumes() {
+            synchronized (sVolumes) {
+                return new ArrayList<>(sVolumes);
+            }
+        }
+
+        @Implementation
+        protected void playSoundEffect(final int effectType, final float volume) {
+            synchronized (sVolumes) {
+                sVolumes.add(volume);
+            }
+        }
+    }
+
+    private Context mContext;
+    private AudioAndHapticFeedbackManager mManager;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+        BlockingVibratorShadow.clearCalls();
+        RecordingAudioManagerShadow.clearCalls();
+        AudioAndHapticFeedbackManager.init(mContext);
+        mManager = AudioAndHapticFeedbackManager.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        BlockingVibratorShadow.sRelease.countDown();
+    }
+
+    private void setSettings(final boolean vibrateOn, final boolean soundOn,
+            final float soundVolume) {
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        prefs.edit()
+                .putBoolean(Settings.PREF_VIBRATE_ON, vibrateOn)
+                .putInt(Settings.PREF_VIBRATION_DURATION_SETTINGS, VIBRATION_DURATION_MS)
+                .putBoolean(Settings.PREF_SOUND_ON, soundOn)
+                .putFloat(Settings.PREF_KEYPRESS_SOUND_VOLUME, soundVolume)
+                .commit();
+        final SettingsValues settingsValues = new SettingsValues(prefs, mContext.getResources(),
+                new InputAttributes(null, false));
+        mManager.onSettingsChanged(settingsValues);
+    }
+
+    private static void waitFor(final int expectedCount, final Counter counter)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (counter.get() < expectedCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // Leave some time for any extra feedback that isn't expected to show up.
+        Thread.sleep(100);
+    }
+
+    private interface Counter {
+        int get();
+    }
+
+    @Test
+    public void testBlockingVibratorDoesNotBlockKeyPresses() throws Exception {
+        setSettings(true /* vibrateOn */, false /* soundOn */, -1.0f);
+
+        mManager.performFeedback('a', true /* withHapticFeedback */, null);
+        assertTrue("The feedback thread didn't vibrate",
+                BlockingVibratorShadow.sEntered.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        // The vibrator is now blocked on the feedback thread. If the key presses were waiting for
+        // it, these would only return once it timed out.
+        final long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            mManager.performFeedback('a', true /* withHapticFeedback */, null);
+        }
+        final long elapsedTime = System.currentTimeMillis() - startTime;
+        assertFalse(BlockingVibratorShadow.sTimedOut);
+        assertTrue("Key presses took " + elapsedTime + " ms", elapsedTime < TIMEOUT_MS / 2);
+        assertEquals(1, BlockingVibratorShadow.getCallCount());
+
+        BlockingVibratorShadow.sRelease.countDown();
+        waitFor(2, new Counter() {
+            @Override
+            public int get() {
+                return BlockingVibratorShadow.getCallCount();
+            }
+        });
+        // The feedback for the key presses made while the vibrator was blocked was replaced by the
+        // one for the latest key press.
+        assertEquals(2, BlockingVibratorShadow.getCallCount());
+        synchronized (BlockingVibratorShadow.sCallingThreads) {
+            for (final Thread thread : BlockingVibratorShadow.sCallingThreads) {
+                assertNotSame(Thread.currentThread(), thread);
+            }
+        }
+    }
+
+    @Test
+    public void testSoundVolumeOfKeyPress() throws Exception {
+        setSettings(true /* vibrateOn */, true /* soundOn */, 0.25f);
+        mManager.performFeedback('a', true /* withHapticFeedback */, null);
+        assertTrue("The feedback thread didn't vibrate",
+                BlockingVibratorShadow.sEntered.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        // Another key press while the first one is being performed, and the volume changes before
+        // the feedback of that key press is performed.
+        mManager.performFeedback('b', true /* withHapticFeedback */, null);
+        setSettings(true /* vibrateOn */, true /* soundOn */, 0.75f);
+
+        BlockingVibratorShadow.sRelease.countDown();
+        waitFor(2, new Counter() {
+            @Override
+            public int get() {
+                return RecordingAudioManagerShadow.getVolumes().size();
+            }
+        });
+        final List<Float> volumes = RecordingAudioManagerShadow.getVolumes();
+        assertEquals(2, volumes.size());
+        assertEquals(0.25f, volumes.get(0), 0.0f);
+        assertEquals(0.25f, volumes.get(1), 0.0f);
+    }
+}
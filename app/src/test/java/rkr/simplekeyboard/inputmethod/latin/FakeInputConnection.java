@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.latin;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.view.KeyEvent;
+import android.view.inputmethod.CompletionInfo;
+import android.view.inputmethod.CorrectionInfo;
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.ExtractedTextRequest;
+import android.view.inputmethod.InputConnection;
+import android.view.inputmethod.InputContentInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link InputConnection} to an editor that only holds plain text, for the unit tests. It
+ * records the calls that are made to it, and the reads from it can be made to take some time to
+ * act like the editor of a busy application.
+ */
+public class FakeInputConnection implements InputConnection {
+    private final StringBuilder mText;
+    private int mSelectionStart;
+    private int mSelectionEnd;
+    private int mComposingStart = -1;
+    private int mComposingEnd = -1;
+    private int mBatchEditNestLevel;
+    private long mReadDelayMs;
+    private int mReadCount;
+    private boolean mIsTextUnavailable;
+    private final ArrayList<String> mCalls = new ArrayList<>();
+
+    /**
+     * Create a connection to an editor with the cursor at the end of its text.
+     * @param text the text in the editor.
+     */
+    public FakeInputConnection(final String text) {
+        mText = new StringBuilder(text);
+        mSelectionStart = text.length();
+        mSelectionEnd = text.length();
+    }
+
+    public String getText() {
+        return mText.toString();
+    }
+
+    public int getSelectionStart() {
+        return mSelectionStart;
+    }
+
+    public int getSelectionEnd() {
+        return mSelectionEnd;
+    }
+
+    /**
+     * Set how long each read from the editor takes. The time is spent on the {@link SystemClock},
+     * so it doesn't actually block when the clock is faked.
+     * @param readDelayMs the time in milliseconds.
+     */
+    public void setReadDelayMs(final long readDelayMs) {
+        mReadDelayMs = readDelayMs;
+    }
+
+    /**
+     * Make the editor fail to return the text before the cursor, as it sometimes does when the
+     * framework thinks the keyboard isn't connected to it.
+     * @param isTextUnavailable whether the reads of the text before the cursor fail.
+     */
+    public void setTextUnavailable(final boolean isTextUnavailable) {
+        mIsTextUnavailable = isTextUnavailable;
+    }
+
+    /**
+     * @return the number of reads of the text from the editor.
+     */
+    public int getReadCount() {
+        return mReadCount;
+    }
+
+    /**
+     * @return the calls that changed the editor since the calls were last cleared, in order.
+     */
+    public List<String> getCalls() {
+        return new ArrayList<>(mCalls);
+    }
+
+    public void clearCalls() {
+        mCalls.clear();
+    }
+
+    private void read() {
+        mReadCount++;
+        if (mReadDelayMs > 0) {
+            SystemClock.sleep(mReadDelayMs);
+        }
+    }
+
+    private void replaceSelection(final CharSequence text) {
+        mText.replace(mSelectionStart, mSelectionEnd, text.toString());
+        mSelectionStart += text.length();
+        mSelectionEnd = mSelectionStart;
+    }
+
+    @Override
+    public CharSequence getTextBeforeCursor(final int n, final int flags) {
+        read();
+        if (mIsTextUnavailable) {
+            return null;
+        }
+        return mText.substring(Math.max(0, mSelectionStart - n), mSelectionStart);
+    }
+
+    @Override
+    public CharSequence getTextAfterCursor(final int n, final int flags) {
+        read();
+        return mText.substring(mSelectionEnd, Math.min(mText.length(), mSelectionEnd + n));
+    }
+
+    @Override
+    public CharSequence getSelectedText(final int flags) {
+        read();
+        return mSelectionStart == mSelectionEnd ? null
+                : mText.substring(mSelectionStart, mSelectionEnd);
+    }
+
+    @Override
+    public int getCursorCapsMode(final int reqModes) {
+        read();
+        return TextUtils.getCapsMode(mText, mSelectionStart, reqModes);
+    }
+
+    @Override
+    public ExtractedText getExtractedText(final ExtractedTextRequest request, final int flags) {
+        read();
+        final ExtractedText extractedText = new ExtractedText();
+        extractedText.text = mText.toString();
+        extractedText.selectionStart = mSelectionStart;
+        extractedText.selectionEnd = mSelectionEnd;
+        return extractedText;
+    }
+
+    @Override
+    public boolean deleteSurroundingText(final int beforeLength, final int afterLength) {
+        mCalls.add("deleteSurroundingText " + beforeLength + " " + afterLength);
+        final int end = Math.min(mText.length(), mSelectionEnd + afterLength);
+        mText.delete(mSelectionEnd, end);
+        final int start = Math.max(0, mSelectionStart - beforeLength);
+        mText.delete(start, mSelectionStart);
+        mSelectionEnd -= mSelectionStart - start;
+        mSelectionStart = start;
+        return true;
+    }
+
+    @Override
+    public boolean deleteSurroundingTextInCodePoints(final int beforeLength,
+            final int afterLength) {
+        mCalls.add("deleteSurroundingTextInCodePoints " + beforeLength + " " + afterLength);
+        return false;
+    }
+
+    @Override
+    public boolean setComposingText(final CharSequence text, final int newCursorPosition) {
+        mCalls.add("setComposingText " + text);
+        if (mComposingStart >= 0) {
+            mSelectionStart = mComposingStart;
+            mSelectionEnd = mComposingEnd;
+        }
+        final int start = mSelectionStart;
+        replaceSelection(text);
+        mComposingStart = start;
+        mComposingEnd = mSelectionEnd;
+        return true;
+    }
+
+    @Override
+    public boolean setComposingRegion(final int start, final int end) {
+        mCalls.add("setComposingRegion " + start + " " + end);
+        mComposingStart = start;
+        mComposingEnd = end;
+        return true;
+    }
+
+    @Override
+    public boolean finishComposingText() {
+        mCalls.add("finishComposingText");
+        mComposingStart = -1;
+        mComposingEnd = -1;
+        return true;
+    }
+
+    @Override
+    public boolean commitText(final CharSequence text, final int newCursorPosition) {
+        mCalls.add("commitText " + text);
+        replaceSelection(text);
+        return true;
+    }
+
+    @Override
+    public boolean commitCompletion(final CompletionInfo text) {
+        return false;
+    }
+
+    @Override
+    public boolean commitCorrection(final CorrectionInfo correctionInfo) {
+        return false;
+    }
+
+    @Override
+    public boolean setSelection(final int start, final int end) {
+        mCalls.add("setSelection " + start + " " + end);
+        mSelectionStart = start;
+        mSelectionEnd = end;
+        return true;
+    }
+
+    @Override
+    public boolean performEditorAction(final int editorAction) {
+        mCalls.add("performEditorAction " + editorAction);
+        return true;
+    }
+
+    @Override
+    public boolean performContextMenuAction(final int id) {
+        return false;
+    }
+
+    @Override
+    public boolean beginBatchEdit() {
+        mCalls.add("beginBatchEdit");
+        mBatchEditNestLevel++;
+        return true;
+    }
+
+    @Override
+    public boolean endBatchEdit() {
+        mCalls.add("endBatchEdit");
+        mBatchEditNestLevel--;
+        return mBatchEditNestLevel > 0;
+    }
+
+    @Override
+    public boolean sendKeyEvent(final KeyEvent event) {
+        final boolean isDown = event.getAction() == KeyEvent.ACTION_DOWN;
+        // The key code is recorded as a number, KeyEvent.keyCodeToString() depends on the native
+        // code that is available to the test.
+        mCalls.add("sendKeyEvent " + (isDown ? "down " : "up ") + event.getKeyCode());
+        if (!isDown) {
+            return true;
+        }
+        switch (event.getKeyCode()) {
+        case KeyEvent.KEYCODE_DEL:
+            if (mSelectionStart == mSelectionEnd && mSelectionStart > 0) {
+                mSelectionStart--;
+            }
+            replaceSelection("");
+            break;
+        case KeyEvent.KEYCODE_ENTER:
+            replaceSelection("\n");
+            break;
+        default:
+            if (event.getUnicodeChar() != 0) {
+                replaceSelection(String.valueOf((char)event.getUnicodeChar()));
+            }
+            break;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean clearMetaKeyStates(final int states) {
+        return false;
+    }
+
+    @Override
+    public boolean reportFullscreenMode(final boolean enabled) {
+        return false;
+    }
+
+    @Override
+    public boolean performPrivateCommand(final String action, final Bundle data) {
+        return false;
+    }
+
+    @Override
+    public boolean requestCursorUpdates(final int cursorUpdateMode) {
+        return false;
+    }
+
+    @Override
+    public Handler getHandler() {
+        return null;
+    }
+
+    @Override
+    public void closeConnection() {}
+
+    @Override
+    public boolean commitContent(final InputContentInfo inputContentInfo, final int flags,
+            final Bundle opts) {
+        return false;
+    }
+}
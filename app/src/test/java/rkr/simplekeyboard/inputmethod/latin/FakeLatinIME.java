@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.latin;
+
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
+
+/**
+ * A {@link LatinIME} that isn't created by the system, but is connected to a given editor, so
+ * that the input logic can be run against a {@link FakeInputConnection} in the unit tests.
+ */
+public class FakeLatinIME extends LatinIME {
+    private final InputConnection mInputConnection;
+    private final EditorInfo mEditorInfo;
+
+    public FakeLatinIME(final InputConnection inputConnection, final EditorInfo editorInfo) {
+        mInputConnection = inputConnection;
+        mEditorInfo = editorInfo;
+    }
+
+    @Override
+    public InputConnection getCurrentInputConnection() {
+        return mInputConnection;
+    }
+
+    @Override
+    public EditorInfo getCurrentInputEditorInfo() {
+        return mEditorInfo;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.latin;
+
+import android.content.SharedPreferences;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.text.InputType;
+import android.text.TextUtils;
+import android.view.inputmethod.EditorInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import rkr.simplekeyboard.inputmethod.latin.define.DebugFlags;
+import rkr.simplekeyboard.inputmethod.latin.settings.SpacingAndPunctuations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Runs {@link RichInputConnection} against a {@link FakeInputConnection} that takes some time to
+ * read from, and checks when it reloads its cache of the text from the editor and in which order
+ * the text it holds back for the next frame reaches the editor.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RichInputConnectionTest {
+    private static final String TEXT = "The editor of a busy application takes its time. ";
+    private static final long SLOW_READ_DELAY_MS = 150;
+
+    @Before
+    public void setUp() {
+        RichInputMethodManager.init(RuntimeEnvironment.getApplication());
+        DebugFlags.init(PreferenceManager.getDefaultSharedPreferences(
+                RuntimeEnvironment.getApplication()));
+    }
+
+    private static void setCoalesceCommitsEnabled(final boolean enabled) {
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(
+                RuntimeEnvironment.getApplication());
+        prefs.edit().putBoolean(DebugFlags.PREF_COALESCE_COMMITS, enabled).apply();
+        DebugFlags.init(prefs);
+    }
+
+    private static RichInputConnection startCoalescingInput(final FakeInputConnection connection) {
+        setCoalesceCommitsEnabled(true);
+        final RichInputConnection richInputConnection = startInput(connection);
+        connection.clearCalls();
+        // Typed outside of a batch edit, so the editor doesn't get them yet.
+        richInputConnection.commitText("a", 1);
+        richInputConnection.commitText("b", 1);
+        assertEquals(Arrays.asList(), connection.getCalls());
+        return richInputConnection;
+    }
+
+    private static RichInputConnection startInput(final FakeInputConnection connection) {
+        final RichInputConnection richInputConnection =
+                new RichInputConnection(new FakeLatinIME(connection, new EditorInfo()));
+        richInputConnection.onStartInput();
+        assertTrue(moveCursor(richInputConnection, connection));
+        return richInputConnection;
+    }
+
+    private static boolean moveCursor(final RichInputConnection richInputConnection,
+            final FakeInputConnection connection) {
+        return richInputConnection.resetCachesUponCursorMoveAndReturnSuccess(
+                connection.getSelectionStart(), connection.getSelectionEnd());
+    }
+
+    private static void assertTextBeforeCursor(final RichInputConnection richInputConnection,
+            final FakeInputConnection connection) {
+        final String text = connection.getText().substring(0, connection.getSelectionStart());
+        final String textBeforeCursor = text.substring(Math.max(0, text.length() - 20));
+        assertEquals(textBeforeCursor,
+                richInputConnection.getTextBeforeCursor(textBeforeCursor.length(), 0).toString());
+    }
+
+    @Test
+    public void testExpectedCursorMovesReloadFromFastEditor() {
+        final FakeInputConnection connection = new FakeInputConnection(TEXT);
+        final RichInputConnection richInputConnection = startInput(connection);
+        for (int i = 0; i < 5; i++) {
+            final int readCount = connection.getReadCount();
+            richInputConnection.deleteTextBeforeCursor(1);
+            assertTrue(moveCursor(richInputConnection, connection));
+            assertEquals(readCount + 1, connection.getReadCount());
+        }
+        assertTextBeforeCursor(richInputConnection, connection);
+    }
+
+    @Test
+    public void testExpectedCursorMovesTrustTrackedTextOfSlowEditor() {
+        final FakeInputConnection connection = new FakeInputConnection(TEXT);
+        connection.setReadDelayMs(SLOW_READ_DELAY_MS);
+        final RichInputConnection richInputConnection = startInput(connection);
+        final int readCount = connection.getReadCount();
+        for (int i = 0; i < RichInputConnection.DEGRADED_MODE_RELOAD_INTERVAL; i++) {
+            richInputConnection.deleteTextBeforeCursor(1);
+            assertTrue(moveCursor(richInputConnection, connection));
+            assertEquals("Cursor move " + i, readCount, connection.getReadCount());
+        }
+        // The tracked text must not have drifted from the editor.
+        assertTextBeforeCursor(richInputConnection, connection);
+        assertEquals(readCount, connection.getReadCount());
+
+        // The cache is reloaded anyway from time to time.
+        richInputConnection.deleteTextBeforeCursor(1);
+        assertTrue(moveCursor(richInputConnection, connection));
+        assertEquals(readCount + 1, connection.getReadCount());
+        richInputConnection.deleteTextBeforeCursor(1);
+        assertTrue(moveCursor(richInputConnection, connection));
+        assertEquals(readCount + 1, connection.getReadCount());
+        assertTextBeforeCursor(richInputConnection, connection);
+    }
+
+    @Test
+    public void testUnexpectedCursorMoveReloadsFromSlowEditor() {
+        final FakeInputConnection connection = new FakeInputConnection(TEXT);
+        connection.setReadDelayMs(SLOW_READ_DELAY_MS);
+        final RichInputConnection richInputConnection = startInput(connection);
+        final int readCount = connection.getReadCount();
+        // The user moved the cursor in the editor.
+        connection.setSelection(10, 10);
+        assertTrue(moveCursor(richInputConnection, connection));
+        assertEquals(readCount + 1, connection.getReadCount());
+        assertTextBeforeCursor(richInputConnection, connection);
+    }
+
+    @Test
+    public void testExpectedCursorMovesReloadAgainOnceEditorSpeedsUp() {
+        final FakeInputConnection connection = new FakeInputConnection(TEXT);
+        connection.setReadDelayMs(SLOW_READ_DELAY_MS);
+        final RichInputConnection richInputConnection = startInput(connection);
+        connection.setReadDelayMs(0);
+        // Let the average latency go down, with reloads from cursor moves made by the user.
+        for (int i = 0; i < 20; i++) {
+            connection.setSelection(i, i);
+            assertTrue(moveCursor(richInputConnection, connection));
+        }
+        final int readCount = connection.getReadCount();
+        richInputConnection.deleteTextBeforeCursor(1);
+        assertTrue(moveCursor(richInputConnection, connection));
+        assertEquals(readCount + 1, connection.getReadCount());
+    }
+
+    @Test
+    public void testNewEditorIsNotDegraded() {
+        final FakeInputConnection connection = new FakeInputConnection(TEXT);
+        connection.setReadDelayMs(SLOW_READ_DELAY_MS);
+        final RichInputConnection richInputConnection = startInput(connection);
+        connection.setReadDelayMs(0);
+        richInputConnection.onStartInput();
+        assertTrue(moveCursor(richInputConnection, connection));
+        final int readCount = connection.getReadCount();
+        richInputConnection.deleteTextBeforeCursor(1);
+        assertTrue(moveCursor(richInputConnection, connection));
+        assertEquals(readCount + 1, connection.getReadCount());
+    }
+
+    @Test
+    public void testCapsModeOfSlowEditorAfterFailedReload() {
+        final FakeInputConnection connection = new FakeInputConnection(TEXT);
+        connection.setReadDelayMs(SLOW_READ_DELAY_MS);
+        final RichInputConnection richInputConnection = startInput(connection);
+        final SpacingAndPunctuations spacingAndPunctuations = new SpacingAndPunctuations(
+                RuntimeEnvironment.getApplication().getResources());
+        connection.setTextUnavailable(true);
+        connection.setSelection(10, 10);
+        assertFalse(moveCursor(richInputConnection, connection));
+        final int readCount = connection.getReadCount();
+        // Neither the text nor the cursor position is known, as at the start of the field.
+        assertEquals(TextUtils.CAP_MODE_SENTENCES, richInputConnection.getCursorCapsMode(
+                InputType.TYPE_TEXT_FLAG_CAP_SENTENCES, spacingAndPunctuations));
+        assertEquals(readCount, connection.getReadCount());
+
+        connection.setTextUnavailable(false);
+        connection.setSelection(TEXT.length(), TEXT.length());
+        assertTrue(moveCursor(richInputConnection, connection));
+        assertEquals(TextUtils.CAP_MODE_SENTENCES, richInputConnection.getCursorCapsMode(
+                InputType.TYPE_TEXT_FLAG_CAP_SENTENCES, spacingAndPunctuations));
+    }
+
+    @Test
+    public void testCoalescedCommitIsSentOnNextFrame() {
+        final FakeInputConnection connection = new FakeInputConnection(TEXT);
+        final RichInputConnection richInputConnection = startCoalescingInput(connection);
+        richInputConnection.commitText("c", 1);
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(100));
+        assertEquals(Arrays.asList("commitText abc"), connection.getCalls());
+        assertEquals(TEXT + "abc", connection.getText());
+    }
+
+    @Test
+    public void testCoalescedCommitIsSentBeforeDeletion() {
+        final FakeInputConnection connection = new FakeInputConnection(TEXT);
+        final RichInputConnection richInputConnection = startCoalescingInput(connection);
+        richInputConnection.deleteTextBeforeCursor(1);
+        assertEquals(Arrays.asList("commitText ab", "deleteSurroundingText 1 0"),
+                connection.getCalls());
+        assertEquals(TEXT + "a", connection.getText());
+    }
+
+    @Test
+    public void testCoalescedCommitIsSentBeforeNewLine() {
+        final FakeInputConnection connection = new FakeInputConnection(TEXT);
+        final RichInputConnection richInputConnection = startCoalescingInput(connection);
+        richInputConnection.commitText("\n", 1);
+        assertEquals(Arrays.asList("commitText ab", "commitText \n"), connection.getCalls());
+        assertEquals(TEXT + "ab\n", connection.getText());
+    }
+
+    @Test
+    public void testCoalescedCommitIsSentBeforeSelectionChange() {
+        final FakeInputConnection connection = new FakeInputConnection(TEXT);
+        final RichInputConnection richInputConnection = startCoalescingInput(connection);
+        richInputConnection.setSelection(0, 0);
+        assertEquals(Arrays.asList("commitText ab", "setSelection 0 0"), connection.getCalls());
+        assertEquals(TEXT + "ab", connection.getText());
+    }
+
+    @Test
+    public void testCoalescedCommitIsSentBeforeBatchEdit() {
+        final FakeInputConnection connection = new FakeInputConnection(TEXT);
+        final RichInputConnection richInputConnection = startCoalescingInput(connection);
+        richInputConnection.beginBatchEdit();
+        // Text committed within a batch edit is sent right away.
+        richInputConnection.commitText("c", 1);
+        richInputConnection.endBatchEdit();
+        assertEquals(Arrays.asList("commitText ab", "beginBatchEdit", "commitText c",
+                "endBatchEdit"), connection.getCalls());
+        assertEquals(TEXT + "abc", connection.getText());
+    }
+
+    @Test
+    public void testCursorMoveReportedBeforeCoalescedCommitIsExpected() {
+        final FakeInputConnection connection = new FakeInputConnection(TEXT);
+        connection.setReadDelayMs(SLOW_READ_DELAY_MS);
+        final RichInputConnection richInputConnection = startCoalescingInput(connection);
+        final int readCount = connection.getReadCount();
+        // The editor reports the cursor where it was before the pending text was sent, so the
+        // cursor is expected to be after the pending text once it was sent.
+        final int selectionStart = connection.getSelectionStart();
+        assertTrue(richInputConnection.resetCachesUponCursorMoveAndReturnSuccess(
+                selectionStart, selectionStart));
+        assertEquals(Arrays.asList("commitText ab"), connection.getCalls());
+        assertEquals(selectionStart + 2, richInputConnection.getExpectedSelectionStart());
+        assertEquals(selectionStart + 2, richInputConnection.getExpectedSelectionEnd());
+        // The slow editor isn't asked for the text again for an expected cursor move.
+        assertEquals(readCount, connection.getReadCount());
+        assertTextBeforeCursor(richInputConnection, connection);
+    }
+
+    @Test
+    public void testCommitsAreSentRightAwayWhenNotCoalescing() {
+        setCoalesceCommitsEnabled(false);
+        final FakeInputConnection connection = new FakeInputConnection(TEXT);
+        final RichInputConnection richInputConnection = startInput(connection);
+        connection.clearCalls();
+        richInputConnection.commitText("a", 1);
+        richInputConnection.commitText("b", 1);
+        assertEquals(Arrays.asList("commitText a", "commitText b"), connection.getCalls());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.latin.inputlogic;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+import android.text.InputType;
+import android.view.KeyEvent;
+import android.view.inputmethod.EditorInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.List;
+
+import rkr.simplekeyboard.inputmethod.event.Event;
+import rkr.simplekeyboard.inputmethod.latin.FakeInputConnection;
+import rkr.simplekeyboard.inputmethod.latin.FakeLatinIME;
+import rkr.simplekeyboard.inputmethod.latin.InputAttributes;
+import rkr.simplekeyboard.inputmethod.latin.common.Constants;
+import rkr.simplekeyboard.inputmethod.latin.settings.SettingsValues;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays holding the delete key through {@link InputLogic} against a
+ * {@link FakeInputConnection}, and checks what each repeat deleted and how many calls to the
+ * editor it took.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DeleteKeyRepeatTest {
+    // Matches InputLogic.
+    private static final int REPEAT_COUNT_FOR_WORD_DELETION = 20;
+    private static final int REPEAT_COUNT_FOR_SENTENCE_DELETION = 50;
+
+    private static final String SENTENCE = "This sentence has exactly eight words in it. ";
+    private static final int SENTENCE_COUNT = 12;
+
+    private static final List<String> DELETE_KEY_EVENT_CALLS = Arrays.asList(
+            "sendKeyEvent down " + KeyEvent.KEYCODE_DEL, "sendKeyEvent up " + KeyEvent.KEYCODE_DEL);
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+    }
+
+    private static String getText() {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < SENTENCE_COUNT; i++) {
+            text.append(SENTENCE);
+        }
+        return text.toString();
+    }
+
+    private InputLogic startInput(final FakeInputConnection connection,
+            final EditorInfo editorInfo) {
+        final InputLogic inputLogic = new InputLogic(new FakeLatinIME(connection, editorInfo));
+        inputLogic.startInput();
+        inputLogic.onUpdateSelection(connection.getSelectionStart(),
+                connection.getSelectionEnd());
+        connection.clearCalls();
+        return inputLogic;
+    }
+
+    private SettingsValues getSettingsValues(final EditorInfo editorInfo) {
+        return new SettingsValues(PreferenceManager.getDefaultSharedPreferences(mContext),
+                mContext.getResources(), new InputAttributes(editorInfo, false));
+    }
+
+    private static EditorInfo createEditorInfo(final int inputType) {
+        final EditorInfo editorInfo = new EditorInfo();
+        editorInfo.inputType = inputType;
+        editorInfo.packageName = "com.example";
+        return editorInfo;
+    }
+
+    private static Event createDeleteEvent(final boolean isKeyRepeat) {
+        return Event.createSoftwareKeypressEvent(Event.NOT_A_CODE_POINT, Constants.CODE_DELETE,
+                Constants.NOT_A_COORDINATE, Constants.NOT_A_COORDINATE, isKeyRepeat);
+    }
+
+    @Test
+    public void testAcceleratedDeletion() {
+        final FakeInputConnection connection = new FakeInputConnection(getText());
+        final EditorInfo editorInfo = createEditorInfo(InputType.TYPE_CLASS_TEXT);
+        final InputLogic inputLogic = startInput(connection, editorInfo);
+        final SettingsValues settingsValues = getSettingsValues(editorInfo);
+
+        int keyEventCount = 0;
+        int deleteSurroundingTextCount = 0;
+        // The first event is the key press, the following ones are its repeats.
+        for (int repeatCount = 0; repeatCount < REPEAT_COUNT_FOR_SENTENCE_DELETION + 3;
+                repeatCount++) {
+            final String textBefore = connection.getText();
+            assertFalse("Ran out of text at repeat " + repeatCount, textBefore.isEmpty());
+            inputLogic.onCodeInput(settingsValues, createDeleteEvent(repeatCount > 0));
+            final String textAfter = connection.getText();
+            assertTrue(textBefore.startsWith(textAfter));
+            final String deletedText = textBefore.substring(textAfter.length());
+            final List<String> calls = connection.getCalls();
+            connection.clearCalls();
+
+            if (repeatCount < REPEAT_COUNT_FOR_WORD_DELETION) {
+                assertEquals("Repeat " + repeatCount, DELETE_KEY_EVENT_CALLS, calls);
+                assertEquals("Repeat " + repeatCount, 1, deletedText.length());
+                keyEventCount++;
+                continue;
+            }
+            // Each accelerated repeat is a single call to the editor in a batch edit.
+            assertEquals("Repeat " + repeatCount, Arrays.asList("beginBatchEdit",
+                    "deleteSurroundingText " + deletedText.length() + " 0", "endBatchEdit"),
+                    calls);
+            deleteSurroundingTextCount++;
+            if (repeatCount < REPEAT_COUNT_FOR_SENTENCE_DELETION) {
+                // A word along with the space or punctuation after it.
+                assertTrue("Repeat " + repeatCount + " deleted \"" + deletedText + "\"",
+                        deletedText.matches("[A-Za-z]+[ .]*"));
+                assertTrue("Repeat " + repeatCount + " left \"" + textAfter + "\"",
+                        textAfter.isEmpty() || textAfter.endsWith(" "));
+            } else {
+                // The rest of a sentence, from the space after the previous one.
+                assertTrue("Repeat " + repeatCount + " deleted \"" + deletedText + "\"",
+                        deletedText.matches(" ?This[a-z ]*\\.? ?"));
+                assertTrue("Repeat " + repeatCount + " left \"" + textAfter + "\"",
+                        textAfter.isEmpty() || textAfter.endsWith("."));
+            }
+        }
+        assertEquals(REPEAT_COUNT_FOR_WORD_DELETION, keyEventCount);
+        assertEquals(REPEAT_COUNT_FOR_SENTENCE_DELETION - REPEAT_COUNT_FOR_WORD_DELETION + 3,
+                deleteSurroundingTextCount);
+        // The text that the input logic knows about must not have drifted from the editor.
+        final String text = connection.getText();
+        assertEquals(text.length(), inputLogic.mConnection.getExpectedSelectionStart());
+        assertEquals(text, inputLogic.mConnection.getTextBeforeCursor(text.length(), 0)
+                .toString());
+    }
+
+    @Test
+    public void testNewPressRestartsAcceleration() {
+        final FakeInputConnection connection = new FakeInputConnection(getText());
+        final EditorInfo editorInfo = createEditorInfo(InputType.TYPE_CLASS_TEXT);
+        final InputLogic inputLogic = startInput(connection, editorInfo);
+        final SettingsValues settingsValues = getSettingsValues(editorInfo);
+
+        for (int repeatCount = 0; repeatCount <= REPEAT_COUNT_FOR_WORD_DELETION; repeatCount++) {
+            inputLogic.onCodeInput(settingsValues, createDeleteEvent(repeatCount > 0));
+        }
+        connection.clearCalls();
+        final int length = connection.getText().length();
+        inputLogic.onCodeInput(settingsValues, createDeleteEvent(false /* isKeyRepeat */));
+        assertEquals(DELETE_KEY_EVENT_CALLS, connection.getCalls());
+        assertEquals(length - 1, connection.getText().length());
+    }
+
+    @Test
+    public void testKeyEventsForNullInputType() {
+        final FakeInputConnection connection = new FakeInputConnection(getText());
+        final EditorInfo editorInfo = createEditorInfo(InputType.TYPE_NULL);
+        final InputLogic inputLogic = startInput(connection, editorInfo);
+        final SettingsValues settingsValues = getSettingsValues(editorInfo);
+
+        for (int repeatCount = 0; repeatCount < REPEAT_COUNT_FOR_SENTENCE_DELETION + 3;
+                repeatCount++) {
+            final int length = connection.getText().length();
+            inputLogic.onCodeInput(settingsValues, createDeleteEvent(repeatCount > 0));
+            assertEquals("Repeat " + repeatCount, DELETE_KEY_EVENT_CALLS, connection.getCalls());
+            assertEquals("Repeat " + repeatCount, length - 1, connection.getText().length());
+            connection.clearCalls();
+        }
+    }
+}
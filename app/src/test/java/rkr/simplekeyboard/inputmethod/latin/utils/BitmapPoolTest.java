@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.latin.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class BitmapPoolTest {
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 3;
+
+    @After
+    public void tearDown() {
+        BitmapPool.clear();
+    }
+
+    @Test
+    public void testObtainedBitmapIsCleared() {
+        final Bitmap bitmap = BitmapPool.obtain(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.RED);
+        BitmapPool.release(bitmap, null);
+
+        final Bitmap reused = BitmapPool.obtain(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        assertSame(bitmap, reused);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(Color.TRANSPARENT, reused.getPixel(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testSnapshotKeepsItsContent() {
+        final Object content = new Object();
+        final Bitmap bitmap = BitmapPool.obtain(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.RED);
+        BitmapPool.release(bitmap, content);
+
+        final Bitmap snapshot = BitmapPool.obtainSnapshot(WIDTH, HEIGHT,
+                Bitmap.Config.ARGB_8888, content);
+        assertSame(bitmap, snapshot);
+        assertEquals(Color.RED, snapshot.getPixel(0, 0));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.headless;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The declaration of an attribute in the values: the formats that its values can have and the
+ * names of its enum or flag values.
+ */
+public final class AttributeFormat {
+    public static final int FORMAT_REFERENCE = 1 << 0;
+    public static final int FORMAT_STRING = 1 << 1;
+    public static final int FORMAT_INTEGER = 1 << 2;
+    public static final int FORMAT_BOOLEAN = 1 << 3;
+    public static final int FORMAT_COLOR = 1 << 4;
+    public static final int FORMAT_FLOAT = 1 << 5;
+    public static final int FORMAT_DIMENSION = 1 << 6;
+    public static final int FORMAT_FRACTION = 1 << 7;
+    public static final int FORMAT_ANY = 0xffff;
+    public static final int FORMAT_ENUM = 1 << 16;
+    public static final int FORMAT_FLAGS = 1 << 17;
+
+    private static final HashMap<String, Integer> FORMAT_NAMES = new HashMap<>();
+
+    static {
+        FORMAT_NAMES.put("reference", FORMAT_REFERENCE);
+        FORMAT_NAMES.put("string", FORMAT_STRING);
+        FORMAT_NAMES.put("integer", FORMAT_INTEGER);
+        FORMAT_NAMES.put("boolean", FORMAT_BOOLEAN);
+        FORMAT_NAMES.put("color", FORMAT_COLOR);
+        FORMAT_NAMES.put("float", FORMAT_FLOAT);
+        FORMAT_NAMES.put("dimension", FORMAT_DIMENSION);
+        FORMAT_NAMES.put("fraction", FORMAT_FRACTION);
+        FORMAT_NAMES.put("enum", FORMAT_ENUM);
+        FORMAT_NAMES.put("flags", FORMAT_FLAGS);
+    }
+
+    // The format of an attribute that isn't declared, which can have any value.
+    static final AttributeFormat UNDECLARED =
+            new AttributeFormat("", FORMAT_ANY, new HashMap<String, Integer>());
+
+    public final String mName;
+    public final int mFormats;
+    // The values of the enum or flag names.
+    public final Map<String, Integer> mSymbols;
+
+    AttributeFormat(final String name, final int formats, final Map<String, Integer> symbols) {
+        mName = name;
+        mFormats = formats;
+        mSymbols = symbols;
+    }
+
+    /**
+     * @param formats the formats separated by "|", like "fraction|dimension".
+     * @return the bits of the formats.
+     */
+    static int parseFormats(final String formats) {
+        int bits = 0;
+        for (final String format : formats.split("\\|")) {
+            if (format.isEmpty()) {
+                continue;
+            }
+            final Integer bit = FORMAT_NAMES.get(format.trim());
+            if (bit == null) {
+                throw new IllegalArgumentException("Unknown attribute format " + format);
+            }
+            bits |= bit;
+        }
+        return bits;
+    }
+
+    public boolean allows(final int format) {
+        return (mFormats & format) != 0;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.headless;
+
+/**
+ * The qualifiers of a resource directory, like "values-sw600dp-land", or of the device that the
+ * resources are selected for.
+ *
+ * Only the qualifiers that the resources of the app use are supported: the locale, the smallest
+ * width, the orientation, the night mode and the platform version. The densities are accepted but
+ * ignored, since the drawables aren't decoded.
+ */
+public final class ResourceQualifiers {
+    private static final int UNSPECIFIED = 0;
+    private static final int PORTRAIT = 1;
+    private static final int LANDSCAPE = 2;
+    private static final int NOT_NIGHT = 1;
+    private static final int NIGHT = 2;
+
+    private final String mLanguage;
+    private final String mScript;
+    private final String mRegion;
+    private final int mSmallestWidthDp;
+    private final int mOrientation;
+    private final int mNightMode;
+    private final int mSdkVersion;
+
+    private ResourceQualifiers(final String language, final String script, final String region,
+            final int smallestWidthDp, final int orientation, final int nightMode,
+            final int sdkVersion) {
+        mLanguage = language;
+        mScript = script;
+        mRegion = region;
+        mSmallestWidthDp = smallestWidthDp;
+        mOrientation = orientation;
+        mNightMode = nightMode;
+        mSdkVersion = sdkVersion;
+    }
+
+    /**
+     * @param qualifiers the qualifiers separated by dashes, like "en-rUS-sw360dp-port-v34", in the
+     *        format of the resource directories. An empty string has no qualifiers.
+     * @return the qualifiers.
+     */
+    public static ResourceQualifiers parse(final String qualifiers) {
+        String language = null;
+        String script = null;
+        String region = null;
+        int smallestWidthDp = UNSPECIFIED;
+        int orientation = UNSPECIFIED;
+        int nightMode = UNSPECIFIED;
+        int sdkVersion = UNSPECIFIED;
+        for (final String qualifier : qualifiers.isEmpty() ? new String[0]
+                : qualifiers.split("-")) {
+            if (qualifier.matches("[a-z]{2,3}")) {
+                language = qualifier;
+            } else if (qualifier.matches("r[A-Z]{2}") && language != null) {
+                region = qualifier.substring(1);
+            } else if (qualifier.startsWith("b+")) {
+                final String[] subtags = qualifier.substring(2).split("\\+");
+                language = subtags[0];
+                for (int i = 1; i < subtags.length; i++) {
+                    if (subtags[i].length() == 4) {
+                        script = subtags[i];
+                    } else {
+                        region = subtags[i].toUpperCase();
+                    }
+                }
+            } else if (qualifier.matches("sw\\d+dp")) {
+                smallestWidthDp = Integer.parseInt(
+                        qualifier.substring(2, qualifier.length() - 2));
+            } else if (qualifier.equals("port")) {
+                orientation = PORTRAIT;
+            } else if (qualifier.equals("land")) {
+                orientation = LANDSCAPE;
+            } else if (qualifier.equals("notnight")) {
+                nightMode = NOT_NIGHT;
+            } else if (qualifier.equals("night")) {
+                nightMode = NIGHT;
+            } else if (qualifier.matches("v\\d+")) {
+                sdkVersion = Integer.parseInt(qualifier.substring(1));
+            } else if (!qualifier.matches("(l|m|h|x{0,3}h|any|no)dpi")) {
+                throw new IllegalArgumentException("Unsupported qualifier " + qualifier + " in "
+                        + qualifiers);
+            }
+        }
+        return new ResourceQualifiers(language, script, region, smallestWidthDp, orientation,
+                nightMode, sdkVersion);
+    }
+
+    /**
+     * @param device the qualifiers of the device.
+     * @return whether the resources with these qualifiers can be used on the device.
+     */
+    public boolean matches(final ResourceQualifiers device) {
+        if (mLanguage != null && !mLanguage.equals(device.mLanguage)) {
+            return false;
+        }
+        if (mScript != null && !mScript.equals(device.mScript)) {
+            return false;
+        }
+        if (mRegion != null && !mRegion.equals(device.mRegion)) {
+            return false;
+        }
+        if (mSmallestWidthDp > device.mSmallestWidthDp) {
+            return false;
+        }
+        if (mOrientation != UNSPECIFIED && mOrientation != device.mOrientation) {
+            return false;
+        }
+        // A device that doesn't specify the night mode isn't in night mode.
+        if (mNightMode != UNSPECIFIED
+                && mNightMode != Math.max(device.mNightMode, NOT_NIGHT)) {
+            return false;
+        }
+        return mSdkVersion <= device.mSdkVersion;
+    }
+
+    /**
+     * Compare the qualifiers of two directories that both match the device, in the order of
+     * precedence of the qualifiers, like the resources of a device are selected.
+     * @param other the qualifiers of the other directory.
+     * @return whether the resources with these qualifiers are selected over the other ones.
+     */
+    public boolean isBetterThan(final ResourceQualifiers other) {
+        if (getLocaleScore() != other.getLocaleScore()) {
+            return getLocaleScore() > other.getLocaleScore();
+        }
+        if (mSmallestWidthDp != other.mSmallestWidthDp) {
+            return mSmallestWidthDp > other.mSmallestWidthDp;
+        }
+        if (mOrientation != other.mOrientation) {
+            return mOrientation != UNSPECIFIED;
+        }
+        if (mNightMode != other.mNightMode) {
+            return mNightMode != UNSPECIFIED;
+        }
+        return mSdkVersion > other.mSdkVersion;
+    }
+
+    private int getLocaleScore() {
+        return ((mLanguage == null) ? 0 : 1) + ((mScript == null) ? 0 : 1)
+                + ((mRegion == null) ? 0 : 1);
+    }
+}
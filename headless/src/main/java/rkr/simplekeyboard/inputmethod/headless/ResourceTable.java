@@ -0,0 +1,564 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.headless;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The resources of the app as they are selected for a device, read from the source resource
+ * directory with a standard pull parser instead of from the resources compiled into the app.
+ *
+ * The layouts in the xml directories are parsed as they are opened. The values are loaded at
+ * once, and encoded into {@link ResourceValue}s like the resource compiler does, with the formats
+ * of the attributes that they are given to. References are resolved to the values they refer
+ * to, except references to the resources of the framework, which the caller has to resolve.
+ */
+public final class ResourceTable {
+    public static final String NAMESPACE_ANDROID = "http://schemas.android.com/apk/res/android";
+    public static final String NAMESPACE_RES_AUTO = "http://schemas.android.com/apk/res-auto";
+    private static final String NAMESPACE_APP_PREFIX = "http://schemas.android.com/apk/res/";
+
+    private static final String TYPE_VALUES = "values";
+    private static final String TYPE_STYLE = "style";
+    private static final String TYPE_XML = "xml";
+    private static final String ATTRIBUTE_STYLE = "style";
+    private static final String ANDROID_PREFIX = "android:";
+    // The depth of the chains of references, like a theme attribute that refers to a dimension
+    // that refers to another dimension, above which a chain is considered to be a loop.
+    private static final int MAX_REFERENCE_DEPTH = 20;
+
+    private static final class Value {
+        final String mText;
+        final AttributeFormat mFormat;
+        final ResourceQualifiers mQualifiers;
+        // The value parsed from the text, which is parsed when it is first read.
+        ResourceValue mValue;
+
+        Value(final String text, final AttributeFormat format,
+                final ResourceQualifiers qualifiers) {
+            mText = text;
+            mFormat = format;
+            mQualifiers = qualifiers;
+        }
+    }
+
+    private static final class Style {
+        final String mParent;
+        // The text of the items by the names of their attributes.
+        final LinkedHashMap<String, String> mItems;
+        final ResourceQualifiers mQualifiers;
+        // The values parsed from the items, which are parsed when they are first read.
+        final HashMap<String, ResourceValue> mValues = new HashMap<>();
+
+        Style(final String parent, final LinkedHashMap<String, String> items,
+                final ResourceQualifiers qualifiers) {
+            mParent = parent;
+            mItems = items;
+            mQualifiers = qualifiers;
+        }
+    }
+
+    private static final class ResourceFile {
+        final File mFile;
+        final String mPath;
+        final ResourceQualifiers mQualifiers;
+
+        ResourceFile(final File file, final String path, final ResourceQualifiers qualifiers) {
+            mFile = file;
+            mPath = path;
+            mQualifiers = qualifiers;
+        }
+    }
+
+    private final ResourceQualifiers mDevice;
+    // The resources by their type and name, like "dimen/config_key_hysteresis_distance".
+    private final HashMap<String, Value> mValues = new HashMap<>();
+    private final HashMap<String, Style> mStyles = new HashMap<>();
+    private final HashMap<String, ResourceFile> mFiles = new HashMap<>();
+    private final HashMap<String, AttributeFormat> mAttributes = new HashMap<>();
+
+    private ResourceTable(final ResourceQualifiers device) {
+        mDevice = device;
+    }
+
+    /**
+     * Load the resources of a resource directory.
+     * @param resDir the resource directory, like app/src/main/res.
+     * @param device the qualifiers of the device that the resources are selected for.
+     * @return the resources.
+     * @throws IOException if a file can't be read.
+     * @throws XmlPullParserException if a file of the values isn't valid.
+     */
+    public static ResourceTable load(final File resDir, final ResourceQualifiers device)
+            throws IOException, XmlPullParserException {
+        final String[] dirNames = resDir.list();
+        if (dirNames == null) {
+            throw new IOException("Not a resource directory: " + resDir);
+        }
+        Arrays.sort(dirNames);
+        final ResourceTable table = new ResourceTable(device);
+        for (final String dirName : dirNames) {
+            final int dash = dirName.indexOf('-');
+            final String type = (dash < 0) ? dirName : dirName.substring(0, dash);
+            final ResourceQualifiers qualifiers =
+                    ResourceQualifiers.parse((dash < 0) ? "" : dirName.substring(dash + 1));
+            if (!qualifiers.matches(device)) {
+                continue;
+            }
+            final File dir = new File(resDir, dirName);
+            final String[] fileNames = dir.list();
+            if (fileNames == null) {
+                continue;
+            }
+            Arrays.sort(fileNames);
+            for (final String fileName : fileNames) {
+                final File file = new File(dir, fileName);
+                if (type.equals(TYPE_VALUES)) {
+                    table.loadValues(file, qualifiers);
+                } else {
+                    final int dot = fileName.indexOf('.');
+                    final String name = (dot < 0) ? fileName : fileName.substring(0, dot);
+                    final String key = getKey(type, name);
+                    final ResourceFile existing = table.mFiles.get(key);
+                    if (existing == null || qualifiers.isBetterThan(existing.mQualifiers)) {
+                        table.mFiles.put(key, new ResourceFile(file,
+                                "res/" + dirName + "/" + fileName, qualifiers));
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    private static String getKey(final String type, final String name) {
+        return type + "/" + ValueParser.getResourceName(name);
+    }
+
+    private void loadValues(final File file, final ResourceQualifiers qualifiers)
+            throws IOException, XmlPullParserException {
+        try (final ResourceXmlParser parser = new ResourceXmlParser(file)) {
+            while (parser.next() != XmlPullParser.END_DOCUMENT) {
+                if (parser.getEventType() != XmlPullParser.START_TAG || parser.getDepth() != 2) {
+                    continue;
+                }
+                final String tag = parser.getName();
+                final String name = parser.getAttributeValue(null, "name");
+                switch (tag) {
+                case "declare-styleable":
+                    while (parser.nextTag() == XmlPullParser.START_TAG) {
+                        if (parser.getName().equals("attr")) {
+                            loadAttribute(parser);
+                        } else {
+                            skipElement(parser);
+                        }
+                    }
+                    break;
+                case "attr":
+                    loadAttribute(parser);
+                    break;
+                case TYPE_STYLE:
+                    loadStyle(parser, name, qualifiers);
+                    break;
+                case "item": {
+                    final String type = parser.getAttributeValue(null, "type");
+                    final String format = parser.getAttributeValue(null, "format");
+                    putValue(type, name, readText(parser), (format == null)
+                            ? ValueParser.getFormatsOfType(type)
+                            : AttributeFormat.parseFormats(format), qualifiers);
+                    break;
+                }
+                case "string-array":
+                case "integer-array":
+                case "array":
+                    // The arrays aren't read by the keyboard layouts.
+                    break;
+                default:
+                    if (name != null) {
+                        putValue(tag, name, readText(parser), ValueParser.getFormatsOfType(tag),
+                                qualifiers);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private void putValue(final String type, final String name, final String text,
+            final int formats, final ResourceQualifiers qualifiers) {
+        final String key = getKey(type, name);
+        final Value existing = mValues.get(key);
+        if (existing == null || qualifiers.isBetterThan(existing.mQualifiers)) {
+            mValues.put(key, new Value(text, new AttributeFormat(type, formats,
+                    new HashMap<String, Integer>()), qualifiers));
+        }
+    }
+
+    private void loadAttribute(final XmlPullParser parser)
+            throws IOException, XmlPullParserException {
+        final String name = parser.getAttributeValue(null, "name");
+        final String format = parser.getAttributeValue(null, "format");
+        int formats = (format == null) ? 0 : AttributeFormat.parseFormats(format);
+        final HashMap<String, Integer> symbols = new HashMap<>();
+        while (parser.nextTag() == XmlPullParser.START_TAG) {
+            final String symbol = parser.getName();
+            if (symbol.equals("enum") || symbol.equals("flag")) {
+                formats |= symbol.equals("enum") ? AttributeFormat.FORMAT_ENUM
+                        : AttributeFormat.FORMAT_FLAGS;
+                final String value = parser.getAttributeValue(null, "value");
+                symbols.put(parser.getAttributeValue(null, "name"), value.startsWith("0x")
+                        ? (int)Long.parseLong(value.substring(2), 16) : Integer.parseInt(value));
+            }
+            skipElement(parser);
+        }
+        if (name.startsWith(ANDROID_PREFIX)
+                || (formats == 0 && mAttributes.containsKey(name))) {
+            // This only refers to an attribute that is declared elsewhere.
+            return;
+        }
+        mAttributes.put(name, new AttributeFormat(name,
+                (formats == 0) ? AttributeFormat.FORMAT_ANY : formats, symbols));
+    }
+
+    private void loadStyle(final XmlPullParser parser, final String name,
+            final ResourceQualifiers qualifiers) throws IOException, XmlPullParserException {
+        String parent = parser.getAttributeValue(null, "parent");
+        if (parent == null) {
+            // A style whose name has a dot implicitly inherits the style before the dot.
+            final int dot = name.lastIndexOf('.');
+            parent = (dot < 0) ? null : name.substring(0, dot);
+        } else if (parent.trim().isEmpty()) {
+            parent = null;
+        } else {
+            parent = parent.trim();
+            if (parent.startsWith("@style/")) {
+                parent = parent.substring("@style/".length());
+            } else if (parent.startsWith("@android:") || parent.startsWith(ANDROID_PREFIX)) {
+                // The styles of the framework don't define attributes of the keyboard.
+                parent = null;
+            }
+        }
+        final LinkedHashMap<String, String> items = new LinkedHashMap<>();
+        while (parser.nextTag() == XmlPullParser.START_TAG) {
+            items.put(parser.getAttributeValue(null, "name"), readText(parser));
+        }
+        final String key = ValueParser.getResourceName(name);
+        final Style existing = mStyles.get(key);
+        if (existing == null || qualifiers.isBetterThan(existing.mQualifiers)) {
+            mStyles.put(key, new Style(
+                    (parent == null) ? null : ValueParser.getResourceName(parent), items,
+                    qualifiers));
+        }
+    }
+
+    /**
+     * Read the text of the current element, including the text of the elements that it contains,
+     * and move to its end tag.
+     */
+    private static String readText(final XmlPullParser parser)
+            throws IOException, XmlPullParserException {
+        final StringBuilder sb = new StringBuilder();
+        final int depth = parser.getDepth();
+        while (parser.next() != XmlPullParser.END_TAG || parser.getDepth() > depth) {
+            if (parser.getEventType() == XmlPullParser.TEXT) {
+                sb.append(parser.getText());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void skipElement(final XmlPullParser parser)
+            throws IOException, XmlPullParserException {
+        final int depth = parser.getDepth();
+        while (parser.next() != XmlPullParser.END_TAG || parser.getDepth() > depth) {
+            // Skip the content of the element.
+        }
+    }
+
+    public ResourceQualifiers getDevice() {
+        return mDevice;
+    }
+
+    /**
+     * @param name the name of an attribute of the app, or of the framework prefixed with
+     *        "android:".
+     * @return the declaration of the attribute, or a declaration that allows any format if it
+     * isn't declared by the app.
+     */
+    public AttributeFormat getAttribute(final String name) {
+        final AttributeFormat attr = mAttributes.get(name);
+        return (attr == null) ? AttributeFormat.UNDECLARED : attr;
+    }
+
+    /**
+     * @return the names of the resources of a type that are files, like the layouts of type
+     * "xml", in alphabetical order.
+     */
+    public List<String> getFileNames(final String type) {
+        final TreeSet<String> names = new TreeSet<>();
+        final String prefix = type + "/";
+        for (final String key : mFiles.keySet()) {
+            if (key.startsWith(prefix)) {
+                names.add(key.substring(prefix.length()));
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * @param type the type of the resource, like "dimen" or "xml".
+     * @param name the name of the resource.
+     * @return the value of the resource, with the references it contains resolved. The value of
+     * a file is its path, like "res/xml/kbd_qwerty.xml".
+     * @throws IllegalArgumentException if the resource doesn't exist.
+     */
+    public ResourceValue getValue(final String type, final String name) {
+        return resolve(new ResourceValue(ResourceValue.TYPE_REFERENCE, 0, null, null, type,
+                ValueParser.getResourceName(name)), null);
+    }
+
+    /**
+     * Open a layout of the xml directories.
+     * @param name the name of the layout, like "kbd_qwerty".
+     * @return a parser at the start of the document, which has to be closed with
+     * {@link #closeXml(XmlPullParser)}.
+     * @throws IllegalArgumentException if the layout doesn't exist.
+     */
+    public XmlPullParser openXml(final String name) throws IOException, XmlPullParserException {
+        final ResourceFile file = mFiles.get(getKey(TYPE_XML, name));
+        if (file == null) {
+            throw new IllegalArgumentException("No resource xml/" + name);
+        }
+        return new ResourceXmlParser(file.mFile);
+    }
+
+    public void closeXml(final XmlPullParser parser) throws IOException {
+        ((ResourceXmlParser)parser).close();
+    }
+
+    /**
+     * Create a theme, which the attributes that aren't specified by a layout are taken from.
+     * @param styleName the name of the style of the theme, like "KeyboardTheme.LXX_Light" or
+     *        "KeyboardTheme_LXX_Light" as in the R class.
+     * @return the theme.
+     * @throws IllegalArgumentException if the style doesn't exist.
+     */
+    public ResourceTheme newTheme(final String styleName) {
+        final String name = ValueParser.getResourceName(styleName);
+        if (!mStyles.containsKey(name)) {
+            throw new IllegalArgumentException("No resource style/" + styleName);
+        }
+        return new ResourceTheme(this, name);
+    }
+
+    /**
+     * Read the attributes of the element at the current position of a parser, like
+     * Resources.obtainAttributes() does.
+     * @param parser a parser of a layout opened by {@link #openXml(String)}.
+     * @param attrs the names of the attributes to read.
+     * @return the values of the attributes in the same order, or null for the ones that the
+     * element doesn't specify.
+     */
+    public ResourceValue[] obtainAttributes(final XmlPullParser parser, final String[] attrs) {
+        final ResourceValue[] values = new ResourceValue[attrs.length];
+        readAttributes(parser, attrs, values);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = resolve(values[i], null);
+        }
+        return values;
+    }
+
+    /**
+     * Read the attributes that an element specifies.
+     * @param parser the parser at the start tag of the element.
+     * @param attrs the names of the attributes to read.
+     * @param values the values of the attributes, which are set to the unresolved values of the
+     * attributes that the element specifies.
+     */
+    void readAttributes(final XmlPullParser parser, final String[] attrs,
+            final ResourceValue[] values) {
+        final int count = parser.getAttributeCount();
+        for (int i = 0; i < count; i++) {
+            final String name = getAttributeName(parser, i);
+            if (name == null) {
+                continue;
+            }
+            for (int j = 0; j < attrs.length; j++) {
+                if (name.equals(attrs[j])) {
+                    values[j] = parseAttribute(name, parser.getAttributeValue(i));
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the name of an attribute of a layout as it is read, or null if the attribute isn't
+     * one of the resource attributes.
+     */
+    private static String getAttributeName(final XmlPullParser parser, final int index) {
+        final String namespace = parser.getAttributeNamespace(index);
+        if (NAMESPACE_ANDROID.equals(namespace)) {
+            return ANDROID_PREFIX + parser.getAttributeName(index);
+        }
+        if (NAMESPACE_RES_AUTO.equals(namespace) || namespace.startsWith(NAMESPACE_APP_PREFIX)) {
+            return parser.getAttributeName(index);
+        }
+        return null;
+    }
+
+    private ResourceValue parseAttribute(final String name, final String text) {
+        final ResourceValue value = ValueParser.parse(text, getAttribute(name));
+        if (value.mType == ResourceValue.TYPE_STRING) {
+            return ResourceValue.newString(ValueParser.unescapeAttribute(text));
+        }
+        return value;
+    }
+
+    /**
+     * @return the value of the "style" attribute of the element at the current position of a
+     * parser, or null if it doesn't have one.
+     */
+    static ResourceValue getStyleAttribute(final XmlPullParser parser) {
+        final String style = parser.getAttributeValue(null, ATTRIBUTE_STYLE);
+        return (style == null) ? null : ValueParser.parseReference(style.trim());
+    }
+
+    /**
+     * @param styleName the name of a style.
+     * @param attr the name of an attribute.
+     * @return the unresolved value of the attribute in the style or in the styles it inherits,
+     * or null if none of them has the attribute.
+     */
+    ResourceValue getStyleItem(final String styleName, final String attr) {
+        String name = ValueParser.getResourceName(styleName);
+        for (int depth = 0; name != null; depth++) {
+            final Style style = mStyles.get(name);
+            if (style == null) {
+                throw new IllegalArgumentException("No resource style/" + name);
+            }
+            if (depth > MAX_REFERENCE_DEPTH) {
+                throw new IllegalArgumentException("Style " + styleName + " inherits itself");
+            }
+            final String text = style.mItems.get(attr);
+            if (text != null) {
+                ResourceValue value = style.mValues.get(attr);
+                if (value == null) {
+                    value = parseStyleItem(text, getAttribute(attr));
+                    style.mValues.put(attr, value);
+                }
+                return value;
+            }
+            name = style.mParent;
+        }
+        return null;
+    }
+
+    private static ResourceValue parseStyleItem(final String text, final AttributeFormat attr) {
+        final String s = text.trim();
+        if (attr.allows(AttributeFormat.FORMAT_STRING) && !s.startsWith("@")
+                && !s.startsWith("?")) {
+            final ResourceValue value = ValueParser.parse(text, attr);
+            return (value.mType == ResourceValue.TYPE_STRING)
+                    ? ResourceValue.newString(ValueParser.processString(text)) : value;
+        }
+        return ValueParser.parse(text, attr);
+    }
+
+    /**
+     * Resolve a value to the value it refers to.
+     * @param value the value, which may be a reference or an attribute reference.
+     * @param theme the theme that the attribute references are resolved with, or null if they
+     * are kept as they are.
+     * @return the value that isn't a reference, a reference to a style or to a resource of the
+     * framework, or an unresolved attribute reference. This is null if the value is null or
+     * refers to "@null".
+     */
+    ResourceValue resolve(final ResourceValue value, final ResourceTheme theme) {
+        ResourceValue v = value;
+        for (int depth = 0; depth <= MAX_REFERENCE_DEPTH; depth++) {
+            if (v == null || v.mType == ResourceValue.TYPE_NULL) {
+                return null;
+            }
+            if (v.mPackage != null) {
+                return v;
+            }
+            if (v.mType == ResourceValue.TYPE_ATTRIBUTE) {
+                if (theme == null) {
+                    return v;
+                }
+                v = theme.getAttributeItem(v.mResourceName);
+                continue;
+            }
+            if (v.mType != ResourceValue.TYPE_REFERENCE) {
+                return v;
+            }
+            if (v.mResourceName == null) {
+                // This is "@null".
+                return null;
+            }
+            if (v.mResourceType.equals(TYPE_STYLE)) {
+                if (!mStyles.containsKey(v.mResourceName)) {
+                    throw new IllegalArgumentException("No resource style/" + v.mResourceName);
+                }
+                return v;
+            }
+            final String key = getKey(v.mResourceType, v.mResourceName);
+            final ResourceFile file = mFiles.get(key);
+            if (file != null) {
+                return ResourceValue.newString(file.mPath)
+                        .from(null, v.mResourceType, v.mResourceName);
+            }
+            final Value resource = mValues.get(key);
+            if (resource == null) {
+                throw new IllegalArgumentException("No resource " + key);
+            }
+            if (resource.mValue == null) {
+                resource.mValue = parseValue(resource, v.mResourceType, v.mResourceName);
+            }
+            v = resource.mValue;
+        }
+        throw new IllegalArgumentException("Reference loop at " + value);
+    }
+
+    private static ResourceValue parseValue(final Value resource, final String type,
+            final String name) {
+        final ResourceValue value;
+        if (type.equals("string")) {
+            final String s = ValueParser.processString(resource.mText);
+            final ResourceValue reference = (s.startsWith("@") || s.startsWith("?"))
+                    ? ValueParser.parseReference(s) : null;
+            value = (reference == null) ? ResourceValue.newString(s) : reference;
+        } else {
+            value = ValueParser.parse(resource.mText, resource.mFormat);
+        }
+        if (value.mType == ResourceValue.TYPE_REFERENCE
+                || value.mType == ResourceValue.TYPE_ATTRIBUTE) {
+            return value;
+        }
+        return value.from(null, type, name);
+    }
+}
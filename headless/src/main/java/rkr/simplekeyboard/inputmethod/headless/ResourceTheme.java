@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.headless;
+
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * A theme of a {@link ResourceTable}, which resolves the attribute references of the values and
+ * gives the values of the attributes that a layout doesn't specify.
+ */
+public final class ResourceTheme {
+    private final ResourceTable mTable;
+    private final String mStyleName;
+
+    ResourceTheme(final ResourceTable table, final String styleName) {
+        mTable = table;
+        mStyleName = styleName;
+    }
+
+    public String getStyleName() {
+        return mStyleName;
+    }
+
+    /**
+     * @param attr the name of an attribute.
+     * @return the resolved value of the attribute in the theme, or null if the theme doesn't
+     * define it.
+     */
+    public ResourceValue getAttribute(final String attr) {
+        return mTable.resolve(getAttributeItem(attr), this);
+    }
+
+    ResourceValue getAttributeItem(final String attr) {
+        return mTable.getStyleItem(mStyleName, attr);
+    }
+
+    /**
+     * Read the attributes of the element at the current position of a parser, like
+     * Theme.obtainStyledAttributes() does. The value of each attribute is taken from the first
+     * one that has it of the element, the style that the element has as its "style" attribute,
+     * the default style and the theme.
+     * @param parser a parser of a layout opened by {@link ResourceTable#openXml(String)}.
+     * @param attrs the names of the attributes to read.
+     * @param defStyleAttr the attribute of the theme that refers to the default style, or null.
+     * @param defStyleRes the name of the default style if the theme doesn't have defStyleAttr, or
+     *        null.
+     * @return the values of the attributes in the same order, or null for the ones that none of
+     * them specifies.
+     */
+    public ResourceValue[] obtainStyledAttributes(final XmlPullParser parser,
+            final String[] attrs, final String defStyleAttr, final String defStyleRes) {
+        final ResourceValue[] values = new ResourceValue[attrs.length];
+        mTable.readAttributes(parser, attrs, values);
+        final String style = getStyleName(ResourceTable.getStyleAttribute(parser));
+        String defStyle = defStyleRes;
+        if (defStyleAttr != null) {
+            final String themeDefStyle = getStyleName(getAttributeItem(defStyleAttr));
+            if (themeDefStyle != null) {
+                defStyle = themeDefStyle;
+            }
+        }
+        for (int i = 0; i < attrs.length; i++) {
+            if (values[i] == null && style != null) {
+                values[i] = mTable.getStyleItem(style, attrs[i]);
+            }
+            if (values[i] == null && defStyle != null) {
+                values[i] = mTable.getStyleItem(defStyle, attrs[i]);
+            }
+            if (values[i] == null) {
+                values[i] = getAttributeItem(attrs[i]);
+            }
+            values[i] = mTable.resolve(values[i], this);
+        }
+        return values;
+    }
+
+    /**
+     * @return the name of the style that a value refers to, or null if it doesn't refer to a
+     * style.
+     */
+    private String getStyleName(final ResourceValue value) {
+        final ResourceValue style = mTable.resolve(value, this);
+        if (style == null || style.mType != ResourceValue.TYPE_REFERENCE
+                || !"style".equals(style.mResourceType) || style.mPackage != null) {
+            return null;
+        }
+        return style.mResourceName;
+    }
+}
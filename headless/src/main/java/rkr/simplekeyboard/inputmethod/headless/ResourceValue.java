@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.headless;
+
+/**
+ * A resource value, with the type and the data encoded as in android.util.TypedValue, so that the
+ * value can be handed to code that reads TypedValues and gets the same numbers as on a device.
+ */
+public final class ResourceValue {
+    public static final int TYPE_NULL = 0x00;
+    public static final int TYPE_REFERENCE = 0x01;
+    public static final int TYPE_ATTRIBUTE = 0x02;
+    public static final int TYPE_STRING = 0x03;
+    public static final int TYPE_FLOAT = 0x04;
+    public static final int TYPE_DIMENSION = 0x05;
+    public static final int TYPE_FRACTION = 0x06;
+    public static final int TYPE_INT_DEC = 0x10;
+    public static final int TYPE_INT_HEX = 0x11;
+    public static final int TYPE_INT_BOOLEAN = 0x12;
+    public static final int TYPE_INT_COLOR_ARGB8 = 0x1c;
+    public static final int TYPE_INT_COLOR_RGB8 = 0x1d;
+    public static final int TYPE_INT_COLOR_ARGB4 = 0x1e;
+    public static final int TYPE_INT_COLOR_RGB4 = 0x1f;
+
+    public static final int COMPLEX_UNIT_PX = 0;
+    public static final int COMPLEX_UNIT_DIP = 1;
+    public static final int COMPLEX_UNIT_SP = 2;
+    public static final int COMPLEX_UNIT_PT = 3;
+    public static final int COMPLEX_UNIT_IN = 4;
+    public static final int COMPLEX_UNIT_MM = 5;
+    public static final int COMPLEX_UNIT_FRACTION = 0;
+    public static final int COMPLEX_UNIT_FRACTION_PARENT = 1;
+    public static final int COMPLEX_UNIT_MASK = 0xf;
+
+    private static final int COMPLEX_RADIX_SHIFT = 4;
+    private static final int COMPLEX_RADIX_MASK = 0x3;
+    private static final int COMPLEX_MANTISSA_SHIFT = 8;
+    private static final int COMPLEX_MANTISSA_MASK = 0xffffff;
+    private static final float MANTISSA_MULT = 1.0f / (1 << COMPLEX_MANTISSA_SHIFT);
+    private static final float[] RADIX_MULTS = {
+            1.0f * MANTISSA_MULT, 1.0f / (1 << 7) * MANTISSA_MULT,
+            1.0f / (1 << 15) * MANTISSA_MULT, 1.0f / (1 << 23) * MANTISSA_MULT
+    };
+
+    public static final String PACKAGE_ANDROID = "android";
+
+    public final int mType;
+    public final int mData;
+    // The text of a string value.
+    public final String mString;
+    // The package of the resource that the value was read from, or of the resource or attribute
+    // that it refers to. This is null for the resources of the app, and only references to the
+    // resources of the framework have to be resolved by the caller.
+    public final String mPackage;
+    // The type and the name of that resource, or null if the value is a literal of a layout.
+    public final String mResourceType;
+    public final String mResourceName;
+
+    ResourceValue(final int type, final int data, final String string, final String pkg,
+            final String resourceType, final String resourceName) {
+        mType = type;
+        mData = data;
+        mString = string;
+        mPackage = pkg;
+        mResourceType = resourceType;
+        mResourceName = resourceName;
+    }
+
+    static ResourceValue newValue(final int type, final int data) {
+        return new ResourceValue(type, data, null, null, null, null);
+    }
+
+    static ResourceValue newString(final String string) {
+        return new ResourceValue(TYPE_STRING, 0, string, null, null, null);
+    }
+
+    /**
+     * @return the same value, as read from a resource.
+     */
+    ResourceValue from(final String pkg, final String resourceType, final String resourceName) {
+        return new ResourceValue(mType, mData, mString, pkg, resourceType, resourceName);
+    }
+
+    public boolean isInteger() {
+        return mType >= TYPE_INT_DEC && mType <= TYPE_INT_COLOR_RGB4;
+    }
+
+    public boolean isColor() {
+        return mType >= TYPE_INT_COLOR_ARGB8 && mType <= TYPE_INT_COLOR_RGB4;
+    }
+
+    public float getFloat() {
+        return Float.intBitsToFloat(mData);
+    }
+
+    /**
+     * @param base the base of a fraction.
+     * @param pbase the base of a fraction relative to the parent, like "10%p".
+     * @return the value of a fraction.
+     */
+    public float getFraction(final float base, final float pbase) {
+        return complexToFraction(mData, base, pbase);
+    }
+
+    /**
+     * @param density the density of the display, the number of pixels of a dip.
+     * @param scaledDensity the number of pixels of a sp.
+     * @param xdpi the number of pixels of an inch.
+     * @return the value of a dimension in pixels.
+     */
+    public float getDimension(final float density, final float scaledDensity, final float xdpi) {
+        final float value = complexToFloat(mData);
+        switch (mData & COMPLEX_UNIT_MASK) {
+        case COMPLEX_UNIT_PX:
+            return value;
+        case COMPLEX_UNIT_DIP:
+            return value * density;
+        case COMPLEX_UNIT_SP:
+            return value * scaledDensity;
+        case COMPLEX_UNIT_PT:
+            return value * xdpi * (1.0f / 72);
+        case COMPLEX_UNIT_IN:
+            return value * xdpi;
+        case COMPLEX_UNIT_MM:
+            return value * xdpi * (1.0f / 25.4f);
+        default:
+            return 0;
+        }
+    }
+
+    public static float complexToFloat(final int complex) {
+        return (complex & (COMPLEX_MANTISSA_MASK << COMPLEX_MANTISSA_SHIFT))
+                * RADIX_MULTS[(complex >> COMPLEX_RADIX_SHIFT) & COMPLEX_RADIX_MASK];
+    }
+
+    public static float complexToFraction(final int complex, final float base,
+            final float pbase) {
+        switch (complex & COMPLEX_UNIT_MASK) {
+        case COMPLEX_UNIT_FRACTION:
+            return complexToFloat(complex) * base;
+        case COMPLEX_UNIT_FRACTION_PARENT:
+            return complexToFloat(complex) * pbase;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Encode a number the way the resource compiler does, with as many bits after the point as
+     * the number needs.
+     * @param value the number.
+     * @return the complex data without a unit.
+     */
+    static int floatToComplex(final float value) {
+        final boolean negative = value < 0;
+        final long bits = (long)((double)((negative ? -value : value) * (1 << 23)) + 0.5);
+        final int radix;
+        final int shift;
+        if ((bits & 0x7fffffL) == 0) {
+            radix = 0;
+            shift = 23;
+        } else if ((bits & ~0x7fffffL) == 0) {
+            radix = 3;
+            shift = 0;
+        } else if ((bits & ~0x7fffffffL) == 0) {
+            radix = 2;
+            shift = 8;
+        } else if ((bits & ~0x7fffffffffL) == 0) {
+            radix = 1;
+            shift = 16;
+        } else {
+            radix = 0;
+            shift = 23;
+        }
+        int mantissa = (int)((bits >> shift) & COMPLEX_MANTISSA_MASK);
+        if (negative) {
+            mantissa = (-mantissa) & COMPLEX_MANTISSA_MASK;
+        }
+        return (radix << COMPLEX_RADIX_SHIFT) | (mantissa << COMPLEX_MANTISSA_SHIFT);
+    }
+
+    @Override
+    public String toString() {
+        final String value = (mType == TYPE_STRING) ? '"' + mString + '"'
+                : "0x" + Integer.toHexString(mData);
+        if (mResourceName == null) {
+            return "type=0x" + Integer.toHexString(mType) + " " + value;
+        }
+        return "type=0x" + Integer.toHexString(mType) + " " + value + " from "
+                + ((mPackage == null) ? "" : mPackage + ":") + mResourceType + "/"
+                + mResourceName;
+    }
+}
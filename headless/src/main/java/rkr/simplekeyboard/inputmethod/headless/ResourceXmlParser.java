@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.headless;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A pull parser of a resource XML file, which reports the names of the elements and attributes
+ * without their namespace prefixes like the parser of a compiled resource does.
+ */
+final class ResourceXmlParser extends KXmlParser implements Closeable {
+    private final Reader mReader;
+
+    ResourceXmlParser(final File file) throws IOException, XmlPullParserException {
+        mReader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+        try {
+            setFeature(FEATURE_PROCESS_NAMESPACES, true);
+            setInput(mReader);
+        } catch (XmlPullParserException e) {
+            mReader.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
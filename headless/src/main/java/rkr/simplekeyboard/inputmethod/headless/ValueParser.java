@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.headless;
+
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Encodes the text of resource values and of layout attributes into typed values, the way the
+ * resource compiler does when it builds the app.
+ */
+final class ValueParser {
+    static final String TYPE_ATTR = "attr";
+
+    private static final Pattern REFERENCE =
+            Pattern.compile("^@\\+?(?:(\\w+):)?(\\w+)/([\\w.]+)$");
+    private static final Pattern ATTRIBUTE_REFERENCE =
+            Pattern.compile("^\\?(?:(\\w+):)?(?:attr/)?([\\w.]+)$");
+    private static final Pattern NUMBER = Pattern.compile(
+            "^\\s*([-+]?(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][-+]?\\d+)?)\\s*([a-z%]*)\\s*$");
+    private static final Pattern COLOR = Pattern.compile("^#[0-9a-fA-F]+$");
+    private static final Pattern HEX_INTEGER = Pattern.compile("^-?0[xX][0-9a-fA-F]+$");
+    private static final Pattern DECIMAL_INTEGER = Pattern.compile("^[-+]?\\d+$");
+
+    private static final HashMap<String, Integer> DIMENSION_UNITS = new HashMap<>();
+
+    static {
+        DIMENSION_UNITS.put("px", ResourceValue.COMPLEX_UNIT_PX);
+        DIMENSION_UNITS.put("dip", ResourceValue.COMPLEX_UNIT_DIP);
+        DIMENSION_UNITS.put("dp", ResourceValue.COMPLEX_UNIT_DIP);
+        DIMENSION_UNITS.put("sp", ResourceValue.COMPLEX_UNIT_SP);
+        DIMENSION_UNITS.put("pt", ResourceValue.COMPLEX_UNIT_PT);
+        DIMENSION_UNITS.put("in", ResourceValue.COMPLEX_UNIT_IN);
+        DIMENSION_UNITS.put("mm", ResourceValue.COMPLEX_UNIT_MM);
+    }
+
+    private ValueParser() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * @param type the type of a resource in the values, like "dimen".
+     * @return the formats that the resource compiler accepts for the values of that type.
+     */
+    static int getFormatsOfType(final String type) {
+        switch (type) {
+        case "string":
+            return AttributeFormat.FORMAT_STRING;
+        case "dimen":
+            return AttributeFormat.FORMAT_DIMENSION | AttributeFormat.FORMAT_FLOAT;
+        case "color":
+        case "drawable":
+            return AttributeFormat.FORMAT_COLOR;
+        case "integer":
+            return AttributeFormat.FORMAT_INTEGER;
+        case "bool":
+            return AttributeFormat.FORMAT_BOOLEAN;
+        case "fraction":
+            return AttributeFormat.FORMAT_FRACTION;
+        default:
+            return AttributeFormat.FORMAT_ANY;
+        }
+    }
+
+    /**
+     * Encode a value.
+     * @param text the text of the value.
+     * @param attr the attribute that the value is given to.
+     * @return the value. A reference or an attribute reference isn't resolved. The text is used as
+     * a string value if it can't be encoded in any format of the attribute.
+     */
+    static ResourceValue parse(final String text, final AttributeFormat attr) {
+        final String s = text.trim();
+        if (s.startsWith("@") || (s.startsWith("?") && s.length() > 1)) {
+            final ResourceValue reference = parseReference(s);
+            if (reference != null) {
+                return reference;
+            }
+        }
+        if (attr.allows(AttributeFormat.FORMAT_ENUM) && attr.mSymbols.containsKey(s)) {
+            return ResourceValue.newValue(ResourceValue.TYPE_INT_DEC, attr.mSymbols.get(s));
+        }
+        if (attr.allows(AttributeFormat.FORMAT_FLAGS)) {
+            final ResourceValue flags = parseFlags(s, attr);
+            if (flags != null) {
+                return flags;
+            }
+        }
+        if (attr.allows(AttributeFormat.FORMAT_COLOR)) {
+            final ResourceValue color = parseColor(s);
+            if (color != null) {
+                return color;
+            }
+        }
+        if (attr.allows(AttributeFormat.FORMAT_BOOLEAN)
+                && (s.equals("true") || s.equals("false"))) {
+            return ResourceValue.newValue(ResourceValue.TYPE_INT_BOOLEAN,
+                    s.equals("true") ? -1 : 0);
+        }
+        if (attr.allows(AttributeFormat.FORMAT_INTEGER)) {
+            if (HEX_INTEGER.matcher(s).matches()) {
+                return ResourceValue.newValue(ResourceValue.TYPE_INT_HEX,
+                        (int)Long.parseLong(s.replaceFirst("0[xX]", ""), 16));
+            }
+            if (DECIMAL_INTEGER.matcher(s).matches()) {
+                return ResourceValue.newValue(ResourceValue.TYPE_INT_DEC,
+                        (int)Long.parseLong(s.startsWith("+") ? s.substring(1) : s));
+            }
+        }
+        if (attr.allows(AttributeFormat.FORMAT_FLOAT | AttributeFormat.FORMAT_DIMENSION
+                | AttributeFormat.FORMAT_FRACTION)) {
+            final ResourceValue number = parseNumber(s, attr);
+            if (number != null) {
+                return number;
+            }
+        }
+        return ResourceValue.newString(text);
+    }
+
+    /**
+     * @param s a reference like "@xml/key_styles_common", "@android:color/black" or
+     *        "?attr/keyboardStyle".
+     * @return the unresolved reference, or null if the text isn't a reference.
+     */
+    static ResourceValue parseReference(final String s) {
+        if (s.equals("@null")) {
+            return ResourceValue.newValue(ResourceValue.TYPE_REFERENCE, 0);
+        }
+        if (s.equals("@empty")) {
+            return ResourceValue.newValue(ResourceValue.TYPE_NULL, 1);
+        }
+        final Matcher reference = REFERENCE.matcher(s);
+        if (reference.matches()) {
+            return new ResourceValue(ResourceValue.TYPE_REFERENCE, 0, null,
+                    getPackage(reference.group(1)), reference.group(2),
+                    getResourceName(reference.group(3)));
+        }
+        final Matcher attributeReference = ATTRIBUTE_REFERENCE.matcher(s);
+        if (attributeReference.matches()) {
+            return new ResourceValue(ResourceValue.TYPE_ATTRIBUTE, 0, null,
+                    getPackage(attributeReference.group(1)), TYPE_ATTR,
+                    attributeReference.group(2));
+        }
+        return null;
+    }
+
+    private static String getPackage(final String pkg) {
+        return ResourceValue.PACKAGE_ANDROID.equals(pkg) ? ResourceValue.PACKAGE_ANDROID : null;
+    }
+
+    /**
+     * @return the name of a resource as it is in the R class, where the dots of the names, like
+     * the ones of the styles, are underscores.
+     */
+    static String getResourceName(final String name) {
+        return name.replace('.', '_');
+    }
+
+    private static ResourceValue parseFlags(final String s, final AttributeFormat attr) {
+        int flags = 0;
+        for (final String name : s.split("\\|")) {
+            final Integer flag = attr.mSymbols.get(name.trim());
+            if (flag == null) {
+                return null;
+            }
+            flags |= flag;
+        }
+        return ResourceValue.newValue(ResourceValue.TYPE_INT_HEX, flags);
+    }
+
+    private static ResourceValue parseColor(final String s) {
+        if (!COLOR.matcher(s).matches()) {
+            return null;
+        }
+        final String hex = s.substring(1);
+        switch (hex.length()) {
+        case 3:
+            return ResourceValue.newValue(ResourceValue.TYPE_INT_COLOR_RGB4,
+                    0xff000000 | (int)Long.parseLong(doubleDigits(hex), 16));
+        case 4:
+            return ResourceValue.newValue(ResourceValue.TYPE_INT_COLOR_ARGB4,
+                    (int)Long.parseLong(doubleDigits(hex), 16));
+        case 6:
+            return ResourceValue.newValue(ResourceValue.TYPE_INT_COLOR_RGB8,
+                    0xff000000 | (int)Long.parseLong(hex, 16));
+        case 8:
+            return ResourceValue.newValue(ResourceValue.TYPE_INT_COLOR_ARGB8,
+                    (int)Long.parseLong(hex, 16));
+        default:
+            return null;
+        }
+    }
+
+    private static String doubleDigits(final String hex) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < hex.length(); i++) {
+            sb.append(hex.charAt(i)).append(hex.charAt(i));
+        }
+        return sb.toString();
+    }
+
+    private static ResourceValue parseNumber(final String s, final AttributeFormat attr) {
+        final Matcher number = NUMBER.matcher(s);
+        if (!number.matches()) {
+            return null;
+        }
+        final double value = Double.parseDouble(number.group(1));
+        final String unit = number.group(2);
+        if (DIMENSION_UNITS.containsKey(unit) && attr.allows(AttributeFormat.FORMAT_DIMENSION)) {
+            return ResourceValue.newValue(ResourceValue.TYPE_DIMENSION,
+                    ResourceValue.floatToComplex((float)value) | DIMENSION_UNITS.get(unit));
+        }
+        if ((unit.equals("%") || unit.equals("%p"))
+                && attr.allows(AttributeFormat.FORMAT_FRACTION)) {
+            return ResourceValue.newValue(ResourceValue.TYPE_FRACTION,
+                    ResourceValue.floatToComplex((float)(value / 100.0))
+                            | (unit.equals("%p") ? ResourceValue.COMPLEX_UNIT_FRACTION_PARENT
+                                    : ResourceValue.COMPLEX_UNIT_FRACTION));
+        }
+        if (unit.isEmpty() && attr.allows(AttributeFormat.FORMAT_FLOAT)) {
+            return ResourceValue.newValue(ResourceValue.TYPE_FLOAT,
+                    Float.floatToIntBits((float)value));
+        }
+        return null;
+    }
+
+    /**
+     * Process the backslash escapes of the text of a string attribute of a layout. The whitespace
+     * and the quotes are kept as they are.
+     */
+    static String unescapeAttribute(final String raw) {
+        if (raw.indexOf('\\') < 0) {
+            return raw;
+        }
+        final StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            final char c = raw.charAt(i);
+            if (c != '\\' || i + 1 >= raw.length()) {
+                sb.append(c);
+                continue;
+            }
+            i = appendEscape(raw, i + 1, sb);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Process the text of a string in the values: the escapes, the quotes, and the whitespace,
+     * which is collapsed and trimmed out of quotes.
+     */
+    static String processString(final String raw) {
+        final StringBuilder sb = new StringBuilder(raw.length());
+        boolean quoted = false;
+        boolean lastSpace = false;
+        for (int i = 0; i < raw.length(); i++) {
+            final char c = raw.charAt(i);
+            if (c == '\\' && i + 1 < raw.length()) {
+                i = appendEscape(raw, i + 1, sb);
+                lastSpace = false;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (!lastSpace) {
+                    sb.append(' ');
+                }
+                lastSpace = true;
+            } else {
+                sb.append(c);
+                lastSpace = false;
+            }
+        }
+        if (raw.trim().startsWith("\"")) {
+            return sb.toString();
+        }
+        int start = 0;
+        int end = sb.length();
+        while (start < end && sb.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && sb.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return sb.substring(start, end);
+    }
+
+    /**
+     * @param s the text.
+     * @param i the position of the character after a backslash.
+     * @param sb the builder that the escaped character is appended to.
+     * @return the position of the last character of the escape.
+     */
+    private static int appendEscape(final String s, final int i, final StringBuilder sb) {
+        final char c = s.charAt(i);
+        switch (c) {
+        case 'n':
+            sb.append('\n');
+            return i;
+        case 't':
+            sb.append('\t');
+            return i;
+        case 'u':
+            sb.append((char)Integer.parseInt(s.substring(i + 1, i + 5), 16));
+            return i + 4;
+        default:
+            sb.append(c);
+            return i;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2026 Raimondas Rimkus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rkr.simplekeyboard.inputmethod.headless;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Loads the resources of the app and checks that the values are encoded and selected like the
+ * resource compiler and a device do, and that every attribute of every layout can be read.
+ */
+public class ResourceTableTest {
+    // The resources of the app, relative to the directory of this module.
+    private static final File RES_DIR =
+            new File(System.getProperty("resDir", "../app/src/main/res"));
+    private static final String PHONE = "en-rUS-sw360dp-port-notnight-v34";
+
+    private static ResourceTable load(final String device)
+            throws IOException, XmlPullParserException {
+        return ResourceTable.load(RES_DIR, ResourceQualifiers.parse(device));
+    }
+
+    private static XmlPullParser openAt(final ResourceTable table, final String xml,
+            final String tag) throws IOException, XmlPullParserException {
+        final XmlPullParser parser = table.openXml(xml);
+        while (parser.next() != XmlPullParser.END_DOCUMENT) {
+            if (parser.getEventType() == XmlPullParser.START_TAG && parser.getName().equals(tag)) {
+                return parser;
+            }
+        }
+        throw new AssertionError("No " + tag + " in " + xml);
+    }
+
+    private static ResourceValue parse(final String text, final String attr)
+            throws IOException, XmlPullParserException {
+        return ValueParser.parse(text, load(PHONE).getAttribute(attr));
+    }
+
+    @Test
+    public void testNumbersAreEncodedLikeTheResourceCompiler() {
+        for (final float value : new float[] { 0.0f, 1.0f, 0.25f, 0.01739f, 283.5f, -4.5f }) {
+            final float decoded =
+                    ResourceValue.complexToFloat(ResourceValue.floatToComplex(value));
+            assertEquals(value, decoded, Math.abs(value) * 1e-5f);
+        }
+        // The encoding of "1.739%p" without its unit, as the resource compiler writes it.
+        assertEquals(0x0239d630, ResourceValue.floatToComplex((float)(1.739 / 100.0)));
+    }
+
+    @Test
+    public void testAttributesAreParsedWithTheirFormat()
+            throws IOException, XmlPullParserException {
+        final ResourceValue fraction = parse("10%p", "keyWidth");
+        assertEquals(ResourceValue.TYPE_FRACTION, fraction.mType);
+        assertEquals(20.0f, fraction.getFraction(100, 200), 1e-4f);
+
+        final ResourceValue fillRight = parse("fillRight", "keyWidth");
+        assertEquals(ResourceValue.TYPE_INT_DEC, fillRight.mType);
+        assertEquals(-1, fillRight.mData);
+
+        final ResourceValue flags = parse("fontNormal|alignHintLabelToBottom", "keyLabelFlags");
+        assertEquals(ResourceValue.TYPE_INT_HEX, flags.mType);
+        assertEquals(0x02, flags.mData & 0x02);
+        assertTrue(flags.mData != 0x02);
+
+        final ResourceValue element = parse("alphabet", "keyboardLayoutSetElement");
+        assertEquals(ResourceValue.TYPE_INT_DEC, element.mType);
+        assertEquals(0, element.mData);
+        final ResourceValue elements =
+                parse("alphabet|alphabetManualShifted", "keyboardLayoutSetElement");
+        assertEquals(ResourceValue.TYPE_STRING, elements.mType);
+
+        final ResourceValue reference = parse("@xml/rows_qwerty", "keyboardLayout");
+        assertEquals(ResourceValue.TYPE_REFERENCE, reference.mType);
+        assertEquals("rows_qwerty", reference.mResourceName);
+    }
+
+    @Test
+    public void testStringsAreProcessed() {
+        assertEquals("\\", ValueParser.unescapeAttribute("\\\\"));
+        assertEquals("'", ValueParser.unescapeAttribute("\\'"));
+        assertEquals("a  b", ValueParser.unescapeAttribute("a  b"));
+        assertEquals("a b", ValueParser.processString("\n  a\n   b  "));
+        assertEquals("  a ", ValueParser.processString("\"  a \""));
+        assertEquals("\u00e9", ValueParser.processString("\\u00e9"));
+    }
+
+    @Test
+    public void testValuesAreSelectedForTheDevice() throws IOException, XmlPullParserException {
+        final String[][] expectedGaps = {
+                { PHONE, "1.739" },
+                { "en-rUS-sw360dp-land-notnight-v34", "1.020" },
+                { "en-rUS-sw600dp-port-notnight-v34", "1.565" },
+                { "en-rUS-sw600dp-land-notnight-v34", "0.9" },
+                { "en-rUS-sw800dp-land-notnight-v34", "1.030" }
+        };
+        for (final String[] expected : expectedGaps) {
+            final ResourceValue gap =
+                    load(expected[0]).getValue("fraction", "config_key_horizontal_gap");
+            assertEquals(expected[0], ResourceValue.TYPE_FRACTION, gap.mType);
+            assertEquals(expected[0], Float.parseFloat(expected[1]),
+                    gap.getFraction(100, 100), 1e-4f);
+        }
+    }
+
+    @Test
+    public void testReferencesAreResolved() throws IOException, XmlPullParserException {
+        final ResourceTable table = load(PHONE);
+        final ResourceValue gridWidth = table.getValue("integer", "config_keyboard_grid_width");
+        assertEquals(ResourceValue.TYPE_INT_DEC, gridWidth.mType);
+        assertEquals(32, gridWidth.mData);
+
+        final ResourceValue layout = table.getValue("xml", "kbd_qwerty");
+        assertEquals(ResourceValue.TYPE_STRING, layout.mType);
+        assertEquals("res/xml/kbd_qwerty.xml", layout.mString);
+        assertEquals("kbd_qwerty", layout.mResourceName);
+
+        final ResourceValue systemColor = load("en-rUS-sw360dp-port-notnight-v31")
+                .getValue("color", "background_lxx_system");
+        assertEquals(ResourceValue.TYPE_REFERENCE, systemColor.mType);
+        assertEquals(ResourceValue.PACKAGE_ANDROID, systemColor.mPackage);
+        assertEquals("system_neutral1_100", systemColor.mResourceName);
+    }
+
+    @Test
+    public void testStyledAttributesComeFromTheTheme() throws IOException, XmlPullParserException {
+        final ResourceTable table = load(PHONE);
+        final ResourceTheme theme = table.newTheme("KeyboardTheme.LXX_Light");
+        final String[] attrs = { "keyboardTopPadding", "horizontalGap", "rowHeight",
+                "moreKeysTemplate", "iconSpaceKey" };
+
+        final XmlPullParser keyboard = openAt(table, "kbd_qwerty", "Keyboard");
+        final ResourceValue[] values =
+                theme.obtainStyledAttributes(keyboard, attrs, "keyboardStyle", "Keyboard");
+        table.closeXml(keyboard);
+        // The first Keyboard of the layout has the number row and its own row height.
+        assertEquals(2.335f, values[0].getFraction(100, 100), 1e-4f);
+        assertEquals(1.739f, values[1].getFraction(100, 100), 1e-4f);
+        assertEquals(20.0f, values[2].getFraction(100, 100), 1e-4f);
+        assertEquals("kbd_more_keys_keyboard_template", values[3].mResourceName);
+        assertNull(values[4]);
+
+        final XmlPullParser template =
+                openAt(table, "kbd_more_keys_keyboard_template", "Keyboard");
+        final ResourceValue[] templateValues =
+                theme.obtainStyledAttributes(template, attrs, "keyboardStyle", "Keyboard");
+        table.closeXml(template);
+        // The template has its own paddings, and the style of its "style" attribute has no gap.
+        assertEquals(ResourceValue.TYPE_DIMENSION, templateValues[0].mType);
+        assertEquals(0.0f, templateValues[1].getFraction(100, 100), 0.0f);
+    }
+
+    @Test
+    public void testEveryAttributeOfEveryLayoutIsRead() throws IOException, XmlPullParserException {
+        final ResourceTable table = load(PHONE);
+        final List<String> layouts = table.getFileNames("xml");
+        assertTrue(layouts.contains("kbd_qwerty"));
+        int attributeCount = 0;
+        for (final String layout : layouts) {
+            final XmlPullParser parser = table.openXml(layout);
+            try {
+                while (parser.next() != XmlPullParser.END_DOCUMENT) {
+                    if (parser.getEventType() != XmlPullParser.START_TAG) {
+                        continue;
+                    }
+                    for (int i = 0; i < parser.getAttributeCount(); i++) {
+                        if (!ResourceTable.NAMESPACE_RES_AUTO.equals(
+                                parser.getAttributeNamespace(i))) {
+                            continue;
+                        }
+                        final String attr = parser.getAttributeName(i);
+                        final String message = layout + " " + parser.getPositionDescription();
+                        assertNotSame(message, AttributeFormat.UNDECLARED,
+                                table.getAttribute(attr));
+                        final ResourceValue value =
+                                table.obtainAttributes(parser, new String[] { attr })[0];
+                        assertNotNull(message, value);
+                        attributeCount++;
+                    }
+                }
+            } finally {
+                table.closeXml(parser);
+            }
+        }
+        assertTrue(attributeCount > 1000);
+    }
+}